@@ -0,0 +1,250 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A PclCommandWriter that hands the commands to a thread of its own which writes them to another writer, so the
+ * thread producing the commands does not wait on the disk or the network
+ * <p/>
+ * The commands are passed through a bounded ring buffer meant for a single producing thread, a command keeps its
+ * place until it was written. When it is full, {@link #BLOCK} waits for room and {@link #FAIL} throws a
+ * PclCommandWriterException. {@link #flush()} and {@link #close()} wait until every command written has been handed
+ * to the other writer (which is flushed when it is Flushable). A failure writing a command is thrown by the next call
+ * to write, flush or close, the commands after it are dropped.
+ * <p/>
+ * <pre>
+ * AsyncPclCommandWriter writer = new AsyncPclCommandWriter(new OutputStreamPclCommandWriter(socketOutput), 1024, AsyncPclCommandWriter.BLOCK);
+ * </pre>
+ */
+public class AsyncPclCommandWriter implements PclCommandWriter, Flushable {
+    /**
+     * Wait for room when the buffer is full
+     */
+    public static final int BLOCK = 0;
+    /**
+     * Throw a PclCommandWriterException when the buffer is full
+     */
+    public static final int FAIL = 1;
+    private static final long PARK_NANOS = 1000 * 1000;
+    private static int threadNumber;
+
+    private final PclCommandWriter writer;
+    private final int backpressure;
+    private final PclCommand[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread consumer;
+    private volatile Thread waitingProducer;
+    private volatile boolean consumerWaiting;
+    private volatile boolean closing;
+    private volatile RuntimeException failure;
+    private long cachedHead;
+    private boolean closed;
+
+    /**
+     * @param writer   - the writer the commands are written to
+     * @param capacity - the number of commands the buffer holds, rounded up to a power of 2
+     * @param backpressure - {@link #BLOCK} or {@link #FAIL}
+     */
+    public AsyncPclCommandWriter(PclCommandWriter writer, int capacity, int backpressure) {
+        this(writer, capacity, backpressure, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pcl-writer-" + nextThreadNumber());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param writer        - the writer the commands are written to
+     * @param capacity      - the number of commands the buffer holds, rounded up to a power of 2
+     * @param backpressure  - {@link #BLOCK} or {@link #FAIL}
+     * @param threadFactory - makes the thread writing the commands (ex. a factory of virtual threads)
+     */
+    public AsyncPclCommandWriter(PclCommandWriter writer, int capacity, int backpressure, ThreadFactory threadFactory) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30 but was capacity=[" + capacity + "]");
+        }
+        if (backpressure != BLOCK && backpressure != FAIL) {
+            throw new IllegalArgumentException("Unknown backpressure=[" + backpressure + "]");
+        }
+        this.writer = writer;
+        this.backpressure = backpressure;
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        ring = new PclCommand[size];
+        mask = size - 1;
+        consumer = threadFactory.newThread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        });
+        consumer.start();
+    }
+
+    private static synchronized int nextThreadNumber() {
+        return ++threadNumber;
+    }
+
+    /**
+     * Puts the command in the buffer, to be written by the writer's thread
+     *
+     * @param command - the command to write
+     * @throws PclCommandWriterException when writing an earlier command failed or the buffer is full with {@link #FAIL}
+     */
+    public void write(PclCommand command) throws PclCommandWriterException {
+        if (command == null) {
+            throw new NullPointerException("Sorry I do not know how to write a null command");
+        }
+        checkOpen();
+        long position = tail.get();
+        while (position - cachedHead >= ring.length) {
+            cachedHead = head.get();
+            if (position - cachedHead < ring.length) {
+                break;
+            }
+            if (backpressure == FAIL) {
+                throw new PclCommandWriterException("The buffer of " + ring.length + " commands is full");
+            }
+            waitForConsumer();
+        }
+        ring[(int) position & mask] = command;
+        tail.set(position + 1);
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Waits until every command written so far was written to the other writer, then flushes it when it is Flushable
+     *
+     * @throws PclCommandWriterException when writing a command or flushing failed
+     */
+    public void flush() throws PclCommandWriterException {
+        checkOpen();
+        awaitDrained();
+        if (writer instanceof Flushable) {
+            try {
+                ((Flushable) writer).flush();
+            } catch (IOException e) {
+                throw new PclCommandWriterException("A problem has occurred while trying to flush the pcl commands written", e);
+            }
+        }
+    }
+
+    /**
+     * Waits until every command written so far was written, stops the writer's thread and closes the other writer
+     *
+     * @throws PclCommandWriterException when writing a command failed
+     */
+    public void close() throws PclCommandWriterException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        while (head.get() != tail.get() && failure == null) {
+            waitForConsumer();
+        }
+        closing = true;
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        throwFailure();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new PclCommandWriterException("The writer is closed");
+        }
+        throwFailure();
+    }
+
+    private void throwFailure() {
+        if (failure != null) {
+            throw new PclCommandWriterException("A problem has occurred while writing a pcl command", failure);
+        }
+    }
+
+    private void awaitDrained() {
+        while (head.get() != tail.get() && failure == null) {
+            waitForConsumer();
+        }
+        throwFailure();
+    }
+
+    private void waitForConsumer() {
+        waitingProducer = Thread.currentThread();
+        LockSupport.parkNanos(this, PARK_NANOS);
+        waitingProducer = null;
+    }
+
+    /**
+     * Runs on the writer's thread, the producer is woken whenever commands were taken out of the buffer
+     */
+    private void drain() {
+        long position = head.get();
+        while (true) {
+            long available = tail.get();
+            if (position == available) {
+                if (closing) {
+                    return;
+                }
+                consumerWaiting = true;
+                if (tail.get() == position && !closing) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                consumerWaiting = false;
+                continue;
+            }
+            while (position < available) {
+                int index = (int) position & mask;
+                PclCommand command = ring[index];
+                ring[index] = null;
+                if (failure == null) {
+                    try {
+                        writer.write(command);
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+                head.lazySet(++position);
+            }
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+}
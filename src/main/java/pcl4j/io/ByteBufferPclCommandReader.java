@@ -25,115 +25,237 @@ import java.util.Queue;
 public class ByteBufferPclCommandReader implements PclCommandReader {
     private PclCommandFactory pclCommandFactory = new PclCommandFactory();
     private PclUtil pclUtil = new PclUtil();
+    private PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
     protected ByteBuffer buffer;
+    private int startPosition = 0;
     private long filePosition = 0;
     private Queue<PclCommand> queuedCommands = new LinkedList<PclCommand>();
-    private UnsynchronizedByteArrayOutputStream commandPrefixBytes = new UnsynchronizedByteArrayOutputStream(3);
     private UnsynchronizedByteArrayOutputStream commandData = new UnsynchronizedByteArrayOutputStream(32);
-    private UnsynchronizedByteArrayOutputStream binaryData = new UnsynchronizedByteArrayOutputStream(1024);
+    private UnsynchronizedByteArrayOutputStream pjlData = new UnsynchronizedByteArrayOutputStream(1024);
     private UnsynchronizedByteArrayOutputStream valueData = new UnsynchronizedByteArrayOutputStream(16);
+    private PclValueParser valueParser = new PclValueParser();
+    private final PclCommandHandler queueingHandler = new QueueingHandler();
+    private PclCommandHandler handler;
     private long commandPosition;
+    private long valuePosition;
 
     public ByteBufferPclCommandReader(byte[] entirePclFileContents) {
         this(ByteBuffer.wrap(entirePclFileContents));
     }
 
+    /**
+     * Reads the bytes from the buffer's position up to its limit, the positions of the commands count from the
+     * buffer's position
+     *
+     * @param buffer - the PCL bytes
+     */
     public ByteBufferPclCommandReader(ByteBuffer buffer) {
         this.buffer = buffer;
+        this.startPosition = buffer.position();
     }
 
     protected ByteBufferPclCommandReader() {
     }
 
     public void skip(long numberOfBytesToSkip) throws PclCommandReaderException {
-        int newPosition = (int) (buffer.position() + numberOfBytesToSkip);
-        buffer.position(newPosition);
-        filePosition = newPosition;
+        buffer.position((int) (buffer.position() + numberOfBytesToSkip));
+        filePosition = buffer.position() - startPosition;
+    }
+
+    /**
+     * The bytes being read starting at the buffer's original position, so the positions handed to a handler index it
+     *
+     * @return a view of the buffer, nothing is copied
+     */
+    ByteBuffer getContents() {
+        ByteBuffer contents = buffer.duplicate();
+        contents.position(startPosition);
+        return contents.slice();
     }
 
     public PclCommand nextCommand() throws PclCommandReaderException {
-        if (commandsAreQueued()) {
-            return queuedCommands.remove();
+        while (!commandsAreQueued()) {
+            if (!parseNextCommand(queueingHandler)) {
+                return null;
+            }
         }
+        return queuedCommands.remove();
+    }
 
+    /**
+     * Reads the next command if it starts before the given position
+     * <p/>
+     * The commands read out of a combined command are all returned when the combined command starts before the
+     * position. Along with {@link #skip(long)} this lets a file be read a range at a time.
+     *
+     * @param endPosition - the position to stop reading at
+     * @return null if the next command starts at or after the position (or the EOF is reached) or the next command
+     * @throws PclCommandReaderException when there is a problem parsing out a PCL command
+     */
+    public PclCommand nextCommand(long endPosition) throws PclCommandReaderException {
+        while (!commandsAreQueued()) {
+            if (filePosition >= endPosition || !parseNextCommand(queueingHandler)) {
+                return null;
+            }
+        }
+        return queuedCommands.remove();
+    }
+
+    /**
+     * Parses the rest of the file handing every command to the given handler instead of building PclCommands
+     * <p/>
+     * Binary data and text is skipped over rather than copied, so this is the quickest way through a file.
+     * This should not be mixed with calls to nextCommand().
+     *
+     * @param handler - receives the commands found
+     * @throws PclCommandReaderException when there is a problem parsing out a PCL command
+     */
+    public void parse(PclCommandHandler handler) throws PclCommandReaderException {
+        while (parseNextCommand(handler)) ;
+    }
+
+    /**
+     * Parses the commands starting before the given position handing them to the given handler
+     * <p/>
+     * A command is always parsed whole (with its binary data or the language section following it), so the next
+     * command may start well after the given position. Along with {@link #skip(long)} this lets a file be parsed a
+     * range at a time.
+     *
+     * @param handler     - receives the commands found
+     * @param endPosition - the position to stop parsing at
+     * @return the position the next command starts at
+     * @throws PclCommandReaderException when there is a problem parsing out a PCL command
+     */
+    public long parse(PclCommandHandler handler, long endPosition) throws PclCommandReaderException {
+        while (filePosition < endPosition && parseNextCommand(handler)) ;
+        return filePosition;
+    }
+
+    private boolean parseNextCommand(PclCommandHandler handler) {
         if (isFileEmpty() || isEOF()) {
-            return null;
+            return false;
         }
 
-        binaryData.reset();
-        valueData.reset();
+        this.handler = handler;
         commandData.reset();
-        commandPrefixBytes.reset();
-        commandPosition = filePosition;
+        startNextCommand();
 
         byte currentByte = readNextByte();
         if (pclUtil.isEscape(currentByte)) {
-            pclCommand();
+            if (!pclCommand() && filePosition > commandPosition) {
+                handler.textCommand(commandPosition, (int) (filePosition - commandPosition));
+            }
         } else {
             undoRead();
             textCommand();
         }
-        return queuedCommands.remove();
+        return true;
     }
 
-    private void pclCommand() {
+    /**
+     * @return true - the command was complete<br/>false - the bytes read did not make up a command
+     */
+    private boolean pclCommand() {
         commandData.write(PclUtil.ESCAPE);
-        commandPrefixBytes.write(PclUtil.ESCAPE);
+        if (isEOF()) {
+            return false;
+        }
 
         byte currentByte = readNextByte();
         if (pclUtil.is2ByteCommandOperator(currentByte)) {
-            queueUpCommand(pclCommandFactory.buildTwoByteCommand(commandPosition, currentByte));
+            handler.twoByteCommand(commandPosition, currentByte);
+            return true;
         } else if (pclUtil.isParameterizedCharacter(currentByte)) {
             byte parameterizedByte = currentByte;
-
             commandData.write(currentByte);
-            commandPrefixBytes.write(currentByte);
-            currentByte = readNextByte();
-
-            if (pclUtil.isGroupCharacter(currentByte)) {
-                byte groupByte = currentByte;
+            if (isEOF()) {
+                return false;
+            }
 
-                commandData.write(currentByte);
-                commandPrefixBytes.write(currentByte);
+            currentByte = readNextByte();
+            byte groupByte = currentByte;
+            commandData.write(currentByte);
+            valuePosition = filePosition;
 
-                do {
+            if (pclUtil.isGroupCharacter(groupByte)) {
+                while (isNotEOF()) {
                     currentByte = readNextByte();
 
                     if (isACompoundCommand(currentByte)) {
                         currentByte = pclUtil.changeParameterToTerminator(currentByte);
-                        queueUpParameterizedCommand(parameterizedByte, groupByte, currentByte);
-                        copyCommandPrefixToCommand();
+                        parameterizedCommand(parameterizedByte, groupByte, currentByte, filePosition, 0);
                     } else if (isTerminationByte(currentByte)) {
-                        commandData.write(currentByte);
-                        captureBinaryDataAsNeeded();
-                        queueUpParameterizedCommand(parameterizedByte, groupByte, currentByte);
-                        break;
+                        long dataPosition = filePosition;
+                        int dataLength = skipBinaryDataAsNeeded(parameterizedByte, groupByte, currentByte);
+                        parameterizedCommand(parameterizedByte, groupByte, currentByte, dataPosition, dataLength);
+                        return true;
                     } else {
-                        valueData.write(currentByte);
+                        writeValueByte(currentByte);
                     }
-                } while (true);
+                }
             } else {
-                byte groupByte = currentByte;
-                commandData.write(currentByte);
-
-                do {
+                while (isNotEOF()) {
                     currentByte = readNextByte();
                     if (isTerminationByte(currentByte)) {
-                        writeValueDataToCommand();
+                        commandData.write(valueData.toByteArray());
                         commandData.write(currentByte);
+                        long dataPosition = filePosition;
+                        String enteredLanguage = null;
                         if (pclUtil.isUniversalExit(commandData.toByteArray())) {
-                            while (isNextByteNotAnEscapeByte()) {
-                                binaryData.write(readNextByte());
-                            }
+                            enteredLanguage = capturePjl();
+                        }
+                        parameterizedCommand(parameterizedByte, groupByte, currentByte, dataPosition, (int) (filePosition - dataPosition));
+                        if (enteredLanguage != null && !pclUtil.isPclLanguage(enteredLanguage)) {
+                            languageSection(enteredLanguage);
                         }
-                        queueUpParameterizedCommand(parameterizedByte, groupByte, currentByte);
-                        break;
+                        return true;
                     } else {
-                        valueData.write(currentByte);
+                        writeValueByte(currentByte);
                     }
-                } while (isNotEOF());
+                }
             }
         }
+        return false;
+    }
+
+    /**
+     * Captures the PJL following a universal exit up to the next ESCAPE or an "ENTER LANGUAGE" line
+     *
+     * @return the language entered or null if the PJL did not enter a language
+     */
+    private String capturePjl() {
+        pjlData.reset();
+        int lineStart = 0;
+        while (isNextByteNotAnEscapeByte()) {
+            byte currentByte = readNextByte();
+            pjlData.write(currentByte);
+            if (currentByte == '\n') {
+                String language = pclUtil.getEnteredLanguage(pjlData.toByteArray(), lineStart, pjlData.size() - lineStart);
+                if (language != null) {
+                    return language;
+                }
+                lineStart = pjlData.size();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Jumps over everything up to the next universal exit (or EOF) and hands it on as a single command
+     */
+    private void languageSection(String language) {
+        int sectionStart = buffer.position();
+        int sectionEnd = pclUtil.indexOfUniversalExit(buffer, sectionStart);
+        if (sectionEnd == -1) {
+            sectionEnd = buffer.limit();
+        }
+
+        int length = sectionEnd - sectionStart;
+        if (length > 0) {
+            handler.languageSection(filePosition, language, length);
+            skipBytes(length);
+            startNextCommand();
+        }
     }
 
     private boolean isTerminationByte(byte currentByte) {
@@ -144,60 +266,64 @@ public class ByteBufferPclCommandReader implements PclCommandReader {
         return pclUtil.isParameterCharacter(currentByte) && isNextByteNotAnEscapeByte();
     }
 
-    private void copyCommandPrefixToCommand() {
-        commandData.write(commandPrefixBytes.toByteArray());
-    }
-
-    private void queueUpCommand(PclCommand command) {
-        queuedCommands.add(command);
+    private void startNextCommand() {
         valueData.reset();
-        commandData.reset();
-        binaryData.reset();
+        valueParser.reset();
         commandPosition = filePosition;
+        valuePosition = filePosition;
     }
 
-    private void queueUpParameterizedCommand(byte parameterizedByte, byte groupByte, byte terminatorByte) {
-        PclCommand command = pclCommandFactory.buildParameterizedCommand(
-                commandPosition, parameterizedByte, groupByte, valueData.toByteArray(), terminatorByte, binaryData.toByteArray()
-        );
-        queueUpCommand(command);
+    private void parameterizedCommand(byte parameterizedByte, byte groupByte, byte terminatorByte, long dataPosition, int dataLength) {
+        handler.parameterizedCommand(commandPosition, parameterizedByte, groupByte, terminatorByte,
+                valuePosition, valueData.size(), dataPosition, dataLength);
+        startNextCommand();
     }
 
-    private void writeValueDataToCommand() {
-        commandData.write(valueData.toByteArray());
+    private void writeValueByte(byte currentByte) {
+        valueData.write(currentByte);
+        valueParser.append(currentByte);
     }
 
     private boolean isNextByteNotAnEscapeByte() {
         return !isNextByteAnEscapeByte();
     }
 
-    private void captureBinaryDataAsNeeded() {
-        if (pclUtil.isCommandExpectingData(commandData.toByteArray())) {
-            int numberOfBytesToRead = commandValueAsInt();
-            int count = 0;
-            while (isNotEOF() && count < numberOfBytesToRead) {
-                byte value = readNextByte();
-                binaryData.write(value);
-                commandData.write(value);
-                count++;
-            }
+    private int skipBinaryDataAsNeeded(byte parameterizedByte, byte groupByte, byte terminatorByte) {
+        if (!pclCommandGrammar.isExpectingData(parameterizedByte, groupByte, terminatorByte)) {
+            return 0;
         }
-    }
-
-    private int commandValueAsInt() {
-        return pclUtil.convertValueToInt(valueData.toByteArray());
+        long numberOfBytesToRead = valueParser.getScaledValue() / PclValueParser.SCALE;
+        int count = (int) Math.max(0, Math.min(numberOfBytesToRead, buffer.limit() - buffer.position()));
+        skipBytes(count);
+        return count;
     }
 
     private void textCommand() {
-        while (isNotEOF() && !isNextByteAnEscapeByte()) {
-            binaryData.write(readNextByte());
+        int end = buffer.position();
+        while (end < buffer.limit() && !pclUtil.isEscape(buffer.get(end))) {
+            end++;
         }
 
-        if (binaryData.size() > 0) {
-            queueUpCommand(pclCommandFactory.buildTextCommand(commandPosition, binaryData.toByteArray()));
+        int length = end - buffer.position();
+        if (length > 0) {
+            handler.textCommand(commandPosition, length);
+            skipBytes(length);
         }
     }
 
+    private void skipBytes(int count) {
+        buffer.position(buffer.position() + count);
+        filePosition += count;
+    }
+
+    private byte[] copyBytes(long position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position((int) (startPosition + position));
+        source.get(bytes);
+        return bytes;
+    }
+
     private boolean isNextByteAnEscapeByte() {
         boolean result = true;
         if (isNotEOF()) {
@@ -212,9 +338,7 @@ public class ByteBufferPclCommandReader implements PclCommandReader {
     }
 
     private byte peekAtNextByte() {
-        byte data = buffer.get();
-        buffer.position(buffer.position() - 1);
-        return data;
+        return buffer.get(buffer.position());
     }
 
     private byte readNextByte() {
@@ -229,11 +353,11 @@ public class ByteBufferPclCommandReader implements PclCommandReader {
     }
 
     private boolean isEOF() {
-        return buffer.position() >= buffer.capacity();
+        return buffer.position() >= buffer.limit();
     }
 
     private boolean isFileEmpty() {
-        return buffer.capacity() == 0;
+        return buffer.limit() == startPosition;
     }
 
     private boolean commandsAreQueued() {
@@ -244,4 +368,38 @@ public class ByteBufferPclCommandReader implements PclCommandReader {
 
     }
 
+    /**
+     * Changes the grammar used to decide which commands are followed by binary data
+     *
+     * @param pclCommandGrammar - the grammar to use
+     */
+    public void setPclCommandGrammar(PclCommandGrammar pclCommandGrammar) {
+        this.pclCommandGrammar = pclCommandGrammar;
+    }
+
+    /**
+     * Builds PclCommands for nextCommand()
+     */
+    private class QueueingHandler implements PclCommandHandler {
+        public void twoByteCommand(long position, byte operation) {
+            queuedCommands.add(pclCommandFactory.buildTwoByteCommand(position, operation));
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            ParameterizedCommand command = pclCommandFactory.buildParameterizedCommand(
+                    position, parameterized, group, valueData.toByteArray(), terminator, copyBytes(dataPosition, dataLength)
+            );
+            command.setNumericValue(valueParser.getScaledValue(), valueParser.getSign(), valueParser.hasDecimal());
+            queuedCommands.add(command);
+        }
+
+        public void textCommand(long position, int length) {
+            queuedCommands.add(pclCommandFactory.buildTextCommand(position, copyBytes(position, length)));
+        }
+
+        public void languageSection(long position, String language, int length) {
+            queuedCommands.add(pclCommandFactory.buildLanguageSectionCommand(position, language, buffer, (int) (startPosition + position), length));
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A view of the character descriptor downloaded with the "Character Definition" command (ESC(s#W)
+ * <p/>
+ * Nothing is decoded up front, each field is read out of the binary data of the command when it is asked for.
+ * A character too large for a single command is sent in continuation blocks, a continuation block only
+ * has the format and continuation bytes followed by more character data.
+ */
+public class CharacterDescriptor {
+    public static final int FORMAT_BITMAP = 4;
+    public static final int FORMAT_INTELLIFONT = 10;
+    public static final int FORMAT_TRUETYPE = 15;
+
+    private final ParameterizedCommand command;
+    private byte[] data;
+
+    public CharacterDescriptor(ParameterizedCommand command) {
+        this.command = command;
+    }
+
+    /**
+     * The format of the character (ex. {@link #FORMAT_BITMAP})
+     *
+     * @return the character format
+     */
+    public int getFormat() {
+        return readUnsignedByte(0);
+    }
+
+    /**
+     * Determines if the data continues the character given by the previous character definition
+     *
+     * @return true - is a continuation block<br/>false - starts a new character
+     */
+    public boolean isContinuation() {
+        return readUnsignedByte(1) == 1;
+    }
+
+    public int getDescriptorSize() {
+        return isContinuation() ? 2 : readUnsignedByte(2);
+    }
+
+    /**
+     * The class of character data (ex. 1 - bitmap, 2 - compressed bitmap)
+     *
+     * @return the class or -1 for a continuation block
+     */
+    public int getCharacterClass() {
+        return isContinuation() ? -1 : readUnsignedByte(3);
+    }
+
+    public int getLeftOffset() {
+        return readSignedShort(6);
+    }
+
+    public int getTopOffset() {
+        return readSignedShort(8);
+    }
+
+    public int getCharacterWidth() {
+        return readUnsignedShort(10);
+    }
+
+    public int getCharacterHeight() {
+        return readUnsignedShort(12);
+    }
+
+    public int getDeltaX() {
+        return readSignedShort(14);
+    }
+
+    private int readUnsignedByte(int offset) {
+        byte[] data = getData();
+        return offset < data.length ? data[offset] & 0xff : -1;
+    }
+
+    private int readUnsignedShort(int offset) {
+        byte[] data = getData();
+        return offset + 1 < data.length ? ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff) : -1;
+    }
+
+    private int readSignedShort(int offset) {
+        byte[] data = getData();
+        return offset + 1 < data.length ? (short) (((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff)) : 0;
+    }
+
+    private byte[] getData() {
+        if (data == null) {
+            data = command.getDataBytes() == null ? new byte[0] : command.getDataBytes();
+        }
+        return data;
+    }
+}
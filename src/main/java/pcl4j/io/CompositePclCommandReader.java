@@ -0,0 +1,157 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * A PclCommandReader that reads a job made up of several buffers (ex. a header, a generated body and a trailer) as
+ * if they were one, without copying them into a single buffer first
+ * <p/>
+ * Each buffer is read from its position to its limit, heap, direct and mapped buffers can be mixed. Positions run on
+ * from one buffer into the next and a command cut by the end of a buffer is finished by the buffers after it, so the
+ * commands are the same as {@link ByteBufferPclCommandReader} reads from the buffers put together. The buffers are
+ * handed to a {@link PclPushParser} a small slice at a time, which only copies bytes into the commands built from
+ * them.
+ */
+public class CompositePclCommandReader implements PclCommandReader {
+    private static final int SLICE_SIZE = 8 * 1024;
+
+    private final ByteBuffer[] buffers;
+    private final int[] firstPositions;
+    private final long[] jobPositions;
+    private final long jobLength;
+    private final Queue<PclCommand> queuedCommands = new LinkedList<PclCommand>();
+    private final PclCommandWriter queueingWriter = new PclCommandWriter() {
+        public void write(PclCommand command) throws PclCommandWriterException {
+            queuedCommands.add(command);
+        }
+
+        public void close() {
+        }
+    };
+    private PclPushParser parser;
+    private PclCommandGrammar pclCommandGrammar;
+    private long nextPosition;
+    private int current;
+    private boolean ended;
+
+    public CompositePclCommandReader(ByteBuffer... buffers) {
+        this.buffers = new ByteBuffer[buffers.length];
+        firstPositions = new int[buffers.length];
+        jobPositions = new long[buffers.length];
+        long length = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            this.buffers[i] = buffers[i].duplicate();
+            firstPositions[i] = buffers[i].position();
+            jobPositions[i] = length;
+            length += buffers[i].remaining();
+        }
+        jobLength = length;
+        parser = new PclPushParser(queueingWriter);
+    }
+
+    public CompositePclCommandReader(List<ByteBuffer> buffers) {
+        this(buffers.toArray(new ByteBuffer[buffers.size()]));
+    }
+
+    /**
+     * Skips bytes from the end of the last command returned, across as many buffers as needed
+     * <p/>
+     * The commands already parsed ahead are dropped and parsing starts again at the new position.
+     *
+     * @param numberOfBytesToSkip - the number of bytes to be skipped
+     * @throws PclCommandReaderException when fewer bytes are left in the buffers
+     */
+    public void skip(long numberOfBytesToSkip) throws PclCommandReaderException {
+        long left = jobLength - nextPosition;
+        if (numberOfBytesToSkip > left) {
+            throw new PclCommandReaderException("Unable to skip bytes=[" + numberOfBytesToSkip + "], only "
+                    + left + " bytes were left", null);
+        }
+        nextPosition += numberOfBytesToSkip;
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer buffer = buffers[i];
+            long offset = Math.max(0, Math.min(nextPosition - jobPositions[i], buffer.limit() - firstPositions[i]));
+            buffer.position((int) (firstPositions[i] + offset));
+        }
+        current = 0;
+        queuedCommands.clear();
+        ended = false;
+        parser = new PclPushParser(queueingWriter);
+        if (pclCommandGrammar != null) {
+            parser.setPclCommandGrammar(pclCommandGrammar);
+        }
+        parser.skip(nextPosition);
+    }
+
+    public PclCommand nextCommand() throws PclCommandReaderException {
+        while (queuedCommands.isEmpty()) {
+            if (!feedNextSlice()) {
+                return null;
+            }
+        }
+        PclCommand command = queuedCommands.remove();
+        nextPosition = command.getPosition() + command.getLength();
+        return command;
+    }
+
+    /**
+     * The buffers are left as they were given, a mapped buffer is released once it is no longer referenced
+     */
+    public void close() {
+        Arrays.fill(buffers, null);
+        current = buffers.length;
+        queuedCommands.clear();
+        ended = true;
+    }
+
+    /**
+     * Changes the grammar used to decide which commands are followed by binary data
+     *
+     * @param pclCommandGrammar - the grammar to use
+     */
+    public void setPclCommandGrammar(PclCommandGrammar pclCommandGrammar) {
+        this.pclCommandGrammar = pclCommandGrammar;
+        parser.setPclCommandGrammar(pclCommandGrammar);
+    }
+
+    /**
+     * @return false once every buffer was fed and the end of the input was handed to the parser
+     */
+    private boolean feedNextSlice() {
+        while (current < buffers.length && !buffers[current].hasRemaining()) {
+            current++;
+        }
+        if (current == buffers.length) {
+            if (ended) {
+                return false;
+            }
+            parser.endOfInput();
+            ended = true;
+            return true;
+        }
+        ByteBuffer buffer = buffers[current];
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(Math.min(buffer.limit(), buffer.position() + SLICE_SIZE));
+        parser.feed(slice);
+        buffer.position(slice.limit());
+        return true;
+    }
+}
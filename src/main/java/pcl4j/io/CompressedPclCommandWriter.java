@@ -17,37 +17,19 @@ package pcl4j.io;
 /**
  * Uses the PclCommandCompressor when writing commands
  */
-public class CompressedPclCommandWriter implements PclCommandWriter {
-    private final PclCommandWriter pclCommandWriter;
-    private PclCommandCompressor pclCommandCompressor = new PclCommandCompressor();
-    private PclCommand lastParameterizedCommand = null;
+public class CompressedPclCommandWriter extends FilteredPclCommandWriter {
+    private final CompressionPclCommandFilter compressionFilter;
 
     public CompressedPclCommandWriter(PclCommandWriter pclCommandWriter) {
-        this.pclCommandWriter = pclCommandWriter;
+        this(pclCommandWriter, new CompressionPclCommandFilter());
     }
 
-    public void write(PclCommand command) throws PclCommandWriterException {
-        if (lastParameterizedCommand == null) {
-            lastParameterizedCommand = command;
-        } else if (pclCommandCompressor.canBeCompressed(lastParameterizedCommand, command)) {
-            lastParameterizedCommand = pclCommandCompressor.compress(lastParameterizedCommand, command);
-        } else {
-            pclCommandWriter.write(lastParameterizedCommand);
-            lastParameterizedCommand = command;
-        }
-    }
-
-    /**
-     * Clean up the resources occupied and write any remaining commands
-     */
-    public void close() {
-        if (lastParameterizedCommand != null) {
-            pclCommandWriter.write(lastParameterizedCommand);
-        }
-        pclCommandWriter.close();
+    private CompressedPclCommandWriter(PclCommandWriter pclCommandWriter, CompressionPclCommandFilter compressionFilter) {
+        super(pclCommandWriter, compressionFilter);
+        this.compressionFilter = compressionFilter;
     }
 
     public void setPclCommandCompressor(PclCommandCompressor pclCommandCompressor) {
-        this.pclCommandCompressor = pclCommandCompressor;
+        compressionFilter.setPclCommandCompressor(pclCommandCompressor);
     }
 }
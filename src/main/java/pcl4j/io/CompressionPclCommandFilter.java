@@ -0,0 +1,49 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A PclCommandFilter that uses the PclCommandCompressor to combine commands
+ */
+public class CompressionPclCommandFilter implements PclCommandFilter {
+    private PclCommandCompressor pclCommandCompressor = new PclCommandCompressor();
+    private PclCommand lastParameterizedCommand = null;
+
+    public void filter(PclCommandBatch input, PclCommandBatch output) {
+        PclCommand[] commands = input.getCommands();
+        for (int i = 0; i < input.size(); i++) {
+            PclCommand command = commands[i];
+            if (lastParameterizedCommand == null) {
+                lastParameterizedCommand = command;
+            } else if (pclCommandCompressor.canBeCompressed(lastParameterizedCommand, command)) {
+                lastParameterizedCommand = pclCommandCompressor.compress(lastParameterizedCommand, command);
+            } else {
+                output.add(lastParameterizedCommand);
+                lastParameterizedCommand = command;
+            }
+        }
+    }
+
+    public void flush(PclCommandBatch output) {
+        if (lastParameterizedCommand != null) {
+            output.add(lastParameterizedCommand);
+            lastParameterizedCommand = null;
+        }
+    }
+
+    public void setPclCommandCompressor(PclCommandCompressor pclCommandCompressor) {
+        this.pclCommandCompressor = pclCommandCompressor;
+    }
+}
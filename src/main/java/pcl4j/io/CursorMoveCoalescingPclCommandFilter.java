@@ -0,0 +1,203 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collapses runs of cursor positioning commands that have nothing drawn in between into as few commands as possible
+ * <p/>
+ * ex. "ESC*p100X ESC*p200Y ESC*p+5Y ESC*p300X" becomes "ESC*p300x205Y"
+ * <p/>
+ * Moves in PCL units (ESC*p#X, ESC*p#Y) and decipoints (ESC&amp;a#H, ESC&amp;a#V) are added up per axis, a value
+ * with a sign is a move relative to the current position and a value without one is an absolute position. An
+ * absolute move makes every earlier move along the same axis unnecessary. Moves in columns and rows
+ * (ESC&amp;a#C, ESC&amp;a#R) depend on the HMI, VMI and margins so they are kept as they are.
+ * <p/>
+ * The unit of measure (ESC&amp;u#D) is followed so PCL units can be converted. Moves are expected to stay on the
+ * logical page, the printer would clamp a position off of the page when moving to it.
+ */
+public class CursorMoveCoalescingPclCommandFilter implements PclCommandFilter {
+    private static final long UNITS_PER_INCH = 7200;
+    private static final long UNITS_PER_DECIPOINT = UNITS_PER_INCH / 720;
+    private static final int DEFAULT_UNITS_OF_MEASURE = 300;
+
+    private final PclUtil pclUtil = new PclUtil();
+    private final PclCommandCompressor pclCommandCompressor = new PclCommandCompressor();
+    private final Axis horizontal = new Axis('X', 'H', 'C');
+    private final Axis vertical = new Axis('Y', 'V', 'R');
+    private int unitsOfMeasure = DEFAULT_UNITS_OF_MEASURE;
+    private long bytesSaved;
+
+    public void filter(PclCommandBatch input, PclCommandBatch output) {
+        PclCommand[] commands = input.getCommands();
+        for (int i = 0; i < input.size(); i++) {
+            PclCommand command = commands[i];
+            if (horizontal.isMove(command)) {
+                horizontal.add((ParameterizedCommand) command);
+            } else if (vertical.isMove(command)) {
+                vertical.add((ParameterizedCommand) command);
+            } else {
+                flush(output);
+                if (pclUtil.isCommand(command, '&', 'u', 'D')) {
+                    int value = ((ParameterizedCommand) command).getIntValue();
+                    unitsOfMeasure = value > 0 && UNITS_PER_INCH % value == 0 ? value : 0;
+                } else if (pclUtil.isCommand(command, 'E') || pclUtil.isUniversalExit(command)) {
+                    unitsOfMeasure = DEFAULT_UNITS_OF_MEASURE;
+                }
+                output.add(command);
+            }
+        }
+    }
+
+    public void flush(PclCommandBatch output) {
+        PclCommand horizontalMove = horizontal.toMinimalCommand();
+        PclCommand verticalMove = vertical.toMinimalCommand();
+        if (horizontalMove != null && verticalMove != null
+                && pclCommandCompressor.canBeCompressed(horizontalMove, verticalMove)) {
+            PclCommand move = pclCommandCompressor.compress(horizontalMove, verticalMove);
+            if (move.getLength() < horizontal.getLength() + vertical.getLength()) {
+                bytesSaved += horizontal.getLength() + vertical.getLength() - move.getLength();
+                output.add(move);
+                horizontal.clear();
+                vertical.clear();
+                return;
+            }
+        }
+        horizontal.flush(horizontalMove, output);
+        vertical.flush(verticalMove, output);
+    }
+
+    /**
+     * The number of bytes saved by collapsing the moves
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * The moves along one axis since something was last drawn
+     */
+    private class Axis {
+        private final char pclUnitTerminator;
+        private final char decipointTerminator;
+        private final char textTerminator;
+        private final List<PclCommand> commands = new ArrayList<PclCommand>();
+        private int length;
+        private boolean absolute;
+        private boolean known;
+        private long position;
+
+        private Axis(char pclUnitTerminator, char decipointTerminator, char textTerminator) {
+            this.pclUnitTerminator = pclUnitTerminator;
+            this.decipointTerminator = decipointTerminator;
+            this.textTerminator = textTerminator;
+        }
+
+        private boolean isMove(PclCommand command) {
+            return pclUtil.isCommand(command, '*', 'p', pclUnitTerminator)
+                    || pclUtil.isCommand(command, '&', 'a', decipointTerminator)
+                    || pclUtil.isCommand(command, '&', 'a', textTerminator);
+        }
+
+        private void add(ParameterizedCommand command) {
+            long units;
+            if (pclUtil.isCommand(command, '*', 'p', pclUnitTerminator)) {
+                units = unitsOfMeasure == 0 || command.hasDecimal() ? Long.MIN_VALUE
+                        : command.getScaledDecimalValue() * (UNITS_PER_INCH / unitsOfMeasure);
+            } else if (pclUtil.isCommand(command, '&', 'a', decipointTerminator)) {
+                units = command.getScaledDecimalValue() * UNITS_PER_DECIPOINT;
+            } else {
+                units = Long.MIN_VALUE;
+            }
+
+            if (command.getSign() == PclValueParser.NO_SIGN) {
+                bytesSaved += length;
+                clear();
+                absolute = true;
+            }
+            if (commands.isEmpty()) {
+                known = true;
+            }
+            commands.add(command);
+            length += command.getLength();
+            if (units == Long.MIN_VALUE) {
+                known = false;
+            } else {
+                position += units;
+            }
+        }
+
+        private int getLength() {
+            return length;
+        }
+
+        /**
+         * A single command moving the cursor to where all the moves end up
+         *
+         * @return the command, null when there are no moves or they can not be put into a single command
+         */
+        private PclCommand toMinimalCommand() {
+            if (commands.isEmpty() || !known || (absolute && position < 0) || (!absolute && position == 0)) {
+                return null;
+            }
+
+            PclCommand minimal = null;
+            long pclUnits = unitsOfMeasure == 0 ? 0 : position * unitsOfMeasure;
+            if (unitsOfMeasure != 0 && pclUnits % (UNITS_PER_INCH * PclValueParser.SCALE) == 0) {
+                minimal = move('*', 'p', pclUnitTerminator, pclUnits / UNITS_PER_INCH);
+            }
+            if (position % UNITS_PER_DECIPOINT == 0) {
+                PclCommand decipoints = move('&', 'a', decipointTerminator, position / UNITS_PER_DECIPOINT);
+                if (minimal == null || decipoints.getLength() < minimal.getLength()) {
+                    minimal = decipoints;
+                }
+            }
+            return minimal;
+        }
+
+        private void flush(PclCommand minimal, PclCommandBatch output) {
+            if (commands.isEmpty()) {
+                return;
+            }
+            if (known && !absolute && position == 0) {
+                bytesSaved += length;
+            } else if (minimal != null && minimal.getLength() < length) {
+                bytesSaved += length - minimal.getLength();
+                output.add(minimal);
+            } else {
+                for (PclCommand command : commands) {
+                    output.add(command);
+                }
+            }
+            clear();
+        }
+
+        private void clear() {
+            commands.clear();
+            length = 0;
+            absolute = false;
+            position = 0;
+        }
+
+        private PclCommand move(char parameterized, char group, char terminator, long scaledValue) {
+            byte[] value = pclUtil.convertScaledValueToBytes(scaledValue, !absolute);
+            return new PclCommandBuilder().p(parameterized).g(group).v(new String(value)).t(terminator).toCommand();
+        }
+    }
+}
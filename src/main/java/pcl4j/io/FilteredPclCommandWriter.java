@@ -0,0 +1,54 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A PclCommandWriter that runs every command through a PclCommandFilter before handing it to another writer
+ */
+public class FilteredPclCommandWriter implements PclCommandWriter {
+    private final PclCommandWriter pclCommandWriter;
+    private final PclCommandFilter filter;
+    private final PclCommandBatch input = new PclCommandBatch(1);
+    private final PclCommandBatch output = new PclCommandBatch(4);
+
+    public FilteredPclCommandWriter(PclCommandWriter pclCommandWriter, PclCommandFilter filter) {
+        this.pclCommandWriter = pclCommandWriter;
+        this.filter = filter;
+    }
+
+    public void write(PclCommand command) throws PclCommandWriterException {
+        input.clear();
+        input.add(command);
+        filter.filter(input, output);
+        writeOutput();
+    }
+
+    /**
+     * Clean up the resources occupied and write any remaining commands
+     */
+    public void close() {
+        filter.flush(output);
+        writeOutput();
+        pclCommandWriter.close();
+    }
+
+    private void writeOutput() {
+        PclCommand[] commands = output.getCommands();
+        for (int i = 0; i < output.size(); i++) {
+            pclCommandWriter.write(commands[i]);
+        }
+        output.clear();
+    }
+}
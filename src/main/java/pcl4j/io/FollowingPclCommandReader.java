@@ -0,0 +1,240 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * A PclCommandReader that reads a spool file while it is still being written, like "tail -f"
+ * <p/>
+ * Everything up to the current end of the file is parsed, then the file is polled for more bytes, waiting a little
+ * longer every time nothing was added (up to {@link #MAX_WAIT}). A command cut off by the end of the file is finished
+ * once the rest of it is written. {@link #nextCommand()} returns null when the job is complete and read to its end.
+ * The job is complete when the first of these is seen:
+ * <ul>
+ * <li>{@link #finish()} was called, ex. by the writer of the file once it closed it</li>
+ * <li>the marker file given to {@link #setCompletionMarker(File)} exists</li>
+ * <li>the file ends with a universal exit (other than the one the job starts with) and
+ * {@link #setEndOnUniversalExit(boolean)} is on</li>
+ * <li>no bytes were added for the time given to {@link #setIdleTimeout(long)}</li>
+ * </ul>
+ * <p/>
+ * <pre>
+ * FollowingPclCommandReader reader = new FollowingPclCommandReader(spoolFile);
+ * reader.setCompletionMarker(new File(spoolFile.getPath() + ".done"));
+ * </pre>
+ */
+public class FollowingPclCommandReader implements PclCommandReader {
+    /**
+     * The shortest time to wait for more bytes, in milliseconds
+     */
+    public static final long MIN_WAIT = 5;
+    /**
+     * The longest time to wait for more bytes, in milliseconds
+     */
+    public static final long MAX_WAIT = 500;
+    private static final int READ_SIZE = 64 * 1024;
+    private static final byte[] UNIVERSAL_EXIT = {PclUtil.ESCAPE, '%', '-', '1', '2', '3', '4', '5', 'X'};
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer chunk = ByteBuffer.allocate(READ_SIZE);
+    private final Queue<PclCommand> queuedCommands = new LinkedList<PclCommand>();
+    private final PclCommandWriter queueingWriter = new PclCommandWriter() {
+        public void write(PclCommand command) throws PclCommandWriterException {
+            queuedCommands.add(command);
+        }
+
+        public void close() {
+        }
+    };
+    private PclPushParser parser;
+    private PclCommandGrammar pclCommandGrammar;
+    private long filePosition;
+    private long nextPosition;
+    private File completionMarker;
+    private boolean endOnUniversalExit;
+    private long idleTimeout;
+    private volatile boolean finished;
+    private boolean ended;
+
+    public FollowingPclCommandReader(File file) {
+        this.file = file;
+        try {
+            channel = new RandomAccessFile(file, "r").getChannel();
+        } catch (IOException e) {
+            throw new PclCommandReaderException("A problem occurred while trying to initialize file=[" + file.getName() + "]", e);
+        }
+        parser = new PclPushParser(queueingWriter);
+    }
+
+    /**
+     * The job is complete once the given file exists
+     *
+     * @param completionMarker - the file the spooler creates after writing the job
+     */
+    public void setCompletionMarker(File completionMarker) {
+        this.completionMarker = completionMarker;
+    }
+
+    /**
+     * The job is complete once the file ends with a universal exit that does not start the job
+     *
+     * @param endOnUniversalExit - true when every job written ends with a universal exit
+     */
+    public void setEndOnUniversalExit(boolean endOnUniversalExit) {
+        this.endOnUniversalExit = endOnUniversalExit;
+    }
+
+    /**
+     * The job is complete once no bytes were added for the given time
+     *
+     * @param idleTimeout - the time in milliseconds, 0 (the default) waits forever
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Marks the job complete, the bytes written up to now are still read. Can be called from any thread.
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * Changes the grammar used to decide which commands are followed by binary data
+     *
+     * @param pclCommandGrammar - the grammar to use
+     */
+    public void setPclCommandGrammar(PclCommandGrammar pclCommandGrammar) {
+        this.pclCommandGrammar = pclCommandGrammar;
+        parser.setPclCommandGrammar(pclCommandGrammar);
+    }
+
+    /**
+     * Skips bytes from the end of the last command returned, the commands already read ahead are dropped and the file
+     * is read again from the new position
+     *
+     * @param numberOfBytesToSkip - the number of bytes to be skipped
+     */
+    public void skip(long numberOfBytesToSkip) throws PclCommandReaderException {
+        nextPosition += numberOfBytesToSkip;
+        filePosition = nextPosition;
+        queuedCommands.clear();
+        ended = false;
+        parser = new PclPushParser(queueingWriter);
+        if (pclCommandGrammar != null) {
+            parser.setPclCommandGrammar(pclCommandGrammar);
+        }
+        parser.skip(nextPosition);
+    }
+
+    /**
+     * Blocks until a command is complete or the job is complete and read to its end
+     *
+     * @return null if the end of the job is reached or the next PCL command
+     * @throws PclCommandReaderException when the file could not be read or the thread was interrupted while waiting
+     */
+    public PclCommand nextCommand() throws PclCommandReaderException {
+        long wait = MIN_WAIT;
+        long idleSince = System.currentTimeMillis();
+        while (queuedCommands.isEmpty()) {
+            if (ended) {
+                return null;
+            }
+            boolean complete = isComplete();
+            if (read() > 0) {
+                wait = MIN_WAIT;
+                idleSince = System.currentTimeMillis();
+            } else if (complete || isIdle(idleSince)) {
+                parser.endOfInput();
+                ended = true;
+            } else {
+                pause(wait);
+                wait = Math.min(MAX_WAIT, wait * 2);
+            }
+        }
+        PclCommand command = queuedCommands.remove();
+        nextPosition = command.getPosition() + command.getLength();
+        return command;
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new PclCommandReaderException("A problem occurred while trying to close the FileChannel of file=[" + file.getName() + "]", e);
+        }
+    }
+
+    /**
+     * Checked before reading, so the bytes written before the job was complete are read
+     */
+    private boolean isComplete() {
+        if (finished || (completionMarker != null && completionMarker.exists())) {
+            return true;
+        }
+        return endOnUniversalExit && filePosition > UNIVERSAL_EXIT.length && endsWithUniversalExit();
+    }
+
+    private boolean isIdle(long idleSince) {
+        return idleTimeout > 0 && System.currentTimeMillis() - idleSince >= idleTimeout;
+    }
+
+    private boolean endsWithUniversalExit() {
+        ByteBuffer end = ByteBuffer.allocate(UNIVERSAL_EXIT.length);
+        try {
+            if (channel.size() != filePosition) {
+                return false;
+            }
+            channel.read(end, filePosition - UNIVERSAL_EXIT.length);
+        } catch (IOException e) {
+            throw new PclCommandReaderException("A problem occurred while trying to read file=[" + file.getName() + "]", e);
+        }
+        return ByteBuffer.wrap(UNIVERSAL_EXIT).equals(end.flip());
+    }
+
+    private int read() {
+        chunk.clear();
+        int count;
+        try {
+            count = channel.read(chunk, filePosition);
+        } catch (IOException e) {
+            throw new PclCommandReaderException("A problem occurred while trying to read file=[" + file.getName() + "]", e);
+        }
+        if (count > 0) {
+            filePosition += count;
+            chunk.flip();
+            parser.feed(chunk);
+        }
+        return count;
+    }
+
+    private void pause(long wait) {
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PclCommandReaderException("Interrupted while waiting for file=[" + file.getName() + "] to grow", e);
+        }
+    }
+}
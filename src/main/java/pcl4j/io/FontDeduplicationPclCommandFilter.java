@@ -0,0 +1,433 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes soft font downloads for fonts that are already resident on the printer
+ * <p/>
+ * A download starts with a font header (ESC)s#W) for the current font ID (ESC*c#D) and is followed by any number
+ * of character codes (ESC*c#E) and character descriptors (ESC(s#W). Every download is fingerprinted, when the exact
+ * same font is already resident under the same ID the download is dropped. When it is resident under another ID
+ * the download is dropped as well and selecting the font by ID (ESC(#X, ESC)#X) is remapped to the resident font.
+ * <p/>
+ * The printer deletes temporary fonts on a reset (ESC E) and at the end of a job (Universal Exit), so fonts are
+ * only considered resident until then. When {@link #setMakeFontsPermanent(boolean)} is turned on every font that
+ * is downloaded is made permanent so it survives until the end of the stream, which lets downloads repeated by
+ * every job of a merged spool file be dropped. Those fonts are deleted again once the filter is flushed.
+ * <p/>
+ * Font control commands (ESC*c#F) are tracked so the fonts the printer deletes are forgotten and making a font
+ * temporary or permanent when it already is gets dropped.
+ */
+public class FontDeduplicationPclCommandFilter implements PclCommandFilter {
+    private static final int DELETE_ALL_FONTS = 0;
+    private static final int DELETE_TEMPORARY_FONTS = 1;
+    private static final int DELETE_FONT = 2;
+    private static final int DELETE_CHARACTER = 3;
+    private static final int MAKE_TEMPORARY = 4;
+    private static final int MAKE_PERMANENT = 5;
+    private static final int ASSIGN_FONT = 6;
+
+    private final PclUtil pclUtil = new PclUtil();
+    private final Map<Integer, ResidentFont> residentFonts;
+    private final Map<FontFingerprint, Integer> fontIdsByFingerprint = new HashMap<FontFingerprint, Integer>();
+    private final Map<Integer, Integer> remappedFontIds = new HashMap<Integer, Integer>();
+    private boolean makeFontsPermanent = false;
+    private boolean remapFontIds = true;
+    private int currentFontId = 0;
+    private FontDownload download;
+    private long bytesSaved;
+    private int downloadCount;
+    private int droppedDownloadCount;
+
+    /**
+     * Constructs a filter remembering up to 256 resident fonts
+     */
+    public FontDeduplicationPclCommandFilter() {
+        this(256);
+    }
+
+    /**
+     * Constructs a filter
+     *
+     * @param maximumResidentFonts - the number of resident fonts to remember, the least recently used are forgotten first
+     */
+    public FontDeduplicationPclCommandFilter(final int maximumResidentFonts) {
+        if (maximumResidentFonts < 1) throw new IllegalArgumentException("At least 1 resident font must be remembered");
+        residentFonts = new LinkedHashMap<Integer, ResidentFont>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ResidentFont> eldest) {
+                if (size() > maximumResidentFonts) {
+                    forgetFingerprint(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public void filter(PclCommandBatch input, PclCommandBatch output) {
+        PclCommand[] commands = input.getCommands();
+        for (int i = 0; i < input.size(); i++) {
+            filter(commands[i], output);
+        }
+    }
+
+    public void flush(PclCommandBatch output) {
+        finishDownload(output);
+        for (Map.Entry<Integer, ResidentFont> entry : residentFonts.entrySet()) {
+            if (entry.getValue().madePermanentByFilter) {
+                output.add(fontControl(entry.getKey(), 'D'));
+                output.add(fontControl(DELETE_FONT, 'F'));
+            }
+        }
+        residentFonts.clear();
+        fontIdsByFingerprint.clear();
+        remappedFontIds.clear();
+    }
+
+    private void filter(PclCommand command, PclCommandBatch output) {
+        if (download != null) {
+            if (isCharacterCode(command) || isCharacterDownload(command)) {
+                download.add(command);
+                return;
+            }
+            finishDownload(output);
+        }
+
+        if (pclUtil.isCommand(command, ')', 's', 'W')) {
+            download = new FontDownload(currentFontId);
+            download.add(command);
+        } else if (pclUtil.isCommand(command, '*', 'c', 'D')) {
+            currentFontId = ((ParameterizedCommand) command).getIntValue();
+            output.add(command);
+        } else if (pclUtil.isCommand(command, '*', 'c', 'F')) {
+            fontControl((ParameterizedCommand) command, output);
+        } else if (isCharacterDownload(command)) {
+            forgetFont(currentFontId);
+            output.add(command);
+        } else if (isFontSelection(command)) {
+            output.add(remapFontSelection((ParameterizedCommand) command));
+        } else if (pclUtil.isCommand(command, 'E') || pclUtil.isUniversalExit(command)) {
+            forgetTemporaryFonts();
+            output.add(command);
+        } else {
+            output.add(command);
+        }
+    }
+
+    private void finishDownload(PclCommandBatch output) {
+        if (download == null) {
+            return;
+        }
+        FontDownload finished = download;
+        download = null;
+        downloadCount++;
+        remappedFontIds.remove(finished.fontId);
+
+        ResidentFont resident = residentFonts.get(finished.fontId);
+        if (resident != null && resident.fingerprint.equals(finished.fingerprint)) {
+            drop(finished);
+            return;
+        }
+
+        Integer residentFontId = fontIdsByFingerprint.get(finished.fingerprint);
+        if (remapFontIds && resident == null && residentFontId != null && residentFonts.containsKey(residentFontId)) {
+            remappedFontIds.put(finished.fontId, residentFontId);
+            drop(finished);
+            return;
+        }
+
+        forgetFont(finished.fontId);
+        for (PclCommand command : finished.commands) {
+            output.add(command);
+        }
+        ResidentFont font = new ResidentFont(finished.fingerprint);
+        if (makeFontsPermanent) {
+            output.add(fontControl(MAKE_PERMANENT, 'F'));
+            font.permanent = true;
+            font.madePermanentByFilter = true;
+        }
+        residentFonts.put(finished.fontId, font);
+        fontIdsByFingerprint.put(finished.fingerprint, finished.fontId);
+    }
+
+    private void fontControl(ParameterizedCommand command, PclCommandBatch output) {
+        int operation = command.getIntValue();
+        boolean remapped = remappedFontIds.containsKey(currentFontId);
+        ResidentFont resident = residentFonts.get(currentFontId);
+        switch (operation) {
+            case DELETE_ALL_FONTS:
+                residentFonts.clear();
+                fontIdsByFingerprint.clear();
+                remappedFontIds.clear();
+                break;
+            case DELETE_TEMPORARY_FONTS:
+                forgetTemporaryFonts();
+                break;
+            case DELETE_FONT:
+                if (remapped) {
+                    remappedFontIds.remove(currentFontId);
+                    drop(command);
+                    return;
+                }
+                forgetFont(currentFontId);
+                break;
+            case DELETE_CHARACTER:
+            case ASSIGN_FONT:
+                forgetFont(currentFontId);
+                break;
+            case MAKE_TEMPORARY:
+            case MAKE_PERMANENT:
+                boolean permanent = operation == MAKE_PERMANENT;
+                if (permanent && resident != null && resident.madePermanentByFilter) {
+                    resident.madePermanentByFilter = false;
+                    drop(command);
+                    return;
+                }
+                if (remapped || (resident != null && resident.permanent == permanent)) {
+                    drop(command);
+                    return;
+                }
+                if (resident != null) {
+                    resident.permanent = permanent;
+                    resident.madePermanentByFilter = false;
+                }
+                break;
+        }
+        output.add(command);
+    }
+
+    private PclCommand remapFontSelection(ParameterizedCommand command) {
+        Integer residentFontId = remappedFontIds.get(pclUtil.getUngroupedIntValue(command));
+        if (residentFontId == null) {
+            return command;
+        }
+        String fontId = String.valueOf(residentFontId);
+        return new PclCommandBuilder(false)
+                .p(command.getParameterizedByte())
+                .g(fontId.charAt(0))
+                .v(fontId.substring(1))
+                .t(command.getTerminatorByte())
+                .toCommand(command.getPosition());
+    }
+
+    private void forgetTemporaryFonts() {
+        Iterator<Map.Entry<Integer, ResidentFont>> fonts = residentFonts.entrySet().iterator();
+        while (fonts.hasNext()) {
+            Map.Entry<Integer, ResidentFont> entry = fonts.next();
+            if (!entry.getValue().permanent) {
+                forgetFingerprint(entry.getKey(), entry.getValue());
+                fonts.remove();
+            }
+        }
+        remappedFontIds.clear();
+    }
+
+    private void forgetFont(int fontId) {
+        ResidentFont font = residentFonts.remove(fontId);
+        if (font != null) {
+            forgetFingerprint(fontId, font);
+        }
+    }
+
+    private void forgetFingerprint(int fontId, ResidentFont font) {
+        Integer residentFontId = fontIdsByFingerprint.get(font.fingerprint);
+        if (residentFontId != null && residentFontId == fontId) {
+            fontIdsByFingerprint.remove(font.fingerprint);
+        }
+        Iterator<Integer> residentFontIds = remappedFontIds.values().iterator();
+        while (residentFontIds.hasNext()) {
+            if (residentFontIds.next() == fontId) {
+                residentFontIds.remove();
+            }
+        }
+    }
+
+    private void drop(FontDownload download) {
+        droppedDownloadCount++;
+        for (PclCommand command : download.commands) {
+            drop(command);
+        }
+    }
+
+    private void drop(PclCommand command) {
+        bytesSaved += command.getLength();
+    }
+
+    private PclCommand fontControl(int value, char terminator) {
+        return new PclCommandBuilder().p('*').g('c').v(value).t(terminator).toCommand();
+    }
+
+    private boolean isCharacterCode(PclCommand command) {
+        return pclUtil.isCommand(command, '*', 'c', 'E');
+    }
+
+    private boolean isCharacterDownload(PclCommand command) {
+        return pclUtil.isCommand(command, '(', 's', 'W');
+    }
+
+    private boolean isFontSelection(PclCommand command) {
+        if (!(command instanceof ParameterizedCommand)) {
+            return false;
+        }
+        byte group = ((ParameterizedCommand) command).getGroupByte();
+        return group >= '0' && group <= '9'
+                && (pclUtil.isCommand(command, '(', (char) group, 'X') || pclUtil.isCommand(command, ')', (char) group, 'X'));
+    }
+
+    /**
+     * Remaps fonts downloaded under a new ID to an identical font that is already resident
+     *
+     * @param remapFontIds - true to remap (the default), false to only drop downloads for the same ID
+     */
+    public void setRemapFontIds(boolean remapFontIds) {
+        this.remapFontIds = remapFontIds;
+    }
+
+    /**
+     * Makes every downloaded font permanent so it can be reused across resets and jobs
+     *
+     * @param makeFontsPermanent - true to make fonts permanent, false to leave them as downloaded (the default)
+     */
+    public void setMakeFontsPermanent(boolean makeFontsPermanent) {
+        this.makeFontsPermanent = makeFontsPermanent;
+    }
+
+    /**
+     * The number of bytes that were not written because they were redundant
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public int getDownloadCount() {
+        return downloadCount;
+    }
+
+    public int getDroppedDownloadCount() {
+        return droppedDownloadCount;
+    }
+
+    /**
+     * The commands of a font download and the fingerprint of their contents
+     */
+    private static class FontDownload {
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+
+        private final int fontId;
+        private final List<PclCommand> commands = new ArrayList<PclCommand>();
+        private final FontFingerprint fingerprint = new FontFingerprint(FNV_OFFSET_BASIS, commands);
+
+        private FontDownload(int fontId) {
+            this.fontId = fontId;
+        }
+
+        private void add(PclCommand command) {
+            commands.add(command);
+            ParameterizedCommand parameterizedCommand = (ParameterizedCommand) command;
+            hash(kindOf(parameterizedCommand));
+            long value = parameterizedCommand.getLongValue();
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash((byte) (value >>> shift));
+            }
+            byte[] data = parameterizedCommand.getDataBytes();
+            if (data != null) {
+                for (int i = 0; i < data.length; i++) {
+                    hash(data[i]);
+                }
+                fingerprint.length += data.length;
+            }
+        }
+
+        private void hash(int value) {
+            fingerprint.hash = (fingerprint.hash ^ (value & 0xff)) * FNV_PRIME;
+        }
+    }
+
+    private static byte kindOf(ParameterizedCommand command) {
+        return command.getTerminatorByte() == 'E' || command.getTerminatorByte() == 'e' ? (byte) 'E' : (byte) 'W';
+    }
+
+    private static byte[] dataOf(ParameterizedCommand command) {
+        byte[] data = command.getDataBytes();
+        return data == null ? new byte[0] : data;
+    }
+
+    /**
+     * The hash and length of a download's contents, two downloads with the same fingerprint are only equal when the
+     * commands they were made from hold the same values and data
+     */
+    private static class FontFingerprint {
+        private final List<PclCommand> commands;
+        private long hash;
+        private long length;
+
+        private FontFingerprint(long hash, List<PclCommand> commands) {
+            this.hash = hash;
+            this.commands = commands;
+        }
+
+        private boolean sameContents(FontFingerprint that) {
+            if (commands.size() != that.commands.size()) {
+                return false;
+            }
+            for (int i = 0; i < commands.size(); i++) {
+                ParameterizedCommand command = (ParameterizedCommand) commands.get(i);
+                ParameterizedCommand other = (ParameterizedCommand) that.commands.get(i);
+                if (kindOf(command) != kindOf(other) || command.getLongValue() != other.getLongValue()
+                        || !Arrays.equals(dataOf(command), dataOf(other))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FontFingerprint that = (FontFingerprint) o;
+
+            return hash == that.hash && length == that.length && sameContents(that);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    private static class ResidentFont {
+        private final FontFingerprint fingerprint;
+        private boolean permanent;
+        private boolean madePermanentByFilter;
+
+        private ResidentFont(FontFingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
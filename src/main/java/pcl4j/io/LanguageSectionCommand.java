@@ -0,0 +1,109 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a section of a job written in a printer language other than PCL
+ * (ex. PCLXL, POSTSCRIPT) that was entered using the PJL "ENTER LANGUAGE" command.
+ * <p/>
+ * The section runs until the next "Universal Exit" and is treated as opaque data. The bytes
+ * are only copied out of the underlying buffer when they are asked for.
+ */
+public class LanguageSectionCommand extends PclCommand {
+    private final String language;
+    private final ByteBuffer source;
+    private final int offset;
+    private final int length;
+
+    public LanguageSectionCommand(long position, String language, ByteBuffer source, int offset, int length) {
+        super(position);
+        this.language = language;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * The name of the language entered (ex. PCLXL, POSTSCRIPT)
+     *
+     * @return the language name in upper case
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * The number of bytes in the language section
+     *
+     * @return the length of the section
+     */
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * A read-only view of the section that does not copy any bytes
+     *
+     * @return a buffer positioned at the start of the section
+     */
+    public ByteBuffer getSection() {
+        ByteBuffer section = source.duplicate();
+        section.limit(offset + length);
+        section.position(offset);
+        return section.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] bytes = new byte[length];
+        getSection().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String toAscii() {
+        return "[" + language + " section, length=" + length + "]";
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + " position: " + getPosition() + ", language=" + language + ", length=" + length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LanguageSectionCommand command = (LanguageSectionCommand) o;
+
+        if (getPosition() != command.getPosition()) return false;
+        if (length != command.length) return false;
+        if (!language.equals(command.language)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = language.hashCode();
+        result = 31 * result + length;
+        result = 31 * result + (int) (getPosition() ^ (getPosition() >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for network printers listening on the loopback address, to measure how fast jobs are sent and how
+ * slow printers are handled without real printers
+ * <p/>
+ * Every connection accepted is read on a thread of its own until the other end closes it. What is received can be
+ * kept to check the jobs sent, and reading can be slowed down to act like a busy printer.
+ * <p/>
+ * <pre>
+ * LoopbackPrinterSink sink = new LoopbackPrinterSink(0);
+ * SocketPclCommandWriter writer = printers.open(sink.getAddress());
+ * </pre>
+ */
+public class LoopbackPrinterSink implements Closeable {
+    private final ServerSocketChannel server;
+    private final List<Connection> connections = new ArrayList<Connection>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final Thread acceptor;
+    private volatile boolean keepReceived;
+    private volatile long readDelay;
+    private volatile int readSize = 8 * 1024;
+    private volatile boolean open = true;
+
+    /**
+     * Starts listening on the loopback address
+     *
+     * @param port - the port to listen on, 0 for any free port
+     */
+    public LoopbackPrinterSink(int port) {
+        this(port, 0);
+    }
+
+    /**
+     * Starts listening on the loopback address
+     *
+     * @param port              - the port to listen on, 0 for any free port
+     * @param receiveBufferSize - the size of the sockets' receive buffers, small buffers make a slow printer push back
+     *                          sooner, 0 for the system's default
+     */
+    public LoopbackPrinterSink(int port, int receiveBufferSize) {
+        try {
+            server = ServerSocketChannel.open();
+            if (receiveBufferSize > 0) {
+                server.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            }
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while trying to listen on port=[" + port + "]", e);
+        }
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "printer-sink-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the address to connect to
+     */
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.socket().getLocalPort());
+    }
+
+    /**
+     * Keeps the bytes received on every connection accepted from now on
+     *
+     * @param keepReceived - true to keep the bytes
+     */
+    public void setKeepReceived(boolean keepReceived) {
+        this.keepReceived = keepReceived;
+    }
+
+    /**
+     * Slows reading down, every connection waits the given time before each read of at most readSize bytes
+     *
+     * @param readDelay - the time in milliseconds
+     * @param readSize  - the most bytes taken at a time
+     */
+    public void setReadDelay(long readDelay, int readSize) {
+        this.readDelay = readDelay;
+        this.readSize = readSize;
+    }
+
+    /**
+     * @return the bytes received on every connection so far
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public synchronized int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @param connection - the connection in the order they were accepted, starting at 0
+     * @return the bytes received on the connection when they are kept
+     */
+    public synchronized byte[] getReceived(int connection) {
+        return connections.get(connection).getReceived();
+    }
+
+    /**
+     * Waits until the given number of connections were closed by the other end
+     *
+     * @param count   - the number of connections
+     * @param timeout - the most time to wait in milliseconds
+     * @return true when the connections were closed in time
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public synchronized boolean awaitClosed(int count, long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (closedCount() < count) {
+            long left = end - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    /**
+     * Stops listening and closes every connection
+     */
+    public void close() {
+        open = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+        synchronized (this) {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private int closedCount() {
+        int count = 0;
+        for (Connection connection : connections) {
+            if (connection.closed) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void accept() {
+        while (open) {
+            try {
+                SocketChannel channel = server.accept();
+                Connection connection = new Connection(channel, keepReceived);
+                int number;
+                synchronized (this) {
+                    connections.add(connection);
+                    number = connections.size();
+                }
+                Thread reader = new Thread(connection, "printer-sink-connection-" + number);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final ByteArrayOutputStream received;
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel, boolean keepReceived) {
+            this.channel = channel;
+            this.received = keepReceived ? new ByteArrayOutputStream() : null;
+        }
+
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            try {
+                while (true) {
+                    if (readDelay > 0) {
+                        Thread.sleep(readDelay);
+                    }
+                    buffer.clear();
+                    buffer.limit(Math.min(buffer.capacity(), readSize));
+                    int count = channel.read(buffer);
+                    if (count < 0) {
+                        break;
+                    }
+                    bytesReceived.addAndGet(count);
+                    if (received != null) {
+                        synchronized (received) {
+                            received.write(buffer.array(), 0, count);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // the connection was reset
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                synchronized (LoopbackPrinterSink.this) {
+                    closed = true;
+                    LoopbackPrinterSink.this.notifyAll();
+                }
+            }
+        }
+
+        private byte[] getReceived() {
+            if (received == null) {
+                return new byte[0];
+            }
+            synchronized (received) {
+                return received.toByteArray();
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+}
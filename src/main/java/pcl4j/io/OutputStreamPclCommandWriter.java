@@ -15,13 +15,14 @@
 package pcl4j.io;
 
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 
 /**
  * A PclCommandWriter implementation backed by an OutputStream
  */
-public class OutputStreamPclCommandWriter implements PclCommandWriter {
+public class OutputStreamPclCommandWriter implements PclCommandWriter, Flushable {
     private final OutputStream output;
 
     public OutputStreamPclCommandWriter(OutputStream output) {
@@ -40,6 +41,14 @@ public class OutputStreamPclCommandWriter implements PclCommandWriter {
         }
     }
 
+    public void flush() {
+        try {
+            output.flush();
+        } catch (IOException e) {
+            throw new PclCommandWriterException("A problem has occurred while trying to flush the pcl commands written", e);
+        }
+    }
+
     public void close() {
         try {
             output.close();
@@ -0,0 +1,395 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces runs of commands that are repeated throughout a job (ex. the logo, boxes and headings printed on every
+ * page) with a PCL macro
+ * <p/>
+ * Every command gets a hash and a rolling hash over a window of commands is used to find runs that have been seen
+ * before. A repeated run is grown for as long as the commands keep matching. The first occurrence is written as a
+ * macro definition (ESC&amp;f#Y ESC&amp;f0X ... ESC&amp;f1X) and every occurrence, including the first, executes the
+ * macro (ESC&amp;f#Y ESC&amp;f2X). Executing, instead of calling, keeps any changes the commands make to the
+ * environment just like the original commands did.
+ * <p/>
+ * Runs never include commands that are not allowed in a macro or that eject the page, so a run never spans pages.
+ * A reset (ESC E) or Universal Exit deletes the macros of the printer so runs are only matched in between them.
+ * Jobs that already use macros are written unchanged.
+ * <p/>
+ * <pre>
+ * PageMacroOptimizer optimizer = new PageMacroOptimizer();
+ * optimizer.optimize(new File("statements.pcl"), writer);
+ * </pre>
+ */
+public class PageMacroOptimizer {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long ROLLING_BASE = 1000003L;
+    private static final byte FORM_FEED = 12;
+
+    private final PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+    private int minimumCommands = 4;
+    private int minimumBytes = 128;
+    private int firstMacroId = 1;
+    private int macroCount;
+    private int executionCount;
+    private long bytesSaved;
+
+    /**
+     * Optimizes the given job, the file is mapped into memory
+     *
+     * @param file   - the PCL job
+     * @param writer - where to write the optimized job to
+     */
+    public void optimize(File file, PclCommandWriter writer) {
+        optimize(PclCommandTable.build(file), writer);
+    }
+
+    /**
+     * Optimizes the given job
+     *
+     * @param table  - the commands of the job
+     * @param writer - where to write the optimized job to
+     */
+    public void optimize(PclCommandTable table, PclCommandWriter writer) {
+        macroCount = 0;
+        executionCount = 0;
+        bytesSaved = 0;
+
+        Macro[] macrosByStart = new Macro[table.size()];
+        if (!usesMacros(table)) {
+            for (Macro macro : findMacros(table)) {
+                macrosByStart[macro.start] = macro;
+                for (int occurrence : macro.occurrences) {
+                    macrosByStart[occurrence] = macro;
+                }
+            }
+        }
+
+        for (int i = 0; i < table.size(); ) {
+            Macro macro = macrosByStart[i];
+            if (macro == null) {
+                writer.write(table.toCommand(i++));
+                continue;
+            }
+            writer.write(macroControl(macro.id, 'Y'));
+            if (macro.start == i) {
+                writer.write(macroControl(0, 'X'));
+                for (int j = i; j < i + macro.length; j++) {
+                    writer.write(table.toCommand(j));
+                }
+                writer.write(macroControl(1, 'X'));
+            }
+            writer.write(macroControl(2, 'X'));
+            executionCount++;
+            i += macro.length;
+        }
+    }
+
+    /**
+     * The smallest number of commands a repeated run needs to be turned into a macro (defaults to 4)
+     *
+     * @param minimumCommands - the number of commands
+     */
+    public void setMinimumCommands(int minimumCommands) {
+        if (minimumCommands < 1) throw new IllegalArgumentException("A macro needs at least 1 command");
+        this.minimumCommands = minimumCommands;
+    }
+
+    /**
+     * The smallest number of bytes a repeated run needs to be turned into a macro (defaults to 128)
+     *
+     * @param minimumBytes - the number of bytes
+     */
+    public void setMinimumBytes(int minimumBytes) {
+        this.minimumBytes = minimumBytes;
+    }
+
+    /**
+     * The ID of the first macro defined, the rest follow in order (defaults to 1)
+     *
+     * @param firstMacroId - the macro ID
+     */
+    public void setFirstMacroId(int firstMacroId) {
+        this.firstMacroId = firstMacroId;
+    }
+
+    public int getMacroCount() {
+        return macroCount;
+    }
+
+    /**
+     * The number of times a macro was executed in place of the commands it holds
+     *
+     * @return the number of executions
+     */
+    public int getExecutionCount() {
+        return executionCount;
+    }
+
+    /**
+     * The number of bytes saved by the macros, the macro commands themselves are taken into account
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private List<Macro> findMacros(PclCommandTable table) {
+        int size = table.size();
+        long[] hashes = new long[size];
+        int[] scopes = new int[size];
+        int[] eligibleRuns = new int[size + 1];
+        int scope = 0;
+        for (int i = 0; i < size; i++) {
+            hashes[i] = hash(table, i);
+            scopes[i] = scope;
+            if (endsScope(table, i)) {
+                scope++;
+            }
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            eligibleRuns[i] = isAllowedInMacro(table, i) ? eligibleRuns[i + 1] + 1 : 0;
+        }
+
+        long highestPower = 1;
+        for (int i = 1; i < minimumCommands; i++) {
+            highestPower *= ROLLING_BASE;
+        }
+        int windowCount = Math.max(size - minimumCommands + 1, 0);
+        long[] windowHashes = new long[windowCount];
+        long windowHash = 0;
+        for (int i = 0; i < size; i++) {
+            if (i >= minimumCommands) {
+                windowHash -= hashes[i - minimumCommands] * highestPower;
+            }
+            windowHash = windowHash * ROLLING_BASE + hashes[i];
+            if (i + 1 >= minimumCommands) {
+                windowHashes[i + 1 - minimumCommands] = windowHash;
+            }
+        }
+
+        List<Macro> macros = new ArrayList<Macro>();
+        Map<Long, Integer> candidates = new HashMap<Long, Integer>();
+        Macro[] macrosByStart = new Macro[size];
+        boolean[] used = new boolean[size];
+        int i = 0;
+        while (i < windowCount) {
+            int matchedLength = 0;
+            if (eligibleRuns[i] >= minimumCommands) {
+                Integer candidate = candidates.get(windowHashes[i]);
+                if (candidate != null && scopes[candidate] == scopes[i]) {
+                    matchedLength = match(table, candidate, i, eligibleRuns, macrosByStart, used, macros);
+                }
+                if (matchedLength == 0 && !used[i]) {
+                    candidates.put(windowHashes[i], i);
+                }
+            }
+            i += matchedLength == 0 ? 1 : matchedLength;
+        }
+
+        List<Macro> profitable = new ArrayList<Macro>();
+        for (Macro macro : macros) {
+            long commandBytes = 0;
+            for (int j = macro.start; j < macro.start + macro.length; j++) {
+                commandBytes += lengthOf(table, j);
+            }
+            int id = firstMacroId + profitable.size();
+            int selectLength = macroControl(id, 'Y').getLength();
+            int executeLength = macroControl(2, 'X').getLength();
+            long overhead = selectLength + 3L * executeLength
+                    + (long) macro.occurrences.size() * (selectLength + executeLength);
+            long saved = commandBytes * macro.occurrences.size() - overhead;
+            if (commandBytes >= minimumBytes && saved > 0) {
+                macro.id = id;
+                profitable.add(macro);
+                bytesSaved += saved;
+            }
+        }
+        macroCount = profitable.size();
+        return profitable;
+    }
+
+    /**
+     * Matches the run starting at the candidate against the run at the given index
+     *
+     * @return the number of commands matched or 0 when there is no match
+     */
+    private int match(PclCommandTable table, int candidate, int index, int[] eligibleRuns, Macro[] macrosByStart,
+                      boolean[] used, List<Macro> macros) {
+        Macro macro = macrosByStart[candidate];
+        if (macro != null) {
+            if (eligibleRuns[index] < macro.length || index < candidate + macro.length
+                    || !isSameRun(table, candidate, index, macro.length)) {
+                return 0;
+            }
+            macro.occurrences.add(index);
+            markUsed(used, index, macro.length);
+            return macro.length;
+        }
+
+        if (used[candidate] || !isSameRun(table, candidate, index, minimumCommands)) {
+            return 0;
+        }
+        int length = minimumCommands;
+        while (candidate + length < index && length < eligibleRuns[candidate] && length < eligibleRuns[index]
+                && !used[candidate + length] && isSameCommand(table, candidate + length, index + length)) {
+            length++;
+        }
+        if (candidate + length > index) {
+            return 0;
+        }
+
+        macro = new Macro(candidate, length);
+        macro.occurrences.add(index);
+        macrosByStart[candidate] = macro;
+        macros.add(macro);
+        markUsed(used, candidate, length);
+        markUsed(used, index, length);
+        return length;
+    }
+
+    private boolean isSameRun(PclCommandTable table, int first, int second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!isSameCommand(table, first + i, second + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSameCommand(PclCommandTable table, int first, int second) {
+        if (table.getKind(first) != table.getKind(second)
+                || table.getParameterizedByte(first) != table.getParameterizedByte(second)
+                || table.getGroupByte(first) != table.getGroupByte(second)
+                || table.getTerminatorByte(first) != table.getTerminatorByte(second)
+                || table.getValueLength(first) != table.getValueLength(second)
+                || table.getPayloadLength(first) != table.getPayloadLength(second)) {
+            return false;
+        }
+        byte[] firstValue = new byte[table.getValueLength(first)];
+        byte[] secondValue = new byte[table.getValueLength(second)];
+        table.copyValue(first, firstValue, 0);
+        table.copyValue(second, secondValue, 0);
+        return Arrays.equals(firstValue, secondValue) && table.getPayload(first).equals(table.getPayload(second));
+    }
+
+    private void markUsed(boolean[] used, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            used[i] = true;
+        }
+    }
+
+    private long hash(PclCommandTable table, int index) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ table.getKind(index)) * FNV_PRIME;
+        hash = (hash ^ table.getParameterizedByte(index)) * FNV_PRIME;
+        hash = (hash ^ table.getGroupByte(index)) * FNV_PRIME;
+        hash = (hash ^ table.getTerminatorByte(index)) * FNV_PRIME;
+        byte[] value = new byte[table.getValueLength(index)];
+        table.copyValue(index, value, 0);
+        for (int i = 0; i < value.length; i++) {
+            hash = (hash ^ (value[i] & 0xff)) * FNV_PRIME;
+        }
+        ByteBuffer payload = table.getPayload(index);
+        while (payload.hasRemaining()) {
+            hash = (hash ^ (payload.get() & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private int lengthOf(PclCommandTable table, int index) {
+        switch (table.getKind(index)) {
+            case PclCommandTable.TWO_BYTE:
+                return 2;
+            case PclCommandTable.PARAMETERIZED:
+                return 4 + table.getValueLength(index) + table.getPayloadLength(index);
+            default:
+                return table.getPayloadLength(index);
+        }
+    }
+
+    private boolean usesMacros(PclCommandTable table) {
+        for (int i = 0; i < table.size(); i++) {
+            if (isMacroCommand(table, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isMacroCommand(PclCommandTable table, int index) {
+        return table.getKind(index) == PclCommandTable.PARAMETERIZED
+                && table.getParameterizedByte(index) == '&' && table.getGroupByte(index) == 'f';
+    }
+
+    private boolean endsScope(PclCommandTable table, int index) {
+        byte kind = table.getKind(index);
+        return kind == PclCommandTable.LANGUAGE_SECTION
+                || kind == PclCommandTable.TWO_BYTE && table.getParameterizedByte(index) == 'E'
+                || kind == PclCommandTable.PARAMETERIZED && table.getParameterizedByte(index) == '%'
+                && table.getTerminatorByte(index) == 'X';
+    }
+
+    private boolean isAllowedInMacro(PclCommandTable table, int index) {
+        switch (table.getKind(index)) {
+            case PclCommandTable.TEXT:
+                ByteBuffer text = table.getPayload(index);
+                while (text.hasRemaining()) {
+                    if (text.get() == FORM_FEED) {
+                        return false;
+                    }
+                }
+                return true;
+            case PclCommandTable.TWO_BYTE:
+                byte operation = table.getParameterizedByte(index);
+                return operation != 'E' && operation != 'Y' && operation != 'Z';
+            case PclCommandTable.PARAMETERIZED:
+                byte parameterized = table.getParameterizedByte(index);
+                return parameterized != '%' && !isMacroCommand(table, index)
+                        && !pclCommandGrammar.isPageEjecting(parameterized, table.getGroupByte(index), table.getTerminatorByte(index));
+            default:
+                return false;
+        }
+    }
+
+    private PclCommand macroControl(int value, char terminator) {
+        return new PclCommandBuilder().p('&').g('f').v(value).t(terminator).toCommand();
+    }
+
+    /**
+     * A run of commands that is repeated, the run is defined as a macro where it first appears
+     */
+    private static class Macro {
+        private final int start;
+        private final int length;
+        private final List<Integer> occurrences = new ArrayList<Integer>();
+        private int id;
+
+        private Macro(int start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
@@ -23,6 +23,10 @@ public class ParameterizedCommand extends PclCommand {
     private byte[] valueBytes;
     private byte terminatorByte;
     private byte[] dataBytes;
+    private boolean numericValueKnown;
+    private long scaledValue;
+    private byte sign;
+    private boolean decimal;
 
     @Deprecated
     public ParameterizedCommand(byte[] bytes) {
@@ -63,6 +67,83 @@ public class ParameterizedCommand extends PclCommand {
 
     public void setValueBytes(byte[] valueBytes) {
         this.valueBytes = valueBytes;
+        this.numericValueKnown = false;
+    }
+
+    /**
+     * Sets the numeric form of the value so it does not need to be worked out from the value bytes
+     *
+     * @param scaledValue - the value scaled by PclValueParser.SCALE
+     * @param sign        - '+', '-' or PclValueParser.NO_SIGN
+     * @param decimal     - true if the value contained a decimal point
+     */
+    public void setNumericValue(long scaledValue, byte sign, boolean decimal) {
+        this.scaledValue = scaledValue;
+        this.sign = sign;
+        this.decimal = decimal;
+        this.numericValueKnown = true;
+    }
+
+    /**
+     * The value as an int, any decimal places are truncated
+     *
+     * @return the whole number part of the value
+     */
+    public int getIntValue() {
+        return (int) getLongValue();
+    }
+
+    /**
+     * The value as a long, any decimal places are truncated
+     *
+     * @return the whole number part of the value
+     */
+    public long getLongValue() {
+        return getScaledDecimalValue() / PclValueParser.SCALE;
+    }
+
+    /**
+     * The value including its decimal places scaled by PclValueParser.SCALE (ex. "1.25" is 12500)
+     *
+     * @return the scaled value
+     */
+    public long getScaledDecimalValue() {
+        ensureNumericValue();
+        return scaledValue;
+    }
+
+    public double getDecimalValue() {
+        return getScaledDecimalValue() / (double) PclValueParser.SCALE;
+    }
+
+    /**
+     * Determines if the value contained a decimal point
+     *
+     * @return true - has a decimal point<br/>false - is a whole number
+     */
+    public boolean hasDecimal() {
+        ensureNumericValue();
+        return decimal;
+    }
+
+    /**
+     * The sign given in the value, commands like cursor positioning treat signed values as relative
+     *
+     * @return '+', '-' or PclValueParser.NO_SIGN
+     */
+    public byte getSign() {
+        ensureNumericValue();
+        return sign;
+    }
+
+    private void ensureNumericValue() {
+        if (!numericValueKnown) {
+            PclValueParser parser = new PclValueParser();
+            if (valueBytes != null) {
+                parser.append(valueBytes);
+            }
+            setNumericValue(parser.getScaledValue(), parser.getSign(), parser.hasDecimal());
+        }
     }
 
     public void setTerminatorByte(byte terminatorByte) {
@@ -73,7 +154,18 @@ public class ParameterizedCommand extends PclCommand {
         this.dataBytes = dataBytes;
     }
 
+    @Override
+    public int getLength() {
+        if (valueBytes == null) {
+            return super.getLength();
+        }
+        return 4 + valueBytes.length + (dataBytes == null ? 0 : dataBytes.length);
+    }
+
     public byte[] getBytes() {
+        if (valueBytes == null) {
+            return super.getBytes();
+        }
         UnsynchronizedByteArrayOutputStream output = new UnsynchronizedByteArrayOutputStream(32);
         output.write(PclUtil.ESCAPE);
         output.write(parameterizedByte);
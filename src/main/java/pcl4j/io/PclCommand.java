@@ -47,18 +47,27 @@ public abstract class PclCommand {
         return position;
     }
 
+    /**
+     * The number of bytes the command takes up when written
+     *
+     * @return the length of the command in bytes
+     */
+    public int getLength() {
+        return getBytes().length;
+    }
+
     @Override
     public String toString() {
         return super.toString() + " position: " + position + ", length=" + bytes.length + ", contents:{" + Arrays.toString(bytes) + "}";
     }
 
     public String toAscii() {
-        StringBuilder builder = new StringBuilder();
         byte[] bytes = getBytes();
+        char[] chars = new char[Math.max(bytes.length - 1, 0)];
         for (int i = 1; i < bytes.length; i++) {
-            builder.append((char) bytes[i]);
+            chars[i - 1] = (char) bytes[i];
         }
-        return builder.toString();
+        return new String(chars);
     }
 
     @Override
@@ -0,0 +1,86 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A reusable, array backed group of commands that is handed between the stages of a PclCommandPipeline
+ */
+public class PclCommandBatch {
+    private PclCommand[] commands;
+    private int size = 0;
+
+    public PclCommandBatch(int initialCapacity) {
+        commands = new PclCommand[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * Appends a command to the end of the batch
+     *
+     * @param command - the command to add
+     */
+    public void add(PclCommand command) {
+        if (size == commands.length) {
+            PclCommand[] temp = new PclCommand[commands.length + Math.max(commands.length / 2, 1)];
+            System.arraycopy(commands, 0, temp, 0, size);
+            commands = temp;
+        }
+        commands[size++] = command;
+    }
+
+    /**
+     * Appends all the commands of the given batch to the end of this batch
+     *
+     * @param batch - the commands to add
+     */
+    public void addAll(PclCommandBatch batch) {
+        for (int i = 0; i < batch.size; i++) {
+            add(batch.commands[i]);
+        }
+    }
+
+    public PclCommand get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index=[" + index + "], size=[" + size + "]");
+        }
+        return commands[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the commands so the batch can be reused
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            commands[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * The backing array of the batch, only the first size() elements are valid
+     *
+     * @return the backing array
+     */
+    public PclCommand[] getCommands() {
+        return commands;
+    }
+}
@@ -23,7 +23,7 @@ public class PclCommandBuilder {
     private static final PclUtil UTIL = new PclUtil();
     private boolean validate;
     private byte parameterized, group, terminator;
-    private String value = "";
+    private byte[] value = new byte[0];
     private byte[] binaryData = new byte[0];
 
     /**
@@ -92,7 +92,40 @@ public class PclCommandBuilder {
     public PclCommandBuilder v(String value) {
         if (validate && value == null)
             throw new IllegalArgumentException("Invalid value given");
-        this.value = value;
+        this.value = value == null ? null : value.getBytes();
+        return this;
+    }
+
+    /**
+     * sets the value of the command to a whole number
+     *
+     * @param value - the number
+     * @return this instance of the builder
+     */
+    public PclCommandBuilder v(long value) {
+        this.value = UTIL.convertScaledValueToBytes(value * PclValueParser.SCALE, false);
+        return this;
+    }
+
+    /**
+     * sets the value of the command to a whole number that always has a sign (ex. relative cursor moves)
+     *
+     * @param value - the number
+     * @return this instance of the builder
+     */
+    public PclCommandBuilder vRelative(long value) {
+        this.value = UTIL.convertScaledValueToBytes(value * PclValueParser.SCALE, true);
+        return this;
+    }
+
+    /**
+     * sets the value of the command to a decimal number
+     *
+     * @param scaledValue - the number scaled by PclValueParser.SCALE (ex. 12500 for "1.25")
+     * @return this instance of the builder
+     */
+    public PclCommandBuilder vScaled(long scaledValue) {
+        this.value = UTIL.convertScaledValueToBytes(scaledValue, false);
         return this;
     }
 
@@ -158,6 +191,6 @@ public class PclCommandBuilder {
      * @return a new PclCommand
      */
     public PclCommand toCommand(long position) {
-        return FACTORY.buildParameterizedCommand(position, parameterized, group, value.getBytes(), terminator, binaryData);
+        return FACTORY.buildParameterizedCommand(position, parameterized, group, value.clone(), terminator, binaryData);
     }
 }
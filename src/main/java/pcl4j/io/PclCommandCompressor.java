@@ -21,11 +21,23 @@ package pcl4j.io;
  * <li>The first 2 bytes after "ESC" MUST be the same in all of the commands to be combined.</li>
  * <li>All alphabetic characters within the combined printer command are lower-case, except the final letter which is always upper-case</li>
  * <li>The printer commands are performed in the order that they are combined (from left to right)</li>
+ * <li>A command followed by binary data can only be the last command combined, the {@link PclCommandGrammar} decides
+ * which commands are {@link PclCommandGrammar#isCombinable combinable}</li>
  * </ol>
  * <b>Reference:</b>ctechref.pdf
  */
 public class PclCommandCompressor {
     private PclUtil pclUtil = new PclUtil();
+    private PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+
+    /**
+     * Changes the grammar used to decide which commands can be combined with the commands following them
+     *
+     * @param pclCommandGrammar - the grammar to use
+     */
+    public void setPclCommandGrammar(PclCommandGrammar pclCommandGrammar) {
+        this.pclCommandGrammar = pclCommandGrammar;
+    }
 
     /**
      * Compresses the 2 given commands together
@@ -58,7 +70,20 @@ public class PclCommandCompressor {
             compressedBytes.write(commandToAppendBytes[i]);
         }
 
-        return new ParameterizedCommand(compressedBytes.toByteArray());
+        ParameterizedCommand compressedCommand = new ParameterizedCommand(compressedBytes.toByteArray());
+        setParts(compressedCommand, (ParameterizedCommand) commandToAppendTo, (ParameterizedCommand) commandToAppend);
+        return compressedCommand;
+    }
+
+    /**
+     * Gives the compressed command the bytes the next compression looks at so it can be compressed again, its value
+     * bytes are left unset since it holds the values of several commands
+     */
+    private void setParts(ParameterizedCommand compressedCommand, ParameterizedCommand command1, ParameterizedCommand command2) {
+        compressedCommand.setParameterizedByte(command1.getParameterizedByte());
+        compressedCommand.setGroupByte(command1.getGroupByte());
+        compressedCommand.setTerminatorByte(command2.getTerminatorByte());
+        compressedCommand.setDataBytes(command2.getDataBytes());
     }
 
     /**
@@ -82,7 +107,8 @@ public class PclCommandCompressor {
         ParameterizedCommand command2 = (ParameterizedCommand) commandToAppend;
         if (parameterizedBytesDoNotMatch(command1, command2)
                 || groupBytesDoNotMatch(command1, command2)
-                || command1.getDataBytes().length > 0) {
+                || !pclCommandGrammar.isCombinable(command1.getParameterizedByte(), command1.getGroupByte(), command1.getTerminatorByte())
+                || (command1.getDataBytes() != null && command1.getDataBytes().length > 0)) {
             return false;
         }
 
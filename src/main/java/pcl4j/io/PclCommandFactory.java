@@ -14,6 +14,8 @@
 
 package pcl4j.io;
 
+import java.nio.ByteBuffer;
+
 /**
  * A factory that builds a PclCommand object
  */
@@ -30,7 +32,7 @@ public class PclCommandFactory {
      * @param data          - binary data following the command
      * @return a new instance of a PclCommand
      */
-    public PclCommand buildParameterizedCommand(long position, byte parameterized, byte group, byte[] value, byte terminator, byte[] data) {
+    public ParameterizedCommand buildParameterizedCommand(long position, byte parameterized, byte group, byte[] value, byte terminator, byte[] data) {
         ParameterizedCommand command = new ParameterizedCommand(position);
         command.setParameterizedByte(parameterized);
         command.setGroupByte(group);
@@ -61,4 +63,18 @@ public class PclCommandFactory {
     public PclCommand buildTwoByteCommand(long position, byte commandByte) {
         return new TwoByteCommand(position, new byte[]{PclUtil.ESCAPE, commandByte});
     }
+
+    /**
+     * Builds a command representing a section of a non-PCL printer language
+     *
+     * @param position - the location the section starts in the file
+     * @param language - the name of the language entered
+     * @param buffer   - the buffer containing the section
+     * @param offset   - the index in the buffer the section starts at
+     * @param length   - the number of bytes in the section
+     * @return a new instance of a PclCommand
+     */
+    public PclCommand buildLanguageSectionCommand(long position, String language, ByteBuffer buffer, int offset, int length) {
+        return new LanguageSectionCommand(position, language, buffer, offset, length);
+    }
 }
@@ -0,0 +1,35 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A stage of a PclCommandPipeline that transforms commands a batch at a time
+ */
+public interface PclCommandFilter {
+    /**
+     * Transforms the given commands adding the results to the output batch
+     *
+     * @param input  - the commands to transform
+     * @param output - the batch to add the resulting commands to
+     */
+    void filter(PclCommandBatch input, PclCommandBatch output);
+
+    /**
+     * Called once there are no more commands so any commands being held on to can be released
+     *
+     * @param output - the batch to add any remaining commands to
+     */
+    void flush(PclCommandBatch output);
+}
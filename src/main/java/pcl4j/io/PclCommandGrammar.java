@@ -0,0 +1,143 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A precomputed table describing parameterized commands
+ * <p/>
+ * Every combination of parameterized, group and terminator byte has an entry in the table so looking up
+ * what a command does is a single array load. Commands using a lowercase terminator (a parameter byte) are
+ * treated the same as their uppercase form.
+ * <p/>
+ * Additional commands that are followed by binary data (ex. vendor specific extensions) can be registered
+ * with {@link #registerDataCommand(String)}. Registering with the {@link #getDefault() default} grammar affects
+ * every reader that has not been given a grammar of its own.
+ */
+public class PclCommandGrammar {
+    /**
+     * The command is followed by the number of bytes given as its value
+     */
+    public static final int EXPECTS_DATA = 1;
+    /**
+     * The command can be combined with a following command of the same parameterized and group bytes
+     */
+    public static final int COMBINABLE = 2;
+    /**
+     * The command may cause the current page to be ejected
+     */
+    public static final int PAGE_EJECTING = 4;
+
+    private static final String[] DATA_COMMANDS = {")s#W", "(s#W", "(f#W", "&n#W", "*b#W", "*g#W", "*b#Y", "*b#V", "*v#W", "*l#W", "*o#W", "*m#W", "&p#X"};
+    private static final String[] PAGE_EJECTING_COMMANDS = {"&l#H", "&l#A", "&l#O", "&l#S", "&a#G"};
+    private static final int PARAMETERIZED_RANGE = PclUtil.HIGHEST_PARAMETERIZED_BYTE - PclUtil.LOWEST_PARAMETERIZED_BYTE + 1;
+    private static final int GROUP_RANGE = PclUtil.HIGHEST_GROUP_BYTE - PclUtil.LOWEST_GROUP_BYTE + 1;
+    private static final int TERMINATOR_RANGE = PclUtil.HIGHEST_PARAMETER_BYTE - PclUtil.LOWEST_TERMINATION_BYTE + 1;
+    private static final PclCommandGrammar DEFAULT = new PclCommandGrammar();
+
+    private volatile byte[] table;
+
+    /**
+     * Constructs a grammar knowing about the standard PCL 5 commands
+     */
+    public PclCommandGrammar() {
+        byte[] newTable = new byte[PARAMETERIZED_RANGE * GROUP_RANGE * TERMINATOR_RANGE];
+        for (int p = 0; p < PARAMETERIZED_RANGE; p++) {
+            for (int g = 0; g < GROUP_RANGE; g++) {
+                for (int t = 0; t < TERMINATOR_RANGE; t++) {
+                    newTable[(p * GROUP_RANGE + g) * TERMINATOR_RANGE + t] = COMBINABLE;
+                }
+            }
+        }
+        for (String command : DATA_COMMANDS) {
+            setFlag(newTable, command, EXPECTS_DATA, COMBINABLE);
+        }
+        for (String command : PAGE_EJECTING_COMMANDS) {
+            setFlag(newTable, command, PAGE_EJECTING, 0);
+        }
+        table = newTable;
+    }
+
+    /**
+     * The grammar used by readers that have not been given one
+     *
+     * @return the shared grammar
+     */
+    public static PclCommandGrammar getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a command that is followed by binary data
+     *
+     * @param command - the command in the form "[parameterized][group]#[terminator]" (ex. "&amp;y#W")
+     * @throws IllegalArgumentException when the command is not in the expected form
+     */
+    public synchronized void registerDataCommand(String command) throws IllegalArgumentException {
+        byte[] newTable = table.clone();
+        setFlag(newTable, command, EXPECTS_DATA, COMBINABLE);
+        table = newTable;
+    }
+
+    /**
+     * Looks up everything known about the given command
+     *
+     * @param parameterized - the parameterized byte
+     * @param group         - the group byte
+     * @param terminator    - the terminator (or parameter) byte
+     * @return the flags of the command or 0 when the bytes do not make up a parameterized command
+     */
+    public int getFlags(byte parameterized, byte group, byte terminator) {
+        int index = indexOf(parameterized, group, terminator);
+        return index < 0 ? 0 : table[index];
+    }
+
+    public boolean isExpectingData(byte parameterized, byte group, byte terminator) {
+        return (getFlags(parameterized, group, terminator) & EXPECTS_DATA) != 0;
+    }
+
+    public boolean isCombinable(byte parameterized, byte group, byte terminator) {
+        return (getFlags(parameterized, group, terminator) & COMBINABLE) != 0;
+    }
+
+    public boolean isPageEjecting(byte parameterized, byte group, byte terminator) {
+        return (getFlags(parameterized, group, terminator) & PAGE_EJECTING) != 0;
+    }
+
+    private static int indexOf(byte parameterized, byte group, byte terminator) {
+        int p = parameterized - PclUtil.LOWEST_PARAMETERIZED_BYTE;
+        int g = group - PclUtil.LOWEST_GROUP_BYTE;
+        int t = terminator - PclUtil.LOWEST_TERMINATION_BYTE;
+        if (p < 0 || p >= PARAMETERIZED_RANGE || g < 0 || g >= GROUP_RANGE || t < 0 || t >= TERMINATOR_RANGE) {
+            return -1;
+        }
+        return (p * GROUP_RANGE + g) * TERMINATOR_RANGE + t;
+    }
+
+    private static void setFlag(byte[] table, String command, int flagToSet, int flagToClear) {
+        if (command == null || command.length() != 4 || command.charAt(2) != '#') {
+            throw new IllegalArgumentException("Expected a command in the form \"[parameterized][group]#[terminator]\" but was given command=[" + command + "]");
+        }
+        byte parameterized = (byte) command.charAt(0);
+        byte group = (byte) command.charAt(1);
+        byte terminator = (byte) Character.toUpperCase(command.charAt(3));
+        int upperIndex = indexOf(parameterized, group, terminator);
+        if (upperIndex < 0 || terminator > PclUtil.HIGHEST_TERMINATION_BYTE) {
+            throw new IllegalArgumentException("Not a valid parameterized command given. command=[" + command + "]");
+        }
+        int lowerIndex = upperIndex + PclUtil.PARAMETER_TO_TERMINATOR_DIFFERENCE;
+        table[upperIndex] = (byte) ((table[upperIndex] | flagToSet) & ~flagToClear);
+        table[lowerIndex] = (byte) ((table[lowerIndex] | flagToSet) & ~flagToClear);
+    }
+}
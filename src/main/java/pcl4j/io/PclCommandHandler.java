@@ -0,0 +1,62 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * Receives the commands found by a reader as they are parsed, without a PclCommand being built for them
+ * <p/>
+ * Positions are the locations in the file, the bytes themselves can be looked up in the source being parsed.
+ */
+public interface PclCommandHandler {
+    /**
+     * A 2 byte command was found
+     *
+     * @param position  - the location of the ESCAPE byte
+     * @param operation - the 2nd byte of the command
+     */
+    void twoByteCommand(long position, byte operation);
+
+    /**
+     * A parameterized command was found
+     *
+     * @param position      - the location the command starts (for combined commands, just after the previous parameter byte)
+     * @param parameterized - the parameterized byte
+     * @param group         - the group byte
+     * @param terminator    - the terminator byte (already converted from a parameter byte for combined commands)
+     * @param valuePosition - the location of the value bytes
+     * @param valueLength   - the number of value bytes
+     * @param dataPosition  - the location of any binary data following the command
+     * @param dataLength    - the number of bytes of binary data
+     */
+    void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                              long valuePosition, int valueLength, long dataPosition, int dataLength);
+
+    /**
+     * Text was found
+     *
+     * @param position - the location the text starts
+     * @param length   - the number of bytes of text
+     */
+    void textCommand(long position, int length);
+
+    /**
+     * A section of a printer language other than PCL was found
+     *
+     * @param position - the location the section starts
+     * @param language - the name of the language
+     * @param length   - the number of bytes in the section
+     */
+    void languageSection(long position, String language, int length);
+}
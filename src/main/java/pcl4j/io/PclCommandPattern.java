@@ -0,0 +1,199 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Describes the commands or text to look for with {@link PclCommandSearch}
+ * <p/>
+ * A command pattern is given as "[parameterized][group]#[terminator]" (ex. "&amp;l#X") and may be narrowed to the
+ * commands whose value is in a range. Commands like ESC(10U and ESC(42X have the value where the group byte would
+ * be, they are given with '#' as the group (ex. "(##X"). A text pattern matches the bytes of the text as they are in
+ * the job.
+ * <p/>
+ * <pre>
+ * PclCommandPattern copies = PclCommandPattern.command("&amp;l#X").atLeast(2);
+ * PclCommandPattern font = PclCommandPattern.command("(##X").equalTo(42);
+ * PclCommandPattern account = PclCommandPattern.text("ACCOUNT 12345");
+ * </pre>
+ */
+public class PclCommandPattern {
+    private static final byte DIGIT_GROUP = '#';
+
+    private final String description;
+    private final byte parameterized;
+    private final byte group;
+    private final byte terminator;
+    private final long minimum;
+    private final long maximum;
+    private final byte[] text;
+
+    private PclCommandPattern(String description, byte parameterized, byte group, byte terminator, long minimum, long maximum, byte[] text) {
+        this.description = description;
+        this.parameterized = parameterized;
+        this.group = group;
+        this.terminator = terminator;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.text = text;
+    }
+
+    /**
+     * A pattern matching a parameterized command with any value
+     *
+     * @param command - the command in the form "[parameterized][group]#[terminator]" (ex. "&amp;l#X" or "(##X")
+     * @return the pattern
+     * @throws IllegalArgumentException when the command is not in the expected form
+     */
+    public static PclCommandPattern command(String command) throws IllegalArgumentException {
+        if (command == null || command.length() != 4 || command.charAt(2) != '#') {
+            throw new IllegalArgumentException("Expected a command in the form \"[parameterized][group]#[terminator]\" but was given command=[" + command + "]");
+        }
+        return new PclCommandPattern(command, (byte) command.charAt(0), (byte) command.charAt(1),
+                (byte) Character.toUpperCase(command.charAt(3)), Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * A pattern matching text containing the given characters
+     *
+     * @param text - the characters to look for, one byte each
+     * @return the pattern
+     * @throws IllegalArgumentException when no text is given
+     */
+    public static PclCommandPattern text(String text) throws IllegalArgumentException {
+        if (text == null || text.length() == 0) {
+            throw new IllegalArgumentException("Expected some text to look for");
+        }
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return new PclCommandPattern("\"" + text + "\"", (byte) 0, (byte) 0, (byte) 0, 0, 0, bytes);
+    }
+
+    /**
+     * Narrows the pattern to the commands with the given value
+     *
+     * @param value - the value
+     * @return a new pattern
+     */
+    public PclCommandPattern equalTo(double value) {
+        return between(value, value);
+    }
+
+    /**
+     * Narrows the pattern to the commands with at least the given value
+     *
+     * @param value - the smallest value to match
+     * @return a new pattern
+     */
+    public PclCommandPattern atLeast(double value) {
+        return withRange(scale(value), maximum, description + ">=" + value);
+    }
+
+    /**
+     * Narrows the pattern to the commands with at most the given value
+     *
+     * @param value - the largest value to match
+     * @return a new pattern
+     */
+    public PclCommandPattern atMost(double value) {
+        return withRange(minimum, scale(value), description + "<=" + value);
+    }
+
+    /**
+     * Narrows the pattern to the commands with a value in the given range
+     *
+     * @param minimum - the smallest value to match
+     * @param maximum - the largest value to match
+     * @return a new pattern
+     */
+    public PclCommandPattern between(double minimum, double maximum) {
+        return withRange(scale(minimum), scale(maximum), description + (minimum == maximum ? "=" + minimum : "=[" + minimum + "," + maximum + "]"));
+    }
+
+    public boolean isText() {
+        return text != null;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Determines if a parameterized command matches, the value is only parsed when the command bytes match
+     */
+    boolean matches(byte parameterized, byte group, byte terminator, ByteBuffer source, long valuePosition, int valueLength, PclValueParser valueParser) {
+        if (this.parameterized != parameterized || this.terminator != terminator) {
+            return false;
+        }
+        boolean digitGroup = group >= '0' && group <= '9';
+        if (digitGroup ? this.group != DIGIT_GROUP : this.group != group) {
+            return false;
+        }
+        if (minimum == Long.MIN_VALUE && maximum == Long.MAX_VALUE) {
+            return true;
+        }
+        valueParser.reset();
+        if (digitGroup) {
+            valueParser.append(group);
+        }
+        for (int i = 0; i < valueLength; i++) {
+            valueParser.append(source.get((int) valuePosition + i));
+        }
+        long value = valueParser.getScaledValue();
+        return value >= minimum && value <= maximum;
+    }
+
+    /**
+     * Finds the text in a run of text
+     *
+     * @return the position of the first match at or after the given position or -1 when there is none
+     */
+    int indexOf(ByteBuffer source, int from, int end) {
+        byte first = text[0];
+        int last = end - text.length;
+        for (int i = from; i <= last; i++) {
+            if (source.get(i) != first) {
+                continue;
+            }
+            int matched = 1;
+            while (matched < text.length && source.get(i + matched) == text[matched]) {
+                matched++;
+            }
+            if (matched == text.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int getTextLength() {
+        return text.length;
+    }
+
+    private PclCommandPattern withRange(long minimum, long maximum, String description) {
+        if (isText()) {
+            throw new IllegalStateException("Only a command pattern can be narrowed by value");
+        }
+        return new PclCommandPattern(description, parameterized, group, terminator, minimum, maximum, null);
+    }
+
+    private static long scale(double value) {
+        return Math.round(value * PclValueParser.SCALE);
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Moves commands from a PclCommandReader through a chain of PclCommandFilters into a PclCommandWriter
+ * <p/>
+ * Commands are handed from stage to stage in batches so each stage is only invoked once per batch. When
+ * threaded, the reader and every stage get their own thread while the calling thread does the writing. The
+ * threads are connected by bounded queues of batches, so a slow stage holds the others back instead of
+ * filling up the heap.
+ * <p/>
+ * <pre>
+ * new PclCommandPipeline()
+ *     .add(new CompressionPclCommandFilter())
+ *     .batchSize(512)
+ *     .threaded(4)
+ *     .run(reader, writer);
+ * </pre>
+ */
+public class PclCommandPipeline {
+    private static final PclCommandBatch END_OF_STREAM = new PclCommandBatch(1);
+    private final List<PclCommandFilter> filters = new ArrayList<PclCommandFilter>();
+    private int batchSize = 256;
+    private int queueCapacity = 0;
+    private long[] stageNanos = new long[0];
+    private long[] stageCommandCounts = new long[0];
+    private volatile Throwable failure;
+    private volatile boolean callerInterruptedByFailure;
+    private List<Thread> threads;
+
+    /**
+     * Adds a stage to the end of the pipeline
+     *
+     * @param filter - the stage to add
+     * @return this instance of the pipeline
+     */
+    public PclCommandPipeline add(PclCommandFilter filter) {
+        if (filter == null) throw new IllegalArgumentException("A 'null' filter was given");
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * The number of commands read before they are handed to the first stage
+     *
+     * @param batchSize - the number of commands in a batch
+     * @return this instance of the pipeline
+     */
+    public PclCommandPipeline batchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("The batch size must be at least 1");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Runs every stage on its own thread
+     *
+     * @param queueCapacity - the number of batches that can be waiting in between two stages
+     * @return this instance of the pipeline
+     */
+    public PclCommandPipeline threaded(int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("The queue capacity must be at least 1");
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Pushes every command of the reader through the stages and into the writer
+     * <p/>
+     * Neither the reader or the writer are closed
+     *
+     * @param reader - where the commands come from
+     * @param writer - where the commands end up
+     * @throws PclCommandPipelineException when any of the stages, the reader or the writer fail
+     */
+    public void run(PclCommandReader reader, PclCommandWriter writer) throws PclCommandPipelineException {
+        stageNanos = new long[filters.size()];
+        stageCommandCounts = new long[filters.size()];
+        failure = null;
+        callerInterruptedByFailure = false;
+        if (queueCapacity == 0) {
+            runOnCurrentThread(reader, writer);
+        } else {
+            runOnSeparateThreads(reader, writer);
+        }
+    }
+
+    public int getStageCount() {
+        return filters.size();
+    }
+
+    /**
+     * The time spent in a stage during the last run
+     *
+     * @param stage - the index of the stage
+     * @return the elapsed time in nanoseconds
+     */
+    public long getStageNanos(int stage) {
+        return stageNanos[stage];
+    }
+
+    /**
+     * The number of commands a stage produced during the last run
+     *
+     * @param stage - the index of the stage
+     * @return the number of commands
+     */
+    public long getStageCommandCount(int stage) {
+        return stageCommandCounts[stage];
+    }
+
+    private void runOnCurrentThread(PclCommandReader reader, PclCommandWriter writer) {
+        PclCommandBatch[] batches = new PclCommandBatch[filters.size() + 1];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new PclCommandBatch(batchSize);
+        }
+
+        try {
+            while (readBatch(reader, batches[0])) {
+                for (int i = 0; i < filters.size(); i++) {
+                    filterBatch(i, batches[i], batches[i + 1]);
+                }
+                writeBatch(writer, batches[filters.size()]);
+            }
+
+            for (int i = 0; i < filters.size(); i++) {
+                batches[i + 1].clear();
+                if (!batches[i].isEmpty()) {
+                    filterBatch(i, batches[i], batches[i + 1]);
+                }
+                flushStage(i, batches[i + 1]);
+            }
+            writeBatch(writer, batches[filters.size()]);
+        } catch (RuntimeException e) {
+            throw new PclCommandPipelineException("A problem occurred while running the pipeline", e);
+        }
+    }
+
+    private void runOnSeparateThreads(final PclCommandReader reader, PclCommandWriter writer) {
+        final List<BlockingQueue<PclCommandBatch>> queues = new ArrayList<BlockingQueue<PclCommandBatch>>();
+        for (int i = 0; i <= filters.size(); i++) {
+            queues.add(new ArrayBlockingQueue<PclCommandBatch>(queueCapacity));
+        }
+
+        threads = new ArrayList<Thread>();
+        threads.add(Thread.currentThread());
+        addThread("pcl4j-pipeline-reader", new Runnable() {
+            public void run() {
+                readIntoQueue(reader, queues.get(0));
+            }
+        });
+        for (int i = 0; i < filters.size(); i++) {
+            final int stage = i;
+            addThread("pcl4j-pipeline-stage-" + stage, new Runnable() {
+                public void run() {
+                    filterQueue(stage, queues.get(stage), queues.get(stage + 1));
+                }
+            });
+        }
+        for (int i = 1; i < threads.size(); i++) {
+            threads.get(i).start();
+        }
+
+        try {
+            BlockingQueue<PclCommandBatch> lastQueue = queues.get(filters.size());
+            PclCommandBatch batch;
+            while ((batch = lastQueue.take()) != END_OF_STREAM) {
+                writeBatch(writer, batch);
+            }
+            for (int i = 1; i < threads.size(); i++) {
+                threads.get(i).join();
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+
+        if (failure != null) {
+            if (callerInterruptedByFailure) {
+                Thread.interrupted();
+            }
+            if (failure instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new PclCommandPipelineException("A problem occurred while running the pipeline", failure);
+        }
+    }
+
+    private void addThread(String name, final Runnable work) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    work.run();
+                } catch (Throwable t) {
+                    fail(t);
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+    }
+
+    private void readIntoQueue(PclCommandReader reader, BlockingQueue<PclCommandBatch> output) {
+        try {
+            PclCommandBatch batch = new PclCommandBatch(batchSize);
+            while (readBatch(reader, batch)) {
+                output.put(batch);
+                batch = new PclCommandBatch(batchSize);
+            }
+            output.put(END_OF_STREAM);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void filterQueue(int stage, BlockingQueue<PclCommandBatch> input, BlockingQueue<PclCommandBatch> output) {
+        try {
+            PclCommandBatch batch;
+            while ((batch = input.take()) != END_OF_STREAM) {
+                PclCommandBatch result = new PclCommandBatch(batch.size());
+                filterBatch(stage, batch, result);
+                if (!result.isEmpty()) {
+                    output.put(result);
+                }
+            }
+
+            PclCommandBatch result = new PclCommandBatch(batchSize);
+            flushStage(stage, result);
+            if (!result.isEmpty()) {
+                output.put(result);
+            }
+            output.put(END_OF_STREAM);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(Throwable cause) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = cause;
+        }
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                if (thread == threads.get(0)) {
+                    callerInterruptedByFailure = true;
+                }
+                thread.interrupt();
+            }
+        }
+    }
+
+    private boolean readBatch(PclCommandReader reader, PclCommandBatch batch) {
+        batch.clear();
+        PclCommand command;
+        while (batch.size() < batchSize && (command = reader.nextCommand()) != null) {
+            batch.add(command);
+        }
+        return !batch.isEmpty();
+    }
+
+    private void filterBatch(int stage, PclCommandBatch input, PclCommandBatch output) {
+        output.clear();
+        long start = System.nanoTime();
+        filters.get(stage).filter(input, output);
+        stageNanos[stage] += System.nanoTime() - start;
+        stageCommandCounts[stage] += output.size();
+    }
+
+    private void flushStage(int stage, PclCommandBatch output) {
+        int sizeBefore = output.size();
+        long start = System.nanoTime();
+        filters.get(stage).flush(output);
+        stageNanos[stage] += System.nanoTime() - start;
+        stageCommandCounts[stage] += output.size() - sizeBefore;
+    }
+
+    private void writeBatch(PclCommandWriter writer, PclCommandBatch batch) {
+        PclCommand[] commands = batch.getCommands();
+        for (int i = 0; i < batch.size(); i++) {
+            writer.write(commands[i]);
+        }
+    }
+
+    /**
+     * Exception thrown when a problem occurs while running a PclCommandPipeline
+     */
+    public static class PclCommandPipelineException extends RuntimeException {
+        public PclCommandPipelineException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
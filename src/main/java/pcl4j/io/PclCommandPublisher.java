@@ -0,0 +1,182 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the commands of a reader to a reactive stream subscriber
+ * <p/>
+ * Commands are only read once they are requested, so nothing is held between the reader and the subscriber. The
+ * reading is done on the given executor a batch at a time: after handing out a batch the publisher gives the thread
+ * back to the executor and queues itself again when more commands are wanted, so a few threads can serve many jobs
+ * without one of them holding a thread for the whole job. Signals to the subscriber never overlap.
+ * <p/>
+ * A reader can only be read once, so the publisher takes a single subscriber. The reader is closed once all of its
+ * commands were published, reading failed or the subscription was cancelled.
+ * <p/>
+ * <pre>
+ * new PclCommandPublisher(new MappedFilePclCommandReader(file), executor).subscribe(new PclCommandWriterSubscriber(writer));
+ * </pre>
+ */
+public class PclCommandPublisher implements Flow.Publisher<PclCommand> {
+    /**
+     * The most commands published before the thread is given back when no other size is given
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final PclCommandReader reader;
+    private final Executor executor;
+    private final int batchSize;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public PclCommandPublisher(PclCommandReader reader, Executor executor) {
+        this(reader, executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param reader    - the reader to publish the commands of
+     * @param executor  - runs the reading
+     * @param batchSize - the most commands published before the thread is given back
+     * @throws IllegalArgumentException when the batch size is not positive
+     */
+    public PclCommandPublisher(PclCommandReader reader, Executor executor, int batchSize) throws IllegalArgumentException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive but was batchSize=[" + batchSize + "]");
+        }
+        this.reader = reader;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    public void subscribe(Flow.Subscriber<? super PclCommand> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("A 'null' subscriber was given");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The commands of a reader can only be published to one subscriber"));
+            return;
+        }
+        CommandSubscription subscription = new CommandSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Reads and hands out the requested commands, only one thread at a time runs it
+     */
+    private class CommandSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super PclCommand> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+
+        private CommandSubscription(Flow.Subscriber<? super PclCommand> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("The number of commands requested must be positive but was n=[" + n + "]");
+            } else {
+                long current;
+                do {
+                    current = demand.get();
+                } while (current != Long.MAX_VALUE && !demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            int missed = 1;
+            while (!done) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    finish();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+
+                long requested = demand.get();
+                int published = 0;
+                while (published < requested && published < batchSize && !cancelled) {
+                    PclCommand command;
+                    try {
+                        command = reader.nextCommand();
+                    } catch (RuntimeException e) {
+                        finish();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (command == null) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(command);
+                    } catch (RuntimeException e) {
+                        finish();
+                        throw e;
+                    }
+                    published++;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    requested = demand.addAndGet(-published);
+                }
+
+                if (published == batchSize && requested > 0 && !cancelled) {
+                    executor.execute(this);
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void finish() {
+            done = true;
+            reader.close();
+        }
+    }
+}
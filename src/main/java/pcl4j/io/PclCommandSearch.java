@@ -0,0 +1,308 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Looks for commands and text in many jobs at once ("grep" for PCL)
+ * <p/>
+ * Every job is mapped into memory and parsed with {@link ByteBufferPclCommandReader#parse(PclCommandHandler, long)},
+ * so commands are matched against the mapped bytes without PclCommands being built and only the values of
+ * commands that match a pattern are parsed. The jobs are searched on a ForkJoinPool, a job larger than the chunk
+ * size is split into chunks starting at an ESCAPE byte that are searched at the same time.
+ * <p/>
+ * A chunk can not know if its first ESCAPE byte starts a command or is part of binary data or a language section.
+ * Once its chunks are done, the chunks of a job are checked in order: a chunk is only kept when the chunk before it
+ * stopped right where it started, otherwise it is searched again from where the chunk before it stopped. The hits
+ * are the same as searching the job from start to end.
+ * <p/>
+ * <pre>
+ * PclCommandSearch search = new PclCommandSearch(new ForkJoinPool());
+ * for (PclCommandSearch.Hit hit : search.search(spoolDirectory, PclCommandPattern.command("&amp;l#X").atLeast(2))) {
+ *     System.out.println(hit);
+ * }
+ * </pre>
+ */
+public class PclCommandSearch {
+    /**
+     * The size of the chunks a job is split into when no other size is given
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final Comparator<Hit> BY_POSITION = new Comparator<Hit>() {
+        public int compare(Hit hit, Hit otherHit) {
+            return hit.position < otherHit.position ? -1 : hit.position > otherHit.position ? 1 : 0;
+        }
+    };
+
+    private final ForkJoinPool pool;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public PclCommandSearch(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Where a pattern was found
+     */
+    public static class Hit {
+        private final File file;
+        private final long position;
+        private final PclCommandPattern pattern;
+
+        public Hit(File file, long position, PclCommandPattern pattern) {
+            this.file = file;
+            this.position = position;
+            this.pattern = pattern;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * The location of the command or the first byte of the matching text
+         * <p/>
+         * Like {@link PclCommandHandler#parameterizedCommand}, a command read out of a combined command is located just
+         * after the previous parameter byte.
+         *
+         * @return the position in the file
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        public PclCommandPattern getPattern() {
+            return pattern;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + "@" + position + " " + pattern;
+        }
+    }
+
+    /**
+     * Changes the size of the chunks large jobs are split into
+     *
+     * @param chunkSize - the number of bytes in a chunk
+     * @throws IllegalArgumentException when the size is not positive
+     */
+    public void setChunkSize(long chunkSize) throws IllegalArgumentException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive but was chunkSize=[" + chunkSize + "]");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Searches every job in a directory (or the job given)
+     *
+     * @param directory - the directory of jobs, sub directories are not searched
+     * @param patterns  - the commands and text to look for
+     * @return the hits in the order of the files' names and then their positions
+     */
+    public List<Hit> search(File directory, PclCommandPattern... patterns) {
+        if (!directory.isDirectory()) {
+            return search(Collections.singletonList(directory), patterns);
+        }
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile();
+            }
+        });
+        Arrays.sort(files);
+        return search(Arrays.asList(files), patterns);
+    }
+
+    /**
+     * Searches the given jobs
+     *
+     * @param jobs     - the jobs to search
+     * @param patterns - the commands and text to look for
+     * @return the hits in the order of the jobs and then their positions
+     */
+    public List<Hit> search(List<File> jobs, PclCommandPattern... patterns) {
+        return pool.invoke(new JobsTask(jobs, patterns));
+    }
+
+    private static ByteBuffer map(File job) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(job, "r");
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while trying to map file=[" + job.getName() + "]", e);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // the mapping stays valid
+                }
+            }
+        }
+    }
+
+    private static int nextEscape(ByteBuffer job, long from) {
+        int position = (int) from;
+        while (position < job.capacity() && job.get(position) != PclUtil.ESCAPE) {
+            position++;
+        }
+        return position;
+    }
+
+    private class JobsTask extends RecursiveTask<List<Hit>> {
+        private final List<File> jobs;
+        private final PclCommandPattern[] patterns;
+
+        private JobsTask(List<File> jobs, PclCommandPattern[] patterns) {
+            this.jobs = jobs;
+            this.patterns = patterns;
+        }
+
+        @Override
+        protected List<Hit> compute() {
+            List<JobTask> tasks = new ArrayList<JobTask>(jobs.size());
+            for (File job : jobs) {
+                tasks.add(new JobTask(job, patterns));
+            }
+            invokeAll(tasks);
+            List<Hit> hits = new ArrayList<Hit>();
+            for (JobTask task : tasks) {
+                hits.addAll(task.join());
+            }
+            return hits;
+        }
+    }
+
+    private class JobTask extends RecursiveTask<List<Hit>> {
+        private final File job;
+        private final PclCommandPattern[] patterns;
+
+        private JobTask(File job, PclCommandPattern[] patterns) {
+            this.job = job;
+            this.patterns = patterns;
+        }
+
+        @Override
+        protected List<Hit> compute() {
+            ByteBuffer buffer = map(job);
+            List<ChunkTask> chunks = new ArrayList<ChunkTask>();
+            long start = 0;
+            while (start < buffer.capacity()) {
+                long end = Math.min(buffer.capacity(), nextEscape(buffer, start + chunkSize));
+                chunks.add(new ChunkTask(job, buffer, patterns, start, end));
+                start = end;
+            }
+            if (chunks.size() > 1) {
+                invokeAll(chunks);
+            } else if (chunks.size() == 1) {
+                chunks.get(0).invoke();
+            }
+
+            List<Hit> hits = new ArrayList<Hit>();
+            long expected = 0;
+            for (ChunkTask chunk : chunks) {
+                if (chunk.start == expected) {
+                    hits.addAll(chunk.join());
+                    expected = chunk.next;
+                } else if (expected < chunk.end) {
+                    ChunkTask rescan = new ChunkTask(job, buffer, patterns, expected, chunk.end);
+                    hits.addAll(rescan.compute());
+                    expected = rescan.next;
+                }
+            }
+            Collections.sort(hits, BY_POSITION);
+            return hits;
+        }
+    }
+
+    /**
+     * Searches the commands starting in a range of a job
+     */
+    private static class ChunkTask extends RecursiveTask<List<Hit>> implements PclCommandHandler {
+        private final File job;
+        private final ByteBuffer buffer;
+        private final PclCommandPattern[] patterns;
+        private final long start;
+        private final long end;
+        private final PclValueParser valueParser = new PclValueParser();
+        private final List<Hit> hits = new ArrayList<Hit>();
+        private long next;
+
+        private ChunkTask(File job, ByteBuffer buffer, PclCommandPattern[] patterns, long start, long end) {
+            this.job = job;
+            this.buffer = buffer;
+            this.patterns = patterns;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Hit> compute() {
+            ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(buffer.duplicate());
+            reader.skip(start);
+            next = reader.parse(this, end);
+            return hits;
+        }
+
+        public void twoByteCommand(long position, byte operation) {
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            terminator = (byte) Character.toUpperCase(terminator);
+            for (PclCommandPattern pattern : patterns) {
+                if (!pattern.isText() && pattern.matches(parameterized, group, terminator, buffer, valuePosition, valueLength, valueParser)) {
+                    hits.add(new Hit(job, position, pattern));
+                }
+            }
+            if (parameterized == '&' && group == 'p' && terminator == 'X') {
+                textCommand(dataPosition, dataLength);
+            }
+        }
+
+        public void textCommand(long position, int length) {
+            int textEnd = (int) (position + length);
+            for (PclCommandPattern pattern : patterns) {
+                if (pattern.isText()) {
+                    int match = pattern.indexOf(buffer, (int) position, textEnd);
+                    while (match >= 0) {
+                        hits.add(new Hit(job, match, pattern));
+                        match = pattern.indexOf(buffer, match + pattern.getTextLength(), textEnd);
+                    }
+                }
+            }
+        }
+
+        public void languageSection(long position, String language, int length) {
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lets the commands of a job held in a buffer (or a mapped file) be processed with java.util.stream
+ * <p/>
+ * Splitting hands off the first half of the remaining bytes. The split is made where a command starts when the job
+ * is read from the start, found by walking the commands with {@link ByteBufferPclCommandReader#parse(PclCommandHandler, long)}
+ * which only skips over text and binary data, so the halves read exactly the commands (and positions) reading the
+ * whole job gives. Past the middle, a page boundary (ESC E, a universal exit or the command after a form feed) is
+ * looked for over the next quarter so most parts hold whole pages, otherwise the first command past the middle is
+ * used. The commands are then built by each part on its own, so a parallel stream parses the job in parallel.
+ * <p/>
+ * <pre>
+ * long fonts = PclCommandSpliterator.stream(new File("job.pcl"), true)
+ *         .filter(command -&gt; command instanceof ParameterizedCommand)
+ *         .count();
+ * </pre>
+ */
+public class PclCommandSpliterator implements Spliterator<PclCommand> {
+    /**
+     * The average number of bytes a command takes up in a job, used to estimate the number of commands
+     */
+    public static final int AVERAGE_COMMAND_LENGTH = 6;
+    private static final byte FORM_FEED = 12;
+
+    private final ByteBuffer buffer;
+    private long start;
+    private final long end;
+    private ByteBufferPclCommandReader reader;
+
+    /**
+     * Reads every command of a job held in a buffer
+     *
+     * @param buffer - the job, from its position up to its limit
+     */
+    public PclCommandSpliterator(ByteBuffer buffer) {
+        this(buffer, 0, buffer.remaining());
+    }
+
+    /**
+     * Reads the commands starting in a range of a job, positions count from the buffer's position
+     *
+     * @param buffer - the job, from its position up to its limit
+     * @param start  - the position of a command to start reading at
+     * @param end    - the position to stop reading at, a command starting before it is read whole
+     */
+    public PclCommandSpliterator(ByteBuffer buffer, long start, long end) {
+        this.buffer = buffer.slice();
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * A stream of the commands of a job held in a buffer
+     *
+     * @param buffer   - the job
+     * @param parallel - true for a parallel stream
+     * @return the stream
+     */
+    public static Stream<PclCommand> stream(ByteBuffer buffer, boolean parallel) {
+        return StreamSupport.stream(new PclCommandSpliterator(buffer), parallel);
+    }
+
+    /**
+     * A stream of the commands of a job, the file is mapped into memory
+     *
+     * @param job      - the PCL job
+     * @param parallel - true for a parallel stream
+     * @return the stream
+     */
+    public static Stream<PclCommand> stream(File job, boolean parallel) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(job, "r");
+            FileChannel channel = file.getChannel();
+            return stream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), parallel);
+        } catch (IOException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while trying to map file=[" + job.getName() + "]", e);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // the mapping stays valid
+                }
+            }
+        }
+    }
+
+    public boolean tryAdvance(Consumer<? super PclCommand> action) {
+        if (reader == null) {
+            reader = new ByteBufferPclCommandReader(buffer.duplicate());
+            reader.skip(start);
+        }
+        PclCommand command = reader.nextCommand(end);
+        if (command == null) {
+            return false;
+        }
+        action.accept(command);
+        return true;
+    }
+
+    /**
+     * Hands off the commands starting in the first half of the remaining bytes
+     *
+     * @return the first half or null when reading has started or the range is too small to split
+     */
+    public Spliterator<PclCommand> trySplit() {
+        if (reader != null || end - start < AVERAGE_COMMAND_LENGTH * 2) {
+            return null;
+        }
+        long split = findSplit(start + (end - start) / 2, end - (end - start) / 4);
+        if (split <= start || split >= end) {
+            return null;
+        }
+        Spliterator<PclCommand> firstHalf = new PclCommandSpliterator(buffer, start, split);
+        start = split;
+        return firstHalf;
+    }
+
+    public long estimateSize() {
+        return (end - start + AVERAGE_COMMAND_LENGTH - 1) / AVERAGE_COMMAND_LENGTH;
+    }
+
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Walks the commands to the first one starting at or after the middle, then on to a page boundary
+     */
+    private long findSplit(long middle, long pageBoundaryLimit) {
+        ByteBufferPclCommandReader walker = new ByteBufferPclCommandReader(buffer.duplicate());
+        walker.skip(start);
+        BoundaryHandler handler = new BoundaryHandler();
+        long firstCommand = walker.parse(handler, middle);
+        handler.lookForPages = true;
+        long position = firstCommand;
+        while (position < pageBoundaryLimit) {
+            handler.pageBoundary = -1;
+            long next = walker.parse(handler, position + 1);
+            if (handler.pageBoundary >= 0 && handler.pageBoundary < end) {
+                return handler.pageBoundary;
+            }
+            if (next == position) {
+                break;
+            }
+            position = next;
+        }
+        return firstCommand;
+    }
+
+    private class BoundaryHandler implements PclCommandHandler {
+        private boolean lookForPages;
+        private long pageBoundary = -1;
+
+        public void twoByteCommand(long position, byte operation) {
+            if (lookForPages && operation == 'E') {
+                pageBoundary = position;
+            }
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            if (lookForPages && parameterized == '%' && group == '-' && terminator == 'X' && pageBoundary < 0) {
+                pageBoundary = position;
+            }
+        }
+
+        public void textCommand(long position, int length) {
+            if (!lookForPages) {
+                return;
+            }
+            for (int i = (int) position; i < position + length; i++) {
+                if (buffer.get(i) == FORM_FEED) {
+                    pageBoundary = position + length;
+                    return;
+                }
+            }
+        }
+
+        public void languageSection(long position, String language, int length) {
+        }
+    }
+}
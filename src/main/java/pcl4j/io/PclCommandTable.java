@@ -0,0 +1,422 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the commands of an entire job in a compact, column oriented form
+ * <p/>
+ * Instead of a PclCommand object per command, every attribute of a command is kept in its own array
+ * (positions, kinds, parameterized/group/terminator bytes). Values are copied into one shared byte array and
+ * binary data, text and language sections are only kept as locations in the source buffer. Any command can be
+ * looked up by its index and a {@link Cursor} can walk the commands without creating any objects.
+ * <p/>
+ * The table is filled straight from a ByteBufferPclCommandReader, no PclCommands are created while building it.
+ */
+public class PclCommandTable {
+    public static final byte TEXT = 0;
+    public static final byte TWO_BYTE = 1;
+    public static final byte PARAMETERIZED = 2;
+    public static final byte LANGUAGE_SECTION = 3;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private final ByteBuffer source;
+    private final PclCommandFactory pclCommandFactory = new PclCommandFactory();
+    private int size = 0;
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private byte[] parameterizedBytes = new byte[INITIAL_CAPACITY];
+    private byte[] groupBytes = new byte[INITIAL_CAPACITY];
+    private byte[] terminatorBytes = new byte[INITIAL_CAPACITY];
+    private int[] valueOffsets = new int[INITIAL_CAPACITY + 1];
+    private int[] payloadOffsets = new int[INITIAL_CAPACITY];
+    private int[] payloadLengths = new int[INITIAL_CAPACITY];
+    private byte[] values = new byte[INITIAL_CAPACITY * 2];
+    private int valuesEnd = 0;
+
+    private PclCommandTable(ByteBuffer source) {
+        this.source = source;
+    }
+
+    /**
+     * Builds a table from the remaining commands of the reader
+     *
+     * @param reader - the reader to parse the commands with
+     * @return a table of the commands
+     */
+    public static PclCommandTable build(ByteBufferPclCommandReader reader) {
+        PclCommandTable table = new PclCommandTable(reader.getContents());
+        reader.parse(table.new Builder());
+        return table;
+    }
+
+    /**
+     * Builds a table of all the commands in the given bytes
+     *
+     * @param contents - the entire contents of a PCL file
+     * @return a table of the commands
+     */
+    public static PclCommandTable build(byte[] contents) {
+        return build(new ByteBufferPclCommandReader(contents));
+    }
+
+    /**
+     * Builds a table of all the commands in the given file, the file is mapped into memory
+     *
+     * @param file - the PCL file
+     * @return a table of the commands
+     */
+    public static PclCommandTable build(File file) {
+        MappedFilePclCommandReader reader = new MappedFilePclCommandReader(file);
+        try {
+            return build(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The number of commands in the table
+     *
+     * @return the number of commands
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The kind of command at the given index
+     *
+     * @param index - the index of the command
+     * @return TEXT, TWO_BYTE, PARAMETERIZED or LANGUAGE_SECTION
+     */
+    public byte getKind(int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+
+    public long getPosition(int index) {
+        checkIndex(index);
+        return positions[index];
+    }
+
+    /**
+     * The parameterized byte of a parameterized command or the operation of a 2 byte command
+     *
+     * @param index - the index of the command
+     * @return the parameterized byte
+     */
+    public byte getParameterizedByte(int index) {
+        checkIndex(index);
+        return parameterizedBytes[index];
+    }
+
+    public byte getGroupByte(int index) {
+        checkIndex(index);
+        return groupBytes[index];
+    }
+
+    public byte getTerminatorByte(int index) {
+        checkIndex(index);
+        return terminatorBytes[index];
+    }
+
+    public int getValueLength(int index) {
+        checkIndex(index);
+        return valueOffsets[index + 1] - valueOffsets[index];
+    }
+
+    /**
+     * Copies the value bytes of a command into the given array
+     *
+     * @param index       - the index of the command
+     * @param destination - where to copy the value to
+     * @param offset      - the index in the destination to start at
+     * @return the number of bytes copied
+     */
+    public int copyValue(int index, byte[] destination, int offset) {
+        int length = getValueLength(index);
+        System.arraycopy(values, valueOffsets[index], destination, offset, length);
+        return length;
+    }
+
+    /**
+     * The number of bytes of binary data, text or language section belonging to the command
+     *
+     * @param index - the index of the command
+     * @return the number of bytes
+     */
+    public int getPayloadLength(int index) {
+        checkIndex(index);
+        return payloadLengths[index];
+    }
+
+    /**
+     * A read-only view of the binary data, text or language section of the command, nothing is copied
+     *
+     * @param index - the index of the command
+     * @return a buffer of just the payload
+     */
+    public ByteBuffer getPayload(int index) {
+        checkIndex(index);
+        ByteBuffer payload = source.duplicate();
+        payload.limit(payloadOffsets[index] + payloadLengths[index]);
+        payload.position(payloadOffsets[index]);
+        return payload.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Builds a PclCommand for the command at the given index
+     *
+     * @param index - the index of the command
+     * @return a new PclCommand
+     */
+    public PclCommand toCommand(int index) {
+        checkIndex(index);
+        long position = positions[index];
+        switch (kinds[index]) {
+            case TWO_BYTE:
+                return pclCommandFactory.buildTwoByteCommand(position, parameterizedBytes[index]);
+            case PARAMETERIZED:
+                byte[] value = new byte[getValueLength(index)];
+                copyValue(index, value, 0);
+                return pclCommandFactory.buildParameterizedCommand(position, parameterizedBytes[index], groupBytes[index],
+                        value, terminatorBytes[index], copyPayload(index));
+            case LANGUAGE_SECTION:
+                return pclCommandFactory.buildLanguageSectionCommand(position, getLanguage(index), source,
+                        payloadOffsets[index], payloadLengths[index]);
+            default:
+                return pclCommandFactory.buildTextCommand(position, copyPayload(index));
+        }
+    }
+
+    /**
+     * Creates a cursor positioned before the first command
+     *
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private String getLanguage(int index) {
+        return new String(values, valueOffsets[index], getValueLength(index));
+    }
+
+    private byte[] copyPayload(int index) {
+        byte[] payload = new byte[payloadLengths[index]];
+        getPayload(index).get(payload);
+        return payload;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=[" + index + "], size=[" + size + "]");
+        }
+    }
+
+    private void add(byte kind, long position, byte parameterized, byte group, byte terminator, long payloadPosition, int payloadLength) {
+        if (size == positions.length) {
+            grow();
+        }
+        kinds[size] = kind;
+        positions[size] = position;
+        parameterizedBytes[size] = parameterized;
+        groupBytes[size] = group;
+        terminatorBytes[size] = terminator;
+        payloadOffsets[size] = (int) payloadPosition;
+        payloadLengths[size] = payloadLength;
+        valueOffsets[size + 1] = valuesEnd;
+        size++;
+    }
+
+    private void addValueByte(byte value) {
+        if (valuesEnd == values.length) {
+            values = copyOf(values, values.length + values.length / 2);
+        }
+        values[valuesEnd++] = value;
+    }
+
+    private void grow() {
+        int capacity = positions.length + positions.length / 2;
+        long[] newPositions = new long[capacity];
+        System.arraycopy(positions, 0, newPositions, 0, size);
+        positions = newPositions;
+        kinds = copyOf(kinds, capacity);
+        parameterizedBytes = copyOf(parameterizedBytes, capacity);
+        groupBytes = copyOf(groupBytes, capacity);
+        terminatorBytes = copyOf(terminatorBytes, capacity);
+        valueOffsets = copyOf(valueOffsets, capacity + 1);
+        payloadOffsets = copyOf(payloadOffsets, capacity);
+        payloadLengths = copyOf(payloadLengths, capacity);
+    }
+
+    private static byte[] copyOf(byte[] array, int capacity) {
+        byte[] copy = new byte[capacity];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, capacity));
+        return copy;
+    }
+
+    private static int[] copyOf(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, capacity));
+        return copy;
+    }
+
+    /**
+     * Fills the table from the commands found by a reader
+     */
+    private class Builder implements PclCommandHandler {
+        public void twoByteCommand(long position, byte operation) {
+            add(TWO_BYTE, position, operation, (byte) 0, (byte) 0, position, 0);
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            for (int i = 0; i < valueLength; i++) {
+                addValueByte(source.get((int) valuePosition + i));
+            }
+            add(PARAMETERIZED, position, parameterized, group, terminator, dataPosition, dataLength);
+        }
+
+        public void textCommand(long position, int length) {
+            add(TEXT, position, (byte) 0, (byte) 0, (byte) 0, position, length);
+        }
+
+        public void languageSection(long position, String language, int length) {
+            byte[] name = language.getBytes();
+            for (int i = 0; i < name.length; i++) {
+                addValueByte(name[i]);
+            }
+            add(LANGUAGE_SECTION, position, (byte) 0, (byte) 0, (byte) 0, position, length);
+        }
+    }
+
+    /**
+     * A flyweight view of one command of the table at a time
+     * <p/>
+     * <pre>
+     * PclCommandTable.Cursor cursor = table.cursor();
+     * while (cursor.next()) {
+     *     if (cursor.getKind() == PclCommandTable.PARAMETERIZED) ...
+     * }
+     * </pre>
+     */
+    public class Cursor {
+        private final PclValueParser valueParser = new PclValueParser();
+        private int index = -1;
+
+        /**
+         * Moves to the next command
+         *
+         * @return true - moved to the next command<br/>false - there are no more commands
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        /**
+         * Moves to the command at the given index
+         *
+         * @param index - the index of the command
+         */
+        public void moveTo(int index) {
+            checkIndex(index);
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public byte getKind() {
+            return kinds[current()];
+        }
+
+        public long getPosition() {
+            return positions[current()];
+        }
+
+        public byte getParameterizedByte() {
+            return parameterizedBytes[current()];
+        }
+
+        public byte getGroupByte() {
+            return groupBytes[current()];
+        }
+
+        public byte getTerminatorByte() {
+            return terminatorBytes[current()];
+        }
+
+        public int getValueLength() {
+            return PclCommandTable.this.getValueLength(current());
+        }
+
+        public byte getValueByte(int valueIndex) {
+            return values[valueOffsets[current()] + valueIndex];
+        }
+
+        /**
+         * The value of the current command scaled by PclValueParser.SCALE
+         *
+         * @return the scaled value
+         */
+        public long getScaledValue() {
+            int start = valueOffsets[current()];
+            int end = valueOffsets[index + 1];
+            valueParser.reset();
+            for (int i = start; i < end; i++) {
+                valueParser.append(values[i]);
+            }
+            return valueParser.getScaledValue();
+        }
+
+        /**
+         * The value of the current command with any decimal places truncated
+         *
+         * @return the whole number part of the value
+         */
+        public int getIntValue() {
+            return (int) (getScaledValue() / PclValueParser.SCALE);
+        }
+
+        public int getPayloadLength() {
+            return payloadLengths[current()];
+        }
+
+        public ByteBuffer getPayload() {
+            return PclCommandTable.this.getPayload(current());
+        }
+
+        public PclCommand toCommand() {
+            return PclCommandTable.this.toCommand(current());
+        }
+
+        private int current() {
+            if (index < 0 || index >= size) {
+                throw new IllegalStateException("The cursor is not on a command. index=[" + index + "]");
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes the commands of a reactive stream to a PclCommandWriter
+ * <p/>
+ * Commands are requested a batch at a time and the next batch is only requested once the last one was written, so
+ * a slow writer holds the publisher back. The writer is closed once the stream completes or fails, and a failure
+ * to write cancels the subscription.
+ */
+public class PclCommandWriterSubscriber implements Flow.Subscriber<PclCommand> {
+    private final PclCommandWriter writer;
+    private final int batchSize;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+    private int written;
+    private volatile Throwable failure;
+
+    public PclCommandWriterSubscriber(PclCommandWriter writer) {
+        this(writer, PclCommandPublisher.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param writer    - where to write the commands to
+     * @param batchSize - the number of commands requested at a time
+     * @throws IllegalArgumentException when the batch size is not positive
+     */
+    public PclCommandWriterSubscriber(PclCommandWriter writer, int batchSize) throws IllegalArgumentException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive but was batchSize=[" + batchSize + "]");
+        }
+        this.writer = writer;
+        this.batchSize = batchSize;
+    }
+
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(batchSize);
+    }
+
+    public void onNext(PclCommand command) {
+        if (finished.getCount() == 0) {
+            return;
+        }
+        try {
+            writer.write(command);
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            finish(e);
+            return;
+        }
+        if (++written == batchSize) {
+            written = 0;
+            subscription.request(batchSize);
+        }
+    }
+
+    public void onError(Throwable throwable) {
+        finish(throwable);
+    }
+
+    public void onComplete() {
+        finish(null);
+    }
+
+    /**
+     * Blocks until the stream completes or fails
+     *
+     * @throws InterruptedException      when interrupted while waiting
+     * @throws PclCommandWriter.PclCommandWriterException when the stream failed or a command could not be written
+     */
+    public void await() throws InterruptedException {
+        finished.await();
+        if (failure != null) {
+            throw new PclCommandWriter.PclCommandWriterException("The commands could not all be written", failure);
+        }
+    }
+
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    private void finish(Throwable throwable) {
+        if (finished.getCount() == 0) {
+            return;
+        }
+        failure = throwable;
+        try {
+            writer.close();
+        } finally {
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Spreads jobs over a pool of printers, every printer printing on a thread of its own
+ * <p/>
+ * Printers are grouped in classes (ex. "mono", "color") and a job is only printed by a printer of the class it is
+ * submitted to. The pages of a job are counted with {@link PclPageCounter} when submitted, its cost being its
+ * length plus {@link #setPageCost(long) a cost for every page}. It is queued on the printer of its class with the
+ * least cost queued. A printer with nothing left to print takes the last part queued on the busiest printer of its
+ * class, so a slow printer does not hold up the jobs queued behind it.
+ * <p/>
+ * A job with more pages than {@link #setSplitPages(int)} is split into parts of that many pages at page boundaries,
+ * each written as a job of its own by {@link PclPageExtractor}, so the parts print on several printers at once. Only
+ * a job being split is indexed with {@link PclPageIndex}.
+ * <p/>
+ * <pre>
+ * PclJobScheduler scheduler = new PclJobScheduler();
+ * scheduler.addPrinter("printer-1", "mono", new PclJobScheduler.Destination() {
+ *     public PclCommandWriter open() {
+ *         return printers.open(new InetSocketAddress("printer-1", PrinterSocketSelector.DEFAULT_PORT));
+ *     }
+ * });
+ * for (PclJobScheduler.Part part : scheduler.submit(new File("statements.pcl"), "mono")) {
+ *     part.await();
+ * }
+ * </pre>
+ */
+public class PclJobScheduler implements Closeable {
+    /**
+     * The cost given to every page when no other cost is given, in bytes
+     */
+    public static final long DEFAULT_PAGE_COST = 64 * 1024;
+
+    private final List<Printer> printers = new ArrayList<Printer>();
+    private final PclPageExtractor extractor = new PclPageExtractor();
+    private long pageCost = DEFAULT_PAGE_COST;
+    private int splitPages = Integer.MAX_VALUE;
+    private boolean open = true;
+
+    /**
+     * Makes the writer a part is printed with, one writer is opened for every part and closed once it was written
+     */
+    public interface Destination {
+        PclCommandWriter open();
+    }
+
+    /**
+     * A range of pages of a job (or all of it) printed by one printer
+     */
+    public static class Part {
+        private final File job;
+        private final PclPageIndex index;
+        private final int firstPage;
+        private final int lastPage;
+        private final boolean wholeJob;
+        private final long cost;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile String printer;
+        private volatile RuntimeException failure;
+
+        private Part(File job, PclPageIndex index, int firstPage, int lastPage, boolean wholeJob, long cost) {
+            this.job = job;
+            this.index = index;
+            this.firstPage = firstPage;
+            this.lastPage = lastPage;
+            this.wholeJob = wholeJob;
+            this.cost = cost;
+        }
+
+        public File getJob() {
+            return job;
+        }
+
+        public int getFirstPage() {
+            return firstPage;
+        }
+
+        public int getLastPage() {
+            return lastPage;
+        }
+
+        /**
+         * @return the estimated cost of printing the part
+         */
+        public long getCost() {
+            return cost;
+        }
+
+        /**
+         * @return the name of the printer that printed the part, null until it was printed
+         */
+        public String getPrinter() {
+            return done.getCount() == 0 ? printer : null;
+        }
+
+        /**
+         * Waits until the part was printed
+         *
+         * @throws PclCommandWriter.PclCommandWriterException when printing the part failed
+         * @throws InterruptedException                     when interrupted while waiting
+         */
+        public void await() throws InterruptedException {
+            done.await();
+            if (failure != null) {
+                throw new PclCommandWriter.PclCommandWriterException("A problem has occurred while printing " + this
+                        + " on printer=[" + printer + "]", failure);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return job.getName() + " pages " + firstPage + "-" + lastPage;
+        }
+    }
+
+    /**
+     * Changes the cost given to every page, in bytes
+     *
+     * @param pageCost - the cost of a page compared to a byte of the job
+     */
+    public void setPageCost(long pageCost) {
+        this.pageCost = pageCost;
+    }
+
+    /**
+     * Splits jobs with more than the given number of pages into parts of that many pages
+     *
+     * @param splitPages - the most pages in a part
+     * @throws IllegalArgumentException when the number is not positive
+     */
+    public void setSplitPages(int splitPages) throws IllegalArgumentException {
+        if (splitPages < 1) {
+            throw new IllegalArgumentException("The pages in a part must be positive but was splitPages=[" + splitPages + "]");
+        }
+        this.splitPages = splitPages;
+    }
+
+    /**
+     * Adds a printer to the pool and starts its thread
+     *
+     * @param name         - the name of the printer
+     * @param printerClass - the class of printers it belongs to
+     * @param destination  - opens a writer to the printer
+     */
+    public synchronized void addPrinter(String name, String printerClass, Destination destination) {
+        if (!open) {
+            throw new IllegalStateException("The scheduler is closed");
+        }
+        Printer printer = new Printer(name, printerClass, destination);
+        printers.add(printer);
+        printer.thread.start();
+    }
+
+    /**
+     * Counts the pages of the job and queues its parts on the printers of the given class
+     *
+     * @param job          - the PCL job
+     * @param printerClass - the class of printers to print it on
+     * @return the parts the job was split into, a single part when the job was not split
+     * @throws IllegalArgumentException when no printer of the class was added
+     */
+    public List<Part> submit(File job, String printerClass) throws IllegalArgumentException {
+        PclPageCounter counter = new PclPageCounter();
+        counter.count(job);
+        long pageCount = counter.getPageCount();
+        List<Part> parts = new ArrayList<Part>();
+        if (pageCount <= splitPages) {
+            parts.add(new Part(job, null, 1, (int) pageCount, true, job.length() + pageCount * pageCost));
+        } else {
+            PclPageIndex index = PclPageIndex.build(job);
+            int indexedPageCount = index.getPageCount();
+            for (int first = 1; first <= indexedPageCount; first += splitPages) {
+                int last = Math.min(indexedPageCount, first + splitPages - 1);
+                long length = index.getPageEnd(last) - index.getPageStart(first) + index.getHeaderLength();
+                parts.add(new Part(job, index, first, last, false, length + (last - first + 1) * pageCost));
+            }
+        }
+        synchronized (this) {
+            if (!open) {
+                throw new IllegalStateException("The scheduler is closed");
+            }
+            List<Printer> candidates = printersOf(printerClass);
+            if (candidates.isEmpty()) {
+                throw new IllegalArgumentException("No printer of class=[" + printerClass + "] was added");
+            }
+            for (Part part : parts) {
+                Printer leastBusy = candidates.get(0);
+                for (Printer printer : candidates) {
+                    if (printer.queuedCost < leastBusy.queuedCost) {
+                        leastBusy = printer;
+                    }
+                }
+                leastBusy.queue.addLast(part);
+                leastBusy.queuedCost += part.cost;
+            }
+            notifyAll();
+        }
+        return Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * Waits for every part queued to be printed, then stops the printers' threads
+     */
+    public void close() {
+        List<Printer> stopping;
+        synchronized (this) {
+            open = false;
+            notifyAll();
+            stopping = new ArrayList<Printer>(printers);
+        }
+        boolean interrupted = false;
+        for (Printer printer : stopping) {
+            while (printer.thread.isAlive()) {
+                try {
+                    printer.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Printer> printersOf(String printerClass) {
+        List<Printer> candidates = new ArrayList<Printer>();
+        for (Printer printer : printers) {
+            if (printer.printerClass.equals(printerClass)) {
+                candidates.add(printer);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Takes the next part for a printer, its own or one stolen from the busiest printer of its class
+     *
+     * @return the part or null once the scheduler is closed and nothing is left to print
+     */
+    private synchronized Part nextPart(Printer printer) throws InterruptedException {
+        while (true) {
+            if (!printer.queue.isEmpty()) {
+                return printer.queue.removeFirst();
+            }
+            Printer busiest = null;
+            for (Printer other : printersOf(printer.printerClass)) {
+                if (!other.queue.isEmpty() && (busiest == null || other.queuedCost > busiest.queuedCost)) {
+                    busiest = other;
+                }
+            }
+            if (busiest != null) {
+                Part part = busiest.queue.removeLast();
+                busiest.queuedCost -= part.cost;
+                printer.queuedCost += part.cost;
+                return part;
+            }
+            if (!open) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    private synchronized void printed(Printer printer, Part part) {
+        printer.queuedCost -= part.cost;
+    }
+
+    private void print(Part part, PclCommandWriter writer) throws IOException {
+        PclPushParser parser = new PclPushParser(writer);
+        ParsingChannel target = new ParsingChannel(parser);
+        if (part.wholeJob) {
+            RandomAccessFile file = new RandomAccessFile(part.job, "r");
+            try {
+                PclPageIndex.transfer(file.getChannel(), 0, file.length(), target);
+            } finally {
+                file.close();
+            }
+        } else {
+            extractor.extract(part.job, part.index, part.firstPage, part.lastPage, target);
+        }
+        parser.endOfInput();
+    }
+
+    private class Printer implements Runnable {
+        private final String name;
+        private final String printerClass;
+        private final Destination destination;
+        private final LinkedList<Part> queue = new LinkedList<Part>();
+        private final Thread thread;
+        private long queuedCost;
+
+        private Printer(String name, String printerClass, Destination destination) {
+            this.name = name;
+            this.printerClass = printerClass;
+            this.destination = destination;
+            thread = new Thread(this, "printer-" + name);
+            thread.setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                Part part;
+                while ((part = nextPart(this)) != null) {
+                    part.printer = name;
+                    try {
+                        PclCommandWriter writer = destination.open();
+                        try {
+                            print(part, writer);
+                        } finally {
+                            writer.close();
+                        }
+                    } catch (IOException e) {
+                        part.failure = new PclCommandReader.PclCommandReaderException("A problem occurred while trying to read " + part, e);
+                    } catch (RuntimeException e) {
+                        part.failure = e;
+                    } finally {
+                        printed(this, part);
+                        part.done.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Parses the bytes written to it, handing the commands to the printer's writer
+     */
+    private static class ParsingChannel implements WritableByteChannel {
+        private final PclPushParser parser;
+
+        private ParsingChannel(PclPushParser parser) {
+            this.parser = parser;
+        }
+
+        public int write(ByteBuffer source) {
+            int count = source.remaining();
+            parser.feed(source);
+            return count;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,673 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the pages of a job without building any commands
+ * <p/>
+ * The job is scanned with the same grammar as the {@link ByteBufferPclCommandReader}, but nothing is copied or
+ * queued: text is skipped 8 bytes at a time looking for ESCAPE and form feeds, values are parsed in place and
+ * binary data is jumped over. Pages are counted the way {@link PclPrinterStateMachine} finds them. Along with the
+ * pages it counts the impressions (the pages times the copies in effect when they are ejected, ESC&amp;l#X or PJL
+ * COPIES and QTY), the pages printed in duplex (ESC&amp;l#S or PJL DUPLEX) and the pages with raster graphics.
+ * <p/>
+ * {@link #countInParallel(ByteBuffer, int, ExecutorService)} scans chunks of the job at the same time. Each chunk
+ * is scanned as if it started with text and reduced to the few events that change the counts (marks, ejects,
+ * settings), which are then replayed in order. A chunk whose start turns out to be in the middle of a command,
+ * binary data, HP-GL/2 or a macro definition is scanned again from where the previous chunk really ended.
+ * <p/>
+ * <pre>
+ * PclPageCounter counter = new PclPageCounter();
+ * counter.count(new File("job.pcl"));
+ * long pages = counter.getPageCount();
+ * </pre>
+ */
+public class PclPageCounter {
+    private static final int MARK = 0;
+    private static final int RASTER = 1;
+    private static final int FORM_FEED = 2;
+    private static final int EJECT = 3;
+    private static final int RESET = 4;
+    private static final int JOB = 5;
+    private static final int LANGUAGE_SECTION = 6;
+    private static final int COPIES = 7;
+    private static final int PAGE_SIZE = 8;
+    private static final int ORIENTATION = 9;
+    private static final int DUPLEX = 10;
+    private static final int PJL_COPIES = 11;
+    private static final int PJL_QUANTITY = 12;
+    private static final int PJL_DUPLEX = 13;
+
+    private static final byte FORM_FEED_BYTE = 12;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long ESCAPES = ONES * PclUtil.ESCAPE;
+    private static final long FORM_FEEDS = ONES * FORM_FEED_BYTE;
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final Tally tally = new Tally();
+
+    /**
+     * Counts the pages of the job, the file is mapped into memory
+     *
+     * @param job - the PCL job
+     */
+    public void count(File job) {
+        count(map(job));
+    }
+
+    /**
+     * Counts the pages of the job
+     *
+     * @param job - the contents of the job from position 0 up to its limit
+     */
+    public void count(ByteBuffer job) {
+        tally.reset();
+        new Scanner(job, tally).scan(0, job.limit());
+        tally.finish();
+    }
+
+    /**
+     * Counts the pages of the job scanning chunks of it at the same time, the file is mapped into memory
+     *
+     * @param job        - the PCL job
+     * @param chunkCount - the number of chunks to split the job into
+     * @param executor   - runs the scans of the chunks
+     */
+    public void countInParallel(File job, int chunkCount, ExecutorService executor) {
+        countInParallel(map(job), chunkCount, executor);
+    }
+
+    /**
+     * Counts the pages of the job scanning chunks of it at the same time
+     *
+     * @param job        - the contents of the job from position 0 up to its limit
+     * @param chunkCount - the number of chunks to split the job into
+     * @param executor   - runs the scans of the chunks
+     */
+    public void countInParallel(final ByteBuffer job, int chunkCount, ExecutorService executor) {
+        if (chunkCount < 1) throw new IllegalArgumentException("There must be at least 1 chunk");
+        final int[] bounds = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            bounds[i] = (int) ((long) job.limit() * i / chunkCount);
+        }
+        List<Future<Chunk>> chunks = new ArrayList<Future<Chunk>>();
+        for (int i = 0; i < chunkCount; i++) {
+            final int chunk = i;
+            chunks.add(executor.submit(new Callable<Chunk>() {
+                public Chunk call() {
+                    Chunk result = new Chunk();
+                    result.scanner = new Scanner(job, result);
+                    result.end = result.scanner.scan(bounds[chunk], bounds[chunk + 1]);
+                    return result;
+                }
+            }));
+        }
+
+        tally.reset();
+        Scanner scanner = new Scanner(job, tally);
+        int position = 0;
+        try {
+            for (int i = 0; i < chunkCount; i++) {
+                Chunk chunk = chunks.get(i).get();
+                if (position == bounds[i] && scanner.isInText()) {
+                    chunk.replay(tally);
+                    scanner.continueFrom(chunk.scanner);
+                    position = chunk.end;
+                } else {
+                    position = scanner.scan(position, bounds[i + 1]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PclCommandReader.PclCommandReaderException("Interrupted while counting pages", e);
+        } catch (ExecutionException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while counting pages", e.getCause());
+        } finally {
+            for (Future<Chunk> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+        tally.finish();
+    }
+
+    public long getPageCount() {
+        return tally.pages;
+    }
+
+    /**
+     * The number of pages printed counting every copy
+     *
+     * @return the number of impressions
+     */
+    public long getImpressionCount() {
+        return tally.impressions;
+    }
+
+    /**
+     * The number of copies printed of the last page
+     *
+     * @return the number of copies, 1 when the job has no pages
+     */
+    public long getCopies() {
+        return tally.lastCopies;
+    }
+
+    public long getDuplexPageCount() {
+        return tally.duplexPages;
+    }
+
+    /**
+     * The number of pages that have raster graphics on them (ESC*b#W, ESC*b#V)
+     *
+     * @return the number of pages
+     */
+    public long getRasterPageCount() {
+        return tally.rasterPages;
+    }
+
+    private static ByteBuffer map(File job) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(job, "r");
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } catch (IOException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while trying to map file=[" + job.getName() + "]", e);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private interface EventSink {
+        void event(int type, long value);
+    }
+
+    /**
+     * Turns the events into counts, following the state the counts depend on
+     */
+    private static class Tally implements EventSink {
+        private long pages;
+        private long impressions;
+        private long duplexPages;
+        private long rasterPages;
+        private long lastCopies;
+        private boolean marked;
+        private boolean raster;
+        private long copies;
+        private long pageSize;
+        private long orientation;
+        private long duplex;
+        private long pjlCopies;
+        private long pjlQuantity;
+        private boolean pjlDuplex;
+
+        private void reset() {
+            pages = 0;
+            impressions = 0;
+            duplexPages = 0;
+            rasterPages = 0;
+            lastCopies = 1;
+            marked = false;
+            raster = false;
+            resetPcl();
+            resetJob();
+        }
+
+        public void event(int type, long value) {
+            switch (type) {
+                case MARK:
+                    marked = true;
+                    break;
+                case RASTER:
+                    marked = true;
+                    raster = true;
+                    break;
+                case FORM_FEED:
+                    eject();
+                    break;
+                case EJECT:
+                    ejectMarkedPage();
+                    break;
+                case RESET:
+                    ejectMarkedPage();
+                    resetPcl();
+                    break;
+                case JOB:
+                    resetJob();
+                    break;
+                case LANGUAGE_SECTION:
+                    ejectMarkedPage();
+                    eject();
+                    resetPcl();
+                    break;
+                case COPIES:
+                    copies = value;
+                    break;
+                case PAGE_SIZE:
+                    pageSize = changePageSetting(pageSize, value);
+                    break;
+                case ORIENTATION:
+                    orientation = changePageSetting(orientation, value);
+                    break;
+                case DUPLEX:
+                    duplex = changePageSetting(duplex, value);
+                    break;
+                case PJL_COPIES:
+                    pjlCopies = value;
+                    break;
+                case PJL_QUANTITY:
+                    pjlQuantity = value;
+                    break;
+                case PJL_DUPLEX:
+                    pjlDuplex = value != 0;
+                    break;
+            }
+        }
+
+        private void finish() {
+            ejectMarkedPage();
+        }
+
+        /**
+         * A page setting ejects a marked page unless it is set to the value it already has
+         */
+        private long changePageSetting(long current, long value) {
+            if (current == UNSET || current != value) {
+                ejectMarkedPage();
+            }
+            return value;
+        }
+
+        private void ejectMarkedPage() {
+            if (marked) {
+                eject();
+            }
+        }
+
+        private void eject() {
+            pages++;
+            lastCopies = Math.max(1, copies == UNSET ? pjlCopies : copies) * Math.max(1, pjlQuantity);
+            impressions += lastCopies;
+            if (duplex == UNSET ? pjlDuplex : duplex != 0) {
+                duplexPages++;
+            }
+            if (raster) {
+                rasterPages++;
+            }
+            marked = false;
+            raster = false;
+        }
+
+        private void resetPcl() {
+            copies = UNSET;
+            pageSize = UNSET;
+            orientation = UNSET;
+            duplex = UNSET;
+        }
+
+        private void resetJob() {
+            pjlCopies = 1;
+            pjlQuantity = 1;
+            pjlDuplex = false;
+        }
+    }
+
+    /**
+     * The events of a chunk scanned on its own
+     */
+    private static class Chunk implements EventSink {
+        private int[] types = new int[64];
+        private long[] values = new long[64];
+        private int size;
+        private int end;
+        private Scanner scanner;
+
+        public void event(int type, long value) {
+            if (size == types.length) {
+                int[] newTypes = new int[size * 2];
+                long[] newValues = new long[size * 2];
+                System.arraycopy(types, 0, newTypes, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                types = newTypes;
+                values = newValues;
+            }
+            types[size] = type;
+            values[size] = value;
+            size++;
+        }
+
+        private void replay(EventSink sink) {
+            for (int i = 0; i < size; i++) {
+                sink.event(types[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Scans the bytes of a job and reports the events that change the counts
+     */
+    private static class Scanner {
+        private final PclUtil pclUtil = new PclUtil();
+        private final PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+        private final ByteBuffer buffer;
+        private final int end;
+        private final EventSink sink;
+        private boolean definingMacro;
+        private boolean hpgl;
+        private boolean displayFunctions;
+        private boolean marked;
+        private boolean raster;
+        private long value;
+        private boolean negative;
+        private boolean fraction;
+
+        private Scanner(ByteBuffer job, EventSink sink) {
+            this.buffer = job.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.end = job.limit();
+            this.sink = sink;
+        }
+
+        /**
+         * @return true - the scanner is in plain text, as a chunk scanned on its own assumes it starts
+         */
+        private boolean isInText() {
+            return !definingMacro && !hpgl && !displayFunctions;
+        }
+
+        /**
+         * Takes over the modes another scanner ended in, whether the page is marked is not known
+         */
+        private void continueFrom(Scanner other) {
+            definingMacro = other.definingMacro;
+            hpgl = other.hpgl;
+            displayFunctions = other.displayFunctions;
+            marked = false;
+            raster = false;
+        }
+
+        /**
+         * Scans every command starting before the stop position, a command may run past it
+         *
+         * @return the position right after the last command scanned
+         */
+        private int scan(int position, int stop) {
+            while (position < stop) {
+                if (buffer.get(position) == PclUtil.ESCAPE) {
+                    position = command(position);
+                } else {
+                    position = text(position, stop);
+                }
+            }
+            return position;
+        }
+
+        private int text(int position, int stop) {
+            if (!isInText()) {
+                while (position < stop && buffer.get(position) != PclUtil.ESCAPE) {
+                    int character = buffer.get(position) & 0xff;
+                    if (displayFunctions || (hpgl && !definingMacro && character > ' ')) {
+                        mark();
+                    }
+                    position++;
+                }
+                return position;
+            }
+            while (position < stop) {
+                if (marked) {
+                    while (position + 8 <= stop) {
+                        long word = buffer.getLong(position);
+                        if (hasByte(word ^ ESCAPES) || hasByte(word ^ FORM_FEEDS)) {
+                            break;
+                        }
+                        position += 8;
+                    }
+                    if (position >= stop) {
+                        break;
+                    }
+                }
+                byte character = buffer.get(position);
+                if (character == PclUtil.ESCAPE) {
+                    return position;
+                } else if (character == FORM_FEED_BYTE) {
+                    pageEvent(FORM_FEED, 0);
+                } else if (!marked && (character & 0xff) > ' ' && character != 127) {
+                    mark();
+                }
+                position++;
+            }
+            return position;
+        }
+
+        private int command(int position) {
+            if (position + 1 >= end) {
+                return end;
+            }
+            byte operation = buffer.get(position + 1);
+            if (pclUtil.is2ByteCommandOperator(operation)) {
+                twoByteCommand(operation);
+                return position + 2;
+            }
+            if (!pclUtil.isParameterizedCharacter(operation) || position + 2 >= end) {
+                return position + 1;
+            }
+
+            byte group = buffer.get(position + 2);
+            int index = position + 3;
+            resetValue();
+            while (index < end) {
+                byte current = buffer.get(index++);
+                boolean nextIsEscape = index >= end || buffer.get(index) == PclUtil.ESCAPE;
+                if (pclUtil.isGroupCharacter(group) && pclUtil.isParameterCharacter(current) && !nextIsEscape) {
+                    parameterizedCommand(operation, group, pclUtil.changeParameterToTerminator(current), 0);
+                    resetValue();
+                } else if (pclUtil.isTermination((byte) Character.toUpperCase(current))) {
+                    byte terminator = (byte) Character.toUpperCase(current);
+                    if (index - position == 9 && pclUtil.isUniversalExitAt(buffer, position)) {
+                        return universalExit(index);
+                    }
+                    int dataLength = 0;
+                    if (pclUtil.isGroupCharacter(group) && pclCommandGrammar.isExpectingData(operation, group, terminator)) {
+                        dataLength = (int) Math.max(0, Math.min(negative ? 0 : value, end - index));
+                    }
+                    parameterizedCommand(operation, group, terminator, dataLength);
+                    return index + dataLength;
+                } else {
+                    valueByte(current);
+                }
+            }
+            return end;
+        }
+
+        private void twoByteCommand(byte operation) {
+            if (displayFunctions) {
+                mark();
+                displayFunctions = operation != 'Z';
+            } else if (!definingMacro) {
+                if (operation == 'E') {
+                    pageEvent(RESET, 0);
+                } else if (operation == 'Y') {
+                    displayFunctions = true;
+                }
+            }
+        }
+
+        private void parameterizedCommand(byte parameterized, byte group, byte terminator, int dataLength) {
+            if (displayFunctions) {
+                mark();
+                return;
+            }
+            if (definingMacro) {
+                definingMacro = !(parameterized == '&' && group == 'f' && terminator == 'X' && value == 1);
+                return;
+            }
+            if (parameterized == '%') {
+                if (terminator == 'B') {
+                    hpgl = true;
+                    mark();
+                } else if (terminator == 'A') {
+                    hpgl = false;
+                }
+            } else if (parameterized == '&' && group == 'f' && terminator == 'X') {
+                if (value == 0) {
+                    definingMacro = true;
+                } else if (value == 2 || value == 3) {
+                    mark();
+                }
+            } else if (parameterized == '&' && group == 'l') {
+                if (terminator == 'H') {
+                    pageEvent(EJECT, 0);
+                } else if (terminator == 'A') {
+                    pageEvent(PAGE_SIZE, signedValue());
+                } else if (terminator == 'O') {
+                    pageEvent(ORIENTATION, signedValue());
+                } else if (terminator == 'S') {
+                    pageEvent(DUPLEX, signedValue());
+                } else if (terminator == 'X') {
+                    sink.event(COPIES, signedValue());
+                }
+            } else if (parameterized == '&' && group == 'a' && terminator == 'G') {
+                pageEvent(EJECT, 0);
+            } else if (dataLength > 0 && parameterized == '*' && group == 'b' && (terminator == 'W' || terminator == 'V')) {
+                if (!raster) {
+                    sink.event(RASTER, 0);
+                    raster = true;
+                    marked = true;
+                }
+            } else if ((parameterized == '*' && group == 'c' && terminator == 'P')
+                    || (dataLength > 0 && parameterized == '&' && group == 'p' && terminator == 'X')) {
+                mark();
+            }
+        }
+
+        /**
+         * Resets the printer and reads the PJL following the universal exit, a language other than PCL is jumped over
+         */
+        private int universalExit(int position) {
+            boolean counted = !displayFunctions && !definingMacro;
+            if (displayFunctions) {
+                mark();
+            } else if (counted) {
+                pageEvent(RESET, 0);
+                sink.event(JOB, 0);
+                hpgl = false;
+            }
+
+            int lineStart = position;
+            while (position < end && buffer.get(position) != PclUtil.ESCAPE) {
+                if (buffer.get(position++) == '\n') {
+                    byte[] line = new byte[position - lineStart];
+                    ((ByteBuffer) buffer.duplicate().position(lineStart)).get(line);
+                    String language = pclUtil.getEnteredLanguage(line, 0, line.length);
+                    if (language != null) {
+                        return pclUtil.isPclLanguage(language) ? position : languageSection(position, counted);
+                    }
+                    if (counted) {
+                        pjlSetting(new String(line));
+                    }
+                    lineStart = position;
+                }
+            }
+            return position;
+        }
+
+        private int languageSection(int position, boolean counted) {
+            int sectionEnd = pclUtil.indexOfUniversalExit(buffer, position);
+            if (sectionEnd == -1) {
+                sectionEnd = end;
+            }
+            if (sectionEnd > position && counted) {
+                pageEvent(LANGUAGE_SECTION, 0);
+            }
+            return sectionEnd;
+        }
+
+        private void pjlSetting(String line) {
+            String setting = line.replaceAll("\\s", "").toUpperCase();
+            if (!setting.startsWith("@PJLSET")) {
+                return;
+            }
+            try {
+                if (setting.startsWith("@PJLSETCOPIES=")) {
+                    sink.event(PJL_COPIES, Long.parseLong(setting.substring(14)));
+                } else if (setting.startsWith("@PJLSETQTY=")) {
+                    sink.event(PJL_QUANTITY, Long.parseLong(setting.substring(11)));
+                } else if (setting.startsWith("@PJLSETDUPLEX=")) {
+                    sink.event(PJL_DUPLEX, setting.substring(14).equals("ON") ? 1 : 0);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        private void mark() {
+            if (!marked) {
+                sink.event(MARK, 0);
+                marked = true;
+            }
+        }
+
+        /**
+         * After an event that may eject the page it is not known if the page is marked, so the next mark is reported
+         */
+        private void pageEvent(int type, long eventValue) {
+            sink.event(type, eventValue);
+            marked = false;
+            raster = false;
+        }
+
+        private void resetValue() {
+            value = 0;
+            negative = false;
+            fraction = false;
+        }
+
+        private void valueByte(byte current) {
+            if (current >= '0' && current <= '9') {
+                if (!fraction && value < Integer.MAX_VALUE) {
+                    value = value * 10 + current - '0';
+                }
+            } else if (current == '-') {
+                negative = true;
+            } else if (current == '.') {
+                fraction = true;
+            }
+        }
+
+        private long signedValue() {
+            return negative ? -value : value;
+        }
+
+        private static boolean hasByte(long word) {
+            return ((word - ONES) & ~word & HIGH_BITS) != 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes a range of pages of a job as a job of its own
+ * <p/>
+ * The pages are written as the universal exit and PJL the job starts with, a reset, the prologue putting the printer
+ * into the state the first page starts with and then the bytes of the pages copied straight out of the job (the
+ * pages are never parsed). The job ends with a reset and a universal exit when it started with one.
+ * <p/>
+ * Without a {@link PclPageIndex page index} the job is read up to the end of the last page wanted, with a saved index
+ * only the bytes written are read.
+ * <p/>
+ * <pre>
+ * PclPageExtractor extractor = new PclPageExtractor();
+ * extractor.extract(new File("job.pcl"), PclPageIndex.load(new File("job.pcl.idx")), 100, 120, output);
+ * </pre>
+ */
+public class PclPageExtractor {
+    private static final byte[] RESET = {PclUtil.ESCAPE, 'E'};
+    private static final byte[] UNIVERSAL_EXIT = {PclUtil.ESCAPE, '%', '-', '1', '2', '3', '4', '5', 'X'};
+
+    /**
+     * Extracts the pages, the job is indexed up to the last page
+     *
+     * @param job       - the PCL job
+     * @param firstPage - the first page to extract, starting at 1
+     * @param lastPage  - the last page to extract
+     * @param output    - where to write the pages to
+     */
+    public void extract(File job, int firstPage, int lastPage, OutputStream output) {
+        extract(job, PclPageIndex.build(job, lastPage), firstPage, lastPage, Channels.newChannel(output));
+    }
+
+    /**
+     * Extracts the pages
+     *
+     * @param job       - the PCL job
+     * @param index     - the index of the job
+     * @param firstPage - the first page to extract, starting at 1
+     * @param lastPage  - the last page to extract
+     * @param output    - where to write the pages to
+     */
+    public void extract(File job, PclPageIndex index, int firstPage, int lastPage, OutputStream output) {
+        extract(job, index, firstPage, lastPage, Channels.newChannel(output));
+    }
+
+    /**
+     * Extracts the pages
+     *
+     * @param job       - the PCL job
+     * @param index     - the index of the job
+     * @param firstPage - the first page to extract, starting at 1
+     * @param lastPage  - the last page to extract
+     * @param target    - where to write the pages to
+     */
+    public void extract(File job, PclPageIndex index, int firstPage, int lastPage, WritableByteChannel target) {
+        if (firstPage > lastPage) {
+            throw new IllegalArgumentException("firstPage=[" + firstPage + "] comes after lastPage=[" + lastPage + "]");
+        }
+        if (index.getJobLength() != job.length()) {
+            throw new IllegalArgumentException("The index was not built for file=[" + job.getName() + "]");
+        }
+        long start = index.getPageStart(firstPage);
+        long end = index.getPageEnd(lastPage);
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(job, "r");
+            FileChannel channel = file.getChannel();
+            if (start > index.getHeaderLength()) {
+                PclPageIndex.transfer(channel, 0, index.getHeaderLength(), target);
+                PclPageIndex.write(ByteBuffer.wrap(RESET), target);
+                index.writePrologue(firstPage, channel, target);
+            }
+            PclPageIndex.transfer(channel, start, end - start, target);
+            PclPageIndex.write(ByteBuffer.wrap(RESET), target);
+            if (index.getHeaderLength() > 0) {
+                PclPageIndex.write(ByteBuffer.wrap(UNIVERSAL_EXIT), target);
+            }
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem occurred while trying to extract pages from file=[" + job.getName() + "]", e);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
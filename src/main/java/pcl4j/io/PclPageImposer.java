@@ -0,0 +1,389 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the pages of a job in a different order or several pages to a sheet
+ * <p/>
+ * The page order is an array of page numbers (starting at 1), 0 is a blank page. {@link #reorder} writes every page
+ * as a reset, the prologue of the state the page starts with and the bytes of the page copied straight out of the
+ * job. Pages that followed each other in the job are copied as one range without a prologue in between.
+ * <p/>
+ * {@link #impose} puts a page in every slot of a sheet. The sheet is set up (landscape by default) and each page
+ * is defined as a macro, with its prologue, that is called at its slot so the state a page changes does not leak
+ * into the next slot. PCL can not scale a page, so the slots only shift the page: absolute cursor moves
+ * (ESC*p#X, ESC*p#Y, ESC&amp;a#H, ESC&amp;a#V) are moved by the slot's offset. Commands that would eject the sheet
+ * or reset the printer are left out of the macros and macro definitions are moved ahead of them. Content placed
+ * relative to the margins or the edge of the logical page (text after a carriage return, ESC*r0A) is not shifted,
+ * which is fine for jobs made by drivers that position everything themselves.
+ * <p/>
+ * <pre>
+ * PclPageImposer imposer = new PclPageImposer();
+ * imposer.addSlot(0, 0);
+ * imposer.addSlot(3960, 0);
+ * imposer.impose(job, index, PclPageImposer.booklet(index.getPageCount()), target);
+ * </pre>
+ */
+public class PclPageImposer {
+    private static final byte[] RESET = {PclUtil.ESCAPE, 'E'};
+    private static final byte[] UNIVERSAL_EXIT = {PclUtil.ESCAPE, '%', '-', '1', '2', '3', '4', '5', 'X'};
+    private static final byte FORM_FEED = 12;
+    private static final int DEFAULT_UNITS_OF_MEASURE = 300;
+    private static final int DECIPOINTS_PER_INCH = 720;
+
+    private final PclUtil pclUtil = new PclUtil();
+    private final PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+    private final List<long[]> slots = new ArrayList<long[]>();
+    private List<PclCommand> sheetSetup = new ArrayList<PclCommand>();
+    private int firstMacroId = 32767;
+
+    public PclPageImposer() {
+        sheetSetup.add(new PclCommandBuilder().p('&').g('l').v(1).t('O').toCommand());
+    }
+
+    /**
+     * The order of the pages reversed
+     *
+     * @param pageCount - the number of pages in the job
+     * @return the page order
+     */
+    public static int[] reverse(int pageCount) {
+        int[] order = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            order[i] = pageCount - i;
+        }
+        return order;
+    }
+
+    /**
+     * The order of the pages for a booklet printed 2-up on both sides of the sheets and folded in half, the job is
+     * padded with blank pages to a multiple of 4
+     *
+     * @param pageCount - the number of pages in the job
+     * @return the page order, 2 pages per sheet side
+     */
+    public static int[] booklet(int pageCount) {
+        int padded = (pageCount + 3) / 4 * 4;
+        int[] order = new int[padded];
+        for (int sheet = 0, i = 0; sheet < padded / 4; sheet++) {
+            order[i++] = pageOrBlank(padded - 2 * sheet, pageCount);
+            order[i++] = pageOrBlank(2 * sheet + 1, pageCount);
+            order[i++] = pageOrBlank(2 * sheet + 2, pageCount);
+            order[i++] = pageOrBlank(padded - 2 * sheet - 1, pageCount);
+        }
+        return order;
+    }
+
+    /**
+     * Adds a slot to the sheets {@link #impose(File, PclPageIndex, int[], WritableByteChannel) imposed}
+     *
+     * @param x - how far the page is shifted to the right in decipoints
+     * @param y - how far the page is shifted down in decipoints
+     */
+    public void addSlot(long x, long y) {
+        slots.add(new long[]{x, y});
+    }
+
+    /**
+     * The commands every sheet starts with after the reset
+     *
+     * @param commands - the commands (ex. the page size and orientation), landscape by default
+     */
+    public void setSheetSetup(List<PclCommand> commands) {
+        sheetSetup = new ArrayList<PclCommand>(commands);
+    }
+
+    /**
+     * The ID of the macro of the first slot, the other slots count down from it
+     *
+     * @param firstMacroId - a macro ID the job does not use, 32767 by default
+     */
+    public void setFirstMacroId(int firstMacroId) {
+        this.firstMacroId = firstMacroId;
+    }
+
+    public void reorder(File job, PclPageIndex index, int[] order, OutputStream output) {
+        reorder(job, index, order, Channels.newChannel(output));
+    }
+
+    /**
+     * Writes the pages in the given order
+     *
+     * @param job    - the PCL job
+     * @param index  - the index of the job
+     * @param order  - the page numbers to write, 0 for a blank page
+     * @param target - where to write the job to
+     */
+    public void reorder(File job, PclPageIndex index, int[] order, WritableByteChannel target) {
+        checkIndex(job, index);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(job, "r");
+            FileChannel channel = file.getChannel();
+            PclPageIndex.transfer(channel, 0, index.getHeaderLength(), target);
+            long previousEnd = -1;
+            for (int pageNumber : order) {
+                if (pageNumber == 0) {
+                    PclPageIndex.write(ByteBuffer.wrap(RESET), target);
+                    PclPageIndex.write(ByteBuffer.wrap(new byte[]{FORM_FEED}), target);
+                    previousEnd = -1;
+                    continue;
+                }
+                long start = index.getPageStart(pageNumber);
+                if (start != previousEnd) {
+                    PclPageIndex.write(ByteBuffer.wrap(RESET), target);
+                    index.writePrologue(pageNumber, channel, target);
+                }
+                previousEnd = index.getPageEnd(pageNumber);
+                PclPageIndex.transfer(channel, start, previousEnd - start, target);
+            }
+            writeTrailer(index, target);
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem occurred while trying to reorder the pages of file=[" + job.getName() + "]", e);
+        } finally {
+            close(file);
+        }
+    }
+
+    public void impose(File job, PclPageIndex index, int[] order, OutputStream output) {
+        impose(job, index, order, Channels.newChannel(output));
+    }
+
+    /**
+     * Writes the pages in the given order filling the slots of every sheet
+     *
+     * @param job    - the PCL job
+     * @param index  - the index of the job
+     * @param order  - the page numbers to write, 0 for a blank slot
+     * @param target - where to write the job to
+     */
+    public void impose(File job, PclPageIndex index, int[] order, WritableByteChannel target) {
+        if (slots.isEmpty()) {
+            throw new IllegalStateException("No slots were added");
+        }
+        checkIndex(job, index);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(job, "r");
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            PclCommandWriter writer = new OutputStreamPclCommandWriter(Channels.newOutputStream(target));
+            PclPageIndex.transfer(channel, 0, index.getHeaderLength(), target);
+            for (int sheet = 0; sheet * slots.size() < order.length; sheet++) {
+                writer.write(new TwoByteCommand(RESET));
+                for (PclCommand command : sheetSetup) {
+                    writer.write(command);
+                }
+                List<Integer> usedSlots = new ArrayList<Integer>();
+                for (int slot = 0; slot < slots.size() && sheet * slots.size() + slot < order.length; slot++) {
+                    int pageNumber = order[sheet * slots.size() + slot];
+                    if (pageNumber != 0) {
+                        definePage(index, pageNumber, channel, contents, slot, writer);
+                        usedSlots.add(slot);
+                    }
+                }
+                for (int slot : usedSlots) {
+                    writer.write(macroCommand(firstMacroId - slot, 'Y'));
+                    writer.write(macroCommand(3, 'X'));
+                }
+                writer.write(new TextCommand(new byte[]{FORM_FEED}));
+            }
+            writeTrailer(index, target);
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem occurred while trying to impose the pages of file=[" + job.getName() + "]", e);
+        } finally {
+            close(file);
+        }
+    }
+
+    /**
+     * Writes the macro drawing the page at its slot, with the macro definitions the page makes ahead of it
+     */
+    private void definePage(PclPageIndex index, int pageNumber, FileChannel channel, ByteBuffer contents,
+                            int slot, PclCommandWriter writer) throws IOException {
+        ByteArrayOutputStream prologue = new ByteArrayOutputStream();
+        index.writePrologue(pageNumber, channel, Channels.newChannel(prologue));
+        ByteBuffer page = contents.duplicate();
+        page.limit((int) index.getPageEnd(pageNumber));
+        page.position((int) index.getPageStart(pageNumber));
+
+        List<PclCommand> hoisted = new ArrayList<PclCommand>();
+        List<PclCommand> body = new ArrayList<PclCommand>();
+        PageShift shift = new PageShift(slots.get(slot));
+        shift.add(new ByteBufferPclCommandReader(prologue.toByteArray()), hoisted, body);
+        shift.add(new ByteBufferPclCommandReader(page.slice()), hoisted, body);
+
+        for (PclCommand command : hoisted) {
+            writer.write(command);
+        }
+        writer.write(macroCommand(firstMacroId - slot, 'Y'));
+        writer.write(macroCommand(0, 'X'));
+        for (PclCommand command : body) {
+            writer.write(command);
+        }
+        writer.write(macroCommand(1, 'X'));
+    }
+
+    private void writeTrailer(PclPageIndex index, WritableByteChannel target) throws IOException {
+        PclPageIndex.write(ByteBuffer.wrap(RESET), target);
+        if (index.getHeaderLength() > 0) {
+            PclPageIndex.write(ByteBuffer.wrap(UNIVERSAL_EXIT), target);
+        }
+    }
+
+    private PclCommand macroCommand(int value, char terminator) {
+        return new PclCommandBuilder().p('&').g('f').v(value).t(terminator).toCommand();
+    }
+
+    private void checkIndex(File job, PclPageIndex index) {
+        if (index.getJobLength() != job.length()) {
+            throw new IllegalArgumentException("The index was not built for file=[" + job.getName() + "]");
+        }
+    }
+
+    private void close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static int pageOrBlank(int pageNumber, int pageCount) {
+        return pageNumber > pageCount ? 0 : pageNumber;
+    }
+
+    /**
+     * Moves the commands of a page into a slot
+     */
+    private class PageShift {
+        private final long x;
+        private final long y;
+        private int unitsOfMeasure = DEFAULT_UNITS_OF_MEASURE;
+        private PclCommand macroId;
+        private boolean definingMacro;
+
+        private PageShift(long[] offset) {
+            this.x = offset[0];
+            this.y = offset[1];
+        }
+
+        private void add(PclCommandReader reader, List<PclCommand> hoisted, List<PclCommand> body) {
+            PclCommand command;
+            while ((command = reader.nextCommand()) != null) {
+                if (definingMacro) {
+                    hoisted.add(command);
+                    definingMacro = !isMacroControl(command, 1);
+                } else if (isMacroControl(command, 0)) {
+                    if (macroId != null) {
+                        hoisted.add(macroId);
+                    }
+                    hoisted.add(command);
+                    definingMacro = true;
+                } else if (command instanceof TextCommand) {
+                    byte[] text = withoutFormFeeds(command.getBytes());
+                    if (text.length > 0) {
+                        body.add(new TextCommand(text));
+                    }
+                } else if (!isLeftOut(command)) {
+                    body.add(shift(command));
+                }
+            }
+        }
+
+        private boolean isLeftOut(PclCommand command) {
+            if (command instanceof LanguageSectionCommand || pclUtil.isCommand(command, 'E') || pclUtil.isUniversalExit(command)) {
+                return true;
+            }
+            if (command instanceof ParameterizedCommand) {
+                ParameterizedCommand parameterizedCommand = (ParameterizedCommand) command;
+                if (pclUtil.isCommand(command, '&', 'f', 'Y')) {
+                    macroId = command;
+                }
+                return pclCommandGrammar.isPageEjecting(parameterizedCommand.getParameterizedByte(),
+                        parameterizedCommand.getGroupByte(), (byte) Character.toUpperCase((char) parameterizedCommand.getTerminatorByte()));
+            }
+            return false;
+        }
+
+        private PclCommand shift(PclCommand command) {
+            if (pclUtil.isCommand(command, '&', 'u', 'D')) {
+                int value = ((ParameterizedCommand) command).getIntValue();
+                unitsOfMeasure = value > 0 ? value : DEFAULT_UNITS_OF_MEASURE;
+                return command;
+            }
+            if (!(command instanceof ParameterizedCommand) || ((ParameterizedCommand) command).getSign() != PclValueParser.NO_SIGN) {
+                return command;
+            }
+            ParameterizedCommand move = (ParameterizedCommand) command;
+            if (pclUtil.isCommand(move, '*', 'p', 'X')) {
+                return moveTo(move, x * unitsOfMeasure * PclValueParser.SCALE / DECIPOINTS_PER_INCH);
+            } else if (pclUtil.isCommand(move, '*', 'p', 'Y')) {
+                return moveTo(move, y * unitsOfMeasure * PclValueParser.SCALE / DECIPOINTS_PER_INCH);
+            } else if (pclUtil.isCommand(move, '&', 'a', 'H')) {
+                return moveTo(move, x * PclValueParser.SCALE);
+            } else if (pclUtil.isCommand(move, '&', 'a', 'V')) {
+                return moveTo(move, y * PclValueParser.SCALE);
+            }
+            return command;
+        }
+
+        private PclCommand moveTo(ParameterizedCommand move, long scaledOffset) {
+            if (scaledOffset == 0) {
+                return move;
+            }
+            return new PclCommandBuilder().p((char) move.getParameterizedByte()).g((char) move.getGroupByte())
+                    .vScaled(move.getScaledDecimalValue() + scaledOffset)
+                    .t(Character.toUpperCase((char) move.getTerminatorByte())).toCommand();
+        }
+
+        private boolean isMacroControl(PclCommand command, int operation) {
+            return pclUtil.isCommand(command, '&', 'f', 'X') && ((ParameterizedCommand) command).getIntValue() == operation;
+        }
+
+        private byte[] withoutFormFeeds(byte[] text) {
+            int count = 0;
+            for (byte character : text) {
+                if (character != FORM_FEED) {
+                    count++;
+                }
+            }
+            if (count == text.length) {
+                return text;
+            }
+            byte[] result = new byte[count];
+            for (int i = 0, j = 0; i < text.length; i++) {
+                if (text[i] != FORM_FEED) {
+                    result[j++] = text[i];
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where every page of a job starts and ends along with the prologue putting a reset printer into the state the page
+ * starts with
+ * <p/>
+ * A prologue is kept as ranges of the job's bytes (the commands that set the state are copied straight out of the
+ * job) and the few bytes that are not in the job as they are. Pages starting with the same state share a prologue.
+ * The index can be saved next to the job so pages can be found again without going over the job.
+ * <p/>
+ * <pre>
+ * PclPageIndex index = PclPageIndex.build(new File("job.pcl"));
+ * index.save(new File("job.pcl.idx"));
+ * </pre>
+ */
+public class PclPageIndex {
+    private static final int MAGIC = 0x50434c58;
+    private static final int VERSION = 1;
+
+    private final long jobLength;
+    private final long headerLength;
+    private final long[] starts;
+    private final long[] ends;
+    private final int[] prologueIds;
+    private final List<Prologue> prologues;
+
+    private PclPageIndex(long jobLength, long headerLength, long[] starts, long[] ends, int[] prologueIds, List<Prologue> prologues) {
+        this.jobLength = jobLength;
+        this.headerLength = headerLength;
+        this.starts = starts;
+        this.ends = ends;
+        this.prologueIds = prologueIds;
+        this.prologues = prologues;
+    }
+
+    /**
+     * Indexes every page of the job, the file is mapped into memory
+     *
+     * @param job - the PCL job
+     * @return the index
+     */
+    public static PclPageIndex build(File job) {
+        return build(job, 0);
+    }
+
+    /**
+     * Indexes the pages of the job up to the given page, the rest of the job is not read
+     *
+     * @param job      - the PCL job
+     * @param lastPage - the last page to index, 0 indexes every page
+     * @return the index
+     */
+    public static PclPageIndex build(File job, int lastPage) {
+        MappedFilePclCommandReader reader = new MappedFilePclCommandReader(job);
+        try {
+            return build(reader, lastPage);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Indexes the pages of the remaining commands of the reader up to the given page
+     * <p/>
+     * The job is parsed with a {@link PclCommandHandler}, text and raster data are looked at where they are and
+     * commands are only built for the state a prologue may need.
+     *
+     * @param reader   - the reader to parse the commands with
+     * @param lastPage - the last page to index, 0 indexes every page
+     * @return the index
+     */
+    public static PclPageIndex build(ByteBufferPclCommandReader reader, int lastPage) {
+        ByteBuffer source = reader.getContents();
+        PclPrinterStateMachine stateMachine = new PclPrinterStateMachine();
+        List<PclPrinterStateMachine.Page> pages = stateMachine.getPages();
+        Scanner scanner = new Scanner(source, stateMachine);
+        if (lastPage > 0) {
+            long position = -1;
+            long next = 0;
+            while (next > position && (pages.size() < lastPage || pages.get(lastPage - 1).getEnd() < 0)) {
+                position = next;
+                next = reader.parse(scanner, position + 1);
+            }
+        } else {
+            reader.parse(scanner);
+        }
+        stateMachine.finish();
+        long headerLength = scanner.headerLength;
+
+        int count = lastPage > 0 ? Math.min(lastPage, pages.size()) : pages.size();
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        int[] prologueIds = new int[count];
+        List<Prologue> prologues = new ArrayList<Prologue>();
+        Map<PclPrinterStateMachine.Snapshot, Integer> ids = new IdentityHashMap<PclPrinterStateMachine.Snapshot, Integer>();
+        for (int i = 0; i < count; i++) {
+            PclPrinterStateMachine.Page page = pages.get(i);
+            starts[i] = page.getStart();
+            ends[i] = page.getEnd();
+            Integer id = ids.get(page.getEntryState());
+            if (id == null) {
+                id = prologues.size();
+                ids.put(page.getEntryState(), id);
+                prologues.add(Prologue.of(page.getEntryState(), source));
+            }
+            prologueIds[i] = id;
+        }
+        return new PclPageIndex(source.capacity(), headerLength, starts, ends, prologueIds, prologues);
+    }
+
+    /**
+     * Loads an index saved with {@link #save(File)}
+     *
+     * @param file - the saved index
+     * @return the index
+     */
+    public static PclPageIndex load(File file) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IllegalArgumentException("file=[" + file.getName() + "] is not a page index");
+            }
+            long jobLength = input.readLong();
+            long headerLength = input.readLong();
+            int count = input.readInt();
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            int[] prologueIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = input.readLong();
+                ends[i] = input.readLong();
+                prologueIds[i] = input.readInt();
+            }
+            int prologueCount = input.readInt();
+            List<Prologue> prologues = new ArrayList<Prologue>(prologueCount);
+            for (int i = 0; i < prologueCount; i++) {
+                prologues.add(Prologue.read(input));
+            }
+            return new PclPageIndex(jobLength, headerLength, starts, ends, prologueIds, prologues);
+        } catch (IOException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while trying to load the page index=[" + file.getName() + "]", e);
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Saves the index to a file
+     *
+     * @param file - where to save the index to
+     */
+    public void save(File file) {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(jobLength);
+            output.writeLong(headerLength);
+            output.writeInt(starts.length);
+            for (int i = 0; i < starts.length; i++) {
+                output.writeLong(starts[i]);
+                output.writeLong(ends[i]);
+                output.writeInt(prologueIds[i]);
+            }
+            output.writeInt(prologues.size());
+            for (Prologue prologue : prologues) {
+                prologue.write(output);
+            }
+            output.close();
+            output = null;
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem occurred while trying to save the page index=[" + file.getName() + "]", e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    public int getPageCount() {
+        return starts.length;
+    }
+
+    /**
+     * The length of the job that was indexed
+     *
+     * @return the number of bytes in the job
+     */
+    public long getJobLength() {
+        return jobLength;
+    }
+
+    /**
+     * The length of the universal exit and PJL the job starts with
+     *
+     * @return the number of bytes, 0 when the job does not start with a universal exit
+     */
+    public long getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * @param pageNumber - the page number, starting at 1
+     * @return the position of the first byte of the page
+     */
+    public long getPageStart(int pageNumber) {
+        return starts[indexOf(pageNumber)];
+    }
+
+    /**
+     * @param pageNumber - the page number, starting at 1
+     * @return the position right after the last byte of the page
+     */
+    public long getPageEnd(int pageNumber) {
+        return ends[indexOf(pageNumber)];
+    }
+
+    /**
+     * The number of bytes in the prologue of a page
+     *
+     * @param pageNumber - the page number, starting at 1
+     * @return the number of bytes
+     */
+    public long getPrologueLength(int pageNumber) {
+        return prologues.get(prologueIds[indexOf(pageNumber)]).length();
+    }
+
+    /**
+     * Writes the prologue putting a reset printer into the state the page starts with
+     *
+     * @param pageNumber - the page number, starting at 1
+     * @param job        - the job that was indexed
+     * @param target     - where to write the prologue to
+     * @throws IOException when the prologue could not be copied
+     */
+    public void writePrologue(int pageNumber, FileChannel job, WritableByteChannel target) throws IOException {
+        prologues.get(prologueIds[indexOf(pageNumber)]).write(job, target);
+    }
+
+    /**
+     * Copies a range of the job without bringing it into the heap
+     */
+    static void transfer(FileChannel job, long position, long length, WritableByteChannel target) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            long transferred = job.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Could not copy bytes [" + position + ", " + end + ") of the job");
+            }
+            position += transferred;
+        }
+    }
+
+    static void write(ByteBuffer bytes, WritableByteChannel target) throws IOException {
+        while (bytes.hasRemaining()) {
+            target.write(bytes);
+        }
+    }
+
+    private int indexOf(int pageNumber) {
+        if (pageNumber < 1 || pageNumber > starts.length) {
+            throw new IllegalArgumentException("page=[" + pageNumber + "] is not one of the " + starts.length + " pages indexed");
+        }
+        return pageNumber - 1;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Hands the commands found to the state machine, building only the commands it keeps
+     */
+    private static class Scanner implements PclCommandHandler {
+        private final PclCommandFactory pclCommandFactory = new PclCommandFactory();
+        private final PclUtil pclUtil = new PclUtil();
+        private final ByteBuffer source;
+        private final PclPrinterStateMachine stateMachine;
+        private long headerLength;
+        private boolean first = true;
+
+        private Scanner(ByteBuffer source, PclPrinterStateMachine stateMachine) {
+            this.source = source;
+            this.stateMachine = stateMachine;
+        }
+
+        public void twoByteCommand(long position, byte operation) {
+            apply(pclCommandFactory.buildTwoByteCommand(position, operation));
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            if (dataLength > 0 && !stateMachine.isRecording() && isPrintedData(parameterized, group, terminator)) {
+                first = false;
+                stateMachine.applyMark(position, (int) (dataPosition + dataLength - position));
+                return;
+            }
+            PclCommand command = pclCommandFactory.buildParameterizedCommand(position, parameterized, group,
+                    copy(valuePosition, valueLength), terminator, copy(dataPosition, dataLength));
+            if (first && pclUtil.isUniversalExit(command)) {
+                headerLength = command.getPosition() + command.getLength();
+            }
+            apply(command);
+        }
+
+        public void textCommand(long position, int length) {
+            first = false;
+            stateMachine.applyText(position, source, length);
+        }
+
+        public void languageSection(long position, String language, int length) {
+            apply(pclCommandFactory.buildLanguageSectionCommand(position, language, source, (int) position, length));
+        }
+
+        private void apply(PclCommand command) {
+            first = false;
+            stateMachine.apply(command);
+        }
+
+        /**
+         * Raster rows and transparent print data only mark the page, they are never part of a prologue
+         */
+        private boolean isPrintedData(byte parameterized, byte group, byte terminator) {
+            terminator = (byte) Character.toUpperCase(terminator);
+            if (parameterized == '*' && group == 'b') {
+                return terminator == 'W' || terminator == 'V';
+            }
+            return parameterized == '&' && group == 'p' && terminator == 'X';
+        }
+
+        private byte[] copy(long position, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer copy = source.duplicate();
+            copy.position((int) position);
+            copy.get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * The segments of a prologue, a segment is either a range of the job or bytes that are not in the job
+     */
+    private static class Prologue {
+        private final List<Long> positions = new ArrayList<Long>();
+        private final List<Integer> lengths = new ArrayList<Integer>();
+        private final List<byte[]> bytes = new ArrayList<byte[]>();
+
+        private static Prologue of(PclPrinterStateMachine.Snapshot snapshot, ByteBuffer source) {
+            Prologue prologue = new Prologue();
+            for (PclCommand command : snapshot.getPrologue()) {
+                if (isInSource(command, source)) {
+                    prologue.addRange(command.getPosition(), command.getLength());
+                } else {
+                    prologue.addBytes(command.getBytes());
+                }
+            }
+            return prologue;
+        }
+
+        /**
+         * Commands read out of a compound command (ex. ESC&amp;l1o2A) or built do not appear in the job as they are
+         */
+        private static boolean isInSource(PclCommand command, ByteBuffer source) {
+            long position = command.getPosition();
+            if (position < 0 || position + command.getLength() > source.capacity()) {
+                return false;
+            }
+            if (command instanceof ParameterizedCommand) {
+                ParameterizedCommand parameterizedCommand = (ParameterizedCommand) command;
+                byte[] data = parameterizedCommand.getDataBytes();
+                int terminatorOffset = command.getLength() - (data == null ? 0 : data.length) - 1;
+                return source.get((int) position) == PclUtil.ESCAPE
+                        && source.get((int) position + terminatorOffset) == parameterizedCommand.getTerminatorByte();
+            }
+            return true;
+        }
+
+        private static Prologue read(DataInputStream input) throws IOException {
+            Prologue prologue = new Prologue();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                long position = input.readLong();
+                int length = input.readInt();
+                byte[] segment = null;
+                if (position < 0) {
+                    segment = new byte[length];
+                    input.readFully(segment);
+                }
+                prologue.positions.add(position);
+                prologue.lengths.add(length);
+                prologue.bytes.add(segment);
+            }
+            return prologue;
+        }
+
+        private void addRange(long position, int length) {
+            int last = positions.size() - 1;
+            if (last >= 0 && positions.get(last) >= 0 && positions.get(last) + lengths.get(last) == position) {
+                lengths.set(last, lengths.get(last) + length);
+                return;
+            }
+            positions.add(position);
+            lengths.add(length);
+            bytes.add(null);
+        }
+
+        private void addBytes(byte[] segment) {
+            positions.add(-1L);
+            lengths.add(segment.length);
+            bytes.add(segment);
+        }
+
+        private long length() {
+            long length = 0;
+            for (int segmentLength : lengths) {
+                length += segmentLength;
+            }
+            return length;
+        }
+
+        private void write(FileChannel job, WritableByteChannel target) throws IOException {
+            for (int i = 0; i < positions.size(); i++) {
+                if (positions.get(i) < 0) {
+                    PclPageIndex.write(ByteBuffer.wrap(bytes.get(i)), target);
+                } else {
+                    transfer(job, positions.get(i), lengths.get(i), target);
+                }
+            }
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeInt(positions.size());
+            for (int i = 0; i < positions.size(); i++) {
+                output.writeLong(positions.get(i));
+                output.writeInt(lengths.get(i));
+                if (positions.get(i) < 0) {
+                    output.write(bytes.get(i));
+                }
+            }
+        }
+    }
+}
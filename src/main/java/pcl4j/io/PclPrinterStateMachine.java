@@ -0,0 +1,694 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Follows the state of the printer command by command and records the state every page starts with
+ * <p/>
+ * The state is kept as the commands that set it: the last command of every modal setting (fonts, margins,
+ * orientation, print model, ...) in the order they were last sent, the palette, and the soft fonts, macros,
+ * user defined patterns and symbol sets downloaded along with the commands making them up. Sending the
+ * {@link Snapshot#getPrologue() prologue} of a page's entry state to a reset printer puts it in the state the page
+ * started with, so a page can be printed on its own.
+ * <p/>
+ * Snapshots are copy-on-write. Taking one costs nothing, the state machine only copies the part of the state
+ * (modal settings or downloads) that changes after a snapshot was taken and pages that do not change anything
+ * share the same snapshot. The commands themselves are never copied.
+ * <p/>
+ * A page starts right after the previous page was ejected (form feed, ESC E, UEL or a page ejecting command
+ * sent to a marked page). Commands that only change the state after an eject belong to the next page, so content
+ * left at the end of a job that never marks a page is not a page. State changed by executing a macro
+ * (ESC&amp;f2X) and HP-GL/2 is not followed.
+ * <p/>
+ * <pre>
+ * PclPrinterStateMachine stateMachine = new PclPrinterStateMachine();
+ * stateMachine.run(reader);
+ * for (PclPrinterStateMachine.Page page : stateMachine.getPages()) {
+ *     page.getEntryState().writePrologue(writer);
+ * }
+ * </pre>
+ */
+public class PclPrinterStateMachine {
+    private static final byte FORM_FEED = 12;
+    private static final long FONT = 1L << 32;
+    private static final long MACRO = 2L << 32;
+    private static final long PATTERN = 3L << 32;
+    private static final long SYMBOL_SET = 4L << 32;
+    private static final int OVERLAY_KEY = keyOf('&', 'f', 'O');
+    private static final int CLEAR_MARGINS_KEY = keyOf(PclUtil.ESCAPE, '9', '9');
+
+    private final PclUtil pclUtil = new PclUtil();
+    private final PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+    private final List<Page> pages = new ArrayList<Page>();
+    private Map<Integer, PclCommand> modal = new LinkedHashMap<Integer, PclCommand>();
+    private Map<Long, Resource> resources = new LinkedHashMap<Long, Resource>();
+    private Resource palette = Resource.EMPTY;
+    private boolean modalShared;
+    private boolean resourcesShared;
+    private Snapshot lastSnapshot;
+    private int currentFontId;
+    private int currentPatternId;
+    private int currentSymbolSetId;
+    private int currentMacroId;
+    private long macroBeingDefined = -1;
+    private boolean displayFunctions;
+    private boolean hpgl;
+    private Page currentPage;
+    private long nextPageStart = -1;
+    private Snapshot nextPageState = snapshot();
+    private long endPosition;
+
+    /**
+     * Applies every remaining command of the reader and ends the last page
+     *
+     * @param reader - where the commands come from, it is not closed
+     */
+    public void run(PclCommandReader reader) {
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            apply(command);
+        }
+        finish();
+    }
+
+    /**
+     * Changes the state as the printer would when it receives the command
+     *
+     * @param command - the command sent to the printer
+     */
+    public void apply(PclCommand command) {
+        begin(command.getPosition(), command.getLength());
+
+        if (displayFunctions) {
+            displayFunctions = !pclUtil.isCommand(command, 'Z');
+            mark();
+        } else if (macroBeingDefined >= 0) {
+            appendToResource(macroBeingDefined, command);
+            if (isMacroControl(command, 1)) {
+                macroBeingDefined = -1;
+            }
+        } else if (command instanceof TextCommand) {
+            applyText(command);
+        } else if (command instanceof TwoByteCommand) {
+            byte operation = ((TwoByteCommand) command).getOperation();
+            if (operation == 'E') {
+                ejectMarkedPage(command.getPosition());
+                reset();
+            } else if (operation == 'Y') {
+                displayFunctions = true;
+            } else if (operation == '9') {
+                setModal(CLEAR_MARGINS_KEY, command);
+            }
+        } else if (command instanceof LanguageSectionCommand) {
+            ejectMarkedPage(command.getPosition());
+            mark();
+            endPage(command.getPosition() + command.getLength());
+            reset();
+        } else if (command instanceof ParameterizedCommand) {
+            applyParameterized((ParameterizedCommand) command);
+        }
+    }
+
+    /**
+     * Applies text held in the job the same as applying a TextCommand for it would, without building the command
+     *
+     * @param position - the position of the text in the job
+     * @param job      - the job, indexed by position
+     * @param length   - the number of bytes of text
+     */
+    void applyText(long position, ByteBuffer job, int length) {
+        if (isRecording()) {
+            byte[] text = new byte[length];
+            ByteBuffer source = job.duplicate();
+            source.position((int) position);
+            source.get(text);
+            apply(new TextCommand(position, text));
+            return;
+        }
+        begin(position, length);
+        applyText(position, job, (int) position, length);
+    }
+
+    /**
+     * Applies raster rows (ESC*b#W, ESC*b#V) or transparent print data (ESC&amp;p#X) carrying data without building
+     * the command, they only mark the page. Only to be used when the state machine {@link #isRecording() is not
+     * recording}.
+     *
+     * @param position - the position of the command in the job
+     * @param length   - the length of the command along with its data
+     */
+    void applyMark(long position, int length) {
+        begin(position, length);
+        mark();
+    }
+
+    /**
+     * @return true while the commands applied are kept as they are (a macro being defined or display functions)
+     */
+    boolean isRecording() {
+        return displayFunctions || macroBeingDefined >= 0;
+    }
+
+    /**
+     * Ends the last page, call once all commands have been applied
+     */
+    public void finish() {
+        if (currentPage != null) {
+            currentPage.end = endPosition;
+            currentPage = null;
+        }
+    }
+
+    /**
+     * The pages found so far
+     *
+     * @return the pages in the order they were printed
+     */
+    public List<Page> getPages() {
+        return Collections.unmodifiableList(pages);
+    }
+
+    /**
+     * The current state of the printer
+     *
+     * @return a snapshot that is not affected by any commands applied afterwards
+     */
+    public Snapshot snapshot() {
+        if (lastSnapshot == null) {
+            lastSnapshot = new Snapshot(resources.values(), palette, modal.values());
+            modalShared = true;
+            resourcesShared = true;
+        }
+        return lastSnapshot;
+    }
+
+    private void begin(long position, int length) {
+        if (nextPageStart < 0) {
+            nextPageStart = Math.max(position, 0);
+        }
+        endPosition = position + length;
+    }
+
+    private void applyText(PclCommand command) {
+        applyText(command.getPosition(), ByteBuffer.wrap(command.getBytes()), 0, command.getLength());
+    }
+
+    private void applyText(long position, ByteBuffer text, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            int character = text.get(offset + i) & 0xff;
+            if (hpgl) {
+                if (character > ' ') {
+                    mark();
+                }
+            } else if (character == FORM_FEED) {
+                mark();
+                endPage(position + i + 1);
+            } else if (character > ' ' && character != 127) {
+                mark();
+            }
+        }
+    }
+
+    private void applyParameterized(ParameterizedCommand command) {
+        byte parameterized = command.getParameterizedByte();
+        byte group = command.getGroupByte();
+        char terminator = Character.toUpperCase((char) command.getTerminatorByte());
+        int key = keyOf(command);
+
+        if (parameterized == '%') {
+            if (terminator == 'X') {
+                ejectMarkedPage(command.getPosition());
+                reset();
+                hpgl = false;
+            } else if (terminator == 'B') {
+                hpgl = true;
+                mark();
+            } else if (terminator == 'A') {
+                hpgl = false;
+            }
+        } else if (parameterized == '&' && group == 'f') {
+            applyMacroCommand(command, terminator, key);
+        } else if (pclCommandGrammar.isPageEjecting(parameterized, group, (byte) terminator)) {
+            boolean ejectOnly = terminator == 'G' || (terminator == 'H' && command.getIntValue() == 0);
+            PclCommand current = modal.get(key);
+            if (ejectOnly || terminator == 'H' || current == null
+                    || ((ParameterizedCommand) current).getScaledDecimalValue() != command.getScaledDecimalValue()) {
+                ejectMarkedPage(command.getPosition());
+            }
+            if (!ejectOnly) {
+                setModal(key, command);
+            }
+        } else if (parameterized == '*' && group == 'c') {
+            applyFontAndPatternCommand(command, terminator, key);
+        } else if (pclUtil.isCommand(command, ')', 's', 'W')) {
+            putResource(FONT | currentFontId, selectId(currentFontId, 'D'), command);
+        } else if (pclUtil.isCommand(command, '(', 's', 'W')) {
+            appendToResource(FONT | currentFontId, command);
+        } else if (pclUtil.isCommand(command, '(', 'f', 'W')) {
+            putResource(SYMBOL_SET | currentSymbolSetId, selectId(currentSymbolSetId, 'R'), command);
+        } else if (parameterized == '*' && group == 'b') {
+            if ((terminator == 'W' || terminator == 'V') && hasData(command)) {
+                mark();
+            } else if (terminator != 'W' && terminator != 'V' && terminator != 'Y') {
+                setModal(key, command);
+            }
+        } else if (parameterized == '*' && group == 'r') {
+            if (terminator == 'U') {
+                palette = Resource.EMPTY.append(command);
+                changed();
+            } else if (terminator != 'A' && terminator != 'B' && terminator != 'C') {
+                setModal(key, command);
+            }
+        } else if (parameterized == '*' && group == 'v') {
+            if (terminator == 'W') {
+                palette = Resource.EMPTY.append(command);
+                changed();
+            } else if (terminator == 'A' || terminator == 'B' || terminator == 'C' || terminator == 'I') {
+                palette = palette.append(command);
+                changed();
+            } else {
+                setModal(key, command);
+            }
+        } else if (parameterized == '&' && group == 'p') {
+            if (terminator == 'X') {
+                if (hasData(command)) {
+                    mark();
+                }
+            } else {
+                palette = palette.append(command);
+                changed();
+            }
+        } else if (!isCursorMove(parameterized, group, terminator)) {
+            setModal(key, command);
+        }
+    }
+
+    private void applyMacroCommand(ParameterizedCommand command, char terminator, int key) {
+        if (terminator == 'Y') {
+            currentMacroId = command.getIntValue();
+            setModal(key, command);
+        } else if (terminator == 'X') {
+            switch (command.getIntValue()) {
+                case 0:
+                    macroBeingDefined = MACRO | currentMacroId;
+                    putResource(macroBeingDefined, selectMacroId(currentMacroId), command);
+                    break;
+                case 2:
+                case 3:
+                    mark();
+                    break;
+                case 4:
+                case 5:
+                    setModal(OVERLAY_KEY, command);
+                    break;
+                case 6:
+                    removeResources(MACRO, false);
+                    break;
+                case 7:
+                    removeResources(MACRO, true);
+                    break;
+                case 8:
+                    removeResource(MACRO | currentMacroId);
+                    break;
+                case 9:
+                case 10:
+                    appendToResource(MACRO | currentMacroId, selectMacroId(currentMacroId), command);
+                    break;
+            }
+        }
+    }
+
+    private void applyFontAndPatternCommand(ParameterizedCommand command, char terminator, int key) {
+        int value = command.getIntValue();
+        switch (terminator) {
+            case 'D':
+                currentFontId = value;
+                setModal(key, command);
+                break;
+            case 'E':
+                appendToResource(FONT | currentFontId, command);
+                break;
+            case 'F':
+                applyResourceControl(FONT, currentFontId, value, command, selectId(currentFontId, 'D'));
+                break;
+            case 'G':
+                currentPatternId = value;
+                setModal(key, command);
+                break;
+            case 'W':
+                putResource(PATTERN | currentPatternId, selectId(currentPatternId, 'G'), command);
+                break;
+            case 'Q':
+                applyResourceControl(PATTERN, currentPatternId, value, command, selectId(currentPatternId, 'G'));
+                break;
+            case 'R':
+                currentSymbolSetId = value;
+                setModal(key, command);
+                break;
+            case 'S':
+                applyResourceControl(SYMBOL_SET, currentSymbolSetId, value, command, selectId(currentSymbolSetId, 'R'));
+                break;
+            case 'P':
+                mark();
+                break;
+            default:
+                setModal(key, command);
+        }
+    }
+
+    /**
+     * Font, pattern and symbol set control share the same operations (0 - delete all, 1 - delete temporary,
+     * 2 - delete the current ID, 4 - make temporary, 5 - make permanent), anything else is replayed as is
+     */
+    private void applyResourceControl(long type, int id, int operation, PclCommand command, PclCommand selectId) {
+        switch (operation) {
+            case 0:
+                removeResources(type, false);
+                break;
+            case 1:
+                removeResources(type, true);
+                break;
+            case 2:
+                removeResource(type | id);
+                break;
+            default:
+                appendToResource(type | id, selectId, command);
+        }
+    }
+
+    private void mark() {
+        if (currentPage == null) {
+            currentPage = new Page(pages.size() + 1, nextPageStart, nextPageState);
+            pages.add(currentPage);
+        }
+    }
+
+    private void ejectMarkedPage(long position) {
+        if (currentPage != null) {
+            endPage(position);
+        }
+    }
+
+    private void endPage(long position) {
+        if (currentPage != null) {
+            currentPage.end = position;
+            currentPage = null;
+        }
+        nextPageStart = position;
+        nextPageState = snapshot();
+    }
+
+    private void reset() {
+        modal = new LinkedHashMap<Integer, PclCommand>();
+        modalShared = false;
+        palette = Resource.EMPTY;
+        removeResources(0, true);
+        currentFontId = 0;
+        currentPatternId = 0;
+        currentSymbolSetId = 0;
+        currentMacroId = 0;
+        displayFunctions = false;
+        changed();
+    }
+
+    private void setModal(int key, PclCommand command) {
+        if (modalShared) {
+            modal = new LinkedHashMap<Integer, PclCommand>(modal);
+            modalShared = false;
+        }
+        modal.remove(key);
+        modal.put(key, command);
+        changed();
+    }
+
+    private void putResource(long key, PclCommand... commands) {
+        editResources();
+        resources.remove(key);
+        Resource resource = Resource.EMPTY;
+        for (PclCommand command : commands) {
+            resource = resource.append(command);
+        }
+        resources.put(key, resource);
+    }
+
+    private void appendToResource(long key, PclCommand command) {
+        Resource resource = resources.get(key);
+        if (resource != null) {
+            editResources();
+            resources.put(key, resource.append(command));
+        }
+    }
+
+    private void appendToResource(long key, PclCommand selectId, PclCommand command) {
+        Resource resource = resources.get(key);
+        if (resource != null) {
+            editResources();
+            resources.put(key, resource.append(selectId).append(command).permanent(isPermanentAfter(resource, command)));
+        }
+    }
+
+    private void removeResource(long key) {
+        if (resources.containsKey(key)) {
+            editResources();
+            resources.remove(key);
+        }
+    }
+
+    /**
+     * Removes the resources of a type, a type of 0 removes every type
+     */
+    private void removeResources(long type, boolean temporaryOnly) {
+        editResources();
+        Iterator<Map.Entry<Long, Resource>> entries = resources.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, Resource> entry = entries.next();
+            boolean ofType = type == 0 || (entry.getKey() & 0xffffffff00000000L) == type;
+            if (ofType && (!temporaryOnly || !entry.getValue().permanent)) {
+                entries.remove();
+            }
+        }
+    }
+
+    private void editResources() {
+        if (resourcesShared) {
+            resources = new LinkedHashMap<Long, Resource>(resources);
+            resourcesShared = false;
+        }
+        changed();
+    }
+
+    private void changed() {
+        lastSnapshot = null;
+    }
+
+    private boolean isPermanentAfter(Resource resource, PclCommand command) {
+        int operation = ((ParameterizedCommand) command).getIntValue();
+        boolean macro = pclUtil.isCommand(command, '&', 'f', 'X');
+        if (operation == (macro ? 9 : 4)) {
+            return false;
+        }
+        return operation == (macro ? 10 : 5) || resource.permanent;
+    }
+
+    private boolean isMacroControl(PclCommand command, int operation) {
+        return pclUtil.isCommand(command, '&', 'f', 'X') && ((ParameterizedCommand) command).getIntValue() == operation;
+    }
+
+    private boolean isCursorMove(byte parameterized, byte group, char terminator) {
+        if (parameterized == '*' && group == 'p') {
+            return terminator == 'X' || terminator == 'Y';
+        }
+        return parameterized == '&' && group == 'a'
+                && (terminator == 'H' || terminator == 'V' || terminator == 'C' || terminator == 'R');
+    }
+
+    private boolean hasData(ParameterizedCommand command) {
+        return command.getDataBytes() != null && command.getDataBytes().length > 0;
+    }
+
+    private PclCommand selectId(int value, char terminator) {
+        return new PclCommandBuilder().p('*').g('c').v(value).t(terminator).toCommand();
+    }
+
+    private PclCommand selectMacroId(int value) {
+        return new PclCommandBuilder().p('&').g('f').v(value).t('Y').toCommand();
+    }
+
+    private static int keyOf(ParameterizedCommand command) {
+        byte group = command.getGroupByte();
+        char terminator = Character.toUpperCase((char) command.getTerminatorByte());
+        if (group >= '0' && group <= '9') {
+            group = '#';
+            if (terminator != 'X' && terminator != '@') {
+                terminator = 'U';
+            }
+        }
+        return keyOf(command.getParameterizedByte(), group, terminator);
+    }
+
+    private static int keyOf(int parameterized, int group, char terminator) {
+        return (parameterized << 16) | (group << 8) | terminator;
+    }
+
+    /**
+     * A page of the job and the state it starts with
+     */
+    public static class Page {
+        private final int number;
+        private final long start;
+        private final Snapshot entryState;
+        private long end = -1;
+
+        private Page(int number, long start, Snapshot entryState) {
+            this.number = number;
+            this.start = start;
+            this.entryState = entryState;
+        }
+
+        /**
+         * The number of the page, starting at 1
+         *
+         * @return the page number
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * The position of the first byte belonging to the page
+         *
+         * @return the position
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * The position right after the last byte belonging to the page (ex. right after the form feed)
+         *
+         * @return the position or -1 when the page has not ended yet
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        public Snapshot getEntryState() {
+            return entryState;
+        }
+
+        @Override
+        public String toString() {
+            return "Page " + number + " [" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * The state of the printer at one point in time
+     */
+    public static class Snapshot {
+        private final Collection<Resource> resources;
+        private final Resource palette;
+        private final Collection<PclCommand> modal;
+
+        private Snapshot(Collection<Resource> resources, Resource palette, Collection<PclCommand> modal) {
+            this.resources = resources;
+            this.palette = palette;
+            this.modal = modal;
+        }
+
+        /**
+         * The commands that put a reset printer into this state: the downloads, the palette and then the modal settings
+         *
+         * @return the commands in the order they need to be sent
+         */
+        public List<PclCommand> getPrologue() {
+            List<PclCommand> prologue = new ArrayList<PclCommand>();
+            for (Resource resource : resources) {
+                resource.addTo(prologue);
+            }
+            palette.addTo(prologue);
+            prologue.addAll(modal);
+            return prologue;
+        }
+
+        /**
+         * Writes the prologue
+         *
+         * @param writer - where to write the prologue to
+         */
+        public void writePrologue(PclCommandWriter writer) {
+            for (PclCommand command : getPrologue()) {
+                writer.write(command);
+            }
+        }
+
+        /**
+         * The number of bytes the prologue takes up
+         *
+         * @return the number of bytes
+         */
+        public long getPrologueLength() {
+            long length = 0;
+            for (PclCommand command : getPrologue()) {
+                length += command.getLength();
+            }
+            return length;
+        }
+    }
+
+    /**
+     * The commands making up a download (or the palette), commands are only ever added to the end of the list so
+     * every version of a resource shares the same list and only remembers how many of the commands belong to it
+     */
+    private static class Resource {
+        private static final Resource EMPTY = new Resource(new ArrayList<PclCommand>(0), 0, false);
+
+        private final List<PclCommand> commands;
+        private final int size;
+        private final boolean permanent;
+
+        private Resource(List<PclCommand> commands, int size, boolean permanent) {
+            this.commands = commands;
+            this.size = size;
+            this.permanent = permanent;
+        }
+
+        private Resource append(PclCommand command) {
+            List<PclCommand> list = commands;
+            if (list.size() != size || this == EMPTY) {
+                list = new ArrayList<PclCommand>(commands.subList(0, size));
+            }
+            list.add(command);
+            return new Resource(list, size + 1, permanent);
+        }
+
+        private Resource permanent(boolean permanent) {
+            return new Resource(commands, size, permanent);
+        }
+
+        private void addTo(List<PclCommand> prologue) {
+            prologue.addAll(commands.subList(0, size));
+        }
+    }
+}
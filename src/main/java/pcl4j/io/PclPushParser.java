@@ -0,0 +1,468 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses a job handed over in chunks of any size, as they arrive from a non-blocking socket
+ * <p/>
+ * Every command completed by a chunk is written to the given writer right away, a command cut off by the end of a
+ * chunk is finished by the chunks that follow. The commands (and their positions) are the same as
+ * {@link ByteBufferPclCommandReader} reads from the whole job, including combined commands, binary data, the PJL
+ * following a universal exit and sections of other printer languages.
+ * <p/>
+ * The chunks are not kept. Only the bytes of the command being completed are held between chunks: the few bytes of a
+ * command cut off in its value, and the text, binary data, PJL or language section it is in the middle of. A command
+ * held in one chunk is built straight from the chunk.
+ * <p/>
+ * <pre>
+ * PclPushParser parser = new PclPushParser(writer);
+ * while (channel.read(chunk) != -1) {
+ *     chunk.flip();
+ *     parser.feed(chunk);
+ *     chunk.clear();
+ * }
+ * parser.endOfInput();
+ * </pre>
+ */
+public class PclPushParser {
+    private static final int START = 0;
+    private static final int TEXT = 1;
+    private static final int ESCAPE = 2;
+    private static final int PARAMETERIZED = 3;
+    private static final int GROUPED_VALUE = 4;
+    private static final int PARAMETER = 5;
+    private static final int UNGROUPED_VALUE = 6;
+    private static final int DATA = 7;
+    private static final int PJL = 8;
+    private static final int LANGUAGE_SECTION = 9;
+    private static final int ENDED = 10;
+    private static final int MAX_INITIAL_DATA = 1024 * 1024;
+    private static final byte[] UNIVERSAL_EXIT = {PclUtil.ESCAPE, '%', '-', '1', '2', '3', '4', '5', 'X'};
+
+    private final PclCommandWriter writer;
+    private final PclUtil pclUtil = new PclUtil();
+    private final PclCommandFactory pclCommandFactory = new PclCommandFactory();
+    private final PclValueParser valueParser = new PclValueParser();
+    private PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+    private int state = START;
+    private long position;
+    private long commandPosition;
+    private byte parameterized;
+    private byte group;
+    private byte parameter;
+    private byte terminator;
+    private final Bytes raw = new Bytes(16);
+    private final Bytes value = new Bytes(16);
+    private final Bytes text = new Bytes(256);
+    private byte[] data;
+    private int dataLength;
+    private int dataExpected;
+    private int pjlLineStart;
+    private String language;
+    private int universalExitMatched;
+
+    /**
+     * @param writer - receives every command as soon as it is complete
+     */
+    public PclPushParser(PclCommandWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Changes the grammar used to decide which commands are followed by binary data
+     *
+     * @param pclCommandGrammar - the grammar to use
+     */
+    public void setPclCommandGrammar(PclCommandGrammar pclCommandGrammar) {
+        this.pclCommandGrammar = pclCommandGrammar;
+    }
+
+    /**
+     * The number of bytes fed so far
+     *
+     * @return the position in the job the next chunk starts at
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Jumps over bytes of the job that will not be fed, the next chunk fed starts a new command
+     * <p/>
+     * A command that was not complete yet is dropped.
+     *
+     * @param numberOfBytesToSkip - the number of bytes left out of the job
+     */
+    public void skip(long numberOfBytesToSkip) {
+        if (state == ENDED) {
+            throw new IllegalStateException("No more input can be fed after the end of the input");
+        }
+        position += numberOfBytesToSkip;
+        text.size = 0;
+        data = null;
+        state = START;
+    }
+
+    /**
+     * Parses the next chunk of the job, the chunk is read from its position to its limit
+     *
+     * @param chunk - the next bytes of the job
+     * @throws IllegalStateException when the end of the input was already reached
+     */
+    public void feed(ByteBuffer chunk) throws IllegalStateException {
+        if (state == ENDED) {
+            throw new IllegalStateException("No more input can be fed after the end of the input");
+        }
+        while (chunk.hasRemaining()) {
+            switch (state) {
+                case START:
+                    start(chunk);
+                    break;
+                case TEXT:
+                    text(chunk);
+                    break;
+                case DATA:
+                    data(chunk);
+                    break;
+                case PJL:
+                    pjl(chunk);
+                    break;
+                case LANGUAGE_SECTION:
+                    languageSection(chunk);
+                    break;
+                case PARAMETER:
+                    endParameter(chunk.get(chunk.position()) == PclUtil.ESCAPE);
+                    break;
+                default:
+                    commandByte(read(chunk));
+            }
+        }
+    }
+
+    /**
+     * Finishes the command the job ends in, once all of the job was fed
+     * <p/>
+     * A command that was cut off is handled the way {@link ByteBufferPclCommandReader} handles a job ending in it:
+     * binary data is cut short and an unfinished command is text.
+     */
+    public void endOfInput() {
+        if (state == PARAMETER) {
+            endParameter(true);
+        }
+        switch (state) {
+            case TEXT:
+                emitText();
+                break;
+            case ESCAPE:
+            case PARAMETERIZED:
+            case GROUPED_VALUE:
+            case UNGROUPED_VALUE:
+                emitRawAsText();
+                break;
+            case DATA:
+                emitParameterized(terminator, Arrays.copyOf(data, dataLength));
+                break;
+            case PJL:
+                emitUniversalExit();
+                break;
+            case LANGUAGE_SECTION:
+                emitLanguageSection(text.size);
+                break;
+        }
+        state = ENDED;
+    }
+
+    private byte read(ByteBuffer chunk) {
+        position++;
+        return chunk.get();
+    }
+
+    private void start(ByteBuffer chunk) {
+        startNextCommand();
+        if (chunk.get(chunk.position()) == PclUtil.ESCAPE) {
+            raw.add(read(chunk));
+            state = ESCAPE;
+        } else {
+            text.size = 0;
+            state = TEXT;
+        }
+    }
+
+    /**
+     * Text runs up to the next ESCAPE byte, text held in one chunk is copied straight out of it
+     */
+    private void text(ByteBuffer chunk) {
+        int start = chunk.position();
+        int end = start;
+        while (end < chunk.limit() && chunk.get(end) != PclUtil.ESCAPE) {
+            end++;
+        }
+        int length = end - start;
+        if (end < chunk.limit() && text.size == 0) {
+            byte[] bytes = new byte[length];
+            chunk.get(bytes);
+            position += length;
+            writer.write(pclCommandFactory.buildTextCommand(commandPosition, bytes));
+            state = START;
+            return;
+        }
+        text.add(chunk, length);
+        position += length;
+        if (end < chunk.limit()) {
+            emitText();
+        }
+    }
+
+    private void emitText() {
+        writer.write(pclCommandFactory.buildTextCommand(commandPosition, Arrays.copyOf(text.bytes, text.size)));
+        text.size = 0;
+        state = START;
+    }
+
+    /**
+     * Follows the command byte by byte the same way ByteBufferPclCommandReader does
+     */
+    private void commandByte(byte currentByte) {
+        switch (state) {
+            case ESCAPE:
+                if (pclUtil.is2ByteCommandOperator(currentByte)) {
+                    writer.write(pclCommandFactory.buildTwoByteCommand(commandPosition, currentByte));
+                    state = START;
+                } else if (pclUtil.isParameterizedCharacter(currentByte)) {
+                    raw.add(currentByte);
+                    parameterized = currentByte;
+                    state = PARAMETERIZED;
+                } else {
+                    raw.add(currentByte);
+                    emitRawAsText();
+                }
+                break;
+            case PARAMETERIZED:
+                raw.add(currentByte);
+                group = currentByte;
+                state = pclUtil.isGroupCharacter(currentByte) ? GROUPED_VALUE : UNGROUPED_VALUE;
+                break;
+            case GROUPED_VALUE:
+                raw.add(currentByte);
+                if (pclUtil.isParameterCharacter(currentByte)) {
+                    parameter = currentByte;
+                    state = PARAMETER;
+                } else if (isTerminationByte(currentByte)) {
+                    terminate(currentByte);
+                } else {
+                    addValueByte(currentByte);
+                }
+                break;
+            case UNGROUPED_VALUE:
+                raw.add(currentByte);
+                if (isTerminationByte(currentByte)) {
+                    if (pclUtil.isUniversalExit(Arrays.copyOf(raw.bytes, raw.size))) {
+                        terminator = currentByte;
+                        text.size = 0;
+                        pjlLineStart = 0;
+                        state = PJL;
+                    } else {
+                        emitParameterized(currentByte, new byte[0]);
+                    }
+                } else {
+                    addValueByte(currentByte);
+                }
+                break;
+        }
+    }
+
+    /**
+     * A parameter byte of a grouped command only ends a combined command when the next byte is not an ESCAPE byte
+     * (or the end of the input), otherwise it is the terminator or part of the value
+     */
+    private void endParameter(boolean nextIsEscape) {
+        byte currentByte = parameter;
+        if (!nextIsEscape) {
+            emitParameterized(pclUtil.changeParameterToTerminator(currentByte), new byte[0]);
+            startNextCommand();
+            state = GROUPED_VALUE;
+        } else if (isTerminationByte(currentByte)) {
+            terminate(currentByte);
+        } else {
+            addValueByte(currentByte);
+            state = GROUPED_VALUE;
+        }
+    }
+
+    private void terminate(byte currentByte) {
+        terminator = currentByte;
+        if (!pclCommandGrammar.isExpectingData(parameterized, group, currentByte)) {
+            emitParameterized(currentByte, new byte[0]);
+            return;
+        }
+        long expected = Math.max(0, valueParser.getScaledValue() / PclValueParser.SCALE);
+        if (expected == 0) {
+            emitParameterized(currentByte, new byte[0]);
+            return;
+        }
+        data = new byte[(int) Math.min(expected, MAX_INITIAL_DATA)];
+        dataLength = 0;
+        dataExpected = (int) Math.min(expected, Integer.MAX_VALUE - 8);
+        state = DATA;
+    }
+
+    private void data(ByteBuffer chunk) {
+        int count = Math.min(dataExpected - dataLength, chunk.remaining());
+        if (dataLength + count > data.length) {
+            data = Arrays.copyOf(data, (int) Math.min(dataExpected, Math.max(2L * data.length, dataLength + count)));
+        }
+        chunk.get(data, dataLength, count);
+        dataLength += count;
+        position += count;
+        if (dataLength == dataExpected) {
+            emitParameterized(terminator, data);
+        }
+    }
+
+    /**
+     * The PJL after a universal exit runs up to the next ESCAPE byte or the line entering a language
+     */
+    private void pjl(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            if (chunk.get(chunk.position()) == PclUtil.ESCAPE) {
+                emitUniversalExit();
+                return;
+            }
+            byte currentByte = read(chunk);
+            text.add(currentByte);
+            if (currentByte == '\n') {
+                String entered = pclUtil.getEnteredLanguage(text.bytes, pjlLineStart, text.size - pjlLineStart);
+                if (entered != null) {
+                    emitUniversalExit();
+                    if (!pclUtil.isPclLanguage(entered)) {
+                        language = entered;
+                        commandPosition = position;
+                        text.size = 0;
+                        universalExitMatched = 0;
+                        state = LANGUAGE_SECTION;
+                    }
+                    return;
+                }
+                pjlLineStart = text.size;
+            }
+        }
+    }
+
+    private void emitUniversalExit() {
+        byte[] pjl = Arrays.copyOf(text.bytes, text.size);
+        text.size = 0;
+        emitParameterized(terminator, pjl);
+    }
+
+    /**
+     * A language section runs up to the next universal exit, which is then parsed as a command
+     */
+    private void languageSection(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            byte currentByte = read(chunk);
+            text.add(currentByte);
+            if (currentByte == UNIVERSAL_EXIT[universalExitMatched]) {
+                universalExitMatched++;
+            } else {
+                universalExitMatched = currentByte == PclUtil.ESCAPE ? 1 : 0;
+            }
+            if (universalExitMatched == UNIVERSAL_EXIT.length) {
+                emitLanguageSection(text.size - UNIVERSAL_EXIT.length);
+                startNextCommand();
+                commandPosition = position - UNIVERSAL_EXIT.length;
+                parameterized = '%';
+                group = '-';
+                for (int i = 0; i < UNIVERSAL_EXIT.length - 1; i++) {
+                    raw.add(UNIVERSAL_EXIT[i]);
+                }
+                for (int i = 3; i < UNIVERSAL_EXIT.length - 1; i++) {
+                    addValueByte(UNIVERSAL_EXIT[i]);
+                }
+                state = UNGROUPED_VALUE;
+                commandByte(currentByte);
+                return;
+            }
+        }
+    }
+
+    private void emitLanguageSection(int length) {
+        if (length > 0) {
+            writer.write(pclCommandFactory.buildLanguageSectionCommand(commandPosition, language, ByteBuffer.wrap(text.bytes), 0, length));
+            text.bytes = new byte[256];
+        }
+        text.size = 0;
+        state = START;
+    }
+
+    private void emitParameterized(byte terminatorByte, byte[] dataBytes) {
+        ParameterizedCommand command = pclCommandFactory.buildParameterizedCommand(commandPosition, parameterized, group,
+                Arrays.copyOf(value.bytes, value.size), terminatorByte, dataBytes);
+        command.setNumericValue(valueParser.getScaledValue(), valueParser.getSign(), valueParser.hasDecimal());
+        writer.write(command);
+        data = null;
+        state = START;
+    }
+
+    private void emitRawAsText() {
+        writer.write(pclCommandFactory.buildTextCommand(commandPosition, Arrays.copyOf(raw.bytes, raw.size)));
+        state = START;
+    }
+
+    private void addValueByte(byte currentByte) {
+        value.add(currentByte);
+        valueParser.append(currentByte);
+    }
+
+    private void startNextCommand() {
+        raw.size = 0;
+        value.size = 0;
+        valueParser.reset();
+        commandPosition = position;
+    }
+
+    private boolean isTerminationByte(byte currentByte) {
+        return pclUtil.isTermination((byte) Character.toUpperCase(currentByte));
+    }
+
+    /**
+     * A growing array of bytes
+     */
+    private static class Bytes {
+        private byte[] bytes;
+        private int size;
+
+        private Bytes(int initialSize) {
+            bytes = new byte[initialSize];
+        }
+
+        private void add(byte value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = value;
+        }
+
+        private void add(ByteBuffer chunk, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + length, bytes.length * 2));
+            }
+            chunk.get(bytes, size, length);
+            size += length;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Follows the modal state of the printer as commands are sent to it
+ * <p/>
+ * The state tracked is the primary and secondary font (characteristics, font ID and symbol set), orientation and
+ * print direction, margins, the print model (transparency modes, logical operation, pixel placement), the
+ * current pattern and the foreground color. Any state that can not be known for sure (ex. after a reset, a macro
+ * is executed or the font the characteristics resolve to may have changed) is forgotten, so a command is only
+ * ever considered {@link #isRedundant(PclCommand) redundant} when it sets a value the printer already has.
+ * <p/>
+ * Commands inside a macro definition or sent while display functions are on are not executed by the printer and
+ * do not change the state. A combined command (ex. "ESC(s1p12H" built by the PclCommandCompressor) is taken as the
+ * commands it was made from.
+ */
+public class PclStateTracker {
+    public static final int FONT = 0;
+    public static final int SYMBOL_SET = 1;
+    public static final int ORIENTATION = 2;
+    public static final int MARGINS = 3;
+    public static final int PRINT_MODEL = 4;
+    public static final int PATTERN = 5;
+    public static final int COLOR = 6;
+    public static final int FAMILY_COUNT = 7;
+
+    private static final byte UNGROUPED = '#';
+    private static final Map<Integer, Integer> FAMILIES = new HashMap<Integer, Integer>();
+
+    static {
+        for (String command : new String[]{"(s#P", "(s#H", "(s#V", "(s#S", "(s#B", "(s#T", "(##X",
+                ")s#P", ")s#H", ")s#V", ")s#S", ")s#B", ")s#T", ")##X"}) {
+            FAMILIES.put(keyOf(command), FONT);
+        }
+        FAMILIES.put(keyOf("(##U"), SYMBOL_SET);
+        FAMILIES.put(keyOf(")##U"), SYMBOL_SET);
+        FAMILIES.put(keyOf("&l#O"), ORIENTATION);
+        FAMILIES.put(keyOf("&a#P"), ORIENTATION);
+        for (String command : new String[]{"&a#L", "&a#M", "&l#E", "&l#F"}) {
+            FAMILIES.put(keyOf(command), MARGINS);
+        }
+        for (String command : new String[]{"*v#N", "*v#O", "*l#O", "*l#R"}) {
+            FAMILIES.put(keyOf(command), PRINT_MODEL);
+        }
+        FAMILIES.put(keyOf("*c#G"), PATTERN);
+        FAMILIES.put(keyOf("*v#T"), PATTERN);
+        FAMILIES.put(keyOf("*v#S"), COLOR);
+    }
+
+    private final PclUtil pclUtil = new PclUtil();
+    private final PclCommandGrammar pclCommandGrammar = PclCommandGrammar.getDefault();
+    private Map<Integer, Long> values = new HashMap<Integer, Long>();
+    private boolean definingMacro;
+    private boolean displayFunctions;
+
+    /**
+     * Determines if sending the command would not change the state of the printer
+     *
+     * @param command - the command to check
+     * @return true - the printer already has the state the command sets<br/>false - the command may change the state
+     */
+    public boolean isRedundant(PclCommand command) {
+        if (definingMacro || displayFunctions) {
+            return false;
+        }
+        List<PclCommand> parts = partsOf(command);
+        if (parts != null) {
+            for (PclCommand part : parts) {
+                if (!isRedundant(part)) {
+                    return false;
+                }
+            }
+            return !parts.isEmpty();
+        }
+        int key = keyOf(command);
+        if (!FAMILIES.containsKey(key)) {
+            return false;
+        }
+        Long value = values.get(key);
+        return value != null && value == valueOf((ParameterizedCommand) command);
+    }
+
+    /**
+     * Changes the state as the printer would when it receives the command
+     *
+     * @param command - the command sent to the printer
+     */
+    public void apply(PclCommand command) {
+        List<PclCommand> parts = partsOf(command);
+        if (parts != null) {
+            for (PclCommand part : parts) {
+                apply(part);
+            }
+            return;
+        }
+        if (displayFunctions) {
+            displayFunctions = !pclUtil.isCommand(command, 'Z');
+            return;
+        }
+        if (definingMacro) {
+            definingMacro = !isMacroControl(command, 1);
+            return;
+        }
+
+        if (command instanceof LanguageSectionCommand) {
+            reset();
+        } else if (command instanceof TwoByteCommand) {
+            byte operation = ((TwoByteCommand) command).getOperation();
+            if (operation == 'E') {
+                reset();
+            } else if (operation == 'Y') {
+                displayFunctions = true;
+            } else if (operation == '9') {
+                forgetFamily(MARGINS);
+            }
+        } else if (command instanceof ParameterizedCommand) {
+            applyParameterized((ParameterizedCommand) command);
+        }
+    }
+
+    /**
+     * The family of state the command sets, the family of its first command for a combined command
+     *
+     * @param command - the command
+     * @return FONT, SYMBOL_SET, ORIENTATION, MARGINS, PRINT_MODEL, PATTERN, COLOR or -1 when the command is not tracked
+     */
+    public int getFamily(PclCommand command) {
+        List<PclCommand> parts = partsOf(command);
+        if (parts != null) {
+            return parts.isEmpty() ? -1 : getFamily(parts.get(0));
+        }
+        Integer family = FAMILIES.get(keyOf(command));
+        return family == null ? -1 : family;
+    }
+
+    /**
+     * The value the printer currently has for a command
+     *
+     * @param command - the command in the form "[parameterized][group]#[terminator]" (ex. "(s#H"), "(##U" for the
+     *                symbol set and "(##X" for the font ID
+     * @return the value scaled by PclValueParser.SCALE or null when the value is not known
+     */
+    public Long getValue(String command) {
+        return values.get(keyOf(command));
+    }
+
+    /**
+     * Forget all state, as the printer does on a reset
+     */
+    public void reset() {
+        values.clear();
+        definingMacro = false;
+        displayFunctions = false;
+    }
+
+    public boolean isDefiningMacro() {
+        return definingMacro;
+    }
+
+    private void applyParameterized(ParameterizedCommand command) {
+        byte parameterized = command.getParameterizedByte();
+        byte group = command.getGroupByte();
+        char terminator = Character.toUpperCase((char) command.getTerminatorByte());
+        int key = keyOf(command);
+        Integer family = FAMILIES.get(key);
+
+        if (family != null) {
+            long value = valueOf(command);
+            Long current = values.get(key);
+            if (current != null && current == value) {
+                return;
+            }
+            if (family == FONT || family == SYMBOL_SET) {
+                if (terminator == 'X') {
+                    forgetFont(parameterized);
+                } else {
+                    values.remove(keyOf((char) parameterized + "##X"));
+                }
+                forgetHorizontalMargins();
+            } else if (key == keyOf("&l#O")) {
+                forgetFamily(MARGINS);
+            } else if (key == keyOf("&l#E")) {
+                values.remove(keyOf("&l#F"));
+            }
+            values.put(key, value);
+        } else if (parameterized == '%') {
+            reset();
+        } else if (isMacroControl(command, 0)) {
+            definingMacro = true;
+        } else if (isMacroControl(command, 2) || isMacroControl(command, 3)) {
+            reset();
+        } else if ((parameterized == '(' || parameterized == ')') && terminator == '@') {
+            forgetFont(parameterized);
+            forgetHorizontalMargins();
+        } else if (pclUtil.isCommand(command, '(', 'f', 'W')) {
+            forgetFamily(SYMBOL_SET);
+        } else if (pclUtil.isCommand(command, ')', 's', 'W') || pclUtil.isCommand(command, '*', 'c', 'F')) {
+            forgetFamily(FONT);
+            forgetFamily(SYMBOL_SET);
+            forgetHorizontalMargins();
+        } else if (pclUtil.isCommand(command, '&', 'k', 'H') || pclUtil.isCommand(command, '&', 'k', 'S')) {
+            forgetHorizontalMargins();
+        } else if (pclUtil.isCommand(command, '&', 'l', 'C') || pclUtil.isCommand(command, '&', 'l', 'D')) {
+            values.remove(keyOf("&l#E"));
+            values.remove(keyOf("&l#F"));
+        } else if (pclUtil.isCommand(command, '*', 'c', 'W') || pclUtil.isCommand(command, '*', 'c', 'Q')) {
+            forgetFamily(PATTERN);
+        } else if (pclUtil.isCommand(command, '*', 'v', 'I') || pclUtil.isCommand(command, '*', 'v', 'W')
+                || pclUtil.isCommand(command, '*', 'r', 'U') || pclUtil.isCommand(command, '&', 'p', 'S')
+                || pclUtil.isCommand(command, '&', 'p', 'C')) {
+            forgetFamily(COLOR);
+        } else if (pclCommandGrammar.isPageEjecting(parameterized, group, (byte) terminator)) {
+            forgetFamily(MARGINS);
+        }
+    }
+
+    private boolean isMacroControl(PclCommand command, int operation) {
+        return pclUtil.isCommand(command, '&', 'f', 'X') && ((ParameterizedCommand) command).getIntValue() == operation;
+    }
+
+    private void forgetFont(byte side) {
+        Iterator<Integer> keys = values.keySet().iterator();
+        while (keys.hasNext()) {
+            int key = keys.next();
+            Integer family = FAMILIES.get(key);
+            if ((family == FONT || family == SYMBOL_SET) && (key >>> 16) == side) {
+                keys.remove();
+            }
+        }
+    }
+
+    private void forgetHorizontalMargins() {
+        values.remove(keyOf("&a#L"));
+        values.remove(keyOf("&a#M"));
+    }
+
+    private void forgetFamily(int family) {
+        Iterator<Integer> keys = values.keySet().iterator();
+        while (keys.hasNext()) {
+            if (FAMILIES.get(keys.next()) == family) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * The commands a combined command was made from, read back out of its bytes since it has no value bytes of its own
+     *
+     * @return the commands or null when the command is not a combined command
+     */
+    private List<PclCommand> partsOf(PclCommand command) {
+        if (!(command instanceof ParameterizedCommand) || ((ParameterizedCommand) command).getValueBytes() != null) {
+            return null;
+        }
+        List<PclCommand> parts = new ArrayList<PclCommand>();
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(command.getBytes());
+        PclCommand part;
+        while ((part = reader.nextCommand()) != null) {
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * The value of the command, the symbol set letter is made part of the value since every symbol set is one state
+     */
+    private long valueOf(ParameterizedCommand command) {
+        byte group = command.getGroupByte();
+        if (group >= '0' && group <= '9') {
+            long value = pclUtil.getUngroupedIntValue(command);
+            return value * 128 + Character.toUpperCase((char) command.getTerminatorByte());
+        }
+        return command.getScaledDecimalValue();
+    }
+
+    private static int keyOf(PclCommand command) {
+        if (!(command instanceof ParameterizedCommand) || ((ParameterizedCommand) command).getValueBytes() == null) {
+            return -1;
+        }
+        ParameterizedCommand parameterizedCommand = (ParameterizedCommand) command;
+        byte parameterized = parameterizedCommand.getParameterizedByte();
+        byte group = parameterizedCommand.getGroupByte();
+        char terminator = Character.toUpperCase((char) parameterizedCommand.getTerminatorByte());
+        if (group >= '0' && group <= '9') {
+            group = UNGROUPED;
+            if (terminator != 'X' && terminator != '@' && terminator != 'W') {
+                terminator = 'U';
+            }
+        }
+        return keyOf(parameterized, group, terminator);
+    }
+
+    private static int keyOf(String command) {
+        return keyOf((byte) command.charAt(0), (byte) command.charAt(1), command.charAt(3));
+    }
+
+    private static int keyOf(byte parameterized, byte group, char terminator) {
+        return (parameterized << 16) | (group << 8) | terminator;
+    }
+}
@@ -0,0 +1,485 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pulls the text out of a job along with the page and the position it is printed at
+ * <p/>
+ * The job is parsed with {@link ByteBufferPclCommandReader#parse(PclCommandHandler)} so no PclCommands are built,
+ * the text is decoded straight from the buffer into a CharBuffer that is reused for every run of text. Each run
+ * is handed to the {@link Listener} with the page it is on (numbered the same way as {@link PclPrinterStateMachine}),
+ * the cursor position it starts at and the ID of the font it is printed in.
+ * <p/>
+ * Positions are in decipoints (1/720 inch) from the left edge of the logical page and the top margin. The cursor
+ * is moved by the cursor positioning commands (decipoints, PCL units, rows and columns), push/pop position,
+ * carriage return, line feed, half line feed, backspace and tab. Character widths are not known without the font
+ * metrics, so the cursor is moved along a run of text by the HMI (set with ESC&amp;k#H or the pitch of the font)
+ * which is exact for fixed pitch fonts only.
+ * <p/>
+ * The bytes are decoded with the symbol set of the font in use (ESC(#U / ESC)#U, switched with SO and SI).
+ * Roman-8 (8U, the printer default), ISO Latin 1 (0N), Windows Latin 1 (19U) and PC-8 (10U) are known, any other
+ * symbol set is decoded as Roman-8. Text inside macro definitions, HP-GL/2 and display functions is not printed as
+ * is and is left out, transparent print data (ESC&amp;p#X) is included.
+ */
+public class PclTextExtractor {
+    /**
+     * Receives the text found in the job
+     */
+    public interface Listener {
+        /**
+         * A run of text was found
+         *
+         * @param page - the page the text is on, starting at 1
+         * @param x    - the horizontal position the text starts at (decipoints)
+         * @param y    - the vertical position of the baseline of the text (decipoints)
+         * @param font - the ID of the font the text is printed in or -1 when the font was selected by its characteristics
+         * @param text - the text, only valid during the call (copy it to keep it)
+         */
+        void text(int page, int x, int y, int font, CharSequence text);
+    }
+
+    private static final byte BACKSPACE = 8;
+    private static final byte TAB = 9;
+    private static final byte LINE_FEED = 10;
+    private static final byte FORM_FEED = 12;
+    private static final byte CARRIAGE_RETURN = 13;
+    private static final byte SHIFT_OUT = 14;
+    private static final byte SHIFT_IN = 15;
+    private static final double DECIPOINTS_PER_INCH = 720;
+    private static final double DEFAULT_HMI = 72;
+    private static final double DEFAULT_VMI = 120;
+    private static final int DEFAULT_UNITS = 300;
+    private static final int TAB_COLUMNS = 8;
+    private static final int POSITION_STACK_DEPTH = 20;
+    private static final int ROMAN_8 = symbolSetOf(8, 'U');
+    private static final char[] ROMAN_8_UPPER_HALF = ("\u00a0\u00c0\u00c2\u00c8\u00ca\u00cb\u00ce\u00cf\u00b4\u02cb\u02c6\u00a8\u02dc\u00d9\u00db\u20a4"
+            + "\u00af\u00dd\u00fd\u00b0\u00c7\u00e7\u00d1\u00f1\u00a1\u00bf\u00a4\u00a3\u00a5\u00a7\u0192\u00a2"
+            + "\u00e2\u00ea\u00f4\u00fb\u00e1\u00e9\u00f3\u00fa\u00e0\u00e8\u00f2\u00f9\u00e4\u00eb\u00f6\u00fc"
+            + "\u00c5\u00ee\u00d8\u00c6\u00e5\u00ed\u00f8\u00e6\u00c4\u00ec\u00d6\u00dc\u00c9\u00ef\u00df\u00d4"
+            + "\u00c1\u00c3\u00e3\u00d0\u00f0\u00cd\u00cc\u00d3\u00d2\u00d5\u00f5\u0160\u0161\u00da\u0178\u00ff"
+            + "\u00de\u00fe\u00b7\u00b5\u00b6\u00be\u2014\u00bc\u00bd\u00aa\u00ba\u00ab\u25a0\u00bb\u00b1\u0000").toCharArray();
+    private static final Map<Integer, char[]> SYMBOL_SETS = new HashMap<Integer, char[]>();
+
+    static {
+        char[] roman8 = asciiTable();
+        System.arraycopy(ROMAN_8_UPPER_HALF, 0, roman8, 0xa0, ROMAN_8_UPPER_HALF.length);
+        SYMBOL_SETS.put(ROMAN_8, roman8);
+        SYMBOL_SETS.put(symbolSetOf(0, 'N'), charsetTable("ISO-8859-1", 0xa0));
+        SYMBOL_SETS.put(symbolSetOf(19, 'U'), charsetTable("windows-1252", 0x80));
+        SYMBOL_SETS.put(symbolSetOf(10, 'U'), charsetTable("IBM437", 0x80));
+    }
+
+    private final PclValueParser valueParser = new PclValueParser();
+    private final Listener listener;
+    private CharBuffer text = CharBuffer.allocate(256);
+    private ByteBuffer source;
+    private int page;
+    private boolean marked;
+    private double x;
+    private double y;
+    private double hmi;
+    private double vmi;
+    private double leftMargin;
+    private int unitsPerInch;
+    private int[] fonts = new int[2];
+    private char[][] symbolSets = new char[2][];
+    private int activeFont;
+    private double[] positionStack = new double[POSITION_STACK_DEPTH * 2];
+    private int positionStackSize;
+    private long[] pageSettings = new long[3];
+    private boolean definingMacro;
+    private boolean displayFunctions;
+    private boolean hpgl;
+
+    public PclTextExtractor(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Extracts the text of a job, the file is mapped into memory
+     *
+     * @param job - the PCL job
+     * @throws PclCommandReader.PclCommandReaderException when there is a problem reading the job
+     */
+    public void extract(File job) {
+        MappedFilePclCommandReader reader = new MappedFilePclCommandReader(job);
+        try {
+            extract(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Extracts the text of a job held in memory
+     *
+     * @param job - the PCL job
+     */
+    public void extract(ByteBuffer job) {
+        extract(new ByteBufferPclCommandReader(job));
+    }
+
+    /**
+     * Extracts the text of the remaining commands of the reader
+     *
+     * @param reader - the reader to parse the commands with
+     */
+    public void extract(ByteBufferPclCommandReader reader) {
+        source = reader.getContents();
+        page = 1;
+        marked = false;
+        reset();
+        try {
+            reader.parse(new Handler());
+        } finally {
+            source = null;
+        }
+    }
+
+    private void reset() {
+        hmi = DEFAULT_HMI;
+        vmi = DEFAULT_VMI;
+        leftMargin = 0;
+        unitsPerInch = DEFAULT_UNITS;
+        fonts[0] = -1;
+        fonts[1] = -1;
+        symbolSets[0] = SYMBOL_SETS.get(ROMAN_8);
+        symbolSets[1] = symbolSets[0];
+        activeFont = 0;
+        positionStackSize = 0;
+        for (int i = 0; i < pageSettings.length; i++) {
+            pageSettings[i] = Long.MIN_VALUE;
+        }
+        definingMacro = false;
+        displayFunctions = false;
+        hpgl = false;
+        topOfPage();
+    }
+
+    private void topOfPage() {
+        x = leftMargin;
+        y = vmi * 0.75;
+    }
+
+    private void ejectMarkedPage() {
+        if (marked) {
+            eject();
+        }
+    }
+
+    private void eject() {
+        page++;
+        marked = false;
+        topOfPage();
+    }
+
+    private void text(long position, int length) {
+        if (displayFunctions || definingMacro || hpgl) {
+            if (displayFunctions || hpgl) {
+                marked = true;
+            }
+            return;
+        }
+
+        char[] symbolSet = symbolSets[activeFont];
+        double runX = x;
+        int end = (int) position + length;
+        for (int i = (int) position; i < end; i++) {
+            int character = source.get(i) & 0xff;
+            char decoded = symbolSet[character];
+            if (decoded == ' ' && text.position() == 0) {
+                x += hmi;
+                runX = x;
+            } else if (decoded != 0) {
+                append(decoded);
+                x += hmi;
+            } else {
+                flush(runX);
+                if (character > ' ' && character != 127) {
+                    marked = true;
+                }
+                control((byte) character);
+                symbolSet = symbolSets[activeFont];
+                runX = x;
+            }
+        }
+        flush(runX);
+    }
+
+    private void append(char character) {
+        if (!text.hasRemaining()) {
+            CharBuffer larger = CharBuffer.allocate(text.capacity() * 2);
+            text.flip();
+            larger.put(text);
+            text = larger;
+        }
+        text.put(character);
+    }
+
+    private void flush(double runX) {
+        int length = text.position();
+        while (length > 0 && text.get(length - 1) == ' ') {
+            length--;
+        }
+        if (length > 0) {
+            marked = true;
+            text.position(length);
+            text.flip();
+            listener.text(page, round(runX), round(y), fonts[activeFont], text);
+        }
+        text.clear();
+    }
+
+    private void control(byte character) {
+        if (character == CARRIAGE_RETURN) {
+            x = leftMargin;
+        } else if (character == LINE_FEED) {
+            y += vmi;
+        } else if (character == FORM_FEED) {
+            eject();
+        } else if (character == BACKSPACE) {
+            x = Math.max(leftMargin, x - hmi);
+        } else if (character == TAB) {
+            double tab = hmi * TAB_COLUMNS;
+            x = leftMargin + (Math.floor((x - leftMargin) / tab) + 1) * tab;
+        } else if (character == SHIFT_OUT) {
+            activeFont = 1;
+        } else if (character == SHIFT_IN) {
+            activeFont = 0;
+        }
+    }
+
+    private void twoByteCommand(byte operation) {
+        if (displayFunctions || definingMacro) {
+            return;
+        }
+        if (operation == 'E') {
+            ejectMarkedPage();
+            reset();
+        } else if (operation == 'Y') {
+            displayFunctions = true;
+        } else if (operation == '9') {
+            leftMargin = 0;
+        } else if (operation == '=') {
+            y += vmi / 2;
+        }
+    }
+
+    private void parameterizedCommand(byte parameterized, byte group, byte terminator, long valuePosition, int valueLength,
+                                      long dataPosition, int dataLength) {
+        terminator = (byte) Character.toUpperCase(terminator);
+        if (displayFunctions) {
+            displayFunctions = terminator != 'Z';
+            return;
+        }
+        if (parameterized == '%') {
+            if (terminator == 'X') {
+                ejectMarkedPage();
+                reset();
+            } else if (terminator == 'B') {
+                hpgl = true;
+                marked = true;
+            } else if (terminator == 'A') {
+                hpgl = false;
+            }
+            return;
+        }
+
+        parseValue(group, valuePosition, valueLength);
+        if (parameterized == '&' && group == 'f' && terminator == 'X') {
+            int control = (int) (valueParser.getScaledValue() / PclValueParser.SCALE);
+            if (control == 0) {
+                definingMacro = true;
+            } else if (control == 1) {
+                definingMacro = false;
+            }
+        } else if (definingMacro) {
+            return;
+        } else if (parameterized == '&' && group == 'p' && terminator == 'X') {
+            text(dataPosition, dataLength);
+        } else if (parameterized == '&' && group == 'l') {
+            layoutCommand(terminator);
+        } else if (parameterized == '&' && group == 'a') {
+            cursorCommand(terminator);
+        } else if (parameterized == '&' && group == 'k' && terminator == 'H') {
+            hmi = value() * 6;
+        } else if (parameterized == '&' && group == 'f' && terminator == 'S') {
+            pushOrPopPosition((int) value());
+        } else if (parameterized == '&' && group == 'u' && terminator == 'D') {
+            int units = (int) value();
+            if (units > 0) {
+                unitsPerInch = units;
+            }
+        } else if (parameterized == '*' && group == 'p') {
+            double decipoints = value() * DECIPOINTS_PER_INCH / unitsPerInch;
+            if (terminator == 'X') {
+                x = move(x, decipoints);
+            } else if (terminator == 'Y') {
+                y = move(y, decipoints);
+            }
+        } else if (parameterized == '(' || parameterized == ')') {
+            fontCommand(parameterized == '(' ? 0 : 1, group, terminator);
+        }
+    }
+
+    private void layoutCommand(byte terminator) {
+        if (terminator == 'C') {
+            vmi = value() * 15;
+        } else if (terminator == 'D') {
+            if (value() > 0) {
+                vmi = DECIPOINTS_PER_INCH / value();
+            }
+        } else if (terminator == 'H') {
+            ejectMarkedPage();
+        } else if (terminator == 'A' || terminator == 'O' || terminator == 'S') {
+            int setting = terminator == 'A' ? 0 : terminator == 'O' ? 1 : 2;
+            long value = valueParser.getScaledValue();
+            if (pageSettings[setting] != value) {
+                ejectMarkedPage();
+                pageSettings[setting] = value;
+            }
+        }
+    }
+
+    private void cursorCommand(byte terminator) {
+        if (terminator == 'H') {
+            x = move(x, value());
+        } else if (terminator == 'V') {
+            y = move(y, value());
+        } else if (terminator == 'C') {
+            x = move(x, value() * hmi);
+        } else if (terminator == 'R') {
+            y = valueParser.getSign() == PclValueParser.NO_SIGN ? (value() + 0.75) * vmi : y + value() * vmi;
+        } else if (terminator == 'L') {
+            leftMargin = value() * hmi;
+        } else if (terminator == 'G') {
+            ejectMarkedPage();
+        }
+    }
+
+    private void fontCommand(int font, byte group, byte terminator) {
+        if (group == 's') {
+            if (terminator == 'H' && value() > 0) {
+                if (font == activeFont) {
+                    hmi = DECIPOINTS_PER_INCH / value();
+                }
+            }
+            if (terminator != 'W') {
+                fonts[font] = -1;
+            }
+        } else if (group >= '0' && group <= '9') {
+            int number = (int) value();
+            if (terminator == 'X') {
+                fonts[font] = number;
+            } else if (terminator >= 'A' && terminator <= 'Z') {
+                char[] symbolSet = SYMBOL_SETS.get(symbolSetOf(number, (char) terminator));
+                symbolSets[font] = symbolSet != null ? symbolSet : SYMBOL_SETS.get(ROMAN_8);
+            }
+        }
+    }
+
+    private void pushOrPopPosition(int control) {
+        if (control == 0 && positionStackSize < POSITION_STACK_DEPTH) {
+            positionStack[positionStackSize * 2] = x;
+            positionStack[positionStackSize * 2 + 1] = y;
+            positionStackSize++;
+        } else if (control == 1 && positionStackSize > 0) {
+            positionStackSize--;
+            x = positionStack[positionStackSize * 2];
+            y = positionStack[positionStackSize * 2 + 1];
+        }
+    }
+
+    /**
+     * Parses the value of a command, the group byte is part of the value when it is a digit (ex. ESC(10U)
+     */
+    private void parseValue(byte group, long valuePosition, int valueLength) {
+        valueParser.reset();
+        if (group >= '0' && group <= '9') {
+            valueParser.append(group);
+        }
+        for (int i = 0; i < valueLength; i++) {
+            valueParser.append(source.get((int) valuePosition + i));
+        }
+    }
+
+    private double value() {
+        return (double) valueParser.getScaledValue() / PclValueParser.SCALE;
+    }
+
+    private double move(double current, double value) {
+        return valueParser.getSign() == PclValueParser.NO_SIGN ? value : current + value;
+    }
+
+    private static int round(double decipoints) {
+        return (int) Math.round(decipoints);
+    }
+
+    private static int symbolSetOf(int number, char letter) {
+        return number * 32 + letter - 64;
+    }
+
+    private static char[] asciiTable() {
+        char[] table = new char[256];
+        for (char character = ' '; character < 127; character++) {
+            table[character] = character;
+        }
+        return table;
+    }
+
+    private static char[] charsetTable(String charsetName, int from) {
+        char[] table = asciiTable();
+        if (!Charset.isSupported(charsetName)) {
+            return table;
+        }
+        Charset charset = Charset.forName(charsetName);
+        for (int character = from; character < 256; character++) {
+            char decoded = new String(new byte[]{(byte) character}, charset).charAt(0);
+            if (decoded != '\ufffd') {
+                table[character] = decoded;
+            }
+        }
+        return table;
+    }
+
+    private class Handler implements PclCommandHandler {
+        public void twoByteCommand(long position, byte operation) {
+            PclTextExtractor.this.twoByteCommand(operation);
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            PclTextExtractor.this.parameterizedCommand(parameterized, group, terminator, valuePosition, valueLength,
+                    dataPosition, dataLength);
+        }
+
+        public void textCommand(long position, int length) {
+            text(position, length);
+        }
+
+        public void languageSection(long position, String language, int length) {
+            ejectMarkedPage();
+            reset();
+            eject();
+        }
+    }
+}
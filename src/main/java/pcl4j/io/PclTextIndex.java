@@ -0,0 +1,370 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index of the words printed on every page of a job, saved next to the job so it can be searched
+ * without going over the job again
+ * <p/>
+ * The index is built once with {@link PclTextExtractor} and {@link PclPageIndex}. A word is a run of letters and
+ * digits, lower cased. The file holds where every page starts and ends in the job, the words sorted and the pages
+ * each word is on. Searching maps the file into memory and binary searches the words in place, nothing but the
+ * pages found is read into the heap.
+ * <p/>
+ * <pre>
+ * File indexFile = PclTextIndex.build(new File("statements.pcl"));
+ * PclTextIndex index = PclTextIndex.open(indexFile);
+ * for (int page : index.find("account 12345")) {
+ *     index.transferPage(page, job, target);
+ * }
+ * </pre>
+ */
+public class PclTextIndex {
+    /**
+     * The extension added to the name of the job for the index saved next to it
+     */
+    public static final String EXTENSION = ".tix";
+    private static final int MAGIC = 0x50434c54;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 24;
+    private static final int PAGE_LENGTH = 16;
+    private static final int TERM_LENGTH = 16;
+
+    private final String name;
+    private final ByteBuffer index;
+    private final long jobLength;
+    private final int pageCount;
+    private final int termCount;
+    private final int termsStart;
+
+    private PclTextIndex(String name, ByteBuffer index) {
+        this.name = name;
+        this.index = index;
+        if (index.limit() < HEADER_LENGTH || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("file=[" + name + "] is not a text index");
+        }
+        jobLength = index.getLong(8);
+        pageCount = index.getInt(16);
+        termCount = index.getInt(20);
+        termsStart = HEADER_LENGTH + pageCount * PAGE_LENGTH;
+    }
+
+    /**
+     * Indexes the text of a job and saves the index next to it
+     *
+     * @param job - the PCL job
+     * @return the index file, the name of the job with {@link #EXTENSION} added
+     */
+    public static File build(File job) {
+        File indexFile = new File(job.getPath() + EXTENSION);
+        build(job, indexFile);
+        return indexFile;
+    }
+
+    /**
+     * Indexes the text of a job
+     *
+     * @param job       - the PCL job
+     * @param indexFile - where to save the index to
+     */
+    public static void build(File job, File indexFile) {
+        PclPageIndex pageIndex = PclPageIndex.build(job);
+        TermCollector collector = new TermCollector();
+        new PclTextExtractor(collector).extract(job);
+        save(indexFile, pageIndex, collector.postings);
+    }
+
+    /**
+     * Opens an index saved with {@link #build(File)}, the index is mapped into memory
+     *
+     * @param indexFile - the saved index
+     * @return the index
+     * @throws IllegalArgumentException when the file is not a text index
+     */
+    public static PclTextIndex open(File indexFile) throws IllegalArgumentException {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(indexFile, "r");
+            FileChannel channel = file.getChannel();
+            return new PclTextIndex(indexFile.getName(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new PclCommandReader.PclCommandReaderException("A problem occurred while trying to open the text index=[" + indexFile.getName() + "]", e);
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Finds the pages every word of the query is printed on
+     *
+     * @param query - the words to look for (ex. "account 12345"), anything other than letters and digits separates words
+     * @return the page numbers in order, empty when no page has all the words
+     */
+    public int[] find(String query) {
+        int[] pages = null;
+        for (String word : words(query)) {
+            int term = indexOfTerm(word);
+            if (term < 0) {
+                return new int[0];
+            }
+            pages = pages == null ? postings(term) : intersect(pages, postings(term));
+        }
+        return pages == null ? new int[0] : pages;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * The length of the job that was indexed
+     *
+     * @return the number of bytes in the job
+     */
+    public long getJobLength() {
+        return jobLength;
+    }
+
+    /**
+     * @param pageNumber - the page number, starting at 1
+     * @return the position of the first byte of the page
+     */
+    public long getPageStart(int pageNumber) {
+        return index.getLong(pageOffset(pageNumber));
+    }
+
+    /**
+     * @param pageNumber - the page number, starting at 1
+     * @return the position right after the last byte of the page
+     */
+    public long getPageEnd(int pageNumber) {
+        return index.getLong(pageOffset(pageNumber) + 8);
+    }
+
+    /**
+     * Copies the bytes of a page straight out of the job
+     * <p/>
+     * Only the page itself is copied, use {@link PclPageExtractor} with a {@link PclPageIndex} for a page that prints
+     * on its own.
+     *
+     * @param pageNumber - the page number, starting at 1
+     * @param job        - the job that was indexed
+     * @param target     - where to copy the page to
+     * @throws IOException when the page could not be copied
+     */
+    public void transferPage(int pageNumber, FileChannel job, WritableByteChannel target) throws IOException {
+        if (job.size() != jobLength) {
+            throw new IllegalArgumentException("The index=[" + name + "] was built for a job of " + jobLength
+                    + " bytes but the job has " + job.size() + " bytes");
+        }
+        long start = getPageStart(pageNumber);
+        PclPageIndex.transfer(job, start, getPageEnd(pageNumber) - start, target);
+    }
+
+    private int pageOffset(int pageNumber) {
+        if (pageNumber < 1 || pageNumber > pageCount) {
+            throw new IllegalArgumentException("page=[" + pageNumber + "] is not one of the " + pageCount + " pages indexed");
+        }
+        return HEADER_LENGTH + (pageNumber - 1) * PAGE_LENGTH;
+    }
+
+    /**
+     * Binary searches the sorted terms without reading them out of the mapped index
+     */
+    private int indexOfTerm(String word) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTerm(middle, word);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTerm(int term, String word) {
+        int entry = termsStart + term * TERM_LENGTH;
+        int offset = index.getInt(entry);
+        int length = index.getInt(entry + 4);
+        int common = Math.min(length, word.length());
+        for (int i = 0; i < common; i++) {
+            char character = index.getChar(offset + i * 2);
+            if (character != word.charAt(i)) {
+                return character - word.charAt(i);
+            }
+        }
+        return length - word.length();
+    }
+
+    private int[] postings(int term) {
+        int entry = termsStart + term * TERM_LENGTH;
+        int offset = index.getInt(entry + 8);
+        int[] pages = new int[index.getInt(entry + 12)];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = index.getInt(offset + i * 4);
+        }
+        return pages;
+    }
+
+    private static int[] intersect(int[] pages, int[] otherPages) {
+        int[] common = new int[Math.min(pages.length, otherPages.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < pages.length && j < otherPages.length; ) {
+            if (pages[i] < otherPages[j]) {
+                i++;
+            } else if (pages[i] > otherPages[j]) {
+                j++;
+            } else {
+                common[count++] = pages[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    private static List<String> words(CharSequence text) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char character = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(character)) {
+                word.append(Character.toLowerCase(character));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    private static void save(File indexFile, PclPageIndex pageIndex, Map<String, Postings> postings) {
+        String[] terms = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(terms);
+        int pageCount = pageIndex.getPageCount();
+        int termsStart = HEADER_LENGTH + pageCount * PAGE_LENGTH;
+        int textStart = termsStart + terms.length * TERM_LENGTH;
+        int textLength = 0;
+        for (String term : terms) {
+            textLength += term.length() * 2;
+        }
+        int postingsStart = textStart + textLength;
+
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(pageIndex.getJobLength());
+            output.writeInt(pageCount);
+            output.writeInt(terms.length);
+            for (int page = 1; page <= pageCount; page++) {
+                output.writeLong(pageIndex.getPageStart(page));
+                output.writeLong(pageIndex.getPageEnd(page));
+            }
+            int textOffset = textStart;
+            int postingsOffset = postingsStart;
+            for (String term : terms) {
+                int count = postings.get(term).count;
+                output.writeInt(textOffset);
+                output.writeInt(term.length());
+                output.writeInt(postingsOffset);
+                output.writeInt(count);
+                textOffset += term.length() * 2;
+                postingsOffset += count * 4;
+            }
+            for (String term : terms) {
+                output.writeChars(term);
+            }
+            for (String term : terms) {
+                Postings pages = postings.get(term);
+                for (int i = 0; i < pages.count; i++) {
+                    output.writeInt(pages.pages[i]);
+                }
+            }
+            output.close();
+            output = null;
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem occurred while trying to save the text index=[" + indexFile.getName() + "]", e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * The pages a term is on, in order and without repeats
+     */
+    private static class Postings {
+        private int[] pages = new int[4];
+        private int count;
+
+        private void add(int page) {
+            if (count > 0 && pages[count - 1] == page) {
+                return;
+            }
+            if (count == pages.length) {
+                pages = Arrays.copyOf(pages, count * 2);
+            }
+            pages[count++] = page;
+        }
+    }
+
+    private static class TermCollector implements PclTextExtractor.Listener {
+        private final Map<String, Postings> postings = new HashMap<String, Postings>();
+
+        public void text(int page, int x, int y, int font, CharSequence text) {
+            for (String term : words(text)) {
+                Postings pages = postings.get(term);
+                if (pages == null) {
+                    pages = new Postings();
+                    postings.put(term, pages);
+                }
+                pages.add(page);
+            }
+        }
+    }
+}
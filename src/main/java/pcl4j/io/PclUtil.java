@@ -14,15 +14,15 @@
 
 package pcl4j.io;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * Utility class for checking for the magic PCL bytes
  */
 public class PclUtil {
-    private static final String[] BINARY_DATA_COMMANDS = {")s#W", "(s#W", "(f#W", "&n#W", "*b#W", "*g#W", "*b#Y", "*b#V", "*v#W", "*l#W", "*o#W", "*m#W", "&p#X"};
-    private static final int[] BINARY_DATA_COMMANDS_HASHES = initializeBinaryDataHashes();
     private static final byte[] UNIVERSAL_EXIT_BYTES = "%-12345X".getBytes();
+    private static final byte[] UNIVERSAL_EXIT_VALUE = "12345".getBytes();
 
     public static final int PARAMETERIZED_BYTE_POSITION = 1;
     public static final int GROUP_BYTE_POSITION = 2;
@@ -39,6 +39,9 @@ public class PclUtil {
     public static final byte LOWEST_PARAMETER_BYTE = 96;
     public static final byte HIGHEST_PARAMETER_BYTE = 126;
     public static final int PARAMETER_TO_TERMINATOR_DIFFERENCE = LOWEST_PARAMETER_BYTE - LOWEST_TERMINATION_BYTE;
+    private static final byte[] UNIVERSAL_EXIT_COMMAND = {ESCAPE, '%', '-', '1', '2', '3', '4', '5', 'X'};
+    private static final int[] UNIVERSAL_EXIT_SKIP_TABLE = initializeUniversalExitSkipTable();
+    private static final byte[][] PJL_ENTER_LANGUAGE_WORDS = {"@PJL".getBytes(), "ENTER".getBytes(), "LANGUAGE".getBytes()};
 
     /**
      * Determines if the given byte is a 2 byte command operator
@@ -151,13 +154,80 @@ public class PclUtil {
      *         false - is not expecting binary data
      */
     public boolean isCommandExpectingData(byte[] commandBytes) {
-        byte[] commandId = {
+        return PclCommandGrammar.getDefault().isExpectingData(
                 commandBytes[PARAMETERIZED_BYTE_POSITION],
                 commandBytes[GROUP_BYTE_POSITION],
-                '#',
-                (byte) Character.toUpperCase((char) getTerminatorByte(commandBytes))
-        };
-        return Arrays.binarySearch(BINARY_DATA_COMMANDS_HASHES, Arrays.hashCode(commandId)) > -1;
+                getTerminatorByte(commandBytes)
+        );
+    }
+
+    /**
+     * Determines if the given command is the parameterized command described by the given bytes
+     * <p/>
+     * ex. <code>isCommand(command, '*', 'c', 'D')</code> for "ESC*c#D"
+     *
+     * @param command       - the command to check
+     * @param parameterized - the parameterized byte
+     * @param group         - the group byte
+     * @param terminator    - the terminator byte (the case is ignored)
+     * @return true - is the described command<br/>false - is some other command
+     */
+    public boolean isCommand(PclCommand command, char parameterized, char group, char terminator) {
+        if (!(command instanceof ParameterizedCommand)) {
+            return false;
+        }
+        ParameterizedCommand parameterizedCommand = (ParameterizedCommand) command;
+        return parameterizedCommand.getParameterizedByte() == parameterized
+                && parameterizedCommand.getGroupByte() == group
+                && Character.toUpperCase((char) parameterizedCommand.getTerminatorByte()) == Character.toUpperCase(terminator);
+    }
+
+    /**
+     * Determines if the given command is a 2 byte command with the given operation
+     *
+     * @param command   - the command to check
+     * @param operation - the 2nd byte of the command
+     * @return true - is the described command<br/>false - is some other command
+     */
+    public boolean isCommand(PclCommand command, char operation) {
+        return command instanceof TwoByteCommand && ((TwoByteCommand) command).getOperation() == operation;
+    }
+
+    /**
+     * The value of a command that has no group byte (ex. "ESC(12X" or "ESC(8U")
+     * <p/>
+     * The first digit of such a value ends up as the group byte of the command, this puts the value back together.
+     *
+     * @param command - the command to get the value of
+     * @return the whole number value of the command
+     */
+    public int getUngroupedIntValue(ParameterizedCommand command) {
+        byte group = command.getGroupByte();
+        if (group < '0' || group > '9') {
+            return command.getIntValue();
+        }
+        PclValueParser parser = new PclValueParser();
+        parser.append(group);
+        byte[] valueBytes = command.getValueBytes();
+        if (valueBytes != null) {
+            parser.append(valueBytes);
+        }
+        return (int) (parser.getScaledValue() / PclValueParser.SCALE);
+    }
+
+    /**
+     * Determines if the given command is a "Universal Exit"
+     *
+     * @param command - the command to check
+     * @return true - is an universal exit command
+     *         false - is not an universal exit command
+     */
+    public boolean isUniversalExit(PclCommand command) {
+        if (!isCommand(command, '%', '-', 'X')) {
+            return false;
+        }
+        byte[] valueBytes = ((ParameterizedCommand) command).getValueBytes();
+        return valueBytes != null ? Arrays.equals(UNIVERSAL_EXIT_VALUE, valueBytes) : isUniversalExit(command.getBytes());
     }
 
     /**
@@ -181,6 +251,74 @@ public class PclUtil {
         return true;
     }
 
+    /**
+     * Finds the next "Universal Exit" command in the buffer without moving the position of the buffer
+     * <p/>
+     * Uses a Boyer-Moore-Horspool search so most of the bytes in between are never looked at.
+     *
+     * @param buffer    - the buffer to search
+     * @param fromIndex - the absolute index to start searching from
+     * @return the absolute index of the ESCAPE byte of the next universal exit or -1 if there is not one
+     */
+    public int indexOfUniversalExit(ByteBuffer buffer, int fromIndex) {
+        int last = UNIVERSAL_EXIT_COMMAND.length - 1;
+        int end = buffer.limit() - UNIVERSAL_EXIT_COMMAND.length;
+        int index = fromIndex;
+        while (index <= end) {
+            byte lastByte = buffer.get(index + last);
+            if (lastByte == UNIVERSAL_EXIT_COMMAND[last] && isUniversalExitAt(buffer, index)) {
+                return index;
+            }
+            index += UNIVERSAL_EXIT_SKIP_TABLE[lastByte & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Determines the language entered by a PJL "ENTER LANGUAGE" line
+     * <p/>
+     * ex. <code>@PJL ENTER LANGUAGE = PCLXL</code>
+     *
+     * @param data   - the bytes containing the PJL line
+     * @param offset - the start of the line
+     * @param length - the number of bytes in the line
+     * @return the language in upper case or null if the line is not an "ENTER LANGUAGE" line
+     */
+    public String getEnteredLanguage(byte[] data, int offset, int length) {
+        int index = offset;
+        int end = offset + length;
+        for (byte[] word : PJL_ENTER_LANGUAGE_WORDS) {
+            index = skipWhitespace(data, index, end);
+            if (!startsWithIgnoreCase(data, index, end, word)) {
+                return null;
+            }
+            index += word.length;
+        }
+
+        index = skipWhitespace(data, index, end);
+        if (index >= end || data[index] != '=') {
+            return null;
+        }
+        index = skipWhitespace(data, index + 1, end);
+
+        StringBuilder language = new StringBuilder();
+        while (index < end && Character.isLetterOrDigit((char) data[index])) {
+            language.append(Character.toUpperCase((char) data[index]));
+            index++;
+        }
+        return language.length() > 0 ? language.toString() : null;
+    }
+
+    /**
+     * Determines if the given language name is PCL
+     *
+     * @param language - the name of the language
+     * @return true - is PCL<br/>false - is some other printer language
+     */
+    public boolean isPclLanguage(String language) {
+        return "PCL".equals(language);
+    }
+
     /**
      * Converts a value to an integer value
      * <p/>
@@ -221,6 +359,87 @@ public class PclUtil {
         return value;
     }
 
+    /**
+     * Converts a number into the bytes of a command value without going through a String
+     *
+     * @param scaledValue - the value scaled by PclValueParser.SCALE (ex. 12500 for "1.25")
+     * @param signed      - true to always write the sign, needed for relative values (ex. "+5")
+     * @return the value bytes
+     */
+    public byte[] convertScaledValueToBytes(long scaledValue, boolean signed) {
+        boolean negative = scaledValue < 0;
+        long magnitude = negative ? -scaledValue : scaledValue;
+        long integer = magnitude / PclValueParser.SCALE;
+        int fraction = (int) (magnitude % PclValueParser.SCALE);
+
+        int fractionDigits = 4;
+        while (fractionDigits > 0 && fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+        int integerDigits = 1;
+        for (long remaining = integer / 10; remaining > 0; remaining /= 10) {
+            integerDigits++;
+        }
+
+        int signLength = negative || signed ? 1 : 0;
+        byte[] bytes = new byte[signLength + integerDigits + (fractionDigits > 0 ? fractionDigits + 1 : 0)];
+        if (signLength > 0) {
+            bytes[0] = (byte) (negative ? '-' : '+');
+        }
+        int index = bytes.length - 1;
+        for (int i = 0; i < fractionDigits; i++) {
+            bytes[index--] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        if (fractionDigits > 0) {
+            bytes[index--] = '.';
+        }
+        do {
+            bytes[index--] = (byte) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        return bytes;
+    }
+
+    /**
+     * Determines if a "Universal Exit" command starts at the given index
+     *
+     * @param buffer - the buffer to check
+     * @param index  - the absolute index of the ESCAPE byte
+     * @return true - a universal exit starts at the index<br/>false - there is not one or it runs past the limit
+     */
+    public boolean isUniversalExitAt(ByteBuffer buffer, int index) {
+        if (index < 0 || index + UNIVERSAL_EXIT_COMMAND.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < UNIVERSAL_EXIT_COMMAND.length; i++) {
+            if (buffer.get(index + i) != UNIVERSAL_EXIT_COMMAND[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(byte[] data, int index, int end) {
+        while (index < end && (data[index] == ' ' || data[index] == '\t')) {
+            index++;
+        }
+        return index;
+    }
+
+    private boolean startsWithIgnoreCase(byte[] data, int index, int end, byte[] word) {
+        if (end - index < word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (Character.toUpperCase((char) data[index + i]) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean isDecimal(byte valueByte) {
         return valueByte == '.';
     }
@@ -241,12 +460,13 @@ public class PclUtil {
         return commandBytes[commandBytes.length - 1];
     }
 
-    private static int[] initializeBinaryDataHashes() {
-        int[] hashes = new int[BINARY_DATA_COMMANDS.length];
-        for (int i = 0; i < hashes.length; i++) {
-            hashes[i] = Arrays.hashCode(BINARY_DATA_COMMANDS[i].getBytes());
+    private static int[] initializeUniversalExitSkipTable() {
+        int last = UNIVERSAL_EXIT_COMMAND.length - 1;
+        int[] skipTable = new int[256];
+        Arrays.fill(skipTable, UNIVERSAL_EXIT_COMMAND.length);
+        for (int i = 0; i < last; i++) {
+            skipTable[UNIVERSAL_EXIT_COMMAND[i] & 0xFF] = last - i;
         }
-        Arrays.sort(hashes);
-        return hashes;
+        return skipTable;
     }
 }
@@ -0,0 +1,102 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * Converts the value bytes of a parameterized command into a number one byte at a time
+ * <p/>
+ * PCL values are an optional sign, digits and an optional decimal point followed by up to 4 significant
+ * decimal digits (ex. "+12.5"). The value is kept as a long scaled by {@link #SCALE} so no precision is lost
+ * and nothing needs to be allocated. Anything else in the value (ex. padding spaces) is ignored.
+ */
+public class PclValueParser {
+    /**
+     * The factor decimal values are scaled by
+     */
+    public static final int SCALE = 10000;
+    /**
+     * The sign of a value that was not given a sign
+     */
+    public static final byte NO_SIGN = 0;
+    private static final int[] FRACTION_SCALES = {1000, 100, 10, 1};
+
+    private long magnitude;
+    private int fractionDigits;
+    private boolean decimal;
+    private byte sign;
+
+    /**
+     * Forget the current value so the parser can be reused
+     */
+    public void reset() {
+        magnitude = 0;
+        fractionDigits = 0;
+        decimal = false;
+        sign = NO_SIGN;
+    }
+
+    /**
+     * Adds the next byte of a value
+     *
+     * @param valueByte - the byte to add
+     */
+    public void append(byte valueByte) {
+        if (valueByte >= '0' && valueByte <= '9') {
+            int digit = valueByte - '0';
+            if (!decimal) {
+                magnitude = magnitude * 10 + digit * SCALE;
+            } else if (fractionDigits < FRACTION_SCALES.length) {
+                magnitude += digit * FRACTION_SCALES[fractionDigits++];
+            }
+        } else if (valueByte == '.') {
+            decimal = true;
+        } else if ((valueByte == '-' || valueByte == '+') && sign == NO_SIGN) {
+            sign = valueByte;
+        }
+    }
+
+    /**
+     * Adds all the given bytes of a value
+     *
+     * @param valueBytes - the bytes to add
+     */
+    public void append(byte[] valueBytes) {
+        for (int i = 0; i < valueBytes.length; i++) {
+            append(valueBytes[i]);
+        }
+    }
+
+    /**
+     * The value scaled by {@link #SCALE}, ex. "-1.5" is -15000
+     *
+     * @return the scaled value
+     */
+    public long getScaledValue() {
+        return sign == '-' ? -magnitude : magnitude;
+    }
+
+    /**
+     * The sign given in the value
+     *
+     * @return '+', '-' or {@link #NO_SIGN}
+     */
+    public byte getSign() {
+        return sign;
+    }
+
+    public boolean hasDecimal() {
+        return decimal;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sends jobs to many network printers (raw TCP, usually port {@link #DEFAULT_PORT}) from a single thread
+ * <p/>
+ * Every connection opened is a {@link SocketPclCommandWriter} with a buffer of its own. The thread producing a job
+ * only copies the commands into the buffer, this selector's thread writes the buffers to the sockets as fast as each
+ * printer takes them, so a slow printer only holds up the thread writing to it once its buffer is full. A few
+ * selectors are enough for hundreds of printers.
+ * <p/>
+ * <pre>
+ * PrinterSocketSelector printers = new PrinterSocketSelector(64 * 1024);
+ * PclCommandWriter writer = printers.open(new InetSocketAddress("printer-12", PrinterSocketSelector.DEFAULT_PORT));
+ * ... write the job ...
+ * writer.close();
+ * </pre>
+ */
+public class PrinterSocketSelector implements Closeable {
+    /**
+     * The port printers take raw jobs on
+     */
+    public static final int DEFAULT_PORT = 9100;
+    private static int threadNumber;
+
+    private final int bufferSize;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> changes = new ConcurrentLinkedQueue<Runnable>();
+    private final Thread thread;
+    private volatile boolean open = true;
+
+    /**
+     * @param bufferSize - the number of bytes buffered for each connection
+     */
+    public PrinterSocketSelector(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be positive but was bufferSize=[" + bufferSize + "]");
+        }
+        this.bufferSize = bufferSize;
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem has occurred while trying to open a selector", e);
+        }
+        thread = new Thread(new Runnable() {
+            public void run() {
+                select();
+            }
+        }, "printer-selector-" + nextThreadNumber());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static synchronized int nextThreadNumber() {
+        return ++threadNumber;
+    }
+
+    /**
+     * Starts connecting to a printer, commands can be written right away and are sent once connected
+     *
+     * @param printer - the address of the printer
+     * @return the writer sending to the printer
+     */
+    public SocketPclCommandWriter open(InetSocketAddress printer) {
+        if (!open) {
+            throw new PclCommandWriter.PclCommandWriterException("The selector is closed");
+        }
+        final SocketPclCommandWriter writer;
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            writer = new SocketPclCommandWriter(this, printer, channel, bufferSize);
+            channel.connect(printer);
+        } catch (IOException e) {
+            throw new PclCommandWriter.PclCommandWriterException("A problem has occurred while trying to connect to printer=[" + printer + "]", e);
+        }
+        change(new Runnable() {
+            public void run() {
+                try {
+                    writer.getChannel().register(selector, SelectionKey.OP_CONNECT, writer);
+                } catch (IOException e) {
+                    writer.failed(e);
+                }
+            }
+        });
+        return writer;
+    }
+
+    /**
+     * Stops the selector's thread and closes every connection, commands not sent yet are dropped
+     */
+    public void close() {
+        open = false;
+        selector.wakeup();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called by a writer when bytes were put in its empty buffer
+     */
+    void writeRequested(final SocketPclCommandWriter writer) {
+        change(new Runnable() {
+            public void run() {
+                SelectionKey key = writer.getChannel().keyFor(selector);
+                if (key != null && key.isValid() && writer.getChannel().isConnected()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by a writer being closed, it is closed once its buffer was sent
+     */
+    void closeRequested(final SocketPclCommandWriter writer) {
+        change(new Runnable() {
+            public void run() {
+                SelectionKey key = writer.getChannel().keyFor(selector);
+                if (key == null || !key.isValid()) {
+                    writer.closeChannel();
+                } else if (writer.getChannel().isConnected()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+            }
+        });
+    }
+
+    private void change(Runnable change) {
+        changes.add(change);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs on the selector's thread, the only thread touching the sockets
+     */
+    private void select() {
+        IOException failure = null;
+        try {
+            while (open) {
+                selector.select();
+                Runnable change;
+                while ((change = changes.poll()) != null) {
+                    change.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ready(key);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            failAll(failure != null ? failure : new IOException("The selector was closed"));
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+
+    private void ready(SelectionKey key) {
+        SocketPclCommandWriter writer = (SocketPclCommandWriter) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                if (writer.getChannel().finishConnect()) {
+                    key.interestOps(writer.hasPendingBytes() || writer.isCloseRequested() ? SelectionKey.OP_WRITE : 0);
+                }
+            } else if (key.isWritable()) {
+                if (writer.send()) {
+                    key.cancel();
+                } else if (!writer.hasPendingBytes()) {
+                    key.interestOps(0);
+                }
+            }
+        } catch (IOException e) {
+            key.cancel();
+            writer.failed(e);
+        }
+    }
+
+    private void failAll(IOException e) {
+        for (SelectionKey key : selector.keys()) {
+            ((SocketPclCommandWriter) key.attachment()).failed(e);
+        }
+    }
+}
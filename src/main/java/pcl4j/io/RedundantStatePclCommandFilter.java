@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * Drops commands that set state the printer already has (ex. "ESC(s0p10h12v0s0b3T" before every field of text)
+ * <p/>
+ * The state is followed with a PclStateTracker. The number of bytes dropped is kept for each family of state,
+ * counted as the commands are written once combined (ex. dropping "ESC(s0P" from "ESC(s0p3B" saves 2 bytes, the
+ * commands left losing a command to combine with are counted against the family of the command dropped).
+ */
+public class RedundantStatePclCommandFilter implements PclCommandFilter {
+    private final PclStateTracker stateTracker = new PclStateTracker();
+    private final long[] droppedBytes = new long[PclStateTracker.FAMILY_COUNT];
+    private final int[] droppedCommands = new int[PclStateTracker.FAMILY_COUNT];
+    private final PclCommandCompressor compressor = new PclCommandCompressor();
+    private PclCommand previousInput;
+    private PclCommand previousOutput;
+    private int lastDroppedFamily = -1;
+
+    public void filter(PclCommandBatch input, PclCommandBatch output) {
+        PclCommand[] commands = input.getCommands();
+        for (int i = 0; i < input.size(); i++) {
+            PclCommand command = commands[i];
+            int inputLength = combinedLength(previousInput, command);
+            previousInput = command;
+            if (stateTracker.isRedundant(command)) {
+                int family = stateTracker.getFamily(command);
+                droppedBytes[family] += inputLength;
+                droppedCommands[family]++;
+                lastDroppedFamily = family;
+            } else {
+                stateTracker.apply(command);
+                output.add(command);
+                if (lastDroppedFamily >= 0) {
+                    droppedBytes[lastDroppedFamily] += inputLength - combinedLength(previousOutput, command);
+                }
+                previousOutput = command;
+            }
+        }
+    }
+
+    /**
+     * The bytes the command adds when written after the previous one, only its value and terminator when it is
+     * combined with it
+     */
+    private int combinedLength(PclCommand previous, PclCommand command) {
+        if (compressor.canBeCompressed(previous, command)) {
+            return command.getLength() - PclUtil.VALUE_BYTE_START_POSITION;
+        }
+        return command.getLength();
+    }
+
+    public void flush(PclCommandBatch output) {
+    }
+
+    /**
+     * The number of bytes dropped for a family of state
+     *
+     * @param family - PclStateTracker.FONT, SYMBOL_SET, ORIENTATION, MARGINS, PRINT_MODEL, PATTERN or COLOR
+     * @return the number of bytes
+     */
+    public long getDroppedBytes(int family) {
+        return droppedBytes[family];
+    }
+
+    public int getDroppedCommands(int family) {
+        return droppedCommands[family];
+    }
+
+    /**
+     * The number of bytes dropped for all families of state
+     *
+     * @return the number of bytes
+     */
+    public long getDroppedBytes() {
+        long total = 0;
+        for (long bytes : droppedBytes) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public PclStateTracker getStateTracker() {
+        return stateTracker;
+    }
+}
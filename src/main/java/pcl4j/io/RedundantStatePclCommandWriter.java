@@ -0,0 +1,50 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * Drops commands that would not change the state of the printer before writing them
+ * <p/>
+ * Wrap a CompressedPclCommandWriter to have the remaining commands combined:
+ * <pre>
+ * new RedundantStatePclCommandWriter(new CompressedPclCommandWriter(writer))
+ * </pre>
+ */
+public class RedundantStatePclCommandWriter extends FilteredPclCommandWriter {
+    private final RedundantStatePclCommandFilter redundantStateFilter;
+
+    public RedundantStatePclCommandWriter(PclCommandWriter pclCommandWriter) {
+        this(pclCommandWriter, new RedundantStatePclCommandFilter());
+    }
+
+    private RedundantStatePclCommandWriter(PclCommandWriter pclCommandWriter, RedundantStatePclCommandFilter redundantStateFilter) {
+        super(pclCommandWriter, redundantStateFilter);
+        this.redundantStateFilter = redundantStateFilter;
+    }
+
+    /**
+     * The number of bytes dropped for a family of state
+     *
+     * @param family - PclStateTracker.FONT, SYMBOL_SET, ORIENTATION, MARGINS, PRINT_MODEL, PATTERN or COLOR
+     * @return the number of bytes
+     */
+    public long getDroppedBytes(int family) {
+        return redundantStateFilter.getDroppedBytes(family);
+    }
+
+    public long getDroppedBytes() {
+        return redundantStateFilter.getDroppedBytes();
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A PclCommandWriter sending to a printer over a non-blocking socket, opened with {@link PrinterSocketSelector#open}
+ * <p/>
+ * Commands are copied into the connection's buffer and sent by the selector's thread, which keeps whatever a slow
+ * printer did not take yet for the next time the socket can be written. write only waits when the buffer is full.
+ * A failure sending is thrown by the next call to write, flush or close.
+ */
+public class SocketPclCommandWriter implements PclCommandWriter, Flushable {
+    private final PrinterSocketSelector selector;
+    private final InetSocketAddress printer;
+    private final SocketChannel channel;
+    private final ByteBuffer buffer;
+    private IOException failure;
+    private boolean closeRequested;
+    private boolean closed;
+
+    SocketPclCommandWriter(PrinterSocketSelector selector, InetSocketAddress printer, SocketChannel channel, int bufferSize) {
+        this.selector = selector;
+        this.printer = printer;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public InetSocketAddress getPrinter() {
+        return printer;
+    }
+
+    /**
+     * Copies the command into the buffer, waiting for room when it is full
+     *
+     * @param command - the command to write
+     * @throws PclCommandWriterException when sending failed or the writer is closed
+     */
+    public void write(PclCommand command) throws PclCommandWriterException {
+        if (command == null) {
+            throw new NullPointerException("Sorry I do not know how to write a null command");
+        }
+        byte[] bytes = command.getBytes();
+        int offset = 0;
+        synchronized (this) {
+            if (closeRequested) {
+                throw new PclCommandWriterException("The writer to printer=[" + printer + "] is closed");
+            }
+            while (offset < bytes.length) {
+                while (!buffer.hasRemaining() && failure == null) {
+                    await();
+                }
+                throwFailure();
+                boolean wasEmpty = buffer.position() == 0;
+                int count = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, count);
+                offset += count;
+                if (wasEmpty) {
+                    selector.writeRequested(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until everything written was sent to the printer
+     *
+     * @throws PclCommandWriterException when sending failed
+     */
+    public synchronized void flush() throws PclCommandWriterException {
+        while (buffer.position() > 0 && failure == null) {
+            await();
+        }
+        throwFailure();
+    }
+
+    /**
+     * Waits until everything written was sent, then closes the connection
+     *
+     * @throws PclCommandWriterException when sending failed
+     */
+    public synchronized void close() throws PclCommandWriterException {
+        if (!closeRequested) {
+            closeRequested = true;
+            selector.closeRequested(this);
+        }
+        while (!closed && failure == null) {
+            await();
+        }
+        throwFailure();
+    }
+
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PclCommandWriterException("Interrupted while waiting to send to printer=[" + printer + "]", e);
+        }
+    }
+
+    private void throwFailure() {
+        if (failure != null) {
+            throw new PclCommandWriterException("A problem has occurred while sending to printer=[" + printer + "]", failure);
+        }
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    synchronized boolean hasPendingBytes() {
+        return buffer.position() > 0;
+    }
+
+    synchronized boolean isCloseRequested() {
+        return closeRequested;
+    }
+
+    /**
+     * Sends as much of the buffer as the socket takes, on the selector's thread, and closes the channel once the
+     * buffer is empty when closing was requested, without letting go of the lock in between
+     *
+     * @return true when the channel was closed
+     */
+    synchronized boolean send() throws IOException {
+        buffer.flip();
+        try {
+            channel.write(buffer);
+        } finally {
+            buffer.compact();
+        }
+        notifyAll();
+        if (buffer.position() == 0 && closeRequested) {
+            closeChannel();
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void failed(IOException e) {
+        if (!closed && failure == null) {
+            failure = e;
+        }
+        closeQuietly();
+        notifyAll();
+    }
+
+    synchronized void closeChannel() {
+        closed = true;
+        closeQuietly();
+        notifyAll();
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+    }
+}
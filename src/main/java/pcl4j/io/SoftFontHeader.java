@@ -0,0 +1,110 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+/**
+ * A view of the font descriptor downloaded with the "Font Header" command (ESC)s#W)
+ * <p/>
+ * Nothing is decoded up front, each field is read out of the binary data of the command when it is asked for.
+ * All fields are big-endian as described in the PCL 5 font header formats.
+ */
+public class SoftFontHeader {
+    public static final int FORMAT_BITMAP = 0;
+    public static final int FORMAT_INTELLIFONT_BOUND = 10;
+    public static final int FORMAT_INTELLIFONT_UNBOUND = 11;
+    public static final int FORMAT_TRUETYPE = 15;
+    public static final int FORMAT_UNIVERSAL = 16;
+    public static final int FORMAT_BITMAP_RESOLUTION_SPECIFIED = 20;
+
+    private static final int FONT_NAME_OFFSET = 48;
+    private static final int FONT_NAME_LENGTH = 16;
+
+    private final ParameterizedCommand command;
+    private byte[] data;
+
+    public SoftFontHeader(ParameterizedCommand command) {
+        this.command = command;
+    }
+
+    public int getDescriptorSize() {
+        return readUnsignedShort(0);
+    }
+
+    /**
+     * The format of the header (ex. {@link #FORMAT_BITMAP}, {@link #FORMAT_TRUETYPE})
+     *
+     * @return the header format
+     */
+    public int getHeaderFormat() {
+        return readUnsignedByte(2);
+    }
+
+    /**
+     * The range of printable character codes
+     *
+     * @return 0 - 7 bit (32-127), 1 - 8 bit (32-127 and 160-255), 2 - 8 bit (0-255), 3 - 16 bit
+     */
+    public int getFontType() {
+        return readUnsignedByte(3);
+    }
+
+    public int getSymbolSet() {
+        return readUnsignedShort(14);
+    }
+
+    /**
+     * The name of the font, trailing spaces and nulls are removed
+     *
+     * @return the font name or an empty String when the header is too short to have one
+     */
+    public String getFontName() {
+        byte[] data = getData();
+        if (data.length < FONT_NAME_OFFSET + FONT_NAME_LENGTH) {
+            return "";
+        }
+        int end = FONT_NAME_OFFSET + FONT_NAME_LENGTH;
+        while (end > FONT_NAME_OFFSET && (data[end - 1] == ' ' || data[end - 1] == 0)) {
+            end--;
+        }
+        return new String(data, FONT_NAME_OFFSET, end - FONT_NAME_OFFSET);
+    }
+
+    /**
+     * Determines if the characters of the font are bitmaps, the characters of a bitmap font do not refer to each other
+     *
+     * @return true - is a bitmap font<br/>false - is a scalable font
+     */
+    public boolean isBitmap() {
+        int format = getHeaderFormat();
+        return format == FORMAT_BITMAP || format == FORMAT_BITMAP_RESOLUTION_SPECIFIED;
+    }
+
+    private int readUnsignedByte(int offset) {
+        byte[] data = getData();
+        return offset < data.length ? data[offset] & 0xff : -1;
+    }
+
+    private int readUnsignedShort(int offset) {
+        byte[] data = getData();
+        return offset + 1 < data.length ? ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff) : -1;
+    }
+
+    private byte[] getData() {
+        if (data == null) {
+            data = command.getDataBytes() == null ? new byte[0] : command.getDataBytes();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the characters of downloaded soft fonts that are never printed by the job
+ * <p/>
+ * The job is gone over twice. The first pass follows which font is selected by ID (ESC(#X, ESC)#X and SO/SI)
+ * and collects the character codes printed with each font. The second pass writes the job leaving out the
+ * character definitions (ESC*c#E ESC(s#W) of characters that were never printed.
+ * <p/>
+ * Only bitmap fonts are subset, the characters of scalable fonts can be built out of other characters. Characters
+ * printed while the font is not known (ex. selected by its characteristics or inside of HP-GL/2) are kept in
+ * every font and nothing is removed when the job switches to multi-byte text parsing.
+ * <p/>
+ * <pre>
+ * SoftFontSubsetter subsetter = new SoftFontSubsetter();
+ * subsetter.subset(new File("job.pcl"), writer);
+ * </pre>
+ */
+public class SoftFontSubsetter {
+    private static final int UNKNOWN_FONT = -1;
+    private static final byte SHIFT_OUT = 14;
+    private static final byte SHIFT_IN = 15;
+
+    private final Map<Integer, BitSet> usedCharacters = new HashMap<Integer, BitSet>();
+    private final Set<Integer> scalableFonts = new HashSet<Integer>();
+    private BitSet charactersOfUnknownFonts = new BitSet(256);
+    private boolean subsettingDisabled;
+    private int characterCount;
+    private int removedCharacterCount;
+    private long bytesSaved;
+
+    /**
+     * Subsets the fonts of the given job, the file is mapped into memory
+     *
+     * @param file   - the PCL job
+     * @param writer - where to write the subset job to
+     */
+    public void subset(File file, PclCommandWriter writer) {
+        subset(PclCommandTable.build(file), writer);
+    }
+
+    /**
+     * Subsets the fonts of the given job
+     *
+     * @param table  - the commands of the job
+     * @param writer - where to write the subset job to
+     */
+    public void subset(PclCommandTable table, PclCommandWriter writer) {
+        collectUsedCharacters(table);
+        writeSubset(table, writer);
+    }
+
+    /**
+     * The first pass, collects the character codes printed with each font
+     *
+     * @param table - the commands of the job
+     */
+    public void collectUsedCharacters(PclCommandTable table) {
+        usedCharacters.clear();
+        scalableFonts.clear();
+        charactersOfUnknownFonts = new BitSet(256);
+        subsettingDisabled = false;
+
+        int currentFontId = 0;
+        int primaryFontId = UNKNOWN_FONT;
+        int secondaryFontId = UNKNOWN_FONT;
+        boolean secondaryActive = false;
+        boolean hpgl = false;
+        PclCommandTable.Cursor cursor = table.cursor();
+        while (cursor.next()) {
+            switch (cursor.getKind()) {
+                case PclCommandTable.TEXT:
+                    BitSet used = hpgl ? charactersOfUnknownFonts : charactersOf(secondaryActive ? secondaryFontId : primaryFontId);
+                    ByteBuffer text = cursor.getPayload();
+                    while (text.hasRemaining()) {
+                        byte character = text.get();
+                        if (character == SHIFT_OUT && !hpgl) {
+                            secondaryActive = true;
+                            used = charactersOf(secondaryFontId);
+                        } else if (character == SHIFT_IN && !hpgl) {
+                            secondaryActive = false;
+                            used = charactersOf(primaryFontId);
+                        } else {
+                            used.set(character & 0xff);
+                        }
+                    }
+                    break;
+                case PclCommandTable.TWO_BYTE:
+                    if (cursor.getParameterizedByte() == 'E') {
+                        primaryFontId = UNKNOWN_FONT;
+                        secondaryFontId = UNKNOWN_FONT;
+                        secondaryActive = false;
+                    }
+                    break;
+                case PclCommandTable.PARAMETERIZED:
+                    byte parameterized = cursor.getParameterizedByte();
+                    byte group = cursor.getGroupByte();
+                    byte terminator = cursor.getTerminatorByte();
+                    if (parameterized == '*' && group == 'c' && terminator == 'D') {
+                        currentFontId = cursor.getIntValue();
+                    } else if (parameterized == ')' && group == 's' && terminator == 'W') {
+                        if (!new SoftFontHeader((ParameterizedCommand) cursor.toCommand()).isBitmap()) {
+                            scalableFonts.add(currentFontId);
+                        }
+                    } else if (parameterized == '(' && terminator != 'W') {
+                        primaryFontId = selectedFontId(cursor);
+                    } else if (parameterized == ')' && terminator != 'W') {
+                        secondaryFontId = selectedFontId(cursor);
+                    } else if (parameterized == '&' && group == 't' && terminator == 'P') {
+                        int method = cursor.getIntValue();
+                        subsettingDisabled |= method != 0 && method != 1;
+                    } else if (parameterized == '&' && group == 'p' && terminator == 'X') {
+                        BitSet transparent = hpgl ? charactersOfUnknownFonts : charactersOf(secondaryActive ? secondaryFontId : primaryFontId);
+                        ByteBuffer data = cursor.getPayload();
+                        while (data.hasRemaining()) {
+                            transparent.set(data.get() & 0xff);
+                        }
+                    } else if (parameterized == '%') {
+                        if (terminator == 'B') {
+                            hpgl = true;
+                        } else if (terminator == 'A' || terminator == 'X') {
+                            hpgl = false;
+                        }
+                        if (terminator == 'X') {
+                            primaryFontId = UNKNOWN_FONT;
+                            secondaryFontId = UNKNOWN_FONT;
+                            secondaryActive = false;
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The second pass, writes the job leaving out the characters that were not printed
+     *
+     * @param table  - the commands of the job
+     * @param writer - where to write the subset job to
+     */
+    public void writeSubset(PclCommandTable table, PclCommandWriter writer) {
+        characterCount = 0;
+        removedCharacterCount = 0;
+        bytesSaved = 0;
+
+        int currentFontId = 0;
+        int currentCharacterCode = 0;
+        int pendingCharacterCodeIndex = -1;
+        boolean keepingCharacter = true;
+        for (int i = 0; i < table.size(); i++) {
+            if (table.getKind(i) == PclCommandTable.PARAMETERIZED) {
+                byte parameterized = table.getParameterizedByte(i);
+                byte group = table.getGroupByte(i);
+                byte terminator = table.getTerminatorByte(i);
+                if (parameterized == '*' && group == 'c' && terminator == 'E') {
+                    writePending(table, pendingCharacterCodeIndex, writer);
+                    pendingCharacterCodeIndex = i;
+                    currentCharacterCode = ((ParameterizedCommand) table.toCommand(i)).getIntValue();
+                    continue;
+                } else if (parameterized == '(' && group == 's' && terminator == 'W') {
+                    PclCommand command = table.toCommand(i);
+                    CharacterDescriptor descriptor = new CharacterDescriptor((ParameterizedCommand) command);
+                    if (!descriptor.isContinuation()) {
+                        characterCount++;
+                        keepingCharacter = isUsed(currentFontId, currentCharacterCode);
+                        if (!keepingCharacter) {
+                            removedCharacterCount++;
+                        }
+                    }
+                    if (keepingCharacter) {
+                        writePending(table, pendingCharacterCodeIndex, writer);
+                        writer.write(command);
+                    } else {
+                        if (pendingCharacterCodeIndex >= 0) {
+                            bytesSaved += table.toCommand(pendingCharacterCodeIndex).getLength();
+                        }
+                        bytesSaved += command.getLength();
+                    }
+                    pendingCharacterCodeIndex = -1;
+                    continue;
+                } else if (parameterized == '*' && group == 'c' && terminator == 'D') {
+                    currentFontId = ((ParameterizedCommand) table.toCommand(i)).getIntValue();
+                }
+            }
+            writePending(table, pendingCharacterCodeIndex, writer);
+            pendingCharacterCodeIndex = -1;
+            writer.write(table.toCommand(i));
+        }
+        writePending(table, pendingCharacterCodeIndex, writer);
+    }
+
+    /**
+     * The character codes printed with a font during the first pass
+     *
+     * @param fontId - the ID of the font
+     * @return the character codes, characters printed while the font was not known are included
+     */
+    public BitSet getUsedCharacters(int fontId) {
+        BitSet used = new BitSet(256);
+        if (usedCharacters.containsKey(fontId)) {
+            used.or(usedCharacters.get(fontId));
+        }
+        used.or(charactersOfUnknownFonts);
+        return used;
+    }
+
+    /**
+     * Determines if the characters of the font were left alone because it is a scalable font or the job uses
+     * multi-byte text
+     *
+     * @param fontId - the ID of the font
+     * @return true - the font will not be subset<br/>false - unused characters will be removed
+     */
+    public boolean isSubsettingDisabled(int fontId) {
+        return subsettingDisabled || scalableFonts.contains(fontId);
+    }
+
+    public int getCharacterCount() {
+        return characterCount;
+    }
+
+    public int getRemovedCharacterCount() {
+        return removedCharacterCount;
+    }
+
+    /**
+     * The number of bytes of character definitions that were left out
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private boolean isUsed(int fontId, int characterCode) {
+        return isSubsettingDisabled(fontId) || getUsedCharacters(fontId).get(characterCode);
+    }
+
+    private void writePending(PclCommandTable table, int pendingIndex, PclCommandWriter writer) {
+        if (pendingIndex >= 0) {
+            writer.write(table.toCommand(pendingIndex));
+        }
+    }
+
+    private BitSet charactersOf(int fontId) {
+        if (fontId == UNKNOWN_FONT) {
+            return charactersOfUnknownFonts;
+        }
+        BitSet used = usedCharacters.get(fontId);
+        if (used == null) {
+            used = new BitSet(256);
+            usedCharacters.put(fontId, used);
+        }
+        return used;
+    }
+
+    private int selectedFontId(PclCommandTable.Cursor cursor) {
+        byte group = cursor.getGroupByte();
+        if (cursor.getTerminatorByte() != 'X' || group < '0' || group > '9') {
+            return UNKNOWN_FONT;
+        }
+        int fontId = group - '0';
+        for (int i = 0; i < cursor.getValueLength(); i++) {
+            byte digit = cursor.getValueByte(i);
+            if (digit >= '0' && digit <= '9') {
+                fontId = fontId * 10 + digit - '0';
+            }
+        }
+        return fontId;
+    }
+}
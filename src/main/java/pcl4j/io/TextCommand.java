@@ -27,12 +27,12 @@ public class TextCommand extends PclCommand {
     }
 
     public String toAscii() {
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < getBytes().length; i++) {
-            char currentChar = (char) getBytes()[i];
-            builder.append(currentChar);
+        byte[] bytes = getBytes();
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = (char) bytes[i];
         }
-        return builder.toString();
+        return new String(chars);
     }
 
 }
@@ -0,0 +1,154 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.*;
+
+public class AsyncPclCommandWriterTest {
+    private final PclCommandFactory factory = new PclCommandFactory();
+
+    @Test
+    public void shouldWriteTheCommandsInOrderOnAnotherThread() throws Exception {
+        MockOutputStream output = new MockOutputStream();
+        AsyncPclCommandWriter writer = new AsyncPclCommandWriter(new OutputStreamPclCommandWriter(output), 4, AsyncPclCommandWriter.BLOCK);
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            writer.write(factory.buildTextCommand(0, String.valueOf(i).getBytes()));
+            expected.append(i);
+        }
+        writer.close();
+
+        assertEquals(expected.toString(), new String(output.getBytes()));
+        assertTrue(output.isClosed());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldWaitForTheCommandsToBeWrittenWhenFlushing() throws Exception {
+        SlowWriter slowWriter = new SlowWriter(null);
+        AsyncPclCommandWriter writer = new AsyncPclCommandWriter(slowWriter, 16, AsyncPclCommandWriter.BLOCK);
+
+        for (int i = 0; i < 5; i++) {
+            writer.write(factory.buildTwoByteCommand(i, (byte) 'E'));
+        }
+        writer.flush();
+
+        assertEquals(5, slowWriter.commands.size());
+        assertEquals(1, slowWriter.flushes);
+        writer.close();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldFailWhenTheBufferIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SlowWriter slowWriter = new SlowWriter(release);
+        AsyncPclCommandWriter writer = new AsyncPclCommandWriter(slowWriter, 2, AsyncPclCommandWriter.FAIL);
+
+        writer.write(factory.buildTwoByteCommand(0, (byte) 'E'));
+        slowWriter.started.await();
+        writer.write(factory.buildTwoByteCommand(2, (byte) 'E'));
+        try {
+            writer.write(factory.buildTwoByteCommand(4, (byte) 'E'));
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertEquals("The buffer of 2 commands is full", e.getMessage());
+        }
+        release.countDown();
+        writer.close();
+        assertEquals(2, slowWriter.commands.size());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldThrowTheFailureOfTheWriterToTheProducer() throws Exception {
+        final RuntimeException problem = new PclCommandWriter.PclCommandWriterException("disk full");
+        AsyncPclCommandWriter writer = new AsyncPclCommandWriter(new SlowWriter(null) {
+            @Override
+            public void write(PclCommand command) {
+                throw problem;
+            }
+        }, 8, AsyncPclCommandWriter.BLOCK);
+
+        writer.write(factory.buildTwoByteCommand(0, (byte) 'E'));
+        try {
+            writer.flush();
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertSame(problem, e.getCause());
+        }
+        try {
+            writer.write(factory.buildTwoByteCommand(2, (byte) 'E'));
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertSame(problem, e.getCause());
+        }
+    }
+
+    @Test
+    public void shouldNotWriteOnceClosed() {
+        AsyncPclCommandWriter writer = new AsyncPclCommandWriter(new SlowWriter(null), 8, AsyncPclCommandWriter.BLOCK);
+        writer.close();
+        try {
+            writer.write(factory.buildTwoByteCommand(0, (byte) 'E'));
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertEquals("The writer is closed", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowAnUnknownBackpressure() {
+        new AsyncPclCommandWriter(new SlowWriter(null), 8, 7);
+    }
+
+    private static class SlowWriter implements PclCommandWriter, java.io.Flushable {
+        private final List<PclCommand> commands = Collections.synchronizedList(new ArrayList<PclCommand>());
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private int flushes;
+
+        private SlowWriter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        public void write(PclCommand command) {
+            started.countDown();
+            try {
+                if (release == null) {
+                    Thread.sleep(2);
+                } else {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            commands.add(command);
+        }
+
+        public void flush() {
+            flushes++;
+        }
+
+        public void close() {
+        }
+    }
+}
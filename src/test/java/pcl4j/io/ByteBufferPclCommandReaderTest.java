@@ -19,7 +19,12 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static pcl4j.io.AssertPcl.*;
@@ -62,6 +67,47 @@ public class ByteBufferPclCommandReaderTest {
         assertParameterizedCommand(0L, expectedCommand, reader.nextCommand());
     }
 
+    @Test
+    public void shouldSkipOverALanguageSectionThatIsNotPcl() {
+        byte[] universalExit = ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, "%-12345X".getBytes());
+        byte[] pjl = "@PJL JOB\r\n@PJL ENTER LANGUAGE = PCLXL\r\n".getBytes();
+        byte[] pclxl = new byte[]{')', ' ', 'H', 'P', ESCAPE, '*', 'b', '1', 'W', 0, (byte) 0xC0, ESCAPE, 'E'};
+
+        ByteBufferPclCommandReader reader = createReader(ByteArrayUtil.concat(universalExit, pjl, pclxl, universalExit));
+
+        assertParameterizedCommand(0L, ByteArrayUtil.concat(universalExit, pjl), reader.nextCommand());
+        PclCommand command = reader.nextCommand();
+        assertEquals(LanguageSectionCommand.class, command.getClass());
+        assertEquals("PCLXL", ((LanguageSectionCommand) command).getLanguage());
+        assertCommand(9L + pjl.length, pclxl, command);
+        assertParameterizedCommand(9L + pjl.length + pclxl.length, universalExit, reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+
+    @Test
+    public void shouldTreatALanguageSectionWithoutAClosingUniversalExitAsRunningToTheEndOfTheFile() {
+        byte[] universalExit = ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, "%-12345X@PJL ENTER LANGUAGE=POSTSCRIPT\n".getBytes());
+        byte[] postscript = "%!PS\nshowpage\n".getBytes();
+
+        ByteBufferPclCommandReader reader = createReader(ByteArrayUtil.concat(universalExit, postscript));
+
+        assertParameterizedCommand(0L, universalExit, reader.nextCommand());
+        assertCommand(universalExit.length, postscript, reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+
+    @Test
+    public void shouldKeepParsingCommandsWhenPclIsTheLanguageEntered() {
+        byte[] universalExit = ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, "%-12345X@PJL ENTER LANGUAGE=PCL\r\n".getBytes());
+        byte[] reset = new byte[]{ESCAPE, 'E'};
+
+        ByteBufferPclCommandReader reader = createReader(ByteArrayUtil.concat(universalExit, reset));
+
+        assertParameterizedCommand(0L, universalExit, reader.nextCommand());
+        assert2ByteCommand(universalExit.length, reset, reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+
     @Test
     public void shouldHandleSecondarySymbolSetsWithoutAGroupByte() {
         PclCommandBuilder command = new PclCommandBuilder(false).p(')').g('8').t('U');
@@ -198,6 +244,76 @@ public class ByteBufferPclCommandReaderTest {
         assertParameterizedCommand(0L, builder.toBytes(), reader.nextCommand());
     }
 
+    @Test
+    public void shouldCaptureBinaryDataForCommandsRegisteredWithTheGrammar() {
+        PclCommandGrammar grammar = new PclCommandGrammar();
+        grammar.registerDataCommand("&y#W");
+        PclCommandBuilder builder = new PclCommandBuilder().p('&').g('y').v("2").t('W').d(new byte[]{ESCAPE, 'E'});
+
+        ByteBufferPclCommandReader reader = createReader(builder.toBytes());
+        reader.setPclCommandGrammar(grammar);
+
+        assertParameterizedCommand(0L, builder.toCommand(), reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+
+    @Test
+    public void shouldWorkOutTheNumericValuesOfCommandsWhileParsing() {
+        byte[] fileContents = "\u001b*p+10.5x-3Y".getBytes();
+
+        ByteBufferPclCommandReader reader = createReader(fileContents);
+
+        ParameterizedCommand first = (ParameterizedCommand) reader.nextCommand();
+        assertEquals(105000L, first.getScaledDecimalValue());
+        assertEquals('+', first.getSign());
+        assertTrue(first.hasDecimal());
+        ParameterizedCommand second = (ParameterizedCommand) reader.nextCommand();
+        assertEquals(-3, second.getIntValue());
+        assertEquals('-', second.getSign());
+    }
+
+    @Test
+    public void parse_shouldHandTheCommandsToTheHandlerWithoutCopyingTheData() {
+        PclCommandBuilder raster = new PclCommandBuilder().p('*').g('b').v("2").t('W').d(new byte[]{1, 2});
+        RecordingHandler handler = new RecordingHandler();
+
+        ByteBufferPclCommandReader reader = createReader(ByteArrayUtil.concat(new byte[]{ESCAPE, 'E'}, "ab".getBytes(), raster.toBytes()));
+        reader.parse(handler);
+
+        assertEquals(Arrays.asList("E at 0", "text at 2 length 2", "*bW at 4 value 7 length 1 data 9 length 2"), handler.found);
+    }
+
+    @Test
+    public void parse_shouldStopAfterTheCommandsStartingBeforeTheEndPosition() {
+        PclCommandBuilder raster = new PclCommandBuilder().p('*').g('b').v("2").t('W').d(new byte[]{ESCAPE, 'E'});
+        RecordingHandler handler = new RecordingHandler();
+
+        ByteBufferPclCommandReader reader = createReader(ByteArrayUtil.concat("ab".getBytes(), raster.toBytes(), new byte[]{ESCAPE, 'E'}));
+        reader.skip(2);
+
+        assertEquals(9L, reader.parse(handler, 3));
+        assertEquals(Arrays.asList("*bW at 2 value 5 length 1 data 7 length 2"), handler.found);
+    }
+
+    @Test
+    public void nextCommand_shouldReadEveryPartOfACombinedCommandStartingBeforeTheEndPosition() {
+        ByteBufferPclCommandReader reader = createReader(ByteArrayUtil.concat(new byte[]{ESCAPE}, "&l1o2Aab".getBytes()));
+
+        assertParameterizedCommand(0L, new PclCommandBuilder().p('&').g('l').v("1").t('O').toCommand(), reader.nextCommand(1));
+        assertParameterizedCommand(5L, new PclCommandBuilder().p('&').g('l').v("2").t('A').toCommand(), reader.nextCommand(1));
+        assertNull(reader.nextCommand(1));
+        assertTextCommand(7L, "ab".getBytes(), reader.nextCommand(8));
+    }
+
+    @Test
+    public void shouldTreatAnIncompleteCommandAtTheEndOfTheFileAsText() {
+        ByteBufferPclCommandReader reader = createReader(new byte[]{'a', ESCAPE, '*', 'p', '1'});
+
+        assertTextCommand(0L, new byte[]{'a'}, reader.nextCommand());
+        assertTextCommand(1L, new byte[]{ESCAPE, '*', 'p', '1'}, reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+
     @Test
     public void shouldHandleIfTheValueIsNotProvided() {
         PclCommandBuilder builder = new PclCommandBuilder(false).p('*').g('p').t('E');
@@ -359,6 +475,28 @@ public class ByteBufferPclCommandReaderTest {
         assert2ByteCommand(2L, expectCommand2, reader.nextCommand());
     }
 
+    @Test
+    public void shouldReadFromThePositionOfTheBufferUpToItsLimit() {
+        byte[] fileContents = ByteArrayUtil.concat("XXXXXhello".getBytes(), new byte[]{ESCAPE, 'E'}, "YYY".getBytes());
+
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(ByteBuffer.wrap(fileContents, 5, 7));
+
+        assertTextCommand(0L, "hello".getBytes(), reader.nextCommand());
+        assert2ByteCommand(5L, new byte[]{ESCAPE, 'E'}, reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+
+    @Test
+    public void skip_shouldCountFromThePositionOfTheBuffer() {
+        byte[] fileContents = ByteArrayUtil.concat("XXXXXhello".getBytes(), new byte[]{ESCAPE, 'E'});
+
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(ByteBuffer.wrap(fileContents, 5, 7));
+        reader.skip(2);
+
+        assertTextCommand(2L, "llo".getBytes(), reader.nextCommand());
+        assert2ByteCommand(5L, new byte[]{ESCAPE, 'E'}, reader.nextCommand());
+    }
+
     private PclCommandBuilder commandExpectingBinaryData(String value) {
         return new PclCommandBuilder().p(')').g('s').v(value).t('W');
     }
@@ -366,4 +504,29 @@ public class ByteBufferPclCommandReaderTest {
     private ByteBufferPclCommandReader createReader(byte[] fileContents) {
         return new ByteBufferPclCommandReader(fileContents);
     }
+
+    /**
+     * Writes down every command the reader hands it
+     */
+    private static class RecordingHandler implements PclCommandHandler {
+        private final List<String> found = new ArrayList<String>();
+
+        public void twoByteCommand(long position, byte operation) {
+            found.add((char) operation + " at " + position);
+        }
+
+        public void parameterizedCommand(long position, byte parameterized, byte group, byte terminator,
+                                         long valuePosition, int valueLength, long dataPosition, int dataLength) {
+            found.add("" + (char) parameterized + (char) group + (char) terminator + " at " + position + " value " + valuePosition
+                    + " length " + valueLength + " data " + dataPosition + " length " + dataLength);
+        }
+
+        public void textCommand(long position, int length) {
+            found.add("text at " + position + " length " + length);
+        }
+
+        public void languageSection(long position, String language, int length) {
+            found.add(language + " at " + position + " length " + length);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class CharacterDescriptorTest {
+    @Test
+    public void shouldReadTheFieldsOfABitmapCharacter() {
+        byte[] data = {4, 0, 14, 1, 0, 0, (byte) 0xff, (byte) 0xfe, 0, 20, 0, 8, 0, 16, 0, 40};
+        CharacterDescriptor descriptor = new CharacterDescriptor(command(data));
+
+        assertEquals(CharacterDescriptor.FORMAT_BITMAP, descriptor.getFormat());
+        assertFalse(descriptor.isContinuation());
+        assertEquals(14, descriptor.getDescriptorSize());
+        assertEquals(1, descriptor.getCharacterClass());
+        assertEquals(-2, descriptor.getLeftOffset());
+        assertEquals(20, descriptor.getTopOffset());
+        assertEquals(8, descriptor.getCharacterWidth());
+        assertEquals(16, descriptor.getCharacterHeight());
+        assertEquals(40, descriptor.getDeltaX());
+    }
+
+    @Test
+    public void shouldKnowAContinuationBlock() {
+        CharacterDescriptor descriptor = new CharacterDescriptor(command(new byte[]{4, 1, 0x55}));
+
+        assertTrue(descriptor.isContinuation());
+        assertEquals(-1, descriptor.getCharacterClass());
+    }
+
+    @Test
+    public void shouldNotReadTheDataUntilAFieldIsAskedFor() {
+        ParameterizedCommand command = command(new byte[]{4, 0});
+        CharacterDescriptor descriptor = new CharacterDescriptor(command);
+        command.setDataBytes(new byte[]{15, 0});
+
+        assertEquals(CharacterDescriptor.FORMAT_TRUETYPE, descriptor.getFormat());
+    }
+
+    private ParameterizedCommand command(byte[] data) {
+        return (ParameterizedCommand) new PclCommandBuilder().p('(').g('s').v(data.length).t('W').d(data).toCommand();
+    }
+}
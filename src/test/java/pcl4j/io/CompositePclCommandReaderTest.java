@@ -0,0 +1,143 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class CompositePclCommandReaderTest {
+    private static final String JOB = "~%-12345X@PJL ENTER LANGUAGE=PCL\n~E~&l1o2A~*b4Wab~c~(s10.5Hpage 1\f"
+            + "~%-12345X@PJL ENTER LANGUAGE=PCLXL\n) HP-PCL XL~%-12345X~Epage 2\f~E";
+
+    @Test
+    public void shouldReadTheSameCommandsWhereverTheBuffersAreSplit() {
+        byte[] job = bytes(JOB);
+        List<PclCommand> expected = readAll(new ByteBufferPclCommandReader(job));
+        for (int first = 0; first <= job.length; first += 3) {
+            for (int second = first; second <= job.length; second += 5) {
+                CompositePclCommandReader reader = new CompositePclCommandReader(
+                        ByteBuffer.wrap(job, 0, first), direct(job, first, second), ByteBuffer.wrap(job, second, job.length - second));
+                assertEquals("split at " + first + " and " + second, expected, readAll(reader));
+            }
+        }
+    }
+
+    @Test
+    public void shouldCopyTheBinaryDataOutOfEveryBuffer() {
+        CompositePclCommandReader reader = new CompositePclCommandReader(buffer("~*b6Wab"), buffer("cd"), buffer(""), buffer("ef~E"));
+
+        PclCommand command = reader.nextCommand();
+        assertTrue(Arrays.equals(bytes("~*b6Wabcdef"), command.getBytes()));
+        assertEquals(11, reader.nextCommand().getPosition());
+        assertNull(reader.nextCommand());
+    }
+
+    @Test
+    public void shouldReadTheBuffersFromTheirPositions() {
+        ByteBuffer header = buffer("xx~E");
+        header.position(2);
+
+        List<PclCommand> commands = readAll(new CompositePclCommandReader(Arrays.asList(header, buffer("text"))));
+
+        assertEquals(2, commands.size());
+        assertEquals(0, commands.get(0).getPosition());
+        assertEquals(2, commands.get(1).getPosition());
+        assertEquals(2, header.position());
+    }
+
+    @Test
+    public void shouldSkipAcrossBuffers() {
+        CompositePclCommandReader reader = new CompositePclCommandReader(buffer("~E~&l"), buffer("2X~*t300R"));
+
+        reader.skip(7);
+
+        PclCommand command = reader.nextCommand();
+        assertEquals(7, command.getPosition());
+        assertTrue(Arrays.equals(bytes("~*t300R"), command.getBytes()));
+        assertNull(reader.nextCommand());
+    }
+
+    @Test
+    public void shouldSkipFromTheEndOfTheLastCommandRead() {
+        byte[] job = bytes("abc~Edef~Eghi");
+        for (int split = 0; split <= job.length; split++) {
+            CompositePclCommandReader reader = new CompositePclCommandReader(ByteBuffer.wrap(job, 0, split),
+                    ByteBuffer.wrap(job, split, job.length - split));
+            assertEquals("abc", new String(reader.nextCommand().getBytes()));
+
+            reader.skip(2);
+
+            PclCommand command = reader.nextCommand();
+            assertEquals("split at " + split, 5, command.getPosition());
+            assertEquals("def", new String(command.getBytes()));
+            assertEquals(8, reader.nextCommand().getPosition());
+            assertEquals("ghi", new String(reader.nextCommand().getBytes()));
+            assertNull(reader.nextCommand());
+        }
+    }
+
+    @Test
+    public void shouldNotSkipPastTheEndOnceEveryCommandWasRead() {
+        CompositePclCommandReader reader = new CompositePclCommandReader(buffer("~Eab"), buffer("~E"));
+        readAll(reader);
+        try {
+            reader.skip(1);
+            fail();
+        } catch (PclCommandReader.PclCommandReaderException e) {
+            assertEquals("Unable to skip bytes=[1], only 0 bytes were left", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldNotSkipPastTheEnd() {
+        CompositePclCommandReader reader = new CompositePclCommandReader(buffer("~E"), buffer("~E"));
+        try {
+            reader.skip(5);
+            fail();
+        } catch (PclCommandReader.PclCommandReaderException e) {
+            assertEquals("Unable to skip bytes=[5], only 4 bytes were left", e.getMessage());
+        }
+    }
+
+    private List<PclCommand> readAll(PclCommandReader reader) {
+        List<PclCommand> commands = new ArrayList<PclCommand>();
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            commands.add(command);
+        }
+        return commands;
+    }
+
+    private ByteBuffer direct(byte[] job, int start, int end) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(end - start);
+        buffer.put(job, start, end - start);
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer buffer(String contents) {
+        return ByteBuffer.wrap(bytes(contents));
+    }
+
+    private byte[] bytes(String contents) {
+        return contents.replace('~', (char) PclUtil.ESCAPE).getBytes();
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static junit.framework.Assert.*;
+
+public class CursorMoveCoalescingPclCommandFilterTest {
+    private CursorMoveCoalescingPclCommandFilter filter;
+
+    @Before
+    public void setUp() throws Exception {
+        filter = new CursorMoveCoalescingPclCommandFilter();
+    }
+
+    @Test
+    public void shouldCollapseARunOfMovesIntoOneCombinedCommand() {
+        assertEquals("\u001b*p300x205YText", run("\u001b*p100X\u001b*p200Y\u001b*p+5Y\u001b*p300XText"));
+        assertEquals(16, filter.getBytesSaved());
+    }
+
+    @Test
+    public void shouldAddUpRelativeMoves() {
+        assertEquals("\u001b*p+15XText", run("\u001b*p+10X\u001b*p+10X\u001b*p-5XText"));
+    }
+
+    @Test
+    public void shouldDropRelativeMovesThatCancelEachOtherOut() {
+        assertEquals("Text", run("\u001b*p+10X\u001b*p-10XText"));
+    }
+
+    @Test
+    public void shouldConvertDecipointsIntoPclUnits() {
+        assertEquals("\u001b*p310XText", run("\u001b&a720H\u001b*p+10XText"));
+    }
+
+    @Test
+    public void shouldUseDecipointsWhenThePositionIsNotAWholeNumberOfPclUnits() {
+        assertEquals("\u001b&a+1.5VText", run("\u001b&a+1V\u001b&a+0.5VText"));
+    }
+
+    @Test
+    public void shouldFollowTheUnitOfMeasure() {
+        assertEquals("\u001b&u600D\u001b*p605XText", run("\u001b&u600D\u001b*p600X\u001b*p+5XText"));
+        assertEquals("\u001b&u600D\u001b*p+5XText\u001bE\u001b*p+2XText", run("\u001b&u600D\u001b*p+5XText\u001bE\u001b*p+1X\u001b*p+1XText"));
+    }
+
+    @Test
+    public void shouldKeepMovesInColumnsAndRowsButDropTheMovesTheyReplace() {
+        assertEquals("\u001b&a5C\u001b*p+10XText", run("\u001b*p100X\u001b&a5C\u001b*p+10XText"));
+    }
+
+    @Test
+    public void shouldNotChangeASingleMove() {
+        assertEquals("\u001b*p100XText\u001b*p200YMore", run("\u001b*p100XText\u001b*p200YMore"));
+        assertEquals(0, filter.getBytesSaved());
+    }
+
+    @Test
+    public void shouldWriteTheMovesLeftAtTheEnd() {
+        assertEquals("Text\u001b*p10x20Y", run("Text\u001b*p5X\u001b*p10X\u001b*p20Y"));
+    }
+
+    private String run(String job) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PclCommandWriter writer = new FilteredPclCommandWriter(new OutputStreamPclCommandWriter(output), filter);
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job.getBytes());
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            writer.write(command);
+        }
+        writer.close();
+        return output.toString();
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class FollowingPclCommandReaderTest {
+    private static final String[] PIECES = {"~%-12345X@PJL ENTER LANGUAGE=PCL\n~E~&l", "1o2A~*b6Wabc", "def~(s10.5H", "page 1\f~E", "~%-12345X"};
+
+    private File spoolFile;
+    private FollowingPclCommandReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        spoolFile = File.createTempFile("spool", ".pcl");
+        spoolFile.deleteOnExit();
+        reader = new FollowingPclCommandReader(spoolFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Test
+    public void shouldReadTheCommandsAsTheyAreWritten() throws Exception {
+        Thread spooler = spool(PIECES, null);
+
+        List<PclCommand> commands = readAll(reader);
+        spooler.join();
+
+        assertEquals(readAll(new ByteBufferPclCommandReader(bytes(join(PIECES)))), commands);
+    }
+
+    @Test
+    public void shouldEndOnceTheMarkerFileExists() throws Exception {
+        File marker = new File(spoolFile.getPath() + ".done");
+        marker.deleteOnExit();
+        reader.setCompletionMarker(marker);
+        String[] pieces = {"~E~&l", "2Xpage"};
+        Thread spooler = spool(pieces, marker);
+
+        List<PclCommand> commands = readAll(reader);
+        spooler.join();
+
+        assertEquals(readAll(new ByteBufferPclCommandReader(bytes(join(pieces)))), commands);
+    }
+
+    @Test(timeout = 5000)
+    public void shouldEndOnTheUniversalExitEndingTheJob() throws Exception {
+        reader.setEndOnUniversalExit(true);
+        write(join(PIECES));
+
+        List<PclCommand> commands = readAll(reader);
+
+        assertEquals(9, commands.size());
+        assertTrue(new PclUtil().isUniversalExit(commands.get(8)));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldEndOnceNothingWasWrittenForTheIdleTimeout() throws Exception {
+        write("~E~*b4Wab");
+        reader.setIdleTimeout(50);
+
+        List<PclCommand> commands = readAll(reader);
+
+        assertEquals(2, commands.size());
+        assertEquals(2, commands.get(1).getPosition());
+    }
+
+    @Test
+    public void shouldReadTheBytesWrittenBeforeFinishing() throws Exception {
+        write("~E~&l2X");
+        reader.finish();
+
+        assertEquals(2, readAll(reader).size());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldSkipFromTheEndOfTheLastCommandRead() throws Exception {
+        write("abc~Edef~Eghi");
+        reader.finish();
+        assertEquals("abc", new String(reader.nextCommand().getBytes()));
+
+        reader.skip(2);
+
+        PclCommand command = reader.nextCommand();
+        assertEquals(5, command.getPosition());
+        assertEquals("def", new String(command.getBytes()));
+        assertEquals(8, reader.nextCommand().getPosition());
+        assertEquals("ghi", new String(reader.nextCommand().getBytes()));
+        assertNull(reader.nextCommand());
+    }
+
+    private Thread spool(final String[] pieces, final File marker) {
+        Thread spooler = new Thread() {
+            public void run() {
+                try {
+                    for (String piece : pieces) {
+                        Thread.sleep(20);
+                        write(piece);
+                    }
+                    if (marker == null) {
+                        reader.finish();
+                    } else {
+                        marker.createNewFile();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        spooler.start();
+        return spooler;
+    }
+
+    private void write(String piece) throws IOException {
+        FileOutputStream output = new FileOutputStream(spoolFile, true);
+        output.write(bytes(piece));
+        output.close();
+    }
+
+    private List<PclCommand> readAll(PclCommandReader reader) {
+        List<PclCommand> commands = new ArrayList<PclCommand>();
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            commands.add(command);
+        }
+        return commands;
+    }
+
+    private String join(String[] pieces) {
+        StringBuilder job = new StringBuilder();
+        for (String piece : pieces) {
+            job.append(piece);
+        }
+        return job.toString();
+    }
+
+    private byte[] bytes(String contents) {
+        return contents.replace('~', (char) PclUtil.ESCAPE).getBytes();
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class FontDeduplicationPclCommandFilterTest {
+    private FontDeduplicationPclCommandFilter filter;
+
+    @Before
+    public void setUp() throws Exception {
+        filter = new FontDeduplicationPclCommandFilter();
+    }
+
+    @Test
+    public void shouldDropADownloadOfAFontThatIsAlreadyResidentUnderTheSameId() {
+        List<String> output = run(
+                fontId(10), header("HEADER"), characterCode(65), character("GLYPH-A"),
+                select(10), text("page 1"),
+                fontId(10), header("HEADER"), characterCode(65), character("GLYPH-A"),
+                select(10), text("page 2"));
+
+        assertEquals("[*c10D, )s6WHEADER, *c65E, (s7WGLYPH-A, (10X, page 1, *c10D, (10X, page 2]", output.toString());
+        assertEquals(2, filter.getDownloadCount());
+        assertEquals(1, filter.getDroppedDownloadCount());
+        assertEquals(header("HEADER").getLength() + characterCode(65).getLength() + character("GLYPH-A").getLength(),
+                filter.getBytesSaved());
+    }
+
+    @Test
+    public void shouldKeepADownloadThatReplacesAFontWithDifferentGlyphs() {
+        List<String> output = run(
+                fontId(10), header("HEADER"), characterCode(65), character("GLYPH-A"),
+                fontId(10), header("HEADER"), characterCode(65), character("GLYPH-B"));
+
+        assertEquals("[*c10D, )s6WHEADER, *c65E, (s7WGLYPH-A, *c10D, )s6WHEADER, *c65E, (s7WGLYPH-B]", output.toString());
+        assertEquals(0, filter.getBytesSaved());
+    }
+
+    @Test
+    public void shouldRemapSelectingAFontDownloadedAgainUnderAnotherId() {
+        List<String> output = run(
+                fontId(10), header("HEADER"), characterCode(65), character("GLYPH-A"),
+                fontId(12), header("HEADER"), characterCode(65), character("GLYPH-A"),
+                select(12), text("text"));
+
+        assertEquals("[*c10D, )s6WHEADER, *c65E, (s7WGLYPH-A, *c12D, (10X, text]", output.toString());
+    }
+
+    @Test
+    public void shouldNotRemapWhenTurnedOff() {
+        filter.setRemapFontIds(false);
+
+        List<String> output = run(
+                fontId(10), header("HEADER"),
+                fontId(12), header("HEADER"),
+                select(12));
+
+        assertEquals("[*c10D, )s6WHEADER, *c12D, )s6WHEADER, (12X]", output.toString());
+    }
+
+    @Test
+    public void shouldDownloadTheFontAgainAfterAResetDeletedIt() {
+        List<String> output = run(
+                fontId(1), header("HEADER"),
+                reset(),
+                fontId(1), header("HEADER"));
+
+        assertEquals("[*c1D, )s6WHEADER, E, *c1D, )s6WHEADER]", output.toString());
+    }
+
+    @Test
+    public void shouldDownloadTheFontAgainAfterItWasDeleted() {
+        List<String> output = run(
+                fontId(1), header("HEADER"),
+                fontId(1), fontControl(2),
+                fontId(1), header("HEADER"));
+
+        assertEquals("[*c1D, )s6WHEADER, *c1D, *c2F, *c1D, )s6WHEADER]", output.toString());
+    }
+
+    @Test
+    public void shouldKeepPermanentFontsAcrossAReset() {
+        List<String> output = run(
+                fontId(1), header("HEADER"), fontControl(5),
+                reset(),
+                fontId(1), header("HEADER"), fontControl(5));
+
+        assertEquals("[*c1D, )s6WHEADER, *c5F, E, *c1D]", output.toString());
+    }
+
+    @Test
+    public void shouldMakeFontsPermanentAndDeleteThemWhenFlushedWhenTurnedOn() {
+        filter.setMakeFontsPermanent(true);
+
+        List<String> output = run(
+                universalExit(), fontId(1), header("HEADER"), text("job 1"),
+                universalExit(), fontId(1), header("HEADER"), text("job 2"));
+
+        assertEquals("[%-12345X, *c1D, )s6WHEADER, *c5F, job 1, %-12345X, *c1D, job 2, *c1D, *c2F]", output.toString());
+    }
+
+    @Test
+    public void shouldForgetTheLeastRecentlyUsedFontsWhenTooManyAreResident() {
+        filter = new FontDeduplicationPclCommandFilter(1);
+
+        List<String> output = run(
+                fontId(1), header("ONE"),
+                fontId(2), header("TWO"),
+                fontId(1), header("ONE"));
+
+        assertEquals("[*c1D, )s3WONE, *c2D, )s3WTWO, *c1D, )s3WONE]", output.toString());
+    }
+
+    @Test
+    public void shouldWorkAsAWriterStage() {
+        final List<PclCommand> written = new ArrayList<PclCommand>();
+        PclCommandWriter writer = new PclCommandWriter() {
+            public void write(PclCommand command) {
+                written.add(command);
+            }
+
+            public void close() {
+            }
+        };
+        byte[] download = ByteArrayUtil.concat(fontId(3).getBytes(), header("HEADER").getBytes());
+
+        new PclCommandPipeline()
+                .add(filter)
+                .run(new ByteBufferPclCommandReader(ByteArrayUtil.concat(download, download)), writer);
+
+        assertEquals(3, written.size());
+        assertEquals(header("HEADER").getLength(), filter.getBytesSaved());
+    }
+
+    private List<String> run(PclCommand... commands) {
+        PclCommandBatch input = new PclCommandBatch(commands.length);
+        for (PclCommand command : commands) {
+            input.add(command);
+        }
+        PclCommandBatch output = new PclCommandBatch(commands.length);
+        filter.filter(input, output);
+        filter.flush(output);
+
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < output.size(); i++) {
+            result.add(output.get(i).toAscii());
+        }
+        return result;
+    }
+
+    private PclCommand fontId(int id) {
+        return new PclCommandBuilder().p('*').g('c').v(id).t('D').toCommand();
+    }
+
+    private PclCommand fontControl(int operation) {
+        return new PclCommandBuilder().p('*').g('c').v(operation).t('F').toCommand();
+    }
+
+    private PclCommand header(String data) {
+        return new PclCommandBuilder().p(')').g('s').v(data.length()).t('W').d(data).toCommand();
+    }
+
+    private PclCommand characterCode(int code) {
+        return new PclCommandBuilder().p('*').g('c').v(code).t('E').toCommand();
+    }
+
+    private PclCommand character(String data) {
+        return new PclCommandBuilder().p('(').g('s').v(data.length()).t('W').d(data).toCommand();
+    }
+
+    private PclCommand select(int id) {
+        String value = String.valueOf(id);
+        return new PclCommandBuilder(false).p('(').g(value.charAt(0)).v(value.substring(1)).t('X').toCommand();
+    }
+
+    private PclCommand reset() {
+        return new PclCommandFactory().buildTwoByteCommand(-1, (byte) 'E');
+    }
+
+    private PclCommand universalExit() {
+        return new PclCommandBuilder(false).p('%').g('-').v("12345").t('X').toCommand();
+    }
+
+    private PclCommand text(String text) {
+        return new PclCommandFactory().buildTextCommand(-1, text.getBytes());
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class LanguageSectionCommandTest {
+    @Test
+    public void getBytes_shouldOnlyContainTheSection() {
+        ByteBuffer buffer = ByteBuffer.wrap("abcdefgh".getBytes());
+
+        LanguageSectionCommand command = new LanguageSectionCommand(2L, "PCLXL", buffer, 2, 3);
+
+        assertTrue(Arrays.equals("cde".getBytes(), command.getBytes()));
+        assertEquals(2L, command.getPosition());
+    }
+
+    @Test
+    public void getSection_shouldNotMoveTheSourceBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("abcdefgh".getBytes());
+        buffer.position(7);
+
+        ByteBuffer section = new LanguageSectionCommand(1L, "PCLXL", buffer, 1, 4).getSection();
+
+        assertEquals(7, buffer.position());
+        assertEquals(4, section.remaining());
+        assertEquals('b', section.get(0));
+    }
+}
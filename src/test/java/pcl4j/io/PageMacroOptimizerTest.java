@@ -0,0 +1,161 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.*;
+
+public class PageMacroOptimizerTest {
+    private PageMacroOptimizer optimizer;
+    private ByteArrayOutputStream written;
+    private PclCommandWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        optimizer = new PageMacroOptimizer();
+        written = new ByteArrayOutputStream();
+        writer = new OutputStreamPclCommandWriter(written);
+    }
+
+    @Test
+    public void shouldDefineTheRepeatedPageFurnitureOnceAndExecuteItOnEveryPage() {
+        byte[] job = ByteArrayUtil.concat(page("first"), page("second"), page("third"));
+
+        optimizer.optimize(PclCommandTable.build(job), writer);
+
+        String output = written.toString();
+        assertEquals(1, count(output, "\u001b&f0X"));
+        assertEquals(3, count(output, "\u001b&f2X"));
+        assertEquals(1, optimizer.getMacroCount());
+        assertEquals(3, optimizer.getExecutionCount());
+        assertEquals(job.length - written.size(), optimizer.getBytesSaved());
+        assertEquals(commandsOf(job), expandMacros(written.toByteArray()));
+    }
+
+    @Test
+    public void shouldLeaveAJobAloneWhenNothingIsRepeated() {
+        byte[] job = ByteArrayUtil.concat("one".getBytes(), command("*p10X"), "two".getBytes());
+
+        optimizer.optimize(PclCommandTable.build(job), writer);
+
+        assertEquals(new String(job), written.toString());
+        assertEquals(0, optimizer.getMacroCount());
+    }
+
+    @Test
+    public void shouldNotUseRunsThatAreTooSmallToSaveAnything() {
+        byte[] furniture = ByteArrayUtil.concat(command("*p10X"), command("*p10Y"), "A".getBytes(), command("*p20X"));
+        byte[] job = ByteArrayUtil.concat(furniture, "\f".getBytes(), furniture);
+
+        optimizer.optimize(PclCommandTable.build(job), writer);
+
+        assertEquals(0, optimizer.getMacroCount());
+        assertEquals(new String(job), written.toString());
+    }
+
+    @Test
+    public void shouldNotMatchRunsAcrossAReset() {
+        byte[] job = ByteArrayUtil.concat(page("first"), command("E"), page("second"));
+
+        optimizer.optimize(PclCommandTable.build(job), writer);
+
+        assertEquals(0, optimizer.getMacroCount());
+    }
+
+    @Test
+    public void shouldLeaveJobsThatAlreadyUseMacrosAlone() {
+        byte[] job = ByteArrayUtil.concat(command("&f5Y"), page("first"), page("second"));
+
+        optimizer.optimize(PclCommandTable.build(job), writer);
+
+        assertEquals(0, optimizer.getMacroCount());
+        assertEquals(new String(job), written.toString());
+    }
+
+    @Test
+    public void shouldStartNumberingTheMacrosAtTheFirstMacroId() {
+        optimizer.setFirstMacroId(700);
+
+        optimizer.optimize(PclCommandTable.build(ByteArrayUtil.concat(page("first"), page("second"))), writer);
+
+        assertTrue(written.toString().contains("\u001b&f700Y"));
+    }
+
+    private byte[] page(String body) {
+        byte[] logo = new byte[200];
+        for (int i = 0; i < logo.length; i++) {
+            logo[i] = (byte) i;
+        }
+        return ByteArrayUtil.concat(
+                command("*p100X"), command("*p100Y"), command("*r1A"),
+                new PclCommandBuilder().p('*').g('b').v(logo.length).t('W').d(logo).toBytes(),
+                command("*rB"), command("*p100X"), command("*p400Y"), "ACME STATEMENT".getBytes(),
+                command("*p100X"), command("*p600Y"), body.getBytes(), "\f".getBytes());
+    }
+
+    private byte[] command(String command) {
+        return ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, command.getBytes());
+    }
+
+    private int count(String text, String part) {
+        int count = 0;
+        for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private List<String> commandsOf(byte[] job) {
+        List<String> commands = new ArrayList<String>();
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job);
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            commands.add(new String(command.getBytes()));
+        }
+        return commands;
+    }
+
+    private List<String> expandMacros(byte[] output) {
+        Map<String, List<String>> macros = new HashMap<String, List<String>>();
+        List<String> commands = new ArrayList<String>();
+        List<String> definition = null;
+        String macroId = null;
+        for (String command : commandsOf(output)) {
+            if (command.endsWith("Y") && command.startsWith("\u001b&f")) {
+                macroId = command;
+            } else if (command.equals("\u001b&f0X")) {
+                definition = new ArrayList<String>();
+                macros.put(macroId, definition);
+            } else if (command.equals("\u001b&f1X")) {
+                definition = null;
+            } else if (command.equals("\u001b&f2X")) {
+                commands.addAll(macros.get(macroId));
+            } else if (definition != null) {
+                definition.add(command);
+            } else {
+                commands.add(command);
+            }
+        }
+        return commands;
+    }
+}
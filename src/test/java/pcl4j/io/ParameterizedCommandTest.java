@@ -0,0 +1,65 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class ParameterizedCommandTest {
+    @Test
+    public void shouldWorkOutTheNumericValueFromTheValueBytes() {
+        ParameterizedCommand command = command("-12.5");
+
+        assertEquals(-12, command.getIntValue());
+        assertEquals(-12L, command.getLongValue());
+        assertEquals(-125000L, command.getScaledDecimalValue());
+        assertEquals(-12.5, command.getDecimalValue());
+        assertTrue(command.hasDecimal());
+        assertEquals('-', command.getSign());
+    }
+
+    @Test
+    public void shouldUseTheNumericValueGivenInsteadOfTheValueBytes() {
+        ParameterizedCommand command = command("1");
+
+        command.setNumericValue(30000L, (byte) '+', false);
+
+        assertEquals(3, command.getIntValue());
+        assertEquals('+', command.getSign());
+    }
+
+    @Test
+    public void shouldWorkOutTheNumericValueAgainWhenTheValueBytesChange() {
+        ParameterizedCommand command = command("1");
+        command.getIntValue();
+
+        command.setValueBytes("7".getBytes());
+
+        assertEquals(7, command.getIntValue());
+    }
+
+    @Test
+    public void shouldBeZeroWhenThereIsNoValue() {
+        ParameterizedCommand command = command("");
+
+        assertEquals(0, command.getIntValue());
+        assertEquals(PclValueParser.NO_SIGN, command.getSign());
+    }
+
+    private ParameterizedCommand command(String value) {
+        return new PclCommandFactory().buildParameterizedCommand(0L, (byte) '*', (byte) 'p', value.getBytes(), (byte) 'X', new byte[0]);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class PclCommandBatchTest {
+    @Test
+    public void shouldGrowWhenMoreCommandsAreAddedThanTheInitialCapacity() {
+        PclCommandBatch batch = new PclCommandBatch(1);
+        TextCommand first = new TextCommand(new byte[]{1});
+        TextCommand second = new TextCommand(new byte[]{2});
+
+        batch.add(first);
+        batch.add(second);
+
+        assertEquals(2, batch.size());
+        assertSame(first, batch.get(0));
+        assertSame(second, batch.get(1));
+    }
+
+    @Test
+    public void clear_shouldReleaseTheCommands() {
+        PclCommandBatch batch = new PclCommandBatch(2);
+        batch.add(new TextCommand(new byte[]{1}));
+
+        batch.clear();
+
+        assertTrue(batch.isEmpty());
+        assertNull(batch.getCommands()[0]);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_shouldNotAllowLookingPastTheSize() {
+        new PclCommandBatch(4).get(0);
+    }
+}
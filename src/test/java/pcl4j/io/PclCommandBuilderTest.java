@@ -46,6 +46,25 @@ public class PclCommandBuilderTest {
         assertParameterizedCommand(-1, expectedChild, childCommand);
     }
 
+    @Test
+    public void v_shouldWriteAWholeNumber() {
+        assertBuiltValue("-120", new PclCommandBuilder().v(-120));
+        assertBuiltValue("0", new PclCommandBuilder().v(0));
+    }
+
+    @Test
+    public void vRelative_shouldAlwaysWriteTheSign() {
+        assertBuiltValue("+5", new PclCommandBuilder().vRelative(5));
+        assertBuiltValue("-5", new PclCommandBuilder().vRelative(-5));
+    }
+
+    @Test
+    public void vScaled_shouldWriteOnlyTheNeededDecimalPlaces() {
+        assertBuiltValue("1.25", new PclCommandBuilder().vScaled(12500));
+        assertBuiltValue("-0.0005", new PclCommandBuilder().vScaled(-5));
+        assertBuiltValue("3", new PclCommandBuilder().vScaled(30000));
+    }
+
     @Test
     public void toBytes_shouldBeAbleToBuildAnEntireCommand() {
         byte[] command = new PclCommandBuilder().p(LOWEST_PARAMETERIZED_BYTE)
@@ -184,4 +203,9 @@ public class PclCommandBuilderTest {
     public void shouldBlowUpIfAnInvalidValueIsGiven() {
         new PclCommandBuilder().v(null);
     }
+
+    private void assertBuiltValue(String expected, PclCommandBuilder builder) {
+        byte[] actual = ((ParameterizedCommand) builder.p('*').g('p').t('X').toCommand()).getValueBytes();
+        assertEquals(expected, new String(actual));
+    }
 }
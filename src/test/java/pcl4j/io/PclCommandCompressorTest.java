@@ -62,6 +62,25 @@ public class PclCommandCompressorTest {
         assertFalse(compressor.canBeCompressed(command, otherCommand));
     }
 
+    @Test
+    public void canBeCompressed_firstCommandExpectsDataWithoutAnyGiven() {
+        PclCommand command = new PclCommandBuilder().p('*').g('b').v("0").t('W').toCommand();
+        PclCommand otherCommand = new PclCommandBuilder().p('*').g('b').v("2").t('M').toCommand();
+
+        assertFalse(compressor.canBeCompressed(command, otherCommand));
+        assertTrue(compressor.canBeCompressed(otherCommand, command));
+    }
+
+    @Test
+    public void canBeCompressed_shouldUseTheGrammarGiven() {
+        PclCommandGrammar grammar = new PclCommandGrammar();
+        grammar.registerDataCommand("&y#W");
+        compressor.setPclCommandGrammar(grammar);
+        PclCommand command = new PclCommandBuilder().p('&').g('y').v("0").t('W').toCommand();
+
+        assertFalse(compressor.canBeCompressed(command, command));
+    }
+
     @Test
     public void canBeCompressed_firstCommandIsATextCommand() {
         assertFalse(compressor.canBeCompressed(new TextCommand("X".getBytes()), new ParameterizedCommand(new byte[3])));
@@ -117,4 +136,15 @@ public class PclCommandCompressorTest {
     }
 
 
+
+    @Test
+    public void compress_shouldBeAbleToCompressTheResultAgain() {
+        PclCommand first = new PclCommandBuilder().p('(').g('s').v("0").t('P').toCommand();
+        PclCommand second = new PclCommandBuilder().p('(').g('s').v("10").t('H').toCommand();
+        PclCommand third = new PclCommandBuilder().p('(').g('s').v("3").t('T').toCommand();
+
+        PclCommand compressedCommand = compressor.compress(compressor.compress(first, second), third);
+
+        assertEquals("(s0p10h3T", compressedCommand.toAscii());
+    }
 }
@@ -0,0 +1,94 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class PclCommandGrammarTest {
+    private PclCommandGrammar grammar;
+
+    @Before
+    public void setUp() throws Exception {
+        grammar = new PclCommandGrammar();
+    }
+
+    @Test
+    public void isExpectingData_shouldKnowTheStandardDataCommands() {
+        assertTrue(grammar.isExpectingData((byte) '*', (byte) 'b', (byte) 'W'));
+        assertTrue(grammar.isExpectingData((byte) '&', (byte) 'p', (byte) 'X'));
+        assertFalse(grammar.isExpectingData((byte) '*', (byte) 'p', (byte) 'X'));
+    }
+
+    @Test
+    public void isExpectingData_shouldTreatALowercaseTerminatorLikeItsUppercaseForm() {
+        assertTrue(grammar.isExpectingData((byte) '*', (byte) 'b', (byte) 'w'));
+    }
+
+    @Test
+    public void isExpectingData_shouldNotBeFooledByBytesOutsideOfTheCommandRanges() {
+        assertFalse(grammar.isExpectingData((byte) '(', (byte) '8', (byte) 'U'));
+        assertFalse(grammar.isExpectingData((byte) 'a', (byte) 'b', (byte) 'W'));
+        assertFalse(grammar.isExpectingData((byte) '*', (byte) 'b', (byte) 0));
+    }
+
+    @Test
+    public void registerDataCommand_shouldMarkTheCommandAsExpectingData() {
+        grammar.registerDataCommand("&y#W");
+
+        assertTrue(grammar.isExpectingData((byte) '&', (byte) 'y', (byte) 'W'));
+        assertTrue(grammar.isExpectingData((byte) '&', (byte) 'y', (byte) 'w'));
+        assertFalse(grammar.isCombinable((byte) '&', (byte) 'y', (byte) 'W'));
+    }
+
+    @Test
+    public void registerDataCommand_shouldNotChangeTheDefaultGrammar() {
+        grammar.registerDataCommand("&y#W");
+
+        assertFalse(PclCommandGrammar.getDefault().isExpectingData((byte) '&', (byte) 'y', (byte) 'W'));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerDataCommand_shouldNotAllowBadlyFormedCommands() {
+        grammar.registerDataCommand("&yW");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerDataCommand_shouldNotAllowBytesOutsideOfTheCommandRanges() {
+        grammar.registerDataCommand("&Y#W");
+    }
+
+    @Test
+    public void isCombinable_shouldBeFalseForCommandsExpectingData() {
+        assertFalse(grammar.isCombinable((byte) ')', (byte) 's', (byte) 'W'));
+        assertTrue(grammar.isCombinable((byte) '(', (byte) 's', (byte) 'B'));
+    }
+
+    @Test
+    public void isPageEjecting_shouldKnowTheCommandsThatCanEjectAPage() {
+        assertTrue(grammar.isPageEjecting((byte) '&', (byte) 'l', (byte) 'H'));
+        assertTrue(grammar.isPageEjecting((byte) '&', (byte) 'l', (byte) 'o'));
+        assertFalse(grammar.isPageEjecting((byte) '&', (byte) 'l', (byte) 'X'));
+    }
+
+    @Test
+    public void getFlags_shouldCombineTheFlags() {
+        assertEquals(PclCommandGrammar.PAGE_EJECTING | PclCommandGrammar.COMBINABLE, grammar.getFlags((byte) '&', (byte) 'l', (byte) 'S'));
+    }
+}
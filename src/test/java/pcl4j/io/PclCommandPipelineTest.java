@@ -0,0 +1,191 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PclCommandPipelineTest {
+    private ByteBufferPclCommandReader reader;
+    private RecordingPclCommandWriter writer;
+    private PclCommandBuilder positionX;
+    private PclCommandBuilder positionY;
+
+    @Before
+    public void setUp() throws Exception {
+        positionX = new PclCommandBuilder().p('*').g('p').v("10").t('X');
+        positionY = new PclCommandBuilder().p('*').g('p').v("20").t('Y');
+        reader = new ByteBufferPclCommandReader(ByteArrayUtil.concat(positionX.toBytes(), positionY.toBytes(), "text".getBytes()));
+        writer = new RecordingPclCommandWriter();
+    }
+
+    @Test
+    public void shouldWriteEveryCommandWhenThereAreNoStages() {
+        new PclCommandPipeline().run(reader, writer);
+
+        assertEquals(3, writer.commands.size());
+    }
+
+    @Test
+    public void shouldRunTheStagesInTheOrderTheyWereAdded() {
+        List<String> calls = new ArrayList<String>();
+
+        new PclCommandPipeline()
+                .add(new NamedFilter("first", calls))
+                .add(new NamedFilter("second", calls))
+                .run(reader, writer);
+
+        assertEquals("[first, second, first-flush, second-flush]", calls.toString());
+    }
+
+    @Test
+    public void shouldHandTheCommandsToTheStagesInBatches() {
+        List<String> calls = new ArrayList<String>();
+
+        new PclCommandPipeline().add(new NamedFilter("stage", calls)).batchSize(2).run(reader, writer);
+
+        assertEquals("[stage, stage, stage-flush]", calls.toString());
+        assertEquals(3, writer.commands.size());
+    }
+
+    @Test
+    public void shouldWriteTheCommandsHeldByAStageWhenItIsFlushed() {
+        PclCommandPipeline pipeline = new PclCommandPipeline().add(new CompressionPclCommandFilter());
+
+        pipeline.run(reader, writer);
+
+        assertEquals(2, writer.commands.size());
+        assertEquals("*p10x20Y", writer.commands.get(0).toAscii());
+        assertEquals("text", writer.commands.get(1).toAscii());
+        assertEquals(2, pipeline.getStageCommandCount(0));
+    }
+
+    @Test
+    public void shouldProduceTheSameCommandsWhenThreaded() {
+        PclCommandPipeline pipeline = new PclCommandPipeline()
+                .add(new CompressionPclCommandFilter())
+                .add(new NamedFilter("other", new ArrayList<String>()))
+                .batchSize(1)
+                .threaded(1);
+
+        pipeline.run(reader, writer);
+
+        assertEquals(2, writer.commands.size());
+        assertEquals("*p10x20Y", writer.commands.get(0).toAscii());
+        assertEquals("text", writer.commands.get(1).toAscii());
+        assertEquals(2, pipeline.getStageCommandCount(1));
+    }
+
+    @Test
+    public void shouldReportTheFailureOfAThreadedStage() {
+        final RuntimeException cause = new RuntimeException();
+        PclCommandPipeline pipeline = new PclCommandPipeline().add(new FailingFilter(cause)).threaded(2);
+
+        try {
+            pipeline.run(reader, writer);
+            fail();
+        } catch (PclCommandPipeline.PclCommandPipelineException e) {
+            assertSame(cause, e.getCause());
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void shouldKeepTheInterruptOfTheCallingThread() {
+        PclCommandPipeline pipeline = new PclCommandPipeline().add(new PclCommandFilter() {
+            public void filter(PclCommandBatch input, PclCommandBatch output) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public void flush(PclCommandBatch output) {
+            }
+        }).threaded(2);
+
+        Thread.currentThread().interrupt();
+        try {
+            pipeline.run(reader, writer);
+            fail();
+        } catch (PclCommandPipeline.PclCommandPipelineException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void shouldReportTheFailureOfAStage() {
+        final RuntimeException cause = new RuntimeException();
+
+        try {
+            new PclCommandPipeline().add(new FailingFilter(cause)).run(reader, writer);
+            fail();
+        } catch (PclCommandPipeline.PclCommandPipelineException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    private static class NamedFilter implements PclCommandFilter {
+        private final String name;
+        private final List<String> calls;
+
+        private NamedFilter(String name, List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+        }
+
+        public void filter(PclCommandBatch input, PclCommandBatch output) {
+            calls.add(name);
+            output.addAll(input);
+        }
+
+        public void flush(PclCommandBatch output) {
+            calls.add(name + "-flush");
+        }
+    }
+
+    private static class FailingFilter implements PclCommandFilter {
+        private final RuntimeException cause;
+
+        private FailingFilter(RuntimeException cause) {
+            this.cause = cause;
+        }
+
+        public void filter(PclCommandBatch input, PclCommandBatch output) {
+            throw cause;
+        }
+
+        public void flush(PclCommandBatch output) {
+        }
+    }
+
+    private static class RecordingPclCommandWriter implements PclCommandWriter {
+        private final List<PclCommand> commands = new ArrayList<PclCommand>();
+
+        public void write(PclCommand command) {
+            commands.add(command);
+        }
+
+        public void close() {
+        }
+    }
+}
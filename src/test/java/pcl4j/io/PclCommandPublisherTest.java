@@ -0,0 +1,177 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+import static junit.framework.Assert.*;
+
+public class PclCommandPublisherTest {
+    private static final String JOB = "~E~&l1O~&l2Apage 1\f~*b2Wxx~(s10Hpage 2\f~E";
+
+    private ExecutorService pool;
+    private int executions;
+    private final Executor direct = new Executor() {
+        public void execute(Runnable command) {
+            executions++;
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        pool = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldWriteEveryCommandToTheWriter() throws Exception {
+        MockOutputStream output = new MockOutputStream();
+        PclCommandWriterSubscriber subscriber = new PclCommandWriterSubscriber(new OutputStreamPclCommandWriter(output), 2);
+
+        new PclCommandPublisher(reader(JOB), pool, 3).subscribe(subscriber);
+        subscriber.await();
+
+        assertEquals(job(JOB), new String(output.getBytes()));
+        assertTrue(output.isClosed());
+    }
+
+    @Test
+    public void shouldOnlyReadTheCommandsRequested() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PclCommandPublisher(reader(JOB), direct).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+
+        assertEquals(2, subscriber.commands.size());
+        subscriber.subscription.request(1);
+        assertEquals(3, subscriber.commands.size());
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void shouldGiveTheThreadBackAfterEveryBatch() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PclCommandPublisher(reader(JOB), direct, 3).subscribe(subscriber);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(8, subscriber.commands.size());
+        assertTrue(subscriber.completed);
+        assertEquals(3, executions);
+    }
+
+    @Test
+    public void shouldCloseTheReaderWhenCancelled() {
+        final boolean[] closed = new boolean[1];
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job(JOB).getBytes()) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PclCommandPublisher(reader, direct).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.commands.size());
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void shouldSignalAnErrorForARequestThatIsNotPositive() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PclCommandPublisher(reader(JOB), direct).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void shouldOnlyTakeOneSubscriber() {
+        PclCommandPublisher publisher = new PclCommandPublisher(reader(JOB), direct);
+        publisher.subscribe(new RecordingSubscriber());
+        RecordingSubscriber secondSubscriber = new RecordingSubscriber();
+
+        publisher.subscribe(secondSubscriber);
+
+        assertTrue(secondSubscriber.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void shouldCancelWhenACommandCanNotBeWritten() throws Exception {
+        MockOutputStream output = new MockOutputStream();
+        output.setExceptionToThrow(new IOException("printer went away"));
+        PclCommandWriterSubscriber subscriber = new PclCommandWriterSubscriber(new OutputStreamPclCommandWriter(output));
+
+        new PclCommandPublisher(reader(JOB), pool).subscribe(subscriber);
+
+        try {
+            subscriber.await();
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertTrue(subscriber.isDone());
+        }
+    }
+
+    private ByteBufferPclCommandReader reader(String contents) {
+        return new ByteBufferPclCommandReader(job(contents).getBytes());
+    }
+
+    private String job(String contents) {
+        return contents.replace('~', (char) PclUtil.ESCAPE);
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<PclCommand> {
+        private final List<PclCommand> commands = new ArrayList<PclCommand>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(PclCommand command) {
+            commands.add(command);
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.Assert.*;
+
+public class PclCommandSearchTest {
+    private ForkJoinPool pool;
+    private PclCommandSearch search;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(2);
+        search = new PclCommandSearch(pool);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldFindCommandsWithAValueInRange() throws IOException {
+        File job = job("~&l1X~&l3Xabc~&l2X");
+
+        List<PclCommandSearch.Hit> hits = search.search(job, PclCommandPattern.command("&l#X").atLeast(2));
+
+        assertPositions("[5, 13]", hits);
+    }
+
+    @Test
+    public void shouldFindCommandsWithTheValueInTheGroupByte() throws IOException {
+        File job = job("~(42X~(4X~(10U~(42X");
+
+        assertPositions("[0, 14]", search.search(job, PclCommandPattern.command("(##X").equalTo(42)));
+        assertPositions("[9]", search.search(job, PclCommandPattern.command("(##U")));
+    }
+
+    @Test
+    public void shouldFindCommandsReadOutOfACombinedCommand() throws IOException {
+        File job = job("~&l1o2a3X");
+
+        assertPositions("[5]", search.search(job, PclCommandPattern.command("&l#A")));
+    }
+
+    @Test
+    public void shouldFindTextButNotBinaryData() throws IOException {
+        File job = job("account 1~*b9Waccount 1account 1~&p9Xaccount 1");
+
+        List<PclCommandSearch.Hit> hits = search.search(job, PclCommandPattern.text("account 1"));
+
+        assertPositions("[0, 23, 37]", hits);
+    }
+
+    @Test
+    public void shouldReportTheFileOfEveryHit() throws IOException {
+        File job = job("~&l2X");
+
+        PclCommandSearch.Hit hit = search.search(job, PclCommandPattern.command("&l#X")).get(0);
+
+        assertEquals(job, hit.getFile());
+        assertEquals("&l#X", hit.getPattern().toString());
+    }
+
+    @Test
+    public void shouldFindTheSameHitsWhenTheJobIsSplitIntoChunks() throws IOException {
+        StringBuilder contents = new StringBuilder("~%-12345X@PJL ENTER LANGUAGE=PCL\n~E");
+        for (int i = 0; i < 40; i++) {
+            contents.append("~&l").append(i % 4).append("X~*b8W~&l5X~*b~(s1Xtext ~&l1o").append(i).append("X");
+        }
+        contents.append("~%-12345X@PJL ENTER LANGUAGE=PCLXL\n~&l9X~%-12345X");
+        File job = job(contents.toString());
+        PclCommandPattern[] patterns = {PclCommandPattern.command("&l#X").atLeast(2), PclCommandPattern.text("text")};
+        List<String> expected = describe(search.search(job, patterns));
+
+        for (long chunkSize : new long[]{1, 3, 10, 64}) {
+            search.setChunkSize(chunkSize);
+
+            assertEquals("chunkSize=" + chunkSize, expected, describe(search.search(job, patterns)));
+        }
+        assertEquals(20 + 38 + 40, expected.size());
+    }
+
+    @Test
+    public void shouldSearchEveryJobInADirectory() throws IOException {
+        File directory = File.createTempFile("spool", "");
+        directory.delete();
+        directory.mkdir();
+        directory.deleteOnExit();
+        write(new File(directory, "b.pcl"), "~&l2X");
+        write(new File(directory, "a.pcl"), "~E~&l3X");
+        write(new File(directory, "c.pcl"), "~&l1X");
+
+        List<PclCommandSearch.Hit> hits = search.search(directory, PclCommandPattern.command("&l#X").atLeast(2));
+
+        assertEquals("[a.pcl@2 &l#X>=2.0, b.pcl@0 &l#X>=2.0]", hits.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAcceptACommandPatternInAnotherForm() {
+        PclCommandPattern.command("&lX");
+    }
+
+    private List<String> describe(List<PclCommandSearch.Hit> hits) {
+        List<String> descriptions = new ArrayList<String>();
+        for (PclCommandSearch.Hit hit : hits) {
+            descriptions.add(hit.getPosition() + " " + hit.getPattern());
+        }
+        return descriptions;
+    }
+
+    private void assertPositions(String expected, List<PclCommandSearch.Hit> hits) {
+        long[] positions = new long[hits.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = hits.get(i).getPosition();
+        }
+        assertEquals(expected, Arrays.toString(positions));
+    }
+
+    private File job(String contents) throws IOException {
+        File file = File.createTempFile("test", ".pcl");
+        write(file, contents);
+        return file;
+    }
+
+    private void write(File file, String contents) throws IOException {
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(contents.replace('~', (char) PclUtil.ESCAPE).getBytes());
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static junit.framework.Assert.*;
+
+public class PclCommandSpliteratorTest {
+
+    @Test
+    public void shouldStreamTheCommandsTheReaderReads() {
+        ByteBuffer job = job("~E~&l1o2Apage 1\f~*b4W~E~Ehi~(s10H");
+
+        List<PclCommand> commands = PclCommandSpliterator.stream(job, false).collect(Collectors.<PclCommand>toList());
+
+        assertEquals(read(job), commands);
+    }
+
+    @Test
+    public void shouldStreamFromThePositionOfTheBufferUpToItsLimit() {
+        byte[] contents = "xx~E~&l1Opage 1\fyy".replace('~', (char) PclUtil.ESCAPE).getBytes();
+        ByteBuffer job = ByteBuffer.wrap(contents, 2, contents.length - 4);
+
+        List<PclCommand> commands = PclCommandSpliterator.stream(job, false).collect(Collectors.<PclCommand>toList());
+
+        assertEquals(read(job), commands);
+        assertEquals(0, commands.get(0).getPosition());
+        assertEquals(3, commands.size());
+    }
+
+    @Test
+    public void shouldReadTheSameCommandsInParallel() {
+        StringBuilder contents = new StringBuilder("~%-12345X@PJL ENTER LANGUAGE=PCL\n");
+        for (int page = 1; page <= 200; page++) {
+            contents.append("~E~&l").append(page % 3).append("o1A~*p100x").append(page).append("Y~*b8W~E~E~E~Epage ")
+                    .append(page).append("\r\nsome text\f");
+        }
+        ByteBuffer job = job(contents.append("~E~%-12345X").toString());
+
+        List<PclCommand> commands = PclCommandSpliterator.stream(job, true).collect(Collectors.<PclCommand>toList());
+
+        assertEquals(read(job), commands);
+    }
+
+    @Test
+    public void shouldSplitAtAPageBoundaryPastTheMiddle() {
+        ByteBuffer job = job("~&l1Xfirst page text\f~&l2Xsecond page\f~&l3Xmore");
+        PclCommandSpliterator spliterator = new PclCommandSpliterator(job);
+
+        Spliterator<PclCommand> firstHalf = spliterator.trySplit();
+
+        assertEquals("[~&l1X, first page text\f, ~&l2X, second page\f]", describe(firstHalf));
+        assertEquals("[~&l3X, more]", describe(spliterator));
+    }
+
+    @Test
+    public void shouldSplitAtTheFirstCommandPastTheMiddleWhenThereIsNoPageBoundary() {
+        ByteBuffer job = job("~*b10W~E~E~E~E~E~&l1o2o3o4o5Oabcdefghijklmnopqrstuvwxyz");
+        PclCommandSpliterator spliterator = new PclCommandSpliterator(job);
+
+        Spliterator<PclCommand> firstHalf = spliterator.trySplit();
+
+        assertEquals("[~*b10W~E~E~E~E~E, ~&l1O, ~&l2O, ~&l3O, ~&l4O, ~&l5O]", describe(firstHalf));
+        assertEquals("[abcdefghijklmnopqrstuvwxyz]", describe(spliterator));
+    }
+
+    @Test
+    public void shouldEstimateTheCommandsFromTheBytesLeft() {
+        PclCommandSpliterator spliterator = new PclCommandSpliterator(job("123456789012"));
+
+        assertEquals(2, spliterator.estimateSize());
+        assertEquals(Spliterator.ORDERED | Spliterator.NONNULL, spliterator.characteristics());
+        assertNull(new PclCommandSpliterator(job("abc")).trySplit());
+    }
+
+    private String describe(Spliterator<PclCommand> spliterator) {
+        final List<String> commands = new ArrayList<String>();
+        spliterator.forEachRemaining(new Consumer<PclCommand>() {
+            public void accept(PclCommand command) {
+                commands.add(new String(command.getBytes()).replace((char) PclUtil.ESCAPE, '~'));
+            }
+        });
+        return commands.toString();
+    }
+
+    private List<PclCommand> read(ByteBuffer job) {
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job.duplicate());
+        List<PclCommand> commands = new ArrayList<PclCommand>();
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            commands.add(command);
+        }
+        return commands;
+    }
+
+    private ByteBuffer job(String contents) {
+        return ByteBuffer.wrap(contents.replace('~', (char) PclUtil.ESCAPE).getBytes());
+    }
+}
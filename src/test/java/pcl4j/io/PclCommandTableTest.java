@@ -0,0 +1,141 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static junit.framework.Assert.*;
+import static pcl4j.io.AssertPcl.assertCommand;
+
+public class PclCommandTableTest {
+    private static final byte[] RESET = {PclUtil.ESCAPE, 'E'};
+
+    @Test
+    public void shouldHoldTheSameCommandsAsTheReaderFindsInTheSampleFile() throws Exception {
+        File file = new File(Thread.currentThread().getContextClassLoader().getResource("example/sample.pcl").toURI());
+
+        PclCommandTable table = PclCommandTable.build(file);
+
+        PclCommandReader reader = new MappedFilePclCommandReader(file);
+        int index = 0;
+        PclCommand expected;
+        while ((expected = reader.nextCommand()) != null) {
+            PclCommand actual = table.toCommand(index++);
+            assertEquals(expected.getClass(), actual.getClass());
+            assertCommand(expected.getPosition(), expected.getBytes(), actual);
+        }
+        reader.close();
+        assertEquals(index, table.size());
+    }
+
+    @Test
+    public void shouldKeepTheColumnsOfEachCommand() {
+        byte[] raster = new PclCommandBuilder().p('*').g('b').v("3").t('W').d("abc").toBytes();
+        PclCommandTable table = PclCommandTable.build(ByteArrayUtil.concat(RESET, "hi".getBytes(), raster));
+
+        assertEquals(3, table.size());
+        assertEquals(PclCommandTable.TWO_BYTE, table.getKind(0));
+        assertEquals('E', table.getParameterizedByte(0));
+        assertEquals(PclCommandTable.TEXT, table.getKind(1));
+        assertEquals(2L, table.getPosition(1));
+        assertEquals(2, table.getPayloadLength(1));
+        assertEquals(PclCommandTable.PARAMETERIZED, table.getKind(2));
+        assertEquals('*', table.getParameterizedByte(2));
+        assertEquals('b', table.getGroupByte(2));
+        assertEquals('W', table.getTerminatorByte(2));
+        assertEquals(1, table.getValueLength(2));
+        assertEquals(3, table.getPayloadLength(2));
+    }
+
+    @Test
+    public void shouldCountPositionsFromThePositionOfTheReadersBuffer() {
+        byte[] raster = new PclCommandBuilder().p('*').g('b').v("3").t('W').d("abc").toBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(ByteArrayUtil.concat("XXXX".getBytes(), raster));
+        buffer.position(4);
+
+        PclCommandTable table = PclCommandTable.build(new ByteBufferPclCommandReader(buffer));
+
+        assertEquals(0L, table.getPosition(0));
+        byte[] value = new byte[table.getValueLength(0)];
+        table.copyValue(0, value, 0);
+        assertEquals("3", new String(value));
+        assertEquals('a', table.getPayload(0).get(0));
+    }
+
+    @Test
+    public void getPayload_shouldBeAViewOfTheSource() {
+        byte[] raster = new PclCommandBuilder().p('*').g('b').v("3").t('W').d("abc").toBytes();
+        PclCommandTable table = PclCommandTable.build(raster);
+
+        ByteBuffer payload = table.getPayload(0);
+
+        assertEquals(3, payload.remaining());
+        assertEquals('a', payload.get(0));
+        assertTrue(payload.isReadOnly());
+    }
+
+    @Test
+    public void shouldSplitCombinedCommands() {
+        PclCommandTable table = PclCommandTable.build("\u001b*p10x-20Y".getBytes());
+
+        PclCommandTable.Cursor cursor = table.cursor();
+        assertTrue(cursor.next());
+        assertEquals('X', cursor.getTerminatorByte());
+        assertEquals(10, cursor.getIntValue());
+        assertTrue(cursor.next());
+        assertEquals(6L, cursor.getPosition());
+        assertEquals('Y', cursor.getTerminatorByte());
+        assertEquals(-20, cursor.getIntValue());
+        assertEquals('-', cursor.getValueByte(0));
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void cursor_shouldBeAbleToJumpToAnyCommand() {
+        PclCommandTable table = PclCommandTable.build(ByteArrayUtil.concat(RESET, "text".getBytes(), RESET));
+        PclCommandTable.Cursor cursor = table.cursor();
+
+        cursor.moveTo(2);
+
+        assertEquals(6L, cursor.getPosition());
+        assertFalse(cursor.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cursor_shouldNotAllowReadingBeforeMovingToACommand() {
+        PclCommandTable.build(RESET).cursor().getKind();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldNotAllowLookingPastTheLastCommand() {
+        PclCommandTable.build(RESET).getKind(1);
+    }
+
+    @Test
+    public void shouldGrowPastTheInitialCapacity() {
+        byte[] contents = new byte[RESET.length * 5000];
+        for (int i = 0; i < 5000; i++) {
+            System.arraycopy(RESET, 0, contents, i * RESET.length, RESET.length);
+        }
+
+        PclCommandTable table = PclCommandTable.build(contents);
+
+        assertEquals(5000, table.size());
+        assertEquals(9998L, table.getPosition(4999));
+    }
+}
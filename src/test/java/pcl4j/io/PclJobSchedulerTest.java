@@ -0,0 +1,239 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PclJobSchedulerTest {
+    private PclJobScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new PclJobScheduler();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.close();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldPrintTheWholeJobWhenItIsNotSplit() throws Exception {
+        RecordingDestination printer = new RecordingDestination(0);
+        scheduler.addPrinter("printer-1", "mono", printer);
+        String contents = "~%-12345X@PJL ENTER LANGUAGE=PCL\n~E~&l2Apage 1\fpage 2\f~E~%-12345X";
+
+        List<PclJobScheduler.Part> parts = scheduler.submit(job(contents), "mono");
+        awaitAll(parts);
+
+        assertEquals(1, parts.size());
+        assertEquals(2, parts.get(0).getLastPage());
+        assertEquals(parts.get(0).getJob().length() + 2 * PclJobScheduler.DEFAULT_PAGE_COST, parts.get(0).getCost());
+        assertEquals("printer-1", parts.get(0).getPrinter());
+        assertEquals(bytes(contents), printer.jobs.get(0));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldSplitLargeJobsAtPageBoundaries() throws Exception {
+        RecordingDestination printer = new RecordingDestination(0);
+        scheduler.addPrinter("printer-1", "mono", printer);
+        scheduler.addPrinter("printer-2", "mono", printer);
+        scheduler.setSplitPages(3);
+        StringBuilder contents = new StringBuilder("~E~&l2A");
+        for (int page = 1; page <= 10; page++) {
+            contents.append("page ").append(page).append('\f');
+        }
+
+        List<PclJobScheduler.Part> parts = scheduler.submit(job(contents.toString()), "mono");
+        awaitAll(parts);
+
+        assertEquals(4, parts.size());
+        assertEquals(7, parts.get(2).getFirstPage());
+        assertEquals(10, parts.get(3).getLastPage());
+        List<Long> pageCounts = new ArrayList<Long>();
+        for (String printed : printer.jobs) {
+            PclPageCounter counter = new PclPageCounter();
+            counter.count(ByteBuffer.wrap(printed.getBytes("ISO-8859-1")));
+            pageCounts.add(counter.getPageCount());
+            assertTrue(printed, printed.contains(bytes("~&l2A")));
+        }
+        Collections.sort(pageCounts);
+        assertEquals("[1, 3, 3, 3]", pageCounts.toString());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldLetAnIdlePrinterTakeOverTheJobsOfASlowOne() throws Exception {
+        RecordingDestination slow = new RecordingDestination(20);
+        RecordingDestination fast = new RecordingDestination(0);
+        scheduler.addPrinter("slow", "mono", slow);
+        scheduler.addPrinter("fast", "mono", fast);
+
+        List<PclJobScheduler.Part> parts = new ArrayList<PclJobScheduler.Part>();
+        for (int i = 0; i < 8; i++) {
+            parts.addAll(scheduler.submit(job("~E~&l1Xpage " + i + "\f~E"), "mono"));
+        }
+        awaitAll(parts);
+
+        assertTrue(fast.jobs.size() + " jobs on the fast printer", fast.jobs.size() > 4);
+        assertEquals(8, fast.jobs.size() + slow.jobs.size());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldOnlyPrintOnPrintersOfTheClassGiven() throws Exception {
+        RecordingDestination mono = new RecordingDestination(0);
+        RecordingDestination color = new RecordingDestination(0);
+        scheduler.addPrinter("mono-1", "mono", mono);
+        scheduler.addPrinter("color-1", "color", color);
+
+        awaitAll(scheduler.submit(job("page 1\f"), "color"));
+        awaitAll(scheduler.submit(job("page 1\f"), "color"));
+
+        assertEquals(0, mono.jobs.size());
+        assertEquals(2, color.jobs.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotSubmitToAClassWithoutPrinters() throws Exception {
+        scheduler.addPrinter("mono-1", "mono", new RecordingDestination(0));
+        scheduler.submit(job("page 1\f"), "color");
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReportTheFailureOfAPrinter() throws Exception {
+        final IllegalStateException problem = new IllegalStateException("offline");
+        scheduler.addPrinter("broken", "mono", new PclJobScheduler.Destination() {
+            public PclCommandWriter open() {
+                throw problem;
+            }
+        });
+
+        List<PclJobScheduler.Part> parts = scheduler.submit(job("page 1\f"), "mono");
+        try {
+            parts.get(0).await();
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertSame(problem, e.getCause());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void shouldSendJobsToLoopbackPrintersOfDifferentSpeeds() throws Exception {
+        PrinterSocketSelector printers = new PrinterSocketSelector(8 * 1024);
+        List<LoopbackPrinterSink> sinks = new ArrayList<LoopbackPrinterSink>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                final LoopbackPrinterSink sink = new LoopbackPrinterSink(0, 8 * 1024);
+                if (i == 0) {
+                    sink.setReadDelay(2, 1024);
+                }
+                sinks.add(sink);
+                final PrinterSocketSelector selector = printers;
+                scheduler.addPrinter("printer-" + i, "mono", new PclJobScheduler.Destination() {
+                    public PclCommandWriter open() {
+                        return selector.open(sink.getAddress());
+                    }
+                });
+            }
+            scheduler.setSplitPages(5);
+            StringBuilder contents = new StringBuilder("~E");
+            for (int page = 1; page <= 40; page++) {
+                contents.append("~*b100W").append(new String(new char[100]).replace('\0', 'x')).append("page ").append(page).append('\f');
+            }
+            List<PclJobScheduler.Part> parts = new ArrayList<PclJobScheduler.Part>();
+            for (int i = 0; i < 3; i++) {
+                parts.addAll(scheduler.submit(job(contents.toString()), "mono"));
+            }
+            awaitAll(parts);
+
+            assertEquals(24, parts.size());
+            while (sinks.get(0).getConnectionCount() + sinks.get(1).getConnectionCount() + sinks.get(2).getConnectionCount() < 24) {
+                Thread.sleep(1);
+            }
+            long received = 0;
+            for (LoopbackPrinterSink sink : sinks) {
+                assertTrue(sink.awaitClosed(sink.getConnectionCount(), 5000));
+                received += sink.getBytesReceived();
+            }
+            assertTrue(received >= 3 * contents.length());
+        } finally {
+            printers.close();
+            for (LoopbackPrinterSink sink : sinks) {
+                sink.close();
+            }
+        }
+    }
+
+    private void awaitAll(List<PclJobScheduler.Part> parts) throws InterruptedException {
+        for (PclJobScheduler.Part part : parts) {
+            part.await();
+        }
+    }
+
+    private File job(String contents) throws IOException {
+        File file = File.createTempFile("test", ".pcl");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(contents.replace('~', (char) PclUtil.ESCAPE).getBytes("ISO-8859-1"));
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    private String bytes(String contents) {
+        return contents.replace('~', (char) PclUtil.ESCAPE);
+    }
+
+    private static class RecordingDestination implements PclJobScheduler.Destination {
+        private final List<String> jobs = Collections.synchronizedList(new ArrayList<String>());
+        private final long delay;
+
+        private RecordingDestination(long delay) {
+            this.delay = delay;
+        }
+
+        public PclCommandWriter open() {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            return new PclCommandWriter() {
+                public void write(PclCommand command) {
+                    output.write(command.getBytes(), 0, command.getBytes().length);
+                }
+
+                public void close() {
+                    try {
+                        Thread.sleep(delay);
+                        jobs.add(output.toString("ISO-8859-1"));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.Assert.*;
+
+public class PclPageCounterTest {
+    private PclPageCounter counter;
+
+    @Before
+    public void setUp() throws Exception {
+        counter = new PclPageCounter();
+    }
+
+    @Test
+    public void shouldCountFormFeeds() {
+        count("page 1\fpage 2\f\fpage 4");
+
+        assertEquals(4, counter.getPageCount());
+    }
+
+    @Test
+    public void shouldOnlyEjectMarkedPagesOnAReset() {
+        count("~E~&l1Opage 1\f~E~%-12345X@PJL\n~E");
+
+        assertEquals(1, counter.getPageCount());
+    }
+
+    @Test
+    public void shouldEjectAMarkedPageWhenAPageSettingChanges() {
+        count("~&l0Opage 1~&l0Osame page~&l1Opage 2~&l2Hpage 3");
+
+        assertEquals(3, counter.getPageCount());
+    }
+
+    @Test
+    public void shouldNotCountFormFeedsInBinaryDataOrMacroDefinitions() {
+        count("~*b3W\f\f\f~&f1Y~&f0Xlogo\f~&f1Xpage 1\f~&p2X\f\f");
+
+        assertEquals(2, counter.getPageCount());
+    }
+
+    @Test
+    public void shouldCountCompoundCommands() {
+        count("~&l1o2a3Xpage 1");
+
+        assertEquals(1, counter.getPageCount());
+        assertEquals(3, counter.getCopies());
+    }
+
+    @Test
+    public void shouldCountTheCopiesOfEveryPage() {
+        count("~%-12345X@PJL SET QTY=2\n@PJL ENTER LANGUAGE=PCL\n~Epage 1\f~&l3Xpage 2\f~E~%-12345X");
+
+        assertEquals(2, counter.getPageCount());
+        assertEquals(8, counter.getImpressionCount());
+        assertEquals(6, counter.getCopies());
+    }
+
+    @Test
+    public void shouldCountDuplexAndRasterPages() {
+        count("~%-12345X@PJL SET DUPLEX=ON\n~Epage 1\f~&l0S~*b2Wxxpage 2\f~E~%-12345X");
+
+        assertEquals(2, counter.getPageCount());
+        assertEquals(1, counter.getDuplexPageCount());
+        assertEquals(1, counter.getRasterPageCount());
+    }
+
+    @Test
+    public void shouldCountALanguageSectionAsAPage() {
+        count("page 1~%-12345X@PJL ENTER LANGUAGE=PCLXL\n\f\f\f~%-12345X");
+
+        assertEquals(2, counter.getPageCount());
+    }
+
+    @Test
+    public void shouldCountTheSamePagesAsThePrinterStateMachine() throws Exception {
+        String job = job();
+        PclPrinterStateMachine stateMachine = new PclPrinterStateMachine();
+        stateMachine.run(new ByteBufferPclCommandReader(toBuffer(job)));
+
+        count(job);
+
+        assertEquals(stateMachine.getPages().size(), counter.getPageCount());
+    }
+
+    @Test
+    public void shouldCountTheSamePagesInParallel() {
+        String job = job();
+        count(job);
+        long pages = counter.getPageCount();
+        long impressions = counter.getImpressionCount();
+        long rasterPages = counter.getRasterPageCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int chunks : new int[]{1, 3, 7, 16, 40}) {
+                counter.countInParallel(toBuffer(job), chunks, executor);
+
+                assertEquals("chunks=" + chunks, pages, counter.getPageCount());
+                assertEquals("chunks=" + chunks, impressions, counter.getImpressionCount());
+                assertEquals("chunks=" + chunks, rasterPages, counter.getRasterPageCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(50, pages);
+    }
+
+    private String job() {
+        StringBuilder job = new StringBuilder("~%-12345X@PJL SET COPIES=2\n@PJL ENTER LANGUAGE=PCL\n~E");
+        for (int page = 1; page <= 50; page++) {
+            job.append("~&l").append(page % 3).append("X~*p100x").append(page).append("Y");
+            if (page % 7 == 0) {
+                job.append("~*b12W\f\f\f\f\f\f\f\f\f\f\f\f");
+            }
+            if (page % 5 == 0) {
+                job.append("~&f2Y~&f0Xmacro\f~&f1X~%1BPG;\f~%0A");
+            }
+            job.append("line one of page ").append(page).append("\r\nline two\f");
+        }
+        return job.append("~E~%-12345X").toString();
+    }
+
+    private void count(String job) {
+        counter.count(toBuffer(job));
+    }
+
+    private ByteBuffer toBuffer(String job) {
+        return ByteBuffer.wrap(job.replace('~', (char) PclUtil.ESCAPE).getBytes());
+    }
+}
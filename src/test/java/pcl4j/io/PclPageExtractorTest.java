@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static junit.framework.Assert.*;
+
+public class PclPageExtractorTest {
+    private static final String HEADER = "~%-12345X@PJL ENTER LANGUAGE=PCL\n";
+    private static final String TRAILER = "~E~%-12345X";
+
+    private PclPageExtractor extractor;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws Exception {
+        extractor = new PclPageExtractor();
+        output = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void shouldWriteTheHeaderAndTheStateThePageStartsWith() throws IOException {
+        File job = job(HEADER + "~E~&l1O~(s12Hpage 1\f~(s10Hpage 2\fpage 3\f" + TRAILER);
+
+        extractor.extract(job, 2, 2, output);
+
+        assertOutput(HEADER + "~E~&l1O~(s12H~(s10Hpage 2\f" + TRAILER);
+    }
+
+    @Test
+    public void shouldCopyAContiguousRangeOfPages() throws IOException {
+        File job = job(HEADER + "~E~&l1Opage 1\fpage 2\f~(s10Hpage 3\fpage 4\f" + TRAILER);
+
+        extractor.extract(job, 2, 3, output);
+
+        assertOutput(HEADER + "~E~&l1Opage 2\f~(s10Hpage 3\f" + TRAILER);
+    }
+
+    @Test
+    public void shouldNotRepeatTheHeaderForTheFirstPage() throws IOException {
+        File job = job(HEADER + "~E~&l1Opage 1\fpage 2\f" + TRAILER);
+
+        extractor.extract(job, 1, 1, output);
+
+        assertOutput(HEADER + "~E~&l1Opage 1\f" + TRAILER);
+    }
+
+    @Test
+    public void shouldWriteCommandsReadOutOfACompoundCommandOnTheirOwn() throws IOException {
+        File job = job("~&l1o2Apage 1\fpage 2\f");
+
+        extractor.extract(job, 2, 2, output);
+
+        assertOutput("~E~&l1O~&l2Apage 2\f~E");
+    }
+
+    @Test
+    public void shouldExtractPagesUsingASavedIndex() throws IOException {
+        File job = job(HEADER + "~E~*c5D~)s3Wabc~(5Xpage 1\fpage 2\f" + TRAILER);
+        File indexFile = File.createTempFile("test", ".idx");
+        indexFile.deleteOnExit();
+        PclPageIndex.build(job).save(indexFile);
+
+        PclPageIndex index = PclPageIndex.load(indexFile);
+        extractor.extract(job, index, 2, 2, output);
+
+        assertEquals(2, index.getPageCount());
+        assertOutput(HEADER + "~E~*c5D~)s3Wabc~*c5D~(5Xpage 2\f" + TRAILER);
+    }
+
+    @Test
+    public void shouldOnlyIndexUpToTheLastPageWanted() throws IOException {
+        File job = job("page 1\fpage 2\fpage 3\f");
+
+        PclPageIndex index = PclPageIndex.build(job, 2);
+
+        assertEquals(2, index.getPageCount());
+        assertEquals(7, index.getPageStart(2));
+        assertEquals(14, index.getPageEnd(2));
+    }
+
+    @Test
+    public void shouldIndexTheSamePagesAsThePrinterStateMachineFinds() throws Exception {
+        File job = new File(Thread.currentThread().getContextClassLoader().getResource("example/sample.pcl").toURI());
+        PclPrinterStateMachine stateMachine = new PclPrinterStateMachine();
+        MappedFilePclCommandReader reader = new MappedFilePclCommandReader(job);
+        try {
+            stateMachine.run(reader);
+        } finally {
+            reader.close();
+        }
+
+        PclPageIndex index = PclPageIndex.build(job);
+
+        assertEquals(stateMachine.getPages().size(), index.getPageCount());
+        for (PclPrinterStateMachine.Page page : stateMachine.getPages()) {
+            assertEquals(page.getStart(), index.getPageStart(page.getNumber()));
+            assertEquals(page.getEnd(), index.getPageEnd(page.getNumber()));
+            assertEquals(page.getEntryState().getPrologueLength(), index.getPrologueLength(page.getNumber()));
+        }
+    }
+
+    @Test
+    public void shouldKeepTheRasterRowsOfAMacroBeingDefined() throws IOException {
+        File job = job("~E~&f1y0X~*b2Wab~&f1X~*b2Wcdpage 1page 2");
+
+        extractor.extract(job, 2, 2, output);
+
+        assertOutput("~E~&f1Y~&f0X~*b2Wab~&f1X~&f1Ypage 2\f~E");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotExtractPagesTheJobDoesNotHave() throws IOException {
+        extractor.extract(job("page 1\f"), 1, 2, output);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotUseAnIndexBuiltForAnotherJob() throws IOException {
+        PclPageIndex index = PclPageIndex.build(job("page 1\f"));
+
+        extractor.extract(job("page 1\fpage 2\f"), index, 1, 1, output);
+    }
+
+    private void assertOutput(String expected) {
+        assertEquals(expected.replace('~', (char) PclUtil.ESCAPE), new String(output.toByteArray()));
+    }
+
+    private File job(String contents) throws IOException {
+        File file = File.createTempFile("test", ".pcl");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(contents.replace('~', (char) PclUtil.ESCAPE).getBytes());
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+}
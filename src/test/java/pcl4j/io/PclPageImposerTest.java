@@ -0,0 +1,116 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.Assert.*;
+
+public class PclPageImposerTest {
+    private PclPageImposer imposer;
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws Exception {
+        imposer = new PclPageImposer();
+        output = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void shouldReverseThePageOrder() {
+        assertEquals("[3, 2, 1]", Arrays.toString(PclPageImposer.reverse(3)));
+    }
+
+    @Test
+    public void shouldPadABookletWithBlankPages() {
+        assertEquals("[4, 1, 2, 3]", Arrays.toString(PclPageImposer.booklet(4)));
+        assertEquals("[0, 1, 2, 0, 0, 3, 4, 5]", Arrays.toString(PclPageImposer.booklet(5)));
+    }
+
+    @Test
+    public void shouldStartEveryPageWithItsPrologueWhenReordering() throws IOException {
+        File job = job("~E~&l0Opage 1\fpage 2\f~(s10Hpage 3\f");
+
+        imposer.reorder(job, PclPageIndex.build(job), PclPageImposer.reverse(3), output);
+
+        assertOutput("~E~&l0O~(s10Hpage 3\f~E~&l0Opage 2\f~E~E~&l0Opage 1\f~E");
+    }
+
+    @Test
+    public void shouldCopyPagesThatFollowEachOtherAsOneRange() throws IOException {
+        File job = job("~E~&l0Opage 1\fpage 2\f~(s10Hpage 3\f");
+
+        imposer.reorder(job, PclPageIndex.build(job), new int[]{2, 3, 0}, output);
+
+        assertOutput("~E~&l0Opage 2\f~(s10Hpage 3\f~E\f~E");
+    }
+
+    @Test
+    public void shouldPutEveryPageInAMacroShiftedToItsSlot() throws IOException {
+        File job = job("~&u600D~*p100x200Ypage 1\f~*p50Xpage 2\f");
+        imposer.addSlot(0, 0);
+        imposer.addSlot(3600, 0);
+
+        imposer.impose(job, PclPageIndex.build(job), new int[]{1, 2}, output);
+
+        assertOutput("~E~&l1O"
+                + "~&f32767Y~&f0X~&u600D~*p100X~*p200Ypage 1~&f1X"
+                + "~&f32766Y~&f0X~&u600D~*p3050Xpage 2~&f1X"
+                + "~&f32767Y~&f3X~&f32766Y~&f3X\f~E");
+    }
+
+    @Test
+    public void shouldMoveMacroDefinitionsAheadOfThePage() throws IOException {
+        File job = job("~&f7Y~&f0Xlogo~&f1X~&f7Y~&f2Xpage 1\f~&l1Opage 2\f");
+        imposer.addSlot(0, 0);
+
+        imposer.impose(job, PclPageIndex.build(job), new int[]{1, 2}, output);
+
+        assertOutput("~E~&l1O"
+                + "~&f7Y~&f0Xlogo~&f1X~&f32767Y~&f0X~&f7Y~&f7Y~&f2Xpage 1~&f1X~&f32767Y~&f3X\f"
+                + "~E~&l1O"
+                + "~&f7Y~&f0Xlogo~&f1X~&f32767Y~&f0X~&f7Y~&f7Ypage 2~&f1X~&f32767Y~&f3X\f~E");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNeedSlotsToImpose() throws IOException {
+        File job = job("page 1\f");
+
+        imposer.impose(job, PclPageIndex.build(job), new int[]{1}, output);
+    }
+
+    private void assertOutput(String expected) {
+        assertEquals(expected.replace('~', (char) PclUtil.ESCAPE), new String(output.toByteArray()));
+    }
+
+    private File job(String contents) throws IOException {
+        File file = File.createTempFile("test", ".pcl");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(contents.replace('~', (char) PclUtil.ESCAPE).getBytes());
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+}
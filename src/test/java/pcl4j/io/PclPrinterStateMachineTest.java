@@ -0,0 +1,169 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PclPrinterStateMachineTest {
+    private PclPrinterStateMachine stateMachine;
+
+    @Before
+    public void setUp() throws Exception {
+        stateMachine = new PclPrinterStateMachine();
+    }
+
+    @Test
+    public void shouldSplitTheJobIntoPagesAtFormFeeds() {
+        run("~&l1Opage 1\f~(s12Hpage 2\fpage 3");
+
+        List<PclPrinterStateMachine.Page> pages = stateMachine.getPages();
+        assertEquals(3, pages.size());
+        assertEquals(0, pages.get(0).getStart());
+        assertEquals(12, pages.get(0).getEnd());
+        assertEquals(12, pages.get(1).getStart());
+        assertEquals(25, pages.get(1).getEnd());
+        assertEquals(25, pages.get(2).getStart());
+        assertEquals(31, pages.get(2).getEnd());
+        assertEquals(3, pages.get(2).getNumber());
+    }
+
+    @Test
+    public void shouldStartEveryPageWithTheStateThePreviousPageLeft() {
+        run("~&l1O~(s12Hpage 1\f~(s10Hpage 2\fpage 3");
+
+        List<PclPrinterStateMachine.Page> pages = stateMachine.getPages();
+        assertPrologue("", pages.get(0));
+        assertPrologue("~&l1O~(s12H", pages.get(1));
+        assertPrologue("~&l1O~(s10H", pages.get(2));
+    }
+
+    @Test
+    public void shouldReplayTheSettingsInTheOrderTheyWereLastSent() {
+        run("~(s12H~&l1O~(s10Hpage 1\f");
+
+        assertPrologue("~&l1O~(s10H", stateMachine.snapshot());
+    }
+
+    @Test
+    public void shouldShareTheSnapshotBetweenPagesThatChangeNothing() {
+        run("~&l1Opage 1\fpage 2\fpage 3");
+
+        List<PclPrinterStateMachine.Page> pages = stateMachine.getPages();
+        assertSame(pages.get(1).getEntryState(), pages.get(2).getEntryState());
+    }
+
+    @Test
+    public void shouldNotChangeASnapshotOnceTaken() {
+        apply("~&l1O~*c5D~)s3Wabc");
+        PclPrinterStateMachine.Snapshot snapshot = stateMachine.snapshot();
+        apply("~*c65E~(s2Wxy~&l0O~E");
+
+        assertPrologue("~*c5D~)s3Wabc~&l1O~*c5D", snapshot);
+        assertPrologue("", stateMachine.snapshot());
+    }
+
+    @Test
+    public void shouldIncludeDownloadedFontsInThePrologue() {
+        run("~*c5D~)s3Wabc~*c65E~(s2Wxy~(5XA\fB");
+
+        assertPrologue("~*c5D~)s3Wabc~*c65E~(s2Wxy~*c5D~(5X", stateMachine.getPages().get(1));
+    }
+
+    @Test
+    public void shouldKeepOnlyPermanentFontsOnAReset() {
+        run("~*c1D~)s1Wa~*c2D~)s1Wb~*c5F~Epage\f");
+
+        assertPrologue("~*c2D~)s1Wb~*c2D~*c5F", stateMachine.snapshot());
+    }
+
+    @Test
+    public void shouldForgetDeletedFonts() {
+        run("~*c1D~)s1Wa~*c2D~)s1Wb~*c2F");
+
+        assertPrologue("~*c1D~)s1Wa~*c2D", stateMachine.snapshot());
+    }
+
+    @Test
+    public void shouldIncludeMacroDefinitionsWithoutApplyingThem() {
+        run("~&f3Y~&f0X~&l1Ologo~&f1X");
+
+        assertPrologue("~&f3Y~&f0X~&l1Ologo~&f1X~&f3Y", stateMachine.snapshot());
+        assertTrue(stateMachine.getPages().isEmpty());
+    }
+
+    @Test
+    public void shouldNotFollowTheCursor() {
+        run("~*p100X~&a720V~*c300A");
+
+        assertPrologue("~*c300A", stateMachine.snapshot());
+    }
+
+    @Test
+    public void shouldEjectAMarkedPageWhenTheOrientationChanges() {
+        run("~&l0Opage 1~&l0O~&l1Opage 2");
+
+        List<PclPrinterStateMachine.Page> pages = stateMachine.getPages();
+        assertEquals(2, pages.size());
+        assertEquals(16, pages.get(0).getEnd());
+        assertPrologue("~&l0O", pages.get(1));
+    }
+
+    @Test
+    public void shouldNotMakeAPageOutOfContentThatDoesNotMarkIt() {
+        run("~Epage\f~E~%-12345X");
+
+        assertEquals(1, stateMachine.getPages().size());
+    }
+
+    @Test
+    public void shouldCountAFormFeedOnABlankPageAsAPage() {
+        run("\f\f");
+
+        assertEquals(2, stateMachine.getPages().size());
+    }
+
+    private void assertPrologue(String expected, PclPrinterStateMachine.Page page) {
+        assertPrologue(expected, page.getEntryState());
+    }
+
+    private void assertPrologue(String expected, PclPrinterStateMachine.Snapshot snapshot) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        snapshot.writePrologue(new OutputStreamPclCommandWriter(output));
+        assertEquals(expected.replace('~', (char) PclUtil.ESCAPE), new String(output.toByteArray()));
+        assertEquals(expected.length(), snapshot.getPrologueLength());
+    }
+
+    private void run(String job) {
+        stateMachine.run(reader(job));
+    }
+
+    private void apply(String commands) {
+        ByteBufferPclCommandReader reader = reader(commands);
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            stateMachine.apply(command);
+        }
+    }
+
+    private ByteBufferPclCommandReader reader(String job) {
+        return new ByteBufferPclCommandReader(job.replace('~', (char) PclUtil.ESCAPE).getBytes());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PclPushParserTest {
+    private static final String JOB = "~%-12345X@PJL SET QTY=2\n@PJL ENTER LANGUAGE=PCL\n~E~&l1o2a0E~(s10.5h-3Bpage 1\f"
+            + "~*b5Wa~b~c~*r1A~&a+2.5Vtext~Z~9~%-12345X@PJL ENTER LANGUAGE=PCLXL\n) HP-PCL XL~%-1234~%-12345X@PJL EOJ\n"
+            + "~E~&l1x~&p3X~~~done";
+
+    @Test
+    public void shouldReadTheSameCommandsAsTheReaderWhateverTheChunkSize() {
+        for (int chunkSize : new int[]{1, 2, 3, 7, 1024}) {
+            assertCommands(JOB, chunkSize);
+        }
+    }
+
+    @Test
+    public void shouldCutOffBinaryDataAtTheEndOfTheInput() {
+        assertCommands("~E~*b10Wabc", 2);
+    }
+
+    @Test
+    public void shouldTreatAnUnfinishedCommandAsText() {
+        assertCommands("text~&l2", 1);
+        assertCommands("text~(", 1);
+        assertCommands("text~", 1);
+        assertCommands("~&l1o", 1);
+    }
+
+    @Test
+    public void shouldEndALanguageSectionWithTheInput() {
+        assertCommands("~%-12345X@PJL ENTER LANGUAGE=POSTSCRIPT\n%!PS showpage ~%-123", 4);
+        assertCommands("~%-12345X@PJL SET QTY=2\n@PJL SET", 4);
+    }
+
+    @Test
+    public void shouldKeepTheCountOfTheBytesFed() {
+        CollectingWriter writer = new CollectingWriter();
+        PclPushParser parser = new PclPushParser(writer);
+
+        parser.feed(buffer("~E~&l"));
+        assertEquals(5, parser.getPosition());
+        assertEquals(1, writer.commands.size());
+
+        parser.feed(buffer("2Xab"));
+        parser.endOfInput();
+        assertEquals(9, parser.getPosition());
+        assertEquals(3, writer.commands.size());
+        assertEquals(2, ((ParameterizedCommand) writer.commands.get(1)).getIntValue());
+    }
+
+    @Test
+    public void shouldNotAllowInputAfterTheEnd() {
+        PclPushParser parser = new PclPushParser(new CollectingWriter());
+        parser.endOfInput();
+        try {
+            parser.feed(buffer("~E"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("No more input can be fed after the end of the input", e.getMessage());
+        }
+    }
+
+    private void assertCommands(String contents, int chunkSize) {
+        byte[] job = bytes(contents);
+        List<PclCommand> expected = new ArrayList<PclCommand>();
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job);
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            expected.add(command);
+        }
+
+        CollectingWriter writer = new CollectingWriter();
+        PclPushParser parser = new PclPushParser(writer);
+        for (int start = 0; start < job.length; start += chunkSize) {
+            parser.feed(ByteBuffer.wrap(job, start, Math.min(chunkSize, job.length - start)));
+        }
+        parser.endOfInput();
+
+        assertEquals("chunkSize=" + chunkSize, expected, writer.commands);
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("chunkSize=" + chunkSize + " command=" + i, Arrays.equals(expected.get(i).getBytes(), writer.commands.get(i).getBytes()));
+            if (expected.get(i) instanceof ParameterizedCommand) {
+                assertEquals(((ParameterizedCommand) expected.get(i)).getScaledDecimalValue(),
+                        ((ParameterizedCommand) writer.commands.get(i)).getScaledDecimalValue());
+            }
+        }
+    }
+
+    private ByteBuffer buffer(String contents) {
+        return ByteBuffer.wrap(bytes(contents));
+    }
+
+    private byte[] bytes(String contents) {
+        return contents.replace('~', (char) PclUtil.ESCAPE).getBytes();
+    }
+
+    private static class CollectingWriter implements PclCommandWriter {
+        private final List<PclCommand> commands = new ArrayList<PclCommand>();
+
+        public void write(PclCommand command) throws PclCommandWriterException {
+            commands.add(command);
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class PclStateTrackerTest {
+    private PclStateTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        tracker = new PclStateTracker();
+    }
+
+    @Test
+    public void shouldKnowACommandSettingTheSameValueAgainIsRedundant() {
+        apply("(s12H");
+
+        assertTrue(tracker.isRedundant(command("(s12H")));
+        assertTrue(tracker.isRedundant(command("(s12.0H")));
+        assertFalse(tracker.isRedundant(command("(s10H")));
+        assertFalse(tracker.isRedundant(command(")s12H")));
+    }
+
+    @Test
+    public void shouldNotKnowAnyStateToBeginWith() {
+        assertFalse(tracker.isRedundant(command("&l0O")));
+        assertNull(tracker.getValue("&l#O"));
+    }
+
+    @Test
+    public void shouldTreatEverySymbolSetAsOneState() {
+        apply("(8U");
+        apply("(0N");
+
+        assertFalse(tracker.isRedundant(command("(8U")));
+        assertTrue(tracker.isRedundant(command("(0N")));
+    }
+
+    @Test
+    public void shouldForgetTheFontCharacteristicsWhenAFontIsSelectedById() {
+        apply("(s12H");
+        apply("(10X");
+
+        assertFalse(tracker.isRedundant(command("(s12H")));
+        assertTrue(tracker.isRedundant(command("(10X")));
+    }
+
+    @Test
+    public void shouldForgetTheFontIdWhenACharacteristicChanges() {
+        apply("(10X");
+        apply("(s3B");
+
+        assertFalse(tracker.isRedundant(command("(10X")));
+    }
+
+    @Test
+    public void shouldForgetEverythingOnAReset() {
+        apply("&l1O");
+        tracker.apply(new TwoByteCommand(new byte[]{PclUtil.ESCAPE, 'E'}));
+
+        assertFalse(tracker.isRedundant(command("&l1O")));
+    }
+
+    @Test
+    public void shouldForgetTheMarginsWhenTheOrientationChanges() {
+        apply("&l0O");
+        apply("&a5L");
+        apply("&l0O");
+
+        assertTrue(tracker.isRedundant(command("&a5L")));
+
+        apply("&l1O");
+
+        assertFalse(tracker.isRedundant(command("&a5L")));
+    }
+
+    @Test
+    public void shouldForgetTheColumnMarginsWhenTheFontChanges() {
+        apply("&a5L");
+        apply("(s10H");
+
+        assertFalse(tracker.isRedundant(command("&a5L")));
+    }
+
+    @Test
+    public void shouldForgetTheColorWhenThePaletteChanges() {
+        apply("*v1S");
+        apply("*v1I");
+
+        assertFalse(tracker.isRedundant(command("*v1S")));
+    }
+
+    @Test
+    public void shouldNotChangeTheStateWhileAMacroIsBeingDefined() {
+        apply("*v1N");
+        apply("&f0X");
+        apply("*v0N");
+
+        assertFalse(tracker.isRedundant(command("*v0N")));
+        assertTrue(tracker.isDefiningMacro());
+
+        apply("&f1X");
+
+        assertTrue(tracker.isRedundant(command("*v1N")));
+    }
+
+    @Test
+    public void shouldForgetEverythingWhenAMacroIsExecuted() {
+        apply("*v1N");
+        apply("&f2X");
+
+        assertFalse(tracker.isRedundant(command("*v1N")));
+    }
+
+    @Test
+    public void shouldTakeACombinedCommandAsTheCommandsItWasMadeFrom() {
+        PclCommand combined = new PclCommandCompressor().compress(command("(s1P"), command("(s12H"));
+
+        tracker.apply(combined);
+
+        assertEquals(Long.valueOf(PclValueParser.SCALE), tracker.getValue("(s#P"));
+        assertEquals(Long.valueOf(12 * PclValueParser.SCALE), tracker.getValue("(s#H"));
+        assertTrue(tracker.isRedundant(command("(s1P")));
+        assertFalse(tracker.isRedundant(command("(s0P")));
+        assertTrue(tracker.isRedundant(combined));
+        assertEquals(PclStateTracker.FONT, tracker.getFamily(combined));
+    }
+
+    private void apply(String command) {
+        tracker.apply(command(command));
+    }
+
+    private PclCommand command(String command) {
+        return new ByteBufferPclCommandReader(ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, command.getBytes())).nextCommand();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PclTextExtractorTest {
+    private List<String> records;
+    private PclTextExtractor extractor;
+
+    @Before
+    public void setUp() throws Exception {
+        records = new ArrayList<String>();
+        extractor = new PclTextExtractor(new PclTextExtractor.Listener() {
+            public void text(int page, int x, int y, int font, CharSequence text) {
+                records.add(page + " " + x + "," + y + " " + font + " [" + text + "]");
+            }
+        });
+    }
+
+    @Test
+    public void shouldStartAtTheTopOfThePage() {
+        extract("hello world");
+
+        assertRecords("1 0,90 -1 [hello world]");
+    }
+
+    @Test
+    public void shouldMoveTheCursorOverTheTextAndLineEnds() {
+        extract("ab\r\n  cd\tef\bg");
+
+        assertRecords("1 0,90 -1 [ab]", "1 144,210 -1 [cd]", "1 576,210 -1 [ef]", "1 648,210 -1 [g]");
+    }
+
+    @Test
+    public void shouldFollowTheCursorPositioningCommands() {
+        extract("~*p300x600Ya~&a+72H~&a360Vb~&u600D~*p-600Yc~&a2R~&a5Cd~&f0S~&a0h0Ve~&f1Sf");
+
+        assertRecords("1 720,1440 -1 [a]", "1 864,360 -1 [b]", "1 936,-360 -1 [c]",
+                "1 360,330 -1 [d]", "1 0,0 -1 [e]", "1 432,330 -1 [f]");
+    }
+
+    @Test
+    public void shouldUseTheSpacingOfTheFont() {
+        extract("~(s12Hab~&l8Dc\nd~&k6He");
+
+        assertRecords("1 0,90 -1 [ab]", "1 120,90 -1 [c]", "1 180,180 -1 [d]", "1 240,180 -1 [e]");
+    }
+
+    @Test
+    public void shouldReportTheFontSelectedById() {
+        extract("~(7Xa~)8Xb\u000ec\u000fd~(s3Be");
+
+        assertRecords("1 0,90 7 [a]", "1 72,90 7 [b]", "1 144,90 8 [c]", "1 216,90 7 [d]", "1 288,90 -1 [e]");
+    }
+
+    @Test
+    public void shouldDecodeTheTextWithTheSymbolSet() {
+        extract("caf\u00c5 ~(0Ncaf\u00e9 ~(19U\u0080");
+
+        assertRecords("1 0,90 -1 [caf\u00e9]", "1 360,90 -1 [caf\u00e9]", "1 720,90 -1 [\u20ac]");
+    }
+
+    @Test
+    public void shouldNumberThePagesLikeThePrinter() {
+        extract("~&l0Oa\fb~&l0Oc~&l1Od~E~Ee~%-12345X@PJL ENTER LANGUAGE=PCLXL\nxl~%-12345X~Ef");
+
+        assertRecords("1 0,90 -1 [a]", "2 0,90 -1 [b]", "2 72,90 -1 [c]", "3 0,90 -1 [d]", "4 0,90 -1 [e]",
+                "6 0,90 -1 [f]");
+    }
+
+    @Test
+    public void shouldLeaveOutTextThatIsNotPrinted() {
+        extract("~&f1Y~&f0Xmacro~&f1X~*b4Wdata~%0BLBlabel;~%0A~&p4Xtext");
+
+        assertRecords("1 0,90 -1 [text]");
+    }
+
+    @Test
+    public void shouldReuseTheTextBufferForLongRuns() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            line.append((char) ('a' + i % 26));
+        }
+
+        extract(line + "\n" + line);
+
+        assertRecords("1 0,90 -1 [" + line + "]", "1 72000,210 -1 [" + line + "]");
+    }
+
+    private void extract(String job) {
+        byte[] bytes = new byte[job.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char character = job.charAt(i);
+            bytes[i] = character == '~' ? PclUtil.ESCAPE : (byte) character;
+        }
+        extractor.extract(ByteBuffer.wrap(bytes));
+    }
+
+    private void assertRecords(String... expected) {
+        List<String> expectedRecords = new ArrayList<String>();
+        for (String record : expected) {
+            expectedRecords.add(record);
+        }
+        assertEquals(expectedRecords, records);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static junit.framework.Assert.*;
+
+public class PclTextIndexTest {
+    private File job;
+    private PclTextIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        job = job("~EStatement for ACCOUNT 12345\fAccount 67890, balance due\f~&a100Vaccount 12345 (continued)\f~E");
+        File indexFile = PclTextIndex.build(job);
+        indexFile.deleteOnExit();
+        index = PclTextIndex.open(indexFile);
+    }
+
+    @Test
+    public void shouldSaveTheIndexNextToTheJob() {
+        assertTrue(new File(job.getPath() + PclTextIndex.EXTENSION).isFile());
+    }
+
+    @Test
+    public void shouldFindThePagesAWordIsOnIgnoringCase() {
+        assertEquals("[1, 2, 3]", Arrays.toString(index.find("Account")));
+        assertEquals("[2]", Arrays.toString(index.find("balance")));
+    }
+
+    @Test
+    public void shouldFindThePagesWithEveryWordOfTheQuery() {
+        assertEquals("[1, 3]", Arrays.toString(index.find("account 12345")));
+        assertEquals("[3]", Arrays.toString(index.find("12345, continued")));
+    }
+
+    @Test
+    public void shouldFindNothingForWordsThatAreNotInTheJob() {
+        assertEquals("[]", Arrays.toString(index.find("account 99999")));
+        assertEquals("[]", Arrays.toString(index.find("")));
+    }
+
+    @Test
+    public void shouldKnowWhereThePagesAre() {
+        PclPageIndex pageIndex = PclPageIndex.build(job);
+
+        assertEquals(3, index.getPageCount());
+        assertEquals(job.length(), index.getJobLength());
+        for (int page = 1; page <= 3; page++) {
+            assertEquals(pageIndex.getPageStart(page), index.getPageStart(page));
+            assertEquals(pageIndex.getPageEnd(page), index.getPageEnd(page));
+        }
+    }
+
+    @Test
+    public void shouldCopyAPageOutOfTheJob() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FileChannel channel = new FileInputStream(job).getChannel();
+        try {
+            index.transferPage(2, channel, Channels.newChannel(output));
+        } finally {
+            channel.close();
+        }
+
+        assertEquals("Account 67890, balance due\f", new String(output.toByteArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotOpenAFileThatIsNotATextIndex() throws IOException {
+        PclTextIndex.open(job);
+    }
+
+    private File job(String contents) throws IOException {
+        File file = File.createTempFile("test", ".pcl");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(contents.replace('~', (char) PclUtil.ESCAPE).getBytes());
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+}
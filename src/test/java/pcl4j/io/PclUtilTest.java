@@ -18,6 +18,7 @@ package pcl4j.io;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static junit.framework.Assert.*;
@@ -292,6 +293,51 @@ public class PclUtilTest {
         assertTrue("this should be a performant method (elasped: " + elapsedTime + " millis)", elapsedTime < 100);
     }
 
+    @Test
+    public void indexOfUniversalExit_shouldFindTheNextUniversalExit() {
+        byte[] data = ByteArrayUtil.concat("a%-12345Xbc".getBytes(), new byte[]{PclUtil.ESCAPE}, "%-12345X".getBytes());
+        assertEquals(11, util.indexOfUniversalExit(ByteBuffer.wrap(data), 0));
+    }
+
+    @Test
+    public void indexOfUniversalExit_shouldStartSearchingFromTheGivenIndex() {
+        byte[] exit = ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, "%-12345X".getBytes());
+        byte[] data = ByteArrayUtil.concat(exit, "12345X".getBytes(), exit);
+        assertEquals(15, util.indexOfUniversalExit(ByteBuffer.wrap(data), 1));
+    }
+
+    @Test
+    public void indexOfUniversalExit_shouldReturnNegativeOneWhenNotFound() {
+        byte[] data = ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, "%-12345".getBytes());
+        assertEquals(-1, util.indexOfUniversalExit(ByteBuffer.wrap(data), 0));
+    }
+
+    @Test
+    public void indexOfUniversalExit_shouldNotMoveTheBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("abcdefghijklmnop".getBytes());
+        util.indexOfUniversalExit(buffer, 0);
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void getEnteredLanguage_shouldHandleWhitespaceAndCase() {
+        byte[] line = "@pjl  enter language =pclxl\r\n".getBytes();
+        assertEquals("PCLXL", util.getEnteredLanguage(line, 0, line.length));
+    }
+
+    @Test
+    public void getEnteredLanguage_shouldOnlyLookAtTheGivenLine() {
+        byte[] line = "@PJL JOB\n@PJL ENTER LANGUAGE=POSTSCRIPT\n".getBytes();
+        assertNull(util.getEnteredLanguage(line, 0, 9));
+        assertEquals("POSTSCRIPT", util.getEnteredLanguage(line, 9, line.length - 9));
+    }
+
+    @Test
+    public void getEnteredLanguage_shouldReturnNullForOtherPjlCommands() {
+        byte[] line = "@PJL SET LANGUAGE=PCL\n".getBytes();
+        assertNull(util.getEnteredLanguage(line, 0, line.length));
+    }
+
     @Test
     public void convertValueToInt_shouldSupportWithLeadingPlusSymbol() {
         assertEquals(10, util.convertValueToInt("+10".getBytes()));
@@ -339,4 +385,26 @@ public class PclUtilTest {
         assertTrue("Byte do not match. expected=[" + new String(expectedValue) + "], actual=[" + new String(actualBytes) + "]",
                 Arrays.equals(expectedValue, actualBytes));
     }
+
+    @Test
+    public void isCommand_shouldIgnoreTheCaseOfTheTerminator() {
+        PclCommand command = new PclCommandBuilder(false).p('*').g('c').v("5").t('d').toCommand();
+
+        assertTrue(util.isCommand(command, '*', 'c', 'D'));
+        assertFalse(util.isCommand(command, '*', 'c', 'E'));
+        assertFalse(util.isCommand(new TextCommand(0, "text".getBytes()), '*', 'c', 'D'));
+    }
+
+    @Test
+    public void isUniversalExit_shouldCheckACommand() {
+        assertTrue(util.isUniversalExit(new PclCommandBuilder(false).p('%').g('-').v("12345").t('X').toCommand()));
+        assertFalse(util.isUniversalExit(new PclCommandBuilder(false).p('%').g('-').v("1").t('X').toCommand()));
+    }
+
+    @Test
+    public void getUngroupedIntValue_shouldIncludeTheDigitInTheGroupByte() {
+        assertEquals(123, util.getUngroupedIntValue((ParameterizedCommand) new PclCommandBuilder(false).p('(').g('1').v("23").t('X').toCommand()));
+        assertEquals(8, util.getUngroupedIntValue((ParameterizedCommand) new PclCommandBuilder(false).p('(').g('8').v("").t('U').toCommand()));
+        assertEquals(3, util.getUngroupedIntValue((ParameterizedCommand) new PclCommandBuilder().p('*').g('c').v("3").t('F').toCommand()));
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class PclValueParserTest {
+    private PclValueParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        parser = new PclValueParser();
+    }
+
+    @Test
+    public void shouldParseAWholeNumber() {
+        parser.append("120".getBytes());
+
+        assertEquals(1200000L, parser.getScaledValue());
+        assertFalse(parser.hasDecimal());
+        assertEquals(PclValueParser.NO_SIGN, parser.getSign());
+    }
+
+    @Test
+    public void shouldKeepTheDecimalPlaces() {
+        parser.append("-1.25".getBytes());
+
+        assertEquals(-12500L, parser.getScaledValue());
+        assertTrue(parser.hasDecimal());
+        assertEquals('-', parser.getSign());
+    }
+
+    @Test
+    public void shouldRememberAPlusSign() {
+        parser.append("+5".getBytes());
+
+        assertEquals(50000L, parser.getScaledValue());
+        assertEquals('+', parser.getSign());
+    }
+
+    @Test
+    public void shouldIgnoreDecimalPlacesPastTheFourthDigit() {
+        parser.append("0.123456".getBytes());
+
+        assertEquals(1234L, parser.getScaledValue());
+    }
+
+    @Test
+    public void shouldIgnorePadding() {
+        parser.append(" 4 ".getBytes());
+
+        assertEquals(40000L, parser.getScaledValue());
+    }
+
+    @Test
+    public void reset_shouldForgetThePreviousValue() {
+        parser.append("-3.5".getBytes());
+
+        parser.reset();
+        parser.append("2".getBytes());
+
+        assertEquals(20000L, parser.getScaledValue());
+        assertFalse(parser.hasDecimal());
+        assertEquals(PclValueParser.NO_SIGN, parser.getSign());
+    }
+}
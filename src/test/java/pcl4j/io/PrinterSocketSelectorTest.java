@@ -0,0 +1,148 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PrinterSocketSelectorTest {
+    private final PclCommandFactory factory = new PclCommandFactory();
+    private PrinterSocketSelector printers;
+    private LoopbackPrinterSink sink;
+
+    @Before
+    public void setUp() throws Exception {
+        printers = new PrinterSocketSelector(1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        printers.close();
+        if (sink != null) {
+            sink.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldSendEveryJobToItsPrinter() throws Exception {
+        sink = new LoopbackPrinterSink(0);
+        sink.setKeepReceived(true);
+        List<SocketPclCommandWriter> writers = new ArrayList<SocketPclCommandWriter>();
+        for (int i = 0; i < 20; i++) {
+            writers.add(printers.open(sink.getAddress()));
+            while (sink.getConnectionCount() < i + 1) {
+                Thread.sleep(1);
+            }
+        }
+        for (int page = 0; page < 100; page++) {
+            for (int i = 0; i < writers.size(); i++) {
+                writers.get(i).write(factory.buildTextCommand(0, ("printer " + i + " page " + page + "\f").getBytes()));
+            }
+        }
+        for (SocketPclCommandWriter writer : writers) {
+            writer.close();
+        }
+
+        assertTrue(sink.awaitClosed(20, 5000));
+        for (int i = 0; i < writers.size(); i++) {
+            String received = new String(sink.getReceived(i));
+            assertTrue(received.startsWith("printer " + i + " page 0\f"));
+            assertTrue(received.endsWith("printer " + i + " page 99\f"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldWaitForASlowPrinterOnceTheBufferIsFull() throws Exception {
+        sink = new LoopbackPrinterSink(0, 4 * 1024);
+        sink.setKeepReceived(true);
+        sink.setReadDelay(1, 4 * 1024);
+        SocketPclCommandWriter writer = printers.open(sink.getAddress());
+        byte[] raster = new byte[512 * 1024];
+        for (int i = 0; i < raster.length; i++) {
+            raster[i] = (byte) i;
+        }
+
+        writer.write(factory.buildParameterizedCommand(0, (byte) '*', (byte) 'b', String.valueOf(raster.length).getBytes(), (byte) 'W', raster));
+        writer.write(factory.buildTwoByteCommand(0, (byte) 'E'));
+        long beforeFlush = sink.getBytesReceived();
+        writer.flush();
+
+        assertTrue(beforeFlush > 0);
+        writer.close();
+        assertTrue(sink.awaitClosed(1, 5000));
+        byte[] received = sink.getReceived(0);
+        assertEquals(raster.length + 12, received.length);
+        assertTrue(Arrays.equals(raster, Arrays.copyOfRange(received, 10, 10 + raster.length)));
+    }
+
+    @Test(timeout = 30000)
+    public void shouldSendTheBytesWrittenJustBeforeClosing() throws Exception {
+        sink = new LoopbackPrinterSink(0);
+        sink.setKeepReceived(true);
+        sink.setReadDelay(1, 64);
+        int jobs = 100;
+        for (int i = 0; i < jobs; i++) {
+            SocketPclCommandWriter writer = printers.open(sink.getAddress());
+            writer.write(factory.buildTextCommand(0, ("job " + i + " page 1\f").getBytes()));
+            writer.flush();
+            writer.write(factory.buildTextCommand(0, ("job " + i + " page 2\f").getBytes()));
+            writer.close();
+        }
+
+        assertTrue(sink.awaitClosed(jobs, 20000));
+        for (int i = 0; i < jobs; i++) {
+            assertEquals("job " + i + " page 1\fjob " + i + " page 2\f", new String(sink.getReceived(i)));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldThrowTheFailureToConnectToTheProducer() throws Exception {
+        ServerSocket unused = new ServerSocket(0);
+        int port = unused.getLocalPort();
+        unused.close();
+        SocketPclCommandWriter writer = printers.open(new InetSocketAddress("127.0.0.1", port));
+
+        try {
+            writer.write(factory.buildTwoByteCommand(0, (byte) 'E'));
+            writer.flush();
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertEquals("A problem has occurred while sending to printer=[" + writer.getPrinter() + "]", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotWriteOnceClosed() throws Exception {
+        sink = new LoopbackPrinterSink(0);
+        SocketPclCommandWriter writer = printers.open(sink.getAddress());
+        writer.close();
+
+        try {
+            writer.write(factory.buildTwoByteCommand(0, (byte) 'E'));
+            fail();
+        } catch (PclCommandWriter.PclCommandWriterException e) {
+            assertEquals("The writer to printer=[" + writer.getPrinter() + "] is closed", e.getMessage());
+        }
+    }
+}
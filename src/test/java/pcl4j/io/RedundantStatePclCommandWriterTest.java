@@ -0,0 +1,101 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static junit.framework.Assert.*;
+
+public class RedundantStatePclCommandWriterTest {
+    private ByteArrayOutputStream output;
+    private RedundantStatePclCommandWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        output = new ByteArrayOutputStream();
+        writer = new RedundantStatePclCommandWriter(new CompressedPclCommandWriter(new OutputStreamPclCommandWriter(output)));
+    }
+
+    @Test
+    public void shouldDropTheFontCommandsRepeatedBeforeEveryFieldAndCombineTheRest() {
+        write("\u001b(s0p10h12v0s0b3TName\u001b(s0p10h12v0s3b3TValue");
+        writer.close();
+
+        assertEquals("\u001b(s0p10h12v0s0b3TName\u001b(s3BValue", output.toString());
+        assertEquals(12, writer.getDroppedBytes(PclStateTracker.FONT));
+        assertEquals(12, writer.getDroppedBytes());
+    }
+
+    @Test
+    public void shouldDropTheOrientationRepeatedOnEveryPage() {
+        write("\u001b&l0Opage 1\f\u001b&l0Opage 2\f");
+        writer.close();
+
+        assertEquals("\u001b&l0Opage 1\fpage 2\f", output.toString());
+        assertEquals(5, writer.getDroppedBytes(PclStateTracker.ORIENTATION));
+    }
+
+    @Test
+    public void shouldKeepTheCommandsAfterAReset() {
+        write("\u001b&l0O\u001bE\u001b&l0O");
+        writer.close();
+
+        assertEquals("\u001b&l0O\u001bE\u001b&l0O", output.toString());
+        assertEquals(0, writer.getDroppedBytes());
+    }
+
+    @Test
+    public void shouldCountTheBytesTheCombinedOutputShrankBy() {
+        String job = "\u001b(s0p10h12v0s0b3TName\u001b(s0p10h12v0s3b3TValue\u001b(s0p10h12v0s3b3TMore";
+        ByteArrayOutputStream combined = new ByteArrayOutputStream();
+        PclCommandWriter combining = new CompressedPclCommandWriter(new OutputStreamPclCommandWriter(combined));
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job.getBytes());
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            combining.write(command);
+        }
+        combining.close();
+
+        write(job);
+        writer.close();
+
+        assertEquals(combined.size() - output.size(), writer.getDroppedBytes());
+    }
+
+    @Test
+    public void shouldKeepAChangeToAPartOfACombinedCommand() {
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader("\u001b(s1P\u001b(s12H\u001b(s0P".getBytes());
+        PclCommand combined = new PclCommandCompressor().compress(reader.nextCommand(), reader.nextCommand());
+
+        writer.write(combined);
+        writer.write(reader.nextCommand());
+        writer.write(combined);
+        writer.close();
+
+        assertEquals("\u001b(s1p12h0p1p12H", output.toString());
+        assertEquals(0, writer.getDroppedBytes());
+    }
+
+    private void write(String job) {
+        ByteBufferPclCommandReader reader = new ByteBufferPclCommandReader(job.getBytes());
+        PclCommand command;
+        while ((command = reader.nextCommand()) != null) {
+            writer.write(command);
+        }
+    }
+}
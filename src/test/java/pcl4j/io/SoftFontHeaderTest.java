@@ -0,0 +1,57 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class SoftFontHeaderTest {
+    @Test
+    public void shouldReadTheFieldsOfTheHeader() {
+        byte[] data = new byte[64];
+        data[1] = 64;
+        data[2] = SoftFontHeader.FORMAT_BITMAP;
+        data[3] = 1;
+        data[14] = 0x01;
+        data[15] = 0x15;
+        System.arraycopy("Courier  ".getBytes(), 0, data, 48, 9);
+        SoftFontHeader header = new SoftFontHeader(command(data));
+
+        assertEquals(64, header.getDescriptorSize());
+        assertEquals(SoftFontHeader.FORMAT_BITMAP, header.getHeaderFormat());
+        assertEquals(1, header.getFontType());
+        assertEquals(277, header.getSymbolSet());
+        assertEquals("Courier", header.getFontName());
+        assertTrue(header.isBitmap());
+    }
+
+    @Test
+    public void shouldKnowScalableFontsAreNotBitmaps() {
+        assertFalse(new SoftFontHeader(command(new byte[]{0, 72, SoftFontHeader.FORMAT_TRUETYPE})).isBitmap());
+    }
+
+    @Test
+    public void shouldHandleATruncatedHeader() {
+        SoftFontHeader header = new SoftFontHeader(command(new byte[]{0}));
+
+        assertEquals(-1, header.getDescriptorSize());
+        assertEquals("", header.getFontName());
+    }
+
+    private ParameterizedCommand command(byte[] data) {
+        return (ParameterizedCommand) new PclCommandBuilder().p(')').g('s').v(data.length).t('W').d(data).toCommand();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package pcl4j.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static junit.framework.Assert.*;
+
+public class SoftFontSubsetterTest {
+    private SoftFontSubsetter subsetter;
+    private ByteArrayOutputStream written;
+    private PclCommandWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        subsetter = new SoftFontSubsetter();
+        written = new ByteArrayOutputStream();
+        writer = new OutputStreamPclCommandWriter(written);
+    }
+
+    @Test
+    public void shouldRemoveTheCharactersThatAreNeverPrinted() {
+        byte[] job = ByteArrayUtil.concat(
+                download(1, SoftFontHeader.FORMAT_BITMAP, 'A', 'B', 'C'),
+                command("(1X"), "ACA".getBytes());
+
+        subsetter.subset(PclCommandTable.build(job), writer);
+
+        assertEquals(new String(ByteArrayUtil.concat(
+                download(1, SoftFontHeader.FORMAT_BITMAP, 'A', 'C'),
+                command("(1X"), "ACA".getBytes())), written.toString());
+        assertEquals(3, subsetter.getCharacterCount());
+        assertEquals(1, subsetter.getRemovedCharacterCount());
+        assertEquals(character('B').length, subsetter.getBytesSaved());
+    }
+
+    @Test
+    public void shouldCollectTheCharactersOfTheSecondaryFontAfterAShiftOut() {
+        byte[] job = ByteArrayUtil.concat(
+                command("(1X"), command(")12X"), "A\u000eB\u000fC".getBytes());
+
+        subsetter.collectUsedCharacters(PclCommandTable.build(job));
+
+        assertEquals("{65, 67}", subsetter.getUsedCharacters(1).toString());
+        assertEquals("{66}", subsetter.getUsedCharacters(12).toString());
+    }
+
+    @Test
+    public void shouldKeepCharactersPrintedWithAFontSelectedByCharacteristicsInEveryFont() {
+        byte[] job = ByteArrayUtil.concat(
+                command("(1X"), "A".getBytes(), command("(s12H"), "B".getBytes());
+
+        subsetter.collectUsedCharacters(PclCommandTable.build(job));
+
+        assertEquals("{65, 66}", subsetter.getUsedCharacters(1).toString());
+        assertEquals("{66}", subsetter.getUsedCharacters(2).toString());
+    }
+
+    @Test
+    public void shouldNotSubsetScalableFonts() {
+        byte[] job = ByteArrayUtil.concat(
+                download(1, SoftFontHeader.FORMAT_TRUETYPE, 'A', 'B'),
+                command("(1X"), "A".getBytes());
+
+        subsetter.subset(PclCommandTable.build(job), writer);
+
+        assertTrue(subsetter.isSubsettingDisabled(1));
+        assertEquals(new String(job), written.toString());
+    }
+
+    @Test
+    public void shouldNotSubsetWhenTheTextIsParsedAsMultiByteCharacters() {
+        byte[] job = ByteArrayUtil.concat(
+                download(1, SoftFontHeader.FORMAT_BITMAP, 'A', 'B'),
+                command("&t21P"), command("(1X"), "A".getBytes());
+
+        subsetter.subset(PclCommandTable.build(job), writer);
+
+        assertEquals(0, subsetter.getRemovedCharacterCount());
+        assertEquals(new String(job), written.toString());
+    }
+
+    @Test
+    public void shouldRemoveTheContinuationBlocksOfARemovedCharacter() {
+        byte[] job = ByteArrayUtil.concat(
+                download(1, SoftFontHeader.FORMAT_BITMAP, 'A', 'B'),
+                continuation(), command("(1X"), "A".getBytes());
+
+        subsetter.subset(PclCommandTable.build(job), writer);
+
+        assertEquals(new String(ByteArrayUtil.concat(
+                download(1, SoftFontHeader.FORMAT_BITMAP, 'A'),
+                command("(1X"), "A".getBytes())), written.toString());
+        assertEquals(1, subsetter.getRemovedCharacterCount());
+    }
+
+    private byte[] download(int fontId, int headerFormat, char... characters) {
+        byte[] header = new byte[64];
+        header[1] = 64;
+        header[2] = (byte) headerFormat;
+        byte[] bytes = ByteArrayUtil.concat(command("*c" + fontId + "D"),
+                new PclCommandBuilder().p(')').g('s').v(header.length).t('W').d(header).toBytes());
+        for (char character : characters) {
+            bytes = ByteArrayUtil.concat(bytes, character(character));
+        }
+        return bytes;
+    }
+
+    private byte[] character(char code) {
+        byte[] descriptor = {CharacterDescriptor.FORMAT_BITMAP, 0, 14, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 1, 0, 4, (byte) code};
+        return ByteArrayUtil.concat(command("*c" + (int) code + "E"),
+                new PclCommandBuilder().p('(').g('s').v(descriptor.length).t('W').d(descriptor).toBytes());
+    }
+
+    private byte[] continuation() {
+        byte[] block = {CharacterDescriptor.FORMAT_BITMAP, 1, 1, 2, 3};
+        return new PclCommandBuilder().p('(').g('s').v(block.length).t('W').d(block).toBytes();
+    }
+
+    private byte[] command(String command) {
+        return ByteArrayUtil.concat(new byte[]{PclUtil.ESCAPE}, command.getBytes());
+    }
+}